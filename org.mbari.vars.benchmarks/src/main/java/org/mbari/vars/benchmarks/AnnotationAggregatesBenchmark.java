@@ -0,0 +1,95 @@
+package org.mbari.vars.benchmarks;
+
+import org.mbari.vars.core.util.FnUtils;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Association;
+import org.mbari.vars.ui.util.AnnotationAggregates;
+import org.mbari.vars.ui.util.IndexedAnnotationList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The bulk editor's lists of distinct concepts and associations, kept up to date while the
+ * annotations are edited one at a time. Each invocation renames one annotation, like an
+ * AnnotationsChangedEvent, and then reads the lists. `rescan` finds them by streaming over
+ * every annotation, which is what the bulk editor used to do on every event. `incremental`
+ * reads them from an {@link AnnotationAggregates} attached to the list, which only updates
+ * the counts of the annotation that changed. JavaFX collections don't need the FX toolkit,
+ * so this runs headless.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-26T11:00:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnnotationAggregatesBenchmark {
+
+    @Param({"100000"})
+    public int n;
+
+    private SyntheticData data;
+    private IndexedAnnotationList scanned;
+    private IndexedAnnotationList followed;
+    private AnnotationAggregates aggregates;
+    private int next;
+
+    @Setup
+    public void setup() {
+        data = new SyntheticData(42);
+        List<Annotation> annotations = data.annotations(n);
+        scanned = new IndexedAnnotationList(annotations);
+        followed = new IndexedAnnotationList(annotations);
+        aggregates = new AnnotationAggregates();
+        aggregates.attach(followed);
+    }
+
+    /** Replaces the next annotation with a copy that has a different concept */
+    private void rename(IndexedAnnotationList annotations) {
+        Annotation a = new Annotation(annotations.get(next));
+        a.setConcept(data.concept());
+        annotations.addAll(List.of(a));
+        next = (next + 1) % annotations.size();
+    }
+
+    @Benchmark
+    public void rescan(Blackhole bh) {
+        rename(scanned);
+        bh.consume(scanned.stream()
+                .map(Annotation::getConcept)
+                .distinct()
+                .sorted(String.CASE_INSENSITIVE_ORDER)
+                .collect(Collectors.toList()));
+        bh.consume(scanned.stream()
+                .map(Annotation::getAssociations)
+                .flatMap(List::stream)
+                .filter(FnUtils.distinctBy(Association::toString))
+                .sorted(Comparator.comparing(Association::toString))
+                .collect(Collectors.toList()));
+    }
+
+    @Benchmark
+    public void incremental(Blackhole bh) {
+        rename(followed);
+        bh.consume(aggregates.getConcepts());
+        bh.consume(aggregates.getAssociations());
+    }
+}
@@ -0,0 +1,53 @@
+package org.mbari.vars.benchmarks;
+
+import org.mbari.vars.services.model.Annotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Annotation copy constructor. The UI copies annotations before every edit
+ * (e.g. a bulk rename copies every selected annotation).
+ *
+ * @author Brian Schlining
+ * @since 2020-10-23T14:00:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnnotationCopyBenchmark {
+
+    @Param({"1000", "10000"})
+    public int count;
+
+    private List<Annotation> annotations;
+
+    @Setup
+    public void setup() {
+        annotations = new SyntheticData(42).annotations(count);
+    }
+
+    @Benchmark
+    public List<Annotation> copy() {
+        List<Annotation> copies = new ArrayList<>(annotations.size());
+        for (Annotation a : annotations) {
+            copies.add(new Annotation(a));
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,120 @@
+package org.mbari.vars.benchmarks;
+
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.util.AnnotationIndex;
+import org.mbari.vars.services.util.AnnotationQuery;
+import org.mbari.vars.services.util.CompiledAnnotationQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk editor searches over 100k annotations. `scan` is what BulkEditorPaneController.search
+ * used to do (every criterion re-evaluated for every annotation), `compiled` scans with a
+ * {@link CompiledAnnotationQuery} and `index` looks the query up in an {@link AnnotationIndex}.
+ * The `descendants` query matches a concept and two "descendants", as if they'd been
+ * resolved from the knowledgebase.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T19:00:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnnotationQueryBenchmark {
+
+    @Param({"concept", "descendants", "association", "conceptAndAssociation"})
+    public String query;
+
+    private List<Annotation> annotations;
+    private AnnotationIndex index;
+    private List<String> concepts;
+    private String linkName;
+    private String linkValue;
+    private CompiledAnnotationQuery compiled;
+
+    @Setup
+    public void setup() {
+        annotations = new SyntheticData(42).annotations(100_000);
+        index = new AnnotationIndex();
+        index.putAll(annotations);
+
+        String concept = null;
+        switch (query) {
+            case "concept":
+                concepts = List.of("Nanomia bijuga");
+                concept = "Nanomia bijuga";
+                break;
+            case "descendants":
+                concepts = List.of("marine organism", "Nanomia bijuga", "Apolemia");
+                break;
+            case "association":
+                linkName = "surface-color";
+                linkValue = "42";
+                break;
+            default:
+                concepts = List.of("Nanomia bijuga");
+                concept = "Nanomia bijuga";
+                linkName = "surface-color";
+                linkValue = "42";
+        }
+        AnnotationQuery.Builder builder = AnnotationQuery.builder().concept(concept);
+        if (linkName != null) {
+            builder.association(linkName, "self", linkValue);
+        }
+        compiled = builder.build().compile(concepts);
+    }
+
+    @Benchmark
+    public List<Annotation> scan() {
+        Predicate<Annotation> conceptPredicate = a -> concepts.stream()
+                .anyMatch(c -> c.equals(a.getConcept()));
+        Predicate<Annotation> associationPredicate = a -> a.getAssociations()
+                .stream()
+                .anyMatch(ass -> ass != null &&
+                        ass.getLinkName().equals(linkName) &&
+                        ass.getToConcept().equals("self") &&
+                        ass.getLinkValue().equals(linkValue));
+        Predicate<Annotation> predicate;
+        if (concepts != null && linkName != null) {
+            predicate = conceptPredicate.and(associationPredicate);
+        }
+        else if (concepts != null) {
+            predicate = conceptPredicate;
+        }
+        else {
+            predicate = associationPredicate;
+        }
+        return annotations.stream()
+                .filter(predicate)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Annotation> compiled() {
+        return annotations.stream()
+                .filter(compiled)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Annotation> index() {
+        return index.findByQuery(compiled);
+    }
+}
@@ -0,0 +1,97 @@
+package org.mbari.vars.benchmarks;
+
+import javafx.collections.FXCollections;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.ui.util.IndexedAnnotationList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a media's annotations, in pages that arrive in any order like AnnotationServiceDecorator's
+ * parallel paging, into the list behind a table sorted by recorded timestamp. This is the work
+ * done on the FX thread; the lists don't need the FX toolkit so this runs headless.
+ *
+ * `pagesPerBatch` is how many pages arrive within a frame. `addAndSort` adds each batch and
+ * then sorts the whole list, which with one page per batch is what AnnotationTableController
+ * used to do. `mergeSorted` is what it does now: each batch is merged into place with
+ * {@link IndexedAnnotationList#mergeSorted}. Both use the table's {@link IndexedAnnotationList}
+ * so the cost of indexing the annotations is the same.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-26T10:00:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnnotationTableLoadBenchmark {
+
+    private static final Comparator<Annotation> BY_RECORDED_TIMESTAMP =
+            Comparator.comparing(Annotation::getRecordedTimestamp);
+
+    @Param({"100000"})
+    public int n;
+
+    @Param({"1000"})
+    public int pageSize;
+
+    @Param({"1", "10"})
+    public int pagesPerBatch;
+
+    private List<List<Annotation>> batches;
+
+    @Setup
+    public void setup() {
+        List<Annotation> annotations = new ArrayList<>(new SyntheticData(42).annotations(n));
+        annotations.sort(BY_RECORDED_TIMESTAMP);
+        List<List<Annotation>> pages = new ArrayList<>();
+        for (int i = 0; i < n; i += pageSize) {
+            pages.add(annotations.subList(i, Math.min(n, i + pageSize)));
+        }
+        Collections.shuffle(pages, new Random(42));
+
+        batches = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i += pagesPerBatch) {
+            List<Annotation> batch = new ArrayList<>();
+            pages.subList(i, Math.min(pages.size(), i + pagesPerBatch)).forEach(batch::addAll);
+            batches.add(batch);
+        }
+    }
+
+    @Benchmark
+    public int addAndSort() {
+        IndexedAnnotationList items = new IndexedAnnotationList();
+        for (List<Annotation> batch : batches) {
+            items.addAll(batch);
+            FXCollections.sort(items, BY_RECORDED_TIMESTAMP);
+        }
+        return items.size();
+    }
+
+    @Benchmark
+    public int mergeSorted() {
+        IndexedAnnotationList items = new IndexedAnnotationList();
+        for (List<Annotation> batch : batches) {
+            items.mergeSorted(batch, BY_RECORDED_TIMESTAMP);
+        }
+        return items.size();
+    }
+}
@@ -0,0 +1,80 @@
+package org.mbari.vars.benchmarks;
+
+import org.mbari.vars.core.util.AsyncUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AsyncUtils#collectAll} fan-out. `completed` measures the overhead of
+ * collecting futures that are already done. `executor` runs each item on a thread
+ * pool, like the service calls the UI fans out. `executorBounded` does the same with
+ * at most {@link AsyncUtils#DEFAULT_MAX_IN_FLIGHT} running at once.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-23T14:00:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncUtilsBenchmark {
+
+    @Param({"10", "1000"})
+    public int count;
+
+    private List<Integer> items;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(i);
+        }
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @TearDown
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Collection<Integer> completed() {
+        return AsyncUtils.collectAll(items, i -> CompletableFuture.completedFuture(i * 2))
+                .join();
+    }
+
+    @Benchmark
+    public Collection<Integer> executor() {
+        return AsyncUtils.collectAll(items, i -> CompletableFuture.supplyAsync(() -> i * 2, executor))
+                .join();
+    }
+
+    @Benchmark
+    public Collection<Integer> executorBounded() {
+        return AsyncUtils.collectAll(items, i -> CompletableFuture.supplyAsync(() -> i * 2, executor),
+                AsyncUtils.DEFAULT_MAX_IN_FLIGHT)
+                .join();
+    }
+}
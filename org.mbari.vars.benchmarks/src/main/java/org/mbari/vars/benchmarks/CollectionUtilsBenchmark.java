@@ -0,0 +1,62 @@
+package org.mbari.vars.benchmarks;
+
+import org.mbari.vars.core.util.FnUtils;
+import org.mbari.vars.core.util.ListUtils;
+import org.mbari.vars.services.model.Annotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * {@link FnUtils#distinctBy} and {@link ListUtils#search} over annotations.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-23T14:00:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollectionUtilsBenchmark {
+
+    @Param({"1000", "50000"})
+    public int count;
+
+    private List<Annotation> annotations;
+    private int startIdx;
+
+    @Setup
+    public void setup() {
+        annotations = new SyntheticData(42).annotations(count);
+        // The search wraps around so start near the end, after the only match
+        startIdx = count - count / 10;
+        annotations.get(count / 2).setConcept("Bathybembix bairdii");
+    }
+
+    @Benchmark
+    public List<Annotation> distinctByImagedMoment() {
+        return annotations.stream()
+                .filter(FnUtils.distinctBy(Annotation::getImagedMomentUuid))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Optional<Annotation> searchWithWrapAround() {
+        return ListUtils.search("Bathybembix", annotations, startIdx, Annotation::getConcept);
+    }
+}
@@ -0,0 +1,90 @@
+package org.mbari.vars.benchmarks;
+
+import org.mbari.vars.services.ConceptSearchIndex;
+import org.mbari.vars.services.model.Concept;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Concept tree search over a ~30k concept knowledge base. `scan` is what the concept
+ * tree's filter used to do for every concept on every keystroke.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T09:00:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConceptSearchBenchmark {
+
+    @Param({"nan", "c-3-4-1", "xyz"})
+    public String query;
+
+    private List<Concept> concepts;
+    private ConceptSearchIndex index;
+
+    @Setup
+    public void setup() {
+        // 1 + 8 + 64 + 512 + 4096 + 32768 concepts
+        Concept root = buildTree("c", 5, 8);
+        concepts = new ArrayList<>();
+        flatten(root, concepts);
+        index = ConceptSearchIndex.build(root, Collections.emptyList());
+    }
+
+    @Benchmark
+    public Set<String> index() {
+        return index.findConceptNames(query);
+    }
+
+    @Benchmark
+    public List<Concept> scan() {
+        String q = query.toLowerCase();
+        return concepts.stream()
+                .filter(c -> {
+                    String t = c.getName();
+                    List<String> alternativeNames = c.getAlternativeNames();
+                    if (alternativeNames != null && !alternativeNames.isEmpty()) {
+                        t = t + String.join("", alternativeNames);
+                    }
+                    return t.toLowerCase().contains(q);
+                })
+                .collect(Collectors.toList());
+    }
+
+    private static Concept buildTree(String name, int depth, int breadth) {
+        List<Concept> children = new ArrayList<>();
+        if (depth > 0) {
+            for (int i = 0; i < breadth; i++) {
+                children.add(buildTree(name + "-" + i, depth - 1, breadth));
+            }
+        }
+        List<String> alternateNames = name.hashCode() % 3 == 0 ?
+                List.of("Nanomia " + name) : Collections.emptyList();
+        return new Concept(name, "species", alternateNames, children);
+    }
+
+    private static void flatten(Concept concept, List<Concept> accum) {
+        accum.add(concept);
+        concept.getChildren().forEach(c -> flatten(c, accum));
+    }
+}
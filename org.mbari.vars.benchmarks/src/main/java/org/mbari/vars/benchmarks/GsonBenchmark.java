@@ -0,0 +1,122 @@
+package org.mbari.vars.benchmarks;
+
+import com.fatboyindustrial.gsonjavatime.Converters;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.mbari.vars.services.gson.AnnotationCreator;
+import org.mbari.vars.services.gson.ByteArrayConverter;
+import org.mbari.vars.services.gson.DurationConverter;
+import org.mbari.vars.services.gson.JsonStreams;
+import org.mbari.vars.services.gson.ServiceGson;
+import org.mbari.vars.services.gson.TimecodeConverter;
+import org.mbari.vars.services.impl.annosaurus.v1.AnnoWebServiceFactory;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.ImagedMoment;
+import org.mbari.vars.services.model.Media;
+import org.mbari.vcr4j.time.Timecode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and deserialization of a page of annotations (and of media, which
+ * use the ByteArrayConverter) using the same Gson configuration that the annotation
+ * service's retrofit converter uses. The `legacy` benchmarks use the configuration the
+ * factories had before {@link ServiceGson}: pretty printed and reflective.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-23T14:00:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GsonBenchmark {
+
+    private static final Type ANNOTATIONS_TYPE = new TypeToken<List<Annotation>>(){}.getType();
+    private static final Type MEDIA_TYPE = new TypeToken<List<Media>>(){}.getType();
+
+    /** Annotations per page. 1000 is the default annotation.service.page.size */
+    @Param({"100", "1000"})
+    public int pageSize;
+
+    private Gson gson;
+    private Gson legacyGson;
+    private List<Annotation> annotations;
+    private String annotationsJson;
+    private String mediaJson;
+
+    @Setup
+    public void setup() {
+        // No requests are made. The factory is only used for its Gson config
+        gson = new AnnoWebServiceFactory("http://localhost/anno/v1", Duration.ofSeconds(1))
+                .getGson();
+        SyntheticData data = new SyntheticData(42);
+        annotations = data.annotations(pageSize);
+        legacyGson = Converters.registerInstant(new GsonBuilder()
+                .setPrettyPrinting()
+                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'")
+                .registerTypeAdapter(ImagedMoment.class, new AnnotationCreator())
+                .registerTypeAdapter(Duration.class, new DurationConverter())
+                .registerTypeAdapter(Timecode.class, new TimecodeConverter())
+                .registerTypeAdapter(byte[].class, new ByteArrayConverter()))
+                .create();
+        annotationsJson = gson.toJson(annotations);
+        mediaJson = gson.toJson(data.media(pageSize / 10));
+    }
+
+    @Benchmark
+    public List<Annotation> deserializeAnnotations() {
+        return gson.fromJson(annotationsJson, ANNOTATIONS_TYPE);
+    }
+
+    @Benchmark
+    public String serializeAnnotations() {
+        return gson.toJson(annotations);
+    }
+
+    /**
+     * Hands each annotation to a consumer as it's parsed instead of building the list
+     */
+    @Benchmark
+    public long streamAnnotations() throws IOException {
+        return JsonStreams.forEach(new StringReader(annotationsJson),
+                gson.getAdapter(Annotation.class),
+                a -> {});
+    }
+
+    @Benchmark
+    public List<Annotation> legacyDeserializeAnnotations() {
+        return legacyGson.fromJson(annotationsJson, ANNOTATIONS_TYPE);
+    }
+
+    @Benchmark
+    public String legacySerializeAnnotations() {
+        return legacyGson.toJson(annotations);
+    }
+
+    @Benchmark
+    public List<Media> deserializeMedia() {
+        return gson.fromJson(mediaJson, MEDIA_TYPE);
+    }
+}
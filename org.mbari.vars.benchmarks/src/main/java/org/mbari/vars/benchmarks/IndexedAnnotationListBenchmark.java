@@ -0,0 +1,119 @@
+package org.mbari.vars.benchmarks;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.ui.util.IndexedAnnotationList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A plain ObservableList, handled the way AppController and AnnotationTableController used
+ * to, compared with an {@link IndexedAnnotationList}. JavaFX collections don't need the FX
+ * toolkit, so this runs headless.
+ *
+ * `changed*` applies an AnnotationsChangedEvent for a bulk rename (the plain list removes
+ * and re-adds the renamed copies, the indexed list replaces them in place), `tableUpdate*`
+ * replaces each renamed annotation at its index the way the table does and `linkName*`
+ * finds the annotations with an identity-reference. The lists are rebuilt before each
+ * invocation since most of the methods modify them.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-23T10:00:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexedAnnotationListBenchmark {
+
+    private static final String LINK_NAME = "identity-reference";
+
+    @Param({"50000"})
+    public int n;
+
+    @Param({"5000"})
+    public int renamedCount;
+
+    private List<Annotation> annotations;
+    private List<Annotation> renamed;
+    private ObservableList<Annotation> plain;
+    private IndexedAnnotationList indexed;
+
+    @Setup
+    public void setup() {
+        annotations = new SyntheticData(42).annotations(n);
+        // A bulk rename sends modified copies of the annotations
+        renamed = annotations.stream()
+                .limit(renamedCount)
+                .map(a -> {
+                    Annotation b = new Annotation(a);
+                    b.setConcept("Aegina");
+                    return b;
+                })
+                .collect(Collectors.toList());
+    }
+
+    @Setup(Level.Invocation)
+    public void buildLists() {
+        plain = FXCollections.observableArrayList(annotations);
+        indexed = new IndexedAnnotationList(annotations);
+    }
+
+    @Benchmark
+    public int changedPlain() {
+        plain.removeAll(renamed);
+        plain.addAll(renamed);
+        return plain.size();
+    }
+
+    @Benchmark
+    public int changedIndexed() {
+        indexed.addAll(renamed);
+        return indexed.size();
+    }
+
+    @Benchmark
+    public int tableUpdatePlain() {
+        for (Annotation a : renamed) {
+            int idx = plain.indexOf(a);
+            plain.remove(idx);
+            plain.add(idx, a);
+        }
+        return plain.size();
+    }
+
+    @Benchmark
+    public int tableUpdateIndexed() {
+        return indexed.replaceExisting(renamed).size();
+    }
+
+    @Benchmark
+    public long linkNamePlain() {
+        return plain.stream()
+                .flatMap(a -> a.getAssociations().stream())
+                .filter(a -> a.getLinkName().equals(LINK_NAME))
+                .count();
+    }
+
+    @Benchmark
+    public int linkNameIndexed() {
+        return indexed.findByLinkName(LINK_NAME).size();
+    }
+}
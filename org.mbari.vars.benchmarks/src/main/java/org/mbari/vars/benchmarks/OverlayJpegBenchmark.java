@@ -0,0 +1,122 @@
+package org.mbari.vars.benchmarks;
+
+import org.mbari.vars.services.util.ImageDimensions;
+import org.mbari.vars.services.util.JpegEncoder;
+import org.mbari.vars.services.util.OverlayRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The jpg with the copyright overlay made from each framegrab, on synthetic 1080p and 4K
+ * frames. `allocateAndImageIO` is what the framegrab used to do (copy the frame into a new
+ * BufferedImage, draw the text and ImageIO.write it) and `pooledRenderer` uses an
+ * {@link OverlayRenderer}. `type` is the frame's image type: 3BYTE_BGR (what ImageIO reads
+ * from a png) takes the renderer's array copy, INT_RGB is drawn onto the pooled canvas.
+ *
+ * `sizeByDecoding` and `sizeFromHeader` find the size of an encoded png by decoding it and
+ * with {@link ImageDimensions}. Run with `-prof gc` to see the allocation rates.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T22:00:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OverlayJpegBenchmark {
+
+    @Param({"1080p", "4K"})
+    public String resolution;
+
+    @Param({"INT_RGB", "3BYTE_BGR"})
+    public String type;
+
+    private final String[] overlayText = {"Copyright 2020 MBARI",
+            "http://localhost/images/Ventana/V4242/42000--07067b9a-71d4-47ab-ae0e-998360665f75.png",
+            "2020-10-24T00:00:42Z", ""};
+
+    private BufferedImage frame;
+    private byte[] png;
+    private OverlayRenderer renderer;
+
+    @Setup
+    public void setup() throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int width = "4K".equals(resolution) ? 3840 : 1920;
+        int height = "4K".equals(resolution) ? 2160 : 1080;
+        int imageType = "INT_RGB".equals(type) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_3BYTE_BGR;
+        frame = newFrame(width, height, imageType, new Random(42));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(frame, "png", out);
+        png = out.toByteArray();
+
+        renderer = new OverlayRenderer(new JpegEncoder(JpegEncoder.DEFAULT_QUALITY), 1);
+    }
+
+    /**
+     * A gradient with some noise so the encoder has something to do, like video of water
+     */
+    private static BufferedImage newFrame(int width, int height, int imageType, Random random) {
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(16);
+                int r = (x * 64 / width) + noise;
+                int g = (y * 128 / height) + noise;
+                int b = 96 + (x + y) * 96 / (width + height) + noise;
+                image.setRGB(x, y, r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+
+    @Benchmark
+    public byte[] allocateAndImageIO() throws IOException {
+        BufferedImage bi = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = bi.createGraphics();
+        g.drawImage(frame, 0, 0, null);
+        g.dispose();
+        OverlayRenderer.drawOverlayText(bi, overlayText);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(bi, "jpg", out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] pooledRenderer() throws IOException {
+        return renderer.renderJpeg(frame, overlayText);
+    }
+
+    @Benchmark
+    public Dimension sizeByDecoding() throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        return new Dimension(image.getWidth(), image.getHeight());
+    }
+
+    @Benchmark
+    public Dimension sizeFromHeader() {
+        return ImageDimensions.read(png).get();
+    }
+}
@@ -0,0 +1,148 @@
+package org.mbari.vars.benchmarks;
+
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Association;
+import org.mbari.vars.services.model.ImageReference;
+import org.mbari.vars.services.model.Media;
+import org.mbari.vcr4j.time.Timecode;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Builds repeatable (seeded) fake data for the benchmarks that looks like what
+ * annosaurus and vampire-squid return.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-23T14:00:00
+ */
+public class SyntheticData {
+
+    public static final Instant START = Instant.parse("2020-10-23T00:00:00Z");
+
+    private static final String[] CONCEPTS = {"Nanomia bijuga", "Aegina citrea", "Bathochordaeus",
+            "Solmissus", "Poeobius meseres", "marine organism", "Pyrosoma", "Apolemia"};
+
+    private static final String[] LINK_NAMES = {"comment", "identity-reference", "surface-color",
+            "population-quantity", "sampled-by"};
+
+    private final Random random;
+
+    public SyntheticData(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public String concept() {
+        return CONCEPTS[random.nextInt(CONCEPTS.length)];
+    }
+
+    /**
+     * @param n The number of annotations
+     * @return Annotations 1/3 second apart, with associations and image references,
+     *  three observations per imaged moment
+     */
+    public List<Annotation> annotations(int n) {
+        UUID videoReferenceUuid = UUID.randomUUID();
+        List<Annotation> annotations = new ArrayList<>(n);
+        UUID imagedMomentUuid = null;
+        for (int i = 0; i < n; i++) {
+            if (i % 3 == 0) {
+                imagedMomentUuid = UUID.randomUUID();
+            }
+            Duration elapsedTime = Duration.ofMillis(i * 333L);
+            Annotation a = new Annotation();
+            a.setObservationUuid(UUID.randomUUID());
+            a.setImagedMomentUuid(imagedMomentUuid);
+            a.setVideoReferenceUuid(videoReferenceUuid);
+            a.setConcept(concept());
+            a.setObserver("brian");
+            a.setActivity("descend");
+            a.setGroup("ROV");
+            a.setObservationTimestamp(START.plusSeconds(i));
+            a.setRecordedTimestamp(START.plus(elapsedTime));
+            a.setElapsedTime(elapsedTime);
+            a.setDuration(Duration.ofMillis(random.nextInt(5000)));
+            a.setTimecode(timecode(elapsedTime));
+            a.setAssociations(associations(random.nextInt(3)));
+            a.setImageReferences(imageReferences(i % 10 == 0 ? 2 : 0));
+            annotations.add(a);
+        }
+        return annotations;
+    }
+
+    private List<Association> associations(int n) {
+        List<Association> associations = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String linkName = LINK_NAMES[random.nextInt(LINK_NAMES.length)];
+            associations.add(new Association(linkName, "self", Integer.toString(random.nextInt(100)),
+                    "text/plain", UUID.randomUUID()));
+        }
+        return associations;
+    }
+
+    private List<ImageReference> imageReferences(int n) {
+        List<ImageReference> imageReferences = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            UUID uuid = UUID.randomUUID();
+            ImageReference ir = new ImageReference();
+            ir.setUuid(uuid);
+            ir.setDescription("compressed image with overlay");
+            ir.setUrl(url("http://localhost/framegrabs/" + uuid + ".jpg"));
+            imageReferences.add(ir);
+        }
+        return imageReferences;
+    }
+
+    /**
+     * @param n The number of media
+     * @return Media with sha512 checksums, so that the ByteArrayConverter gets exercised
+     */
+    public List<Media> media(int n) {
+        List<Media> media = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            byte[] sha512 = new byte[64];
+            random.nextBytes(sha512);
+            Media m = new Media();
+            m.setVideoReferenceUuid(UUID.randomUUID());
+            m.setVideoSequenceUuid(UUID.randomUUID());
+            m.setVideoUuid(UUID.randomUUID());
+            m.setVideoSequenceName("Doc Ricketts " + i);
+            m.setVideoName("D" + i + "_" + START);
+            m.setCameraId("Doc Ricketts");
+            m.setUri(URI.create("http://localhost/media/D" + i + ".mov"));
+            m.setStartTimestamp(START.plus(Duration.ofHours(i)));
+            m.setDuration(Duration.ofMinutes(15));
+            m.setContainer("video/quicktime");
+            m.setWidth(1920);
+            m.setHeight(1080);
+            m.setFrameRate(59.94);
+            m.setSizeBytes(1000000000L + i);
+            m.setSha512(sha512);
+            media.add(m);
+        }
+        return media;
+    }
+
+    public static Timecode timecode(Duration elapsedTime) {
+        long seconds = elapsedTime.getSeconds();
+        long frames = (elapsedTime.toMillis() % 1000) * 30 / 1000;
+        return new Timecode(String.format("%02d:%02d:%02d:%02d",
+                seconds / 3600, (seconds / 60) % 60, seconds % 60, frames));
+    }
+
+    private static URL url(String s) {
+        try {
+            return new URL(s);
+        }
+        catch (MalformedURLException e) {
+            throw new IllegalArgumentException(s, e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.mbari.vars.benchmarks;
+
+import org.mbari.vars.services.model.Media;
+import org.mbari.vars.services.util.VideoIndexUtils;
+import org.mbari.vcr4j.VideoIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link VideoIndexUtils} conversions between timestamps and elapsed times.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-23T14:00:00
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VideoIndexUtilsBenchmark {
+
+    private Media source;
+    private Media target;
+    private VideoIndex byTimestamp;
+    private VideoIndex byElapsedTime;
+    private VideoIndex byTimecode;
+    private VideoIndex later;
+
+    @Setup
+    public void setup() {
+        List<Media> media = new SyntheticData(42).media(2);
+        source = media.get(0);
+        target = media.get(1);
+        // Overlap the two media by 5 minutes
+        target.setStartTimestamp(source.getStartTimestamp().plus(Duration.ofMinutes(10)));
+        Instant timestamp = source.getStartTimestamp().plus(Duration.ofMinutes(12));
+        byTimestamp = new VideoIndex(timestamp);
+        byElapsedTime = new VideoIndex(Duration.ofMinutes(12));
+        Duration et = Duration.ofMinutes(12);
+        byTimecode = new VideoIndex(SyntheticData.timecode(et));
+        later = new VideoIndex(timestamp.plusSeconds(30));
+    }
+
+    @Benchmark
+    public VideoIndex resolveTimestamp() {
+        return VideoIndexUtils.resolve(byTimestamp, source);
+    }
+
+    @Benchmark
+    public VideoIndex resolveElapsedTime() {
+        return VideoIndexUtils.resolve(byElapsedTime, source);
+    }
+
+    @Benchmark
+    public VideoIndex resolveAcrossMedia() {
+        return VideoIndexUtils.resolve(byElapsedTime, source, target);
+    }
+
+    @Benchmark
+    public Optional<Duration> diffTimestamps() {
+        return VideoIndexUtils.diff(byTimestamp, later);
+    }
+
+    @Benchmark
+    public Optional<Duration> diffTimecodes() {
+        return VideoIndexUtils.diff(byTimecode, byTimecode);
+    }
+}
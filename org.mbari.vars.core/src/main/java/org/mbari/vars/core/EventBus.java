@@ -1,25 +1,188 @@
 package org.mbari.vars.core;
 
 
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
 import io.reactivex.subjects.PublishSubject;
 import io.reactivex.subjects.Subject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
+ * Events are delivered on typed channels. A subscriber to a channel only sees events
+ * that are instances of the channel's type (including subclasses), instead of every
+ * event sent on the bus. Events sent from one thread arrive on each channel in the
+ * order they were sent.
+ *
+ * The subscribe methods dispatch events on an executor of the subscriber's choosing
+ * (e.g. the JavaFX thread) and decide what happens when events arrive faster than the
+ * subscriber can handle them:
+ * <ul>
+ *     <li>{@link #subscribe(Class, Executor, Consumer)} - every event, in order</li>
+ *     <li>{@link #subscribeLatest(Class, Executor, Consumer)} - only the most recent
+ *     event. Older ones waiting to be handled are dropped</li>
+ *     <li>{@link #subscribeBatches(Class, Duration, Executor, Consumer)} - events
+ *     collected over a timespan and handled together</li>
+ * </ul>
+ *
+ * <pre>
+ *     eventBus.subscribeBatches(AnnotationsAddedEvent.class, Duration.ofMillis(100),
+ *             Platform::runLater, events -&gt; ...);
+ * </pre>
+ *
+ * {@link #toObserverable()} still sees every event for code that needs it.
+ *
  * @author Brian Schlining
  * @since 2017-05-10T09:55:00
  */
 public class EventBus {
 
+    private static final Logger log = LoggerFactory.getLogger(EventBus.class);
+
     private final Subject<Object> rxSubject = PublishSubject.create().toSerialized();
+    private final Map<Class<?>, Subject<Object>> channels = new ConcurrentHashMap<>();
+    private final Map<Class<?>, List<Class<?>>> hierarchies = new ConcurrentHashMap<>();
 
     public void send(Object o) {
         if (o != null) {
             rxSubject.onNext(o);
+            for (Class<?> type : hierarchies.computeIfAbsent(o.getClass(), EventBus::hierarchy)) {
+                Subject<Object> channel = channels.get(type);
+                if (channel != null) {
+                    channel.onNext(o);
+                }
+            }
         }
     }
 
+    /**
+     * @return Every event sent on the bus. Prefer {@link #toObservable(Class)}
+     */
     public Observable<Object> toObserverable() {
         return rxSubject;
     }
-}
\ No newline at end of file
+
+    /**
+     * The channel for a type of event. Events are delivered on the sender's thread.
+     * @param type The type of event
+     * @return Events that are instances of the type
+     */
+    public <T> Observable<T> toObservable(Class<T> type) {
+        return channels.computeIfAbsent(type, t -> PublishSubject.create().toSerialized())
+                .map(type::cast);
+    }
+
+    /**
+     * @param type The type of event
+     * @param strategy What to do with events the downstream hasn't requested yet
+     * @return A channel that respects backpressure
+     */
+    public <T> Flowable<T> toFlowable(Class<T> type, BackpressureStrategy strategy) {
+        return toObservable(type).toFlowable(strategy);
+    }
+
+    /**
+     * @param type The type of event
+     * @param timespan How long to collect events for
+     * @param maxSize The most events in a batch. A full batch is emitted right away.
+     * @return Batches of events. Timespans without events are skipped
+     */
+    public <T> Flowable<List<T>> toBatches(Class<T> type, Duration timespan, int maxSize) {
+        return toObservable(type)
+                .buffer(timespan.toMillis(), TimeUnit.MILLISECONDS, maxSize)
+                .filter(xs -> !xs.isEmpty())
+                .toFlowable(BackpressureStrategy.BUFFER);
+    }
+
+    /**
+     * Handles every event, in order, on the executor
+     * @param type The type of event
+     * @param executor Where the consumer runs
+     * @param consumer Handles the events
+     * @return Dispose it to unsubscribe
+     */
+    public <T> Disposable subscribe(Class<T> type, Executor executor, Consumer<? super T> consumer) {
+        return toFlowable(type, BackpressureStrategy.BUFFER)
+                .observeOn(Schedulers.from(executor))
+                .subscribe(safely(consumer));
+    }
+
+    /**
+     * Handles the most recent event on the executor. Events that arrive while the
+     * consumer is busy replace each other, so only the last of a burst is handled.
+     * @param type The type of event
+     * @param executor Where the consumer runs
+     * @param consumer Handles the events
+     * @return Dispose it to unsubscribe
+     */
+    public <T> Disposable subscribeLatest(Class<T> type, Executor executor, Consumer<? super T> consumer) {
+        return toFlowable(type, BackpressureStrategy.LATEST)
+                .observeOn(Schedulers.from(executor), false, 1)
+                .subscribe(safely(consumer));
+    }
+
+    /**
+     * Handles the events of each timespan together, in order, on the executor
+     * @param type The type of event
+     * @param timespan How long to collect events for
+     * @param executor Where the consumer runs
+     * @param consumer Handles the events. Never called with an empty list
+     * @return Dispose it to unsubscribe
+     */
+    public <T> Disposable subscribeBatches(Class<T> type,
+                                           Duration timespan,
+                                           Executor executor,
+                                           Consumer<? super List<T>> consumer) {
+        return toBatches(type, timespan, Integer.MAX_VALUE)
+                .observeOn(Schedulers.from(executor))
+                .subscribe(safely(consumer));
+    }
+
+    /**
+     * A consumer that throws would end its subscription. Log it instead so the
+     * subscriber keeps getting events.
+     */
+    private static <T> io.reactivex.functions.Consumer<T> safely(Consumer<? super T> consumer) {
+        return t -> {
+            try {
+                consumer.accept(t);
+            }
+            catch (Exception e) {
+                log.warn("Failed to handle " + t, e);
+            }
+        };
+    }
+
+    /**
+     * @return The class, its superclasses and all of their interfaces
+     */
+    private static List<Class<?>> hierarchy(Class<?> type) {
+        Set<Class<?>> types = new LinkedHashSet<>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            addWithInterfaces(c, types);
+        }
+        return new ArrayList<>(types);
+    }
+
+    private static void addWithInterfaces(Class<?> type, Set<Class<?>> types) {
+        if (types.add(type)) {
+            Arrays.stream(type.getInterfaces())
+                    .forEach(i -> addWithInterfaces(i, types));
+        }
+    }
+}
@@ -7,8 +7,9 @@ import org.slf4j.LoggerFactory;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -20,6 +21,12 @@ public class AsyncUtils {
 
     private static final Logger log = LoggerFactory.getLogger(AsyncUtils.class);
 
+    /**
+     * A reasonable number of simultaneous requests to send to a single web service.
+     * (OkHttp only runs 5 requests per host at a time by default anyway)
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
     public static <T> Optional<T> await(CompletableFuture<T> f, Duration timeout) {
         Optional<T> r;
         try {
@@ -93,10 +100,30 @@ public class AsyncUtils {
         return CompletableFuture.allOf(futures);
     }
 
+    /**
+     * Like {@link #completeAll(Collection, Function)} but at most `maxInFlight` futures
+     * are running at any time. The next item isn't started until a running one
+     * completes. Cancelling the returned future (or a failure) stops any more items
+     * from being started.
+     * @param items The items to process
+     * @param fn The function to apply to each item
+     * @param maxInFlight The maximum number of futures that can be running at once
+     * @param <T> The type of the items
+     * @return A future that completes when all items futures have completed.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<Void> completeAll(Collection<T> items,
+                                                          Function<T, CompletableFuture> fn,
+                                                          int maxInFlight) {
+        Function<T, CompletableFuture<Object>> f = item -> (CompletableFuture<Object>) fn.apply(item);
+        return collectAll(items, f, maxInFlight).thenApply(v -> null);
+    }
+
     /**
      * Apply a function that converts an item in a collection to a future that
      * returns a value when completed. This method will collect all the
-     * results and return them as a collection when all futures are completed
+     * results and return them as a collection when all futures are completed.
+     * The results are in the same order as the items.
      * @param items
      * @param fn
      * @param <T>
@@ -105,16 +132,153 @@ public class AsyncUtils {
      */
     public static <T, R> CompletableFuture<Collection<R>> collectAll(Collection<T> items,
                                                                    Function<T, CompletableFuture<R>> fn) {
-        CopyOnWriteArrayList<R> returnValues = new CopyOnWriteArrayList<>();
+        return collectAll(items, fn, Integer.MAX_VALUE);
+    }
 
-        CompletableFuture[] futures = items.stream()
-                .map(fn)
-                .map(r -> r.thenAccept(returnValues::add))
-                .toArray(CompletableFuture[]::new);
+    /**
+     * Like {@link #collectAll(Collection, Function)} but at most `maxInFlight` futures
+     * are running at any time. Use this instead of sending one request per item all
+     * at once. The next item isn't started until a running one completes.
+     *
+     * If any future fails, or the returned future is cancelled, no more items are
+     * started and the running futures are cancelled.
+     *
+     * @param items The items to process
+     * @param fn The function to apply to each item
+     * @param maxInFlight The maximum number of futures that can be running at once
+     * @param <T> The type of the items
+     * @param <R> The type returned when `fn` completes
+     * @return A future with the results, in the same order as the items.
+     */
+    public static <T, R> CompletableFuture<Collection<R>> collectAll(Collection<T> items,
+                                                                   Function<T, CompletableFuture<R>> fn,
+                                                                   int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1. It was " + maxInFlight);
+        }
+        return new BoundedCollector<>(new ArrayList<>(items), fn, maxInFlight).start();
+    }
 
-        return CompletableFuture.allOf(futures)
-                .thenApply(v -> returnValues);
+    /**
+     * Like {@link #observeAll(Collection, Function)} but at most `maxInFlight` futures
+     * are running at any time. Nothing is started until the observable is subscribed
+     * to. Items are emitted in the same order as `items` (as each one and all the
+     * ones before it complete). Disposing the subscription stops any more items from
+     * being started and cancels the running futures. Null results are skipped.
+     *
+     * @param items The items to process
+     * @param fn The function to apply to each item in `items`
+     * @param maxInFlight The maximum number of futures that can be running at once
+     * @param <T> The type of the item
+     * @param <R> The type returned when `fn` completes
+     * @return A cold observable of the results
+     */
+    public static <T, R> Observable<R> observeAll(Collection<T> items,
+                                                  Function<T, CompletableFuture<R>> fn,
+                                                  int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1. It was " + maxInFlight);
+        }
+        List<T> copy = new ArrayList<>(items);
+        return Observable.fromIterable(copy)
+                .concatMapEager(item -> Observable.<R>create(emitter -> {
+                    CompletableFuture<R> future = fn.apply(item);
+                    emitter.setCancellable(() -> future.cancel(true));
+                    future.whenComplete((r, ex) -> {
+                        if (ex != null) {
+                            emitter.tryOnError(ex);
+                        }
+                        else {
+                            if (r != null) {
+                                emitter.onNext(r);
+                            }
+                            emitter.onComplete();
+                        }
+                    });
+                }), maxInFlight, Math.max(1, Math.min(maxInFlight, 128)));
+    }
+
+    /**
+     * Starts futures for items, keeping at most `maxInFlight` running. Results are set
+     * by index into a pre-sized list so the order is kept without any copying.
+     */
+    private static class BoundedCollector<T, R> {
+
+        private final List<T> items;
+        private final Function<T, CompletableFuture<R>> fn;
+        private final int maxInFlight;
+        private final List<R> results;
+        private final CompletableFuture<Collection<R>> result = new CompletableFuture<>();
+        private final Set<CompletableFuture<R>> running = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        /** Makes sure only one thread at a time starts futures, without recursion */
+        private final AtomicInteger wip = new AtomicInteger();
+        private int next = 0;
 
+        BoundedCollector(List<T> items, Function<T, CompletableFuture<R>> fn, int maxInFlight) {
+            this.items = items;
+            this.fn = fn;
+            this.maxInFlight = maxInFlight;
+            this.results = new ArrayList<>(Collections.nCopies(items.size(), null));
+        }
+
+        CompletableFuture<Collection<R>> start() {
+            // On failure or cancel, cancel whatever is still running
+            result.whenComplete((v, ex) -> {
+                if (ex != null) {
+                    running.forEach(f -> f.cancel(true));
+                }
+            });
+            if (items.isEmpty()) {
+                result.complete(new ArrayList<>());
+            }
+            else {
+                drain();
+            }
+            return result;
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (!result.isDone() && next < items.size() && inFlight.get() < maxInFlight) {
+                    int i = next++;
+                    inFlight.incrementAndGet();
+                    CompletableFuture<R> f;
+                    try {
+                        f = fn.apply(items.get(i));
+                    }
+                    catch (Exception e) {
+                        result.completeExceptionally(e);
+                        break;
+                    }
+                    running.add(f);
+                    if (result.isDone()) {
+                        // Cancelled while we were starting it
+                        f.cancel(true);
+                    }
+                    f.whenComplete((r, ex) -> {
+                        running.remove(f);
+                        if (ex != null) {
+                            result.completeExceptionally(ex);
+                            return;
+                        }
+                        // Distinct indices, so no locking needed. The counter publishes it
+                        results.set(i, r);
+                        inFlight.decrementAndGet();
+                        if (completed.incrementAndGet() == results.size()) {
+                            result.complete(results);
+                        }
+                        else {
+                            drain();
+                        }
+                    });
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
     }
 
 
@@ -70,6 +70,25 @@ public class ListUtils {
         return list.subList(1, list.size());
     }
 
+    /**
+     * Split a collection into consecutive chunks. Use this to break up bulk requests.
+     * @param items The items to split
+     * @param size The max number of items in each chunk
+     * @param <T>
+     * @return Lists of `size` items. The last one may be smaller.
+     */
+    public static <T> List<List<T>> partition(Collection<T> items, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be at least 1. It was " + size);
+        }
+        List<T> list = new ArrayList<>(items);
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size) {
+            chunks.add(list.subList(i, Math.min(i + size, list.size())));
+        }
+        return chunks;
+    }
+
 
 
 }
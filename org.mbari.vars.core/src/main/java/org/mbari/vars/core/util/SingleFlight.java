@@ -0,0 +1,67 @@
+package org.mbari.vars.core.util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent asynchronous calls. While a call for a key is in
+ * flight, any other call with an equal key gets the result of the in-flight call
+ * instead of starting its own. Once the call completes the key is forgotten, so this
+ * is NOT a cache; a later call will go to the backend again.
+ *
+ * <pre>
+ *     SingleFlight&lt;UUID, Media&gt; flight = new SingleFlight&lt;&gt;();
+ *     CompletableFuture&lt;Media&gt; f = flight.execute(uuid, () -&gt; mediaService.findByUuid(uuid));
+ * </pre>
+ *
+ * Each caller gets its own future (a copy of the shared one), so completing or
+ * cancelling it does not affect the other callers. The value itself IS shared so
+ * callers should not mutate it.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-21T10:00:00
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     *
+     * @param key Identifies the call. Must have sensible equals/hashCode
+     * @param fn Starts the call. Only invoked if there is no call in flight for the key
+     * @return A future that completes with the result of the call
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> fn) {
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            return existing.copy();
+        }
+
+        try {
+            fn.get().whenComplete((v, ex) -> {
+                inFlight.remove(key, promise);
+                if (ex != null) {
+                    promise.completeExceptionally(ex);
+                }
+                else {
+                    promise.complete(v);
+                }
+            });
+        }
+        catch (Exception e) {
+            inFlight.remove(key, promise);
+            promise.completeExceptionally(e);
+        }
+        return promise.copy();
+    }
+
+    /**
+     * @return The number of calls currently in flight
+     */
+    public int size() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,233 @@
+package org.mbari.vars.core;
+
+import io.reactivex.disposables.Disposable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EventBusTest {
+
+    interface Tagged {}
+
+    static class Event {
+        final int n;
+
+        Event(int n) {
+            this.n = n;
+        }
+    }
+
+    static class AddedEvent extends Event implements Tagged {
+        AddedEvent(int n) {
+            super(n);
+        }
+    }
+
+    static class RemovedEvent extends Event {
+        RemovedEvent(int n) {
+            super(n);
+        }
+    }
+
+    private EventBus eventBus;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        eventBus = new EventBus();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        assertTrue("Timed out waiting for events", latch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void channelsOnlySeeTheirType() {
+        List<Object> added = new ArrayList<>();
+        List<Object> events = new ArrayList<>();
+        List<Object> tagged = new ArrayList<>();
+        List<Object> all = new ArrayList<>();
+        eventBus.toObservable(AddedEvent.class).subscribe(added::add);
+        eventBus.toObservable(Event.class).subscribe(events::add);
+        eventBus.toObservable(Tagged.class).subscribe(tagged::add);
+        eventBus.toObserverable().subscribe(all::add);
+
+        eventBus.send(new AddedEvent(1));
+        eventBus.send(new RemovedEvent(2));
+        eventBus.send("not an event");
+        eventBus.send(null);
+
+        assertEquals(1, added.size());
+        assertEquals(2, events.size());
+        assertEquals(1, tagged.size());
+        assertEquals(3, all.size());
+    }
+
+    @Test
+    public void eventsArriveInOrderOnTheExecutor() throws Exception {
+        int count = 10_000;
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(count);
+        eventBus.subscribe(AddedEvent.class, executor, e -> {
+            received.add(e.n);
+            threads.add(Thread.currentThread());
+            done.countDown();
+        });
+
+        for (int i = 0; i < count; i++) {
+            eventBus.send(new AddedEvent(i));
+            eventBus.send(new RemovedEvent(i));
+        }
+        await(done);
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, received.get(i).intValue());
+        }
+        assertFalse(threads.contains(Thread.currentThread()));
+        assertEquals(1, threads.stream().distinct().count());
+    }
+
+    @Test
+    public void eachSendersEventsStayInOrder() throws Exception {
+        int senders = 4;
+        int count = 5_000;
+        List<AddedEvent> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(senders * count);
+        eventBus.subscribe(AddedEvent.class, executor, e -> {
+            received.add(e);
+            done.countDown();
+        });
+
+        ExecutorService senderPool = Executors.newFixedThreadPool(senders);
+        for (int s = 0; s < senders; s++) {
+            int offset = s * count;
+            senderPool.execute(() -> {
+                for (int i = 0; i < count; i++) {
+                    eventBus.send(new AddedEvent(offset + i));
+                }
+            });
+        }
+        await(done);
+        senderPool.shutdown();
+
+        for (int s = 0; s < senders; s++) {
+            int lo = s * count;
+            List<Integer> fromSender = received.stream()
+                    .map(e -> e.n)
+                    .filter(n -> n >= lo && n < lo + count)
+                    .collect(Collectors.toList());
+            assertEquals(count, fromSender.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(lo + i, fromSender.get(i).intValue());
+            }
+        }
+    }
+
+    @Test
+    public void latestDropsTheBacklogOfABurst() throws Exception {
+        int count = 1_000;
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch last = new CountDownLatch(1);
+        eventBus.subscribeLatest(AddedEvent.class, executor, e -> {
+            received.add(e.n);
+            first.countDown();
+            if (e.n == count - 1) {
+                last.countDown();
+            }
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // The subscriber is stuck on the first event while the burst arrives
+        eventBus.send(new AddedEvent(0));
+        await(first);
+        for (int i = 1; i < count; i++) {
+            eventBus.send(new AddedEvent(i));
+        }
+        release.countDown();
+        await(last);
+
+        assertEquals(0, received.get(0).intValue());
+        assertEquals(count - 1, received.get(received.size() - 1).intValue());
+        assertTrue("Expected the burst to be collapsed but got " + received.size(),
+                received.size() <= 3);
+    }
+
+    @Test
+    public void batchesABurst() throws Exception {
+        int count = 1_000;
+        List<List<AddedEvent>> batches = new CopyOnWriteArrayList<>();
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        eventBus.subscribeBatches(AddedEvent.class, Duration.ofMillis(200), executor, xs -> {
+            batches.add(xs);
+            if (received.addAndGet(xs.size()) == count) {
+                done.countDown();
+            }
+        });
+
+        for (int i = 0; i < count; i++) {
+            eventBus.send(new AddedEvent(i));
+        }
+        await(done);
+
+        assertTrue("Expected a few batches but got " + batches.size(), batches.size() <= 3);
+        List<Integer> flattened = batches.stream()
+                .flatMap(List::stream)
+                .map(e -> e.n)
+                .collect(Collectors.toList());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, flattened.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void failingSubscribersKeepTheirSubscription() throws Exception {
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        Disposable disposable = eventBus.subscribe(AddedEvent.class, executor, e -> {
+            received.add(e.n);
+            done.countDown();
+            if (e.n == 1) {
+                throw new RuntimeException("Intentional");
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            eventBus.send(new AddedEvent(i));
+        }
+        await(done);
+        assertEquals(List.of(0, 1, 2), received);
+
+        // And unsubscribing stops delivery
+        disposable.dispose();
+        eventBus.send(new AddedEvent(3));
+        executor.submit(() -> {}).get(10, TimeUnit.SECONDS);
+        assertEquals(3, received.size());
+    }
+}
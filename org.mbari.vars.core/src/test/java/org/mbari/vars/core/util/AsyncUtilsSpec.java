@@ -1,13 +1,22 @@
 package org.mbari.vars.core.util;
 
 import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * @author Brian Schlining
@@ -56,4 +65,135 @@ public class AsyncUtilsSpec {
         Assert.assertEquals(items.size(), n.get());
 
     }
+
+    /**
+     * A fake service. Each request is a future that the test completes by hand
+     */
+    private static class FakeService {
+        final List<CompletableFuture<Integer>> requests = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture<Integer> find(Integer i) {
+            CompletableFuture<Integer> f = new CompletableFuture<>();
+            requests.add(f);
+            return f;
+        }
+
+        void complete(int request, int value) {
+            requests.get(request).complete(value);
+        }
+    }
+
+    private static List<Integer> range(int n) {
+        return IntStream.range(0, n).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    public void collectAllLimitsInFlight() {
+        FakeService service = new FakeService();
+        CompletableFuture<Collection<Integer>> f = AsyncUtils.collectAll(range(10), service::find, 3);
+        Assert.assertEquals(3, service.requests.size());
+
+        // Complete out of order. Each completion lets one more start
+        service.complete(1, 1);
+        Assert.assertEquals(4, service.requests.size());
+        service.complete(0, 0);
+        service.complete(3, 3);
+        Assert.assertEquals(6, service.requests.size());
+        for (int i = 0; i < 10; i++) {
+            service.complete(i, i);
+        }
+        Assert.assertEquals(10, service.requests.size());
+        Assert.assertEquals(range(10), new ArrayList<>(f.join()));
+    }
+
+    @Test
+    public void collectAllLimitsInFlightOnThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        CompletableFuture<Collection<Integer>> f = AsyncUtils.collectAll(range(200), i ->
+                CompletableFuture.supplyAsync(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        latch.await();
+                        Thread.sleep(1);
+                    }
+                    catch (InterruptedException e) {
+                        // ignore
+                    }
+                    running.decrementAndGet();
+                    return i * 2;
+                }, executor), 4);
+        Thread.sleep(50);
+        latch.countDown();
+        List<Integer> expected = range(200).stream().map(i -> i * 2).collect(Collectors.toList());
+        Assert.assertEquals(expected, new ArrayList<>(f.get(10, TimeUnit.SECONDS)));
+        Assert.assertEquals(4, maxRunning.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void collectAllCancel() {
+        FakeService service = new FakeService();
+        CompletableFuture<Collection<Integer>> f = AsyncUtils.collectAll(range(10), service::find, 2);
+        f.cancel(true);
+        Assert.assertEquals(2, service.requests.size());
+        Assert.assertTrue(service.requests.get(0).isCancelled());
+        Assert.assertTrue(service.requests.get(1).isCancelled());
+    }
+
+    @Test
+    public void collectAllFailure() {
+        FakeService service = new FakeService();
+        CompletableFuture<Collection<Integer>> f = AsyncUtils.collectAll(range(10), service::find, 2);
+        service.requests.get(0).completeExceptionally(new RuntimeException("Boom"));
+        Assert.assertTrue(f.isCompletedExceptionally());
+        // Nothing else was started and the other request was cancelled
+        Assert.assertEquals(2, service.requests.size());
+        Assert.assertTrue(service.requests.get(1).isCancelled());
+    }
+
+    @Test
+    public void collectAllCompletedFutures() {
+        // Already completed futures mustn't recurse
+        Collection<Integer> xs = AsyncUtils.collectAll(range(100000), CompletableFuture::completedFuture, 1).join();
+        Assert.assertEquals(100000, xs.size());
+        Assert.assertTrue(AsyncUtils.collectAll(new ArrayList<Integer>(), CompletableFuture::completedFuture, 1).join().isEmpty());
+    }
+
+    @Test
+    public void completeAllLimitsInFlight() {
+        FakeService service = new FakeService();
+        CompletableFuture<Void> f = AsyncUtils.completeAll(range(5), service::find, 2);
+        Assert.assertEquals(2, service.requests.size());
+        for (int i = 0; i < 5; i++) {
+            service.complete(i, i);
+        }
+        Assert.assertTrue(f.isDone());
+    }
+
+    @Test
+    public void observeAllLimitsInFlight() {
+        FakeService service = new FakeService();
+        Observable<Integer> observable = AsyncUtils.observeAll(range(6), service::find, 2);
+        // Cold
+        Assert.assertEquals(0, service.requests.size());
+
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        Disposable disposable = observable.subscribe(seen::add);
+        Assert.assertEquals(2, service.requests.size());
+
+        // Emitted in order, so nothing comes out until the first one completes
+        service.complete(1, 1);
+        Assert.assertTrue(seen.isEmpty());
+        service.complete(0, 0);
+        Assert.assertEquals(List.of(0, 1), seen);
+        Assert.assertEquals(4, service.requests.size());
+
+        disposable.dispose();
+        Assert.assertTrue(service.requests.get(2).isCancelled());
+        Assert.assertTrue(service.requests.get(3).isCancelled());
+        Assert.assertEquals(4, service.requests.size());
+    }
 }
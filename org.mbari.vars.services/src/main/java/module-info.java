@@ -14,6 +14,7 @@ module org.mbari.vars.services {
   requires javax.inject;
   requires okhttp3.logging;
   requires okhttp3;
+  requires okio;
   requires org.mbari.vars.core;
   requires org.slf4j;
   requires retrofit2.converter.gson;
@@ -0,0 +1,179 @@
+package org.mbari.vars.services;
+
+import com.google.gson.Gson;
+import org.mbari.vars.services.model.Annotation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores the annotations for a video reference on the local disk, one gzipped JSON
+ * file per videoReferenceUuid. This class only does the storage; how the entries are
+ * used is up to {@link CachingAnnotationLoader}.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-22T09:00:00
+ */
+public class AnnotationDiskCache {
+
+    /**
+     * A cached set of annotations.
+     */
+    public static class Entry {
+        private final UUID videoReferenceUuid;
+        private final Instant cachedAt;
+        private final List<Annotation> annotations;
+
+        /**
+         *
+         * @param videoReferenceUuid The video reference the annotations belong to
+         * @param cachedAt Annotations modified on the server after this time may
+         *                 differ from the ones in this entry
+         * @param annotations All the annotations for the video reference
+         */
+        public Entry(UUID videoReferenceUuid, Instant cachedAt, List<Annotation> annotations) {
+            this.videoReferenceUuid = videoReferenceUuid;
+            this.cachedAt = cachedAt;
+            this.annotations = annotations;
+        }
+
+        public UUID getVideoReferenceUuid() {
+            return videoReferenceUuid;
+        }
+
+        public Instant getCachedAt() {
+            return cachedAt;
+        }
+
+        public List<Annotation> getAnnotations() {
+            return annotations == null ? new ArrayList<>() : annotations;
+        }
+    }
+
+    private static final String SUFFIX = ".json.gz";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Path directory;
+    private final Gson gson;
+
+    /**
+     *
+     * @param directory The directory to write the cache files into. It will be
+     *                  created if it doesn't exist
+     * @param gson Used to serialize annotations. Use the same config as the
+     *             annotation service
+     */
+    public AnnotationDiskCache(Path directory, Gson gson) {
+        this.directory = directory;
+        this.gson = gson;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private Path pathFor(UUID videoReferenceUuid) {
+        return directory.resolve(videoReferenceUuid.toString() + SUFFIX);
+    }
+
+    /**
+     * @param videoReferenceUuid The video reference to look up
+     * @return The cached entry. Empty if there isn't one or if it can't be read.
+     */
+    public Optional<Entry> read(UUID videoReferenceUuid) {
+        Path path = pathFor(videoReferenceUuid);
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        try (Reader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.UTF_8))) {
+            Entry entry = gson.fromJson(reader, Entry.class);
+            return Optional.ofNullable(entry);
+        }
+        catch (Exception e) {
+            log.warn("Unable to read cached annotations from " + path + ". Removing it.", e);
+            remove(videoReferenceUuid);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes an entry. The file is written to a temp file first then moved into place
+     * so a crash part way through never leaves a corrupt entry behind.
+     * @param entry The entry to cache
+     */
+    public void write(Entry entry) {
+        Path path = pathFor(entry.getVideoReferenceUuid());
+        Path tmp = null;
+        try {
+            Files.createDirectories(directory);
+            tmp = Files.createTempFile(directory, entry.getVideoReferenceUuid().toString(), ".tmp");
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(tmp)), StandardCharsets.UTF_8))) {
+                gson.toJson(entry, writer);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            log.warn("Unable to write cached annotations to " + path, e);
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                }
+                catch (IOException ex) {
+                    // Nothing else we can do
+                }
+            }
+        }
+    }
+
+    public void remove(UUID videoReferenceUuid) {
+        try {
+            Files.deleteIfExists(pathFor(videoReferenceUuid));
+        }
+        catch (IOException e) {
+            log.warn("Unable to remove cached annotations for " + videoReferenceUuid, e);
+        }
+    }
+
+    /**
+     * Removes all cached entries
+     */
+    public void clear() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (var paths = Files.list(directory)) {
+            paths.filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .forEach(p -> {
+                        try {
+                            Files.deleteIfExists(p);
+                        }
+                        catch (IOException e) {
+                            log.warn("Unable to remove " + p, e);
+                        }
+                    });
+        }
+        catch (IOException e) {
+            log.warn("Unable to clear the annotation cache at " + directory, e);
+        }
+    }
+}
@@ -13,6 +13,7 @@
 
 package org.mbari.vars.services;
 
+import io.reactivex.Flowable;
 import java.net.URL;
 import java.time.Instant;
 import java.util.Collection;
@@ -20,6 +21,7 @@ import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 import org.mbari.vars.services.model.*;
 
 /**
@@ -87,6 +89,17 @@ public interface AnnotationService {
 
     CompletableFuture<List<Annotation>> findByConcept(String concept, Long limit, Long offset, Boolean data);
 
+    /**
+     * Fetches the annotations for a concept a page at a time.
+     * @param concept The concept to search for
+     * @param data true to include ancillary data
+     * @param pageSize The number of annotations requested per page
+     * @return A cold flowable of pages. The next page is only requested once the
+     *  subscriber asks for it, and cancelling the subscription cancels any request
+     *  in flight. The requests block, so subscribe on an io scheduler.
+     */
+    Flowable<List<Annotation>> streamByConcept(String concept, Boolean data, int pageSize);
+
     CompletableFuture<List<Annotation>> findAnnotations(UUID videoReferenceUuid);
 
     /**
@@ -101,6 +114,23 @@ public interface AnnotationService {
 
     CompletableFuture<List<Annotation>> findAnnotations(UUID videoReferenceUuid, Long limit, Long offset, Boolean data);
 
+    /**
+     * Fetches the annotations for a video, handing each one to the consumer as soon as
+     * it's parsed from the response. The page is never held in memory as a list.
+     *
+     * @param videoReferenceUuid The video reference
+     * @param limit The max number of annotations (null for all of them)
+     * @param offset The number of annotations to skip (null for none)
+     * @param data true to include ancillary data
+     * @param consumer Gets each annotation. It's called on the thread reading the response
+     * @return The number of annotations passed to the consumer
+     */
+    CompletableFuture<Long> streamAnnotations(UUID videoReferenceUuid,
+                                              Long limit,
+                                              Long offset,
+                                              Boolean data,
+                                              Consumer<Annotation> consumer);
+
     CompletableFuture<Association> findAssociationByUuid(UUID associationUuid);
 
     CompletableFuture<ConceptAssociationResponse> findByConceptAssociationRequest(ConceptAssociationRequest request);
@@ -114,6 +144,13 @@ public interface AnnotationService {
 
     CompletableFuture<Annotation> findByUuid(UUID observationUuid);
 
+    /**
+     * Bulk version of {@link #findByUuid(UUID)}.
+     * @param observationUuids The observation UUIDs to look up
+     * @return The annotations that were found. UUIDs that don't exist are skipped.
+     */
+    CompletableFuture<List<Annotation>> findByUuids(Collection<UUID> observationUuids);
+
     CompletableFuture<List<Association>> findByVideoReferenceAndLinkName(UUID videoReferenceUuid, String linkName);
 
     CompletableFuture<List<Association>> findByVideoReferenceAndLinkNameAndConcept(UUID videoReferenceUuid,
@@ -1,42 +1,41 @@
 package org.mbari.vars.services;
 
-import com.auth0.jwt.interfaces.DecodedJWT;
-import com.auth0.jwt.JWT;
 import java.io.IOException;
-import java.time.Instant;
-import java.util.concurrent.atomic.AtomicReference;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
 import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
 
 import org.mbari.vars.services.model.Authorization;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * Configures and interceptor that handles the Basic JWT handshake using the
- * Authservice you provide. This may make a request to the server for
- * authentication if a JWT token is missing or if it's expired. No Auth is
- * applied to GET requests
+ * Authservice you provide. The token comes from a {@link JWTTokenManager}, which
+ * only makes a request to the server for authentication if a JWT token is
+ * missing or about to expire. No Auth is applied to GET requests
  *
  * @author Brian Schlining
  * @since 2017-05-23T15:45:00
  */
 public class BasicJWTAuthInterceptor implements Interceptor {
 
-    private final AtomicReference<Authorization> authorization = new AtomicReference<>();
-
-    private final AuthService authService;
-    private final Logger log = LoggerFactory.getLogger(getClass());
-    private final Runnable onFailureAction;
+    private final JWTTokenManager tokenManager;
 
     public BasicJWTAuthInterceptor(AuthService authService) {
         this(authService, () -> {});
     }
 
     public BasicJWTAuthInterceptor(AuthService authService, Runnable onFailureAction) {
-        this.authService = authService;
-        this.onFailureAction = onFailureAction;
+        this(new JWTTokenManager(authService, onFailureAction));
+    }
+
+    /**
+     * @param tokenManager Can be shared by all the interceptors that use the same
+     *                     AuthService so that they also share its token.
+     */
+    public BasicJWTAuthInterceptor(JWTTokenManager tokenManager) {
+        this.tokenManager = tokenManager;
     }
 
     @Override
@@ -46,7 +45,7 @@ public class BasicJWTAuthInterceptor implements Interceptor {
             return chain.proceed(chain.request());
         } 
         else {
-            Authorization a = authorization.updateAndGet(this::reauthorize);
+            Authorization a = authorization();
             Request request = original.newBuilder()
                     .header("Authorization", a.toString())
                     .method(original.method(), original.body())
@@ -56,31 +55,16 @@ public class BasicJWTAuthInterceptor implements Interceptor {
 
     }
 
-    private Authorization reauthorize(Authorization a) {
-        if ((a == null) || isExpired(a)) {
-            log.debug("Reauthorizing using {}", authService);
-            a = authService.authorize().orElseGet(() -> {
-                onFailureAction.run();
-//                ResourceBundle i18n = Initializer.getToolBox().getI18nBundle();
-//                Initializer.getToolBox()
-//                    .getEventBus()
-//                    .send(new ShowWarningAlert(i18n.getString("basicjwt.error.title"),
-//                        i18n.getString("basicjwt.error.header"),
-//                        i18n.getString("basicjwt.error.content")));
-                return new Authorization("ERROR", "key not found");
-            });
-        }
-        return a;
-    }
-
-    private boolean isExpired(Authorization a) {
+    private Authorization authorization() throws IOException {
         try {
-            DecodedJWT jwt = JWT.decode(a.getAccessToken());
-            Instant iat = jwt.getExpiresAt().toInstant();
-            return iat.isBefore(Instant.now());
-        } 
-        catch (Exception e) {
-            return true;
+            return tokenManager.authorization().get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for authorization");
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Failed to authorize", e.getCause());
         }
     }
 }
@@ -1,9 +1,8 @@
 package org.mbari.vars.services;
 
-import com.fatboyindustrial.gsonjavatime.Converters;
-import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import okhttp3.OkHttpClient;
+import org.mbari.vars.services.gson.ServiceGson;
 
 import java.time.Duration;
 
@@ -18,16 +17,12 @@ public class BasicJWTAuthServiceFactorySC extends RetrofitServiceFactory {
         super(endpoint, timeout);
     }
 
+    public BasicJWTAuthServiceFactorySC(String endpoint, Duration timeout, OkHttpClient httpClient) {
+        super(endpoint, timeout, httpClient);
+    }
+
     @Override
     public Gson getGson() {
-        GsonBuilder gsonBuilder = new GsonBuilder()
-                .setPrettyPrinting()
-                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-                .setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-
-        // Register java.time.Instant
-        return Converters.registerInstant(gsonBuilder)
-                .create();
-
+        return ServiceGson.snakeCase();
     }
 }
@@ -0,0 +1,172 @@
+package org.mbari.vars.services;
+
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.logging.HttpLoggingInterceptor;
+import okhttp3.logging.HttpLoggingInterceptor.Level;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replacement for OkHttp's HttpLoggingInterceptor that is safe to leave on with large
+ * payloads. Differences are:
+ * <ul>
+ *     <li>Each exchange is summarized in a single structured line (method, url, status,
+ *     latency and payload sizes) at every level except NONE</li>
+ *     <li>Bodies are only read at {@link Level#BODY}. Response bodies are peeked and
+ *     truncated to {@code maxBodyBytes}; the full body is never buffered by the logger.</li>
+ *     <li>Multipart bodies (i.e. image uploads) and request bodies larger than
+ *     {@code maxBodyBytes} are never logged.</li>
+ * </ul>
+ *
+ * @author Brian Schlining
+ * @since 2020-10-19T14:00:00
+ */
+public class BoundedLoggingInterceptor implements Interceptor {
+
+    private final Level level;
+    private final long maxBodyBytes;
+    private final HttpLoggingInterceptor.Logger logger;
+
+    /**
+     *
+     * @param level The amount of detail to log
+     * @param maxBodyBytes The maximum number of bytes of a body to log.
+     * @param logger Where the log messages are sent
+     */
+    public BoundedLoggingInterceptor(Level level,
+                                     long maxBodyBytes,
+                                     HttpLoggingInterceptor.Logger logger) {
+        this.level = level;
+        this.maxBodyBytes = maxBodyBytes;
+        this.logger = logger;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (level == Level.NONE) {
+            return chain.proceed(request);
+        }
+
+        boolean logHeaders = level == Level.HEADERS || level == Level.BODY;
+        boolean logBody = level == Level.BODY;
+
+        RequestBody requestBody = request.body();
+        long requestBytes = requestBody == null ? 0 : requestBody.contentLength();
+
+        if (logHeaders) {
+            logger.log("--> " + request.method() + " " + request.url());
+            logHeaders(request.headers());
+            if (logBody && requestBody != null) {
+                logger.log(describeRequestBody(requestBody));
+            }
+        }
+
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        }
+        catch (IOException e) {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            logger.log(summary(request, -1, elapsedMs, requestBytes, -1) +
+                    " error=\"" + e.getMessage() + "\"");
+            throw e;
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        ResponseBody responseBody = response.body();
+        long responseBytes = responseBody == null ? 0 : responseBody.contentLength();
+
+        if (logHeaders) {
+            logger.log("<-- " + response.code() + " " + response.request().url());
+            logHeaders(response.headers());
+            if (logBody && responseBody != null) {
+                logger.log(describeResponseBody(response));
+            }
+        }
+
+        logger.log(summary(request, response.code(), elapsedMs, requestBytes, responseBytes));
+
+        return response;
+    }
+
+    private String summary(Request request,
+                           int status,
+                           long elapsedMs,
+                           long requestBytes,
+                           long responseBytes) {
+        return "http method=" + request.method() +
+                " url=" + request.url() +
+                " status=" + status +
+                " elapsed_ms=" + elapsedMs +
+                " request_bytes=" + requestBytes +
+                " response_bytes=" + responseBytes;
+    }
+
+    private void logHeaders(Headers headers) {
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i);
+            // Never write tokens to the log
+            String value = name.equalsIgnoreCase("Authorization") ? "****" : headers.value(i);
+            logger.log(name + ": " + value);
+        }
+    }
+
+    private String describeRequestBody(RequestBody body) throws IOException {
+        MediaType contentType = body.contentType();
+        long contentLength = body.contentLength();
+        if (contentType != null && contentType.type().equalsIgnoreCase("multipart")) {
+            return "(multipart body omitted, " + contentLength + " bytes)";
+        }
+        if (contentLength < 0 || contentLength > maxBodyBytes) {
+            return "(body omitted, " + contentLength + " bytes)";
+        }
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        return buffer.readString(charset(contentType));
+    }
+
+    private String describeResponseBody(Response response) throws IOException {
+        ResponseBody body = response.body();
+        MediaType contentType = body.contentType();
+        if (contentType != null && !isText(contentType)) {
+            return "(binary body omitted, " + body.contentLength() + " bytes)";
+        }
+        // peekBody only buffers up to maxBodyBytes, the remainder stays on the wire
+        ResponseBody peeked = response.peekBody(maxBodyBytes);
+        long n = peeked.contentLength();
+        String s = peeked.string();
+        if (n == maxBodyBytes && body.contentLength() != n) {
+            s = s + "... (truncated to " + maxBodyBytes + " bytes)";
+        }
+        return s;
+    }
+
+    private static boolean isText(MediaType contentType) {
+        String subtype = contentType.subtype().toLowerCase();
+        return contentType.type().equalsIgnoreCase("text") ||
+                subtype.contains("json") ||
+                subtype.contains("xml") ||
+                subtype.contains("x-www-form-urlencoded");
+    }
+
+    private static Charset charset(MediaType contentType) {
+        return contentType == null ?
+                StandardCharsets.UTF_8 : contentType.charset(StandardCharsets.UTF_8);
+    }
+}
@@ -22,6 +22,7 @@ public class CachedConceptService implements ConceptService {
     private final ConceptService conceptService;
     private volatile String rootName;
     private volatile List<String> allNames = Collections.emptyList();
+    private volatile CompletableFuture<ConceptSearchIndex> searchIndex;
 
     private final AsyncLoadingCache<String, Optional<Concept>> conceptCache;
     private final AsyncLoadingCache<String, List<ConceptAssociationTemplate>> templateCache;
@@ -44,7 +45,8 @@ public class CachedConceptService implements ConceptService {
 
     public synchronized void clear() {
         rootName = null;
-        allNames.clear();
+        allNames = Collections.emptyList();
+        searchIndex = null;
         conceptCache.synchronous().invalidateAll();
         templateCache.synchronous().invalidateAll();
     }
@@ -159,6 +161,31 @@ public class CachedConceptService implements ConceptService {
         }
     }
 
+    /**
+     * @return A search index over all the concept names. It's built on first use and
+     *  rebuilt after {@link #clear()}.
+     */
+    public synchronized CompletableFuture<ConceptSearchIndex> findSearchIndex() {
+        CompletableFuture<ConceptSearchIndex> f = searchIndex;
+        if (f == null) {
+            f = findRoot()
+                    .thenCombine(findAllNames(), ConceptSearchIndex::build);
+            searchIndex = f;
+            // Don't cache a failure. The next call will try again
+            CompletableFuture<ConceptSearchIndex> pending = f;
+            f.whenComplete((index, ex) -> {
+                if (ex != null) {
+                    synchronized (this) {
+                        if (searchIndex == pending) {
+                            searchIndex = null;
+                        }
+                    }
+                }
+            });
+        }
+        return f;
+    }
+
     @Override
     public CompletableFuture<List<ConceptAssociationTemplate>> findAllTemplates() {
         return conceptService.findAllTemplates();
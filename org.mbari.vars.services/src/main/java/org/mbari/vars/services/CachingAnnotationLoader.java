@@ -0,0 +1,138 @@
+package org.mbari.vars.services;
+
+import io.reactivex.schedulers.Schedulers;
+import org.mbari.vars.services.model.Annotation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a copy of each video reference's annotations in an {@link AnnotationDiskCache} so
+ * they can be shown while they're loaded from the server again.
+ *
+ * A cached copy is never treated as current. Annosaurus has no timestamp or hash that
+ * changes when an observation or association is edited (an imaged moment's
+ * lastUpdatedTime doesn't), so there's no cheap way to tell that another annotator
+ * renamed a concept or changed an association. Callers show the cached copy, load the
+ * annotations from the server as usual, drop the ones {@link #findRemoved(List, List)}
+ * returns and {@link #save(UUID, List)} what was loaded.
+ *
+ * Entries are read on an io thread as a big video's entry takes a while to unzip and
+ * parse.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-22T09:00:00
+ */
+public class CachingAnnotationLoader {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final AnnotationDiskCache cache;
+    private final Executor executor;
+    private final Clock clock;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param cache Where the annotations are stored
+     */
+    public CachingAnnotationLoader(AnnotationDiskCache cache) {
+        this(cache, Schedulers.io()::scheduleDirect, Clock.systemUTC());
+    }
+
+    /**
+     * @param cache Where the annotations are stored
+     * @param executor Reads the entries
+     * @param clock Used for the time an entry was cached
+     */
+    public CachingAnnotationLoader(AnnotationDiskCache cache, Executor executor, Clock clock) {
+        this.cache = cache;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * @param videoReferenceUuid The video reference whose annotations we want
+     * @return The cached annotations. They may be out of date, so the caller still needs
+     *  to load the annotations from the server. Empty if nothing is cached.
+     */
+    public CompletableFuture<Optional<List<Annotation>>> load(UUID videoReferenceUuid) {
+        return CompletableFuture.supplyAsync(() -> {
+            Optional<List<Annotation>> opt = cache.read(videoReferenceUuid)
+                    .map(AnnotationDiskCache.Entry::getAnnotations);
+            if (opt.isPresent()) {
+                hitCount.incrementAndGet();
+            }
+            else {
+                missCount.incrementAndGet();
+            }
+            return opt;
+        }, executor).exceptionally(ex -> {
+            log.warn("Failed to read cached annotations for " + videoReferenceUuid, ex);
+            missCount.incrementAndGet();
+            return Optional.empty();
+        });
+    }
+
+    /**
+     * @param cached The annotations from {@link #load(UUID)}
+     * @param loaded The annotations loaded from the server
+     * @return The cached annotations that the server no longer has
+     */
+    public static List<Annotation> findRemoved(List<Annotation> cached, List<Annotation> loaded) {
+        Set<UUID> current = loaded.stream()
+                .map(Annotation::getObservationUuid)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        return cached.stream()
+                .filter(a -> !current.contains(a.getObservationUuid()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param videoReferenceUuid The video reference the annotations belong to
+     * @param annotations All the annotations for the video reference, as loaded from
+     *                    the server
+     */
+    public void save(UUID videoReferenceUuid, List<Annotation> annotations) {
+        cache.write(new AnnotationDiskCache.Entry(videoReferenceUuid, clock.instant(), new ArrayList<>(annotations)));
+    }
+
+    public void remove(UUID videoReferenceUuid) {
+        cache.remove(videoReferenceUuid);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /** @return The number of loads that had a cached copy to show */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /** @return The number of loads that had nothing cached */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return The fraction of loads that had a cached copy to show
+     */
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0D : hits / (double) total;
+    }
+}
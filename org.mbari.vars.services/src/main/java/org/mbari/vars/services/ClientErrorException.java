@@ -0,0 +1,15 @@
+package org.mbari.vars.services;
+
+/**
+ * The server rejected the request as malformed (4xx other than 401, 403, 404 and 429).
+ * Retrying the same request will not help.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-20T10:00:00
+ */
+public class ClientErrorException extends ServiceException {
+
+    public ClientErrorException(String message, int statusCode, String url) {
+        super(message, statusCode, url);
+    }
+}
@@ -0,0 +1,311 @@
+package org.mbari.vars.services;
+
+import org.mbari.vars.services.model.Concept;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A substring search index over every concept name (primary and alternate) in the
+ * knowledge base. It's built once from the concept tree and the list of all names.
+ * Each name is lowercased up front and broken into trigrams (3 character substrings).
+ * A query only has to check the names that contain all of its trigrams, instead of
+ * every name in the knowledge base.
+ *
+ * The index is immutable. Build a new one when the knowledge base changes (see
+ * {@link CachedConceptService#findSearchIndex()}).
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T09:00:00
+ */
+public class ConceptSearchIndex {
+
+    /**
+     * A name that matched a query.
+     */
+    public static class Match {
+        private final String name;
+        private final Concept concept;
+        private final List<String> path;
+
+        Match(String name, Concept concept, List<String> path) {
+            this.name = name;
+            this.concept = concept;
+            this.path = path;
+        }
+
+        /**
+         * @return The name that matched. This may be an alternate name of the concept
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The concept the name belongs to. Empty if the name wasn't found in
+         *  the concept tree
+         */
+        public Optional<Concept> getConcept() {
+            return Optional.ofNullable(concept);
+        }
+
+        /**
+         * @return The primary names from the root down to (and including) the concept.
+         *  Empty if the name wasn't found in the concept tree.
+         */
+        public List<String> getPath() {
+            return path;
+        }
+
+        @Override
+        public String toString() {
+            return "Match{name='" + name + "', path=" + path + '}';
+        }
+    }
+
+    private static final int[] EMPTY = new int[0];
+
+    /** Every name. An entry id is the index into these arrays */
+    private final String[] names;
+    private final String[] lowerNames;
+    /** entry id -> concept id. -1 if the name isn't in the tree */
+    private final int[] entryConcepts;
+
+    /** concept id -> concept, and the concept id of its parent (-1 for the root) */
+    private final Concept[] concepts;
+    private final int[] parents;
+
+    private final Map<String, Integer> conceptIds;
+    private final Map<Long, int[]> trigrams;
+
+    private ConceptSearchIndex(List<String> names,
+                               List<Integer> entryConcepts,
+                               List<Concept> concepts,
+                               List<Integer> parents) {
+        int n = names.size();
+        this.names = names.toArray(new String[0]);
+        this.lowerNames = new String[n];
+        this.entryConcepts = new int[n];
+        for (int i = 0; i < n; i++) {
+            lowerNames[i] = this.names[i].toLowerCase(Locale.ROOT);
+            this.entryConcepts[i] = entryConcepts.get(i);
+        }
+
+        this.concepts = concepts.toArray(new Concept[0]);
+        this.parents = parents.stream().mapToInt(Integer::intValue).toArray();
+        conceptIds = new HashMap<>();
+        for (int i = 0; i < this.concepts.length; i++) {
+            conceptIds.put(this.concepts[i].getName(), i);
+        }
+
+        // Entry ids are visited in ascending order so each posting list is sorted
+        Map<Long, List<Integer>> postings = new HashMap<>();
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            seen.clear();
+            String s = lowerNames[i];
+            for (int j = 0; j + 3 <= s.length(); j++) {
+                long key = trigram(s, j);
+                if (seen.add(key)) {
+                    postings.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+                }
+            }
+        }
+        trigrams = new HashMap<>(postings.size() * 2);
+        postings.forEach((k, v) -> trigrams.put(k, v.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * @param root The root of the concept tree
+     * @param allNames Every name in the knowledge base (from `ConceptService.findAllNames`).
+     *                 Names that aren't in the tree are still searchable but have no path.
+     * @return A new index
+     */
+    public static ConceptSearchIndex build(Concept root, Collection<String> allNames) {
+        List<String> names = new ArrayList<>();
+        List<Integer> entryConcepts = new ArrayList<>();
+        List<Concept> concepts = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        Set<String> indexed = new HashSet<>();
+
+        if (root != null) {
+            addConcept(root, -1, names, entryConcepts, concepts, parents, indexed);
+        }
+        if (allNames != null) {
+            for (String name : allNames) {
+                if (name != null && indexed.add(name)) {
+                    names.add(name);
+                    entryConcepts.add(-1);
+                }
+            }
+        }
+        return new ConceptSearchIndex(names, entryConcepts, concepts, parents);
+    }
+
+    private static void addConcept(Concept concept,
+                                   int parent,
+                                   List<String> names,
+                                   List<Integer> entryConcepts,
+                                   List<Concept> concepts,
+                                   List<Integer> parents,
+                                   Set<String> indexed) {
+        int id = concepts.size();
+        concepts.add(concept);
+        parents.add(parent);
+        List<String> conceptNames = new ArrayList<>();
+        conceptNames.add(concept.getName());
+        conceptNames.addAll(concept.getAlternativeNames());
+        for (String name : conceptNames) {
+            if (name != null && indexed.add(name)) {
+                names.add(name);
+                entryConcepts.add(id);
+            }
+        }
+        for (Concept child : concept.getChildren()) {
+            addConcept(child, id, names, entryConcepts, concepts, parents, indexed);
+        }
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /**
+     * @return The number of searchable names
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Case-insensitive substring search.
+     * @param query The text to look for
+     * @return Every name that contains the query, in tree order (names that aren't in
+     *  the tree come last). Empty if the query is empty.
+     */
+    public List<Match> search(String query) {
+        int[] ids = searchIds(query);
+        List<Match> matches = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            int c = entryConcepts[id];
+            Concept concept = c < 0 ? null : concepts[c];
+            matches.add(new Match(names[id], concept, c < 0 ? Collections.emptyList() : path(c)));
+        }
+        return matches;
+    }
+
+    /**
+     * @param query The text to look for
+     * @return The primary names of the concepts that have a name (primary or alternate)
+     *  that contains the query. This is what the concept tree filters on.
+     */
+    public Set<String> findConceptNames(String query) {
+        Set<String> found = new LinkedHashSet<>();
+        for (int id : searchIds(query)) {
+            int c = entryConcepts[id];
+            if (c >= 0) {
+                found.add(concepts[c].getName());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param name A primary concept name
+     * @return The primary names from the root down to the concept. Empty if the concept
+     *  isn't in the tree
+     */
+    public List<String> findPath(String name) {
+        Integer c = conceptIds.get(name);
+        return c == null ? Collections.emptyList() : path(c);
+    }
+
+    private List<String> path(int conceptId) {
+        List<String> path = new ArrayList<>();
+        for (int c = conceptId; c >= 0; c = parents[c]) {
+            path.add(concepts[c].getName());
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private int[] searchIds(String query) {
+        if (query == null || query.isEmpty()) {
+            return EMPTY;
+        }
+        String q = query.toLowerCase(Locale.ROOT);
+        if (q.length() < 3) {
+            // Too short for trigrams. The names are already lowercased so this is cheap
+            return scan(q, null);
+        }
+
+        List<int[]> lists = new ArrayList<>();
+        Set<Long> keys = new HashSet<>();
+        for (int j = 0; j + 3 <= q.length(); j++) {
+            long key = trigram(q, j);
+            if (keys.add(key)) {
+                int[] ids = trigrams.get(key);
+                if (ids == null) {
+                    return EMPTY;
+                }
+                lists.add(ids);
+            }
+        }
+        // Intersect the shortest lists first. Once a list is much longer than the
+        // candidates it's cheaper to just check the candidates against the query
+        lists.sort(Comparator.comparingInt(a -> a.length));
+        int[] candidates = lists.get(0);
+        for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+            int[] next = lists.get(i);
+            if (next.length > candidates.length * 8) {
+                break;
+            }
+            candidates = intersect(candidates, next);
+        }
+        // Trigrams can match out of order (e.g. "abcd" vs "abc..bcd"), so verify
+        return scan(q, candidates);
+    }
+
+    private int[] scan(String q, int[] candidates) {
+        int n = candidates == null ? lowerNames.length : candidates.length;
+        int[] found = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int id = candidates == null ? i : candidates[i];
+            if (lowerNames[id].contains(q)) {
+                found[count++] = id;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            }
+            else if (a[i] > b[j]) {
+                j++;
+            }
+            else {
+                out[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, k);
+    }
+}
@@ -0,0 +1,197 @@
+package org.mbari.vars.services;
+
+import org.mbari.vars.core.util.AsyncUtils;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Image;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the annotations for a bunch of images without a request per image. An image
+ * belongs to an imaged moment, and its annotations are the ones on that imaged moment.
+ * So the images are grouped by video. Each video's annotations are fetched once and
+ * then matched to the images by imaged moment UUID.
+ *
+ * Fetching a video's annotations only pays off when a good share of them are wanted.
+ * So a video's annotations are fetched when it has at least `minImages` of the images
+ * and no more than `maxAnnotationsPerImage` annotations for each of them. The images of
+ * other videos use one {@link AnnotationService#findByImageReference(UUID)} each.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T14:00:00
+ */
+public class ImageAnnotationResolver {
+
+    /** Below this many images a video's images are always looked up one at a time */
+    public static final int DEFAULT_MIN_IMAGES = 8;
+
+    /** A video with more annotations than this per image has its images looked up one at a time */
+    public static final int DEFAULT_MAX_ANNOTATIONS_PER_IMAGE = 50;
+
+    private final AnnotationService annotationService;
+    private final Function<UUID, CompletableFuture<List<Annotation>>> videoLoader;
+    private final int minImages;
+    private final int maxAnnotationsPerImage;
+
+    /**
+     * @param annotationService The annotation service
+     * @param videoLoader Loads all the annotations for a video reference UUID. (e.g. one
+     *                    that checks a local cache first)
+     * @param minImages Only fetch a video's annotations when it has at least this many
+     *                  of the images
+     * @param maxAnnotationsPerImage Only fetch a video's annotations when it has no more
+     *                               than this many for each of its images
+     */
+    public ImageAnnotationResolver(AnnotationService annotationService,
+                                   Function<UUID, CompletableFuture<List<Annotation>>> videoLoader,
+                                   int minImages,
+                                   int maxAnnotationsPerImage) {
+        this.annotationService = annotationService;
+        this.videoLoader = videoLoader;
+        this.minImages = minImages;
+        this.maxAnnotationsPerImage = maxAnnotationsPerImage;
+    }
+
+    public ImageAnnotationResolver(AnnotationService annotationService) {
+        this(annotationService, annotationService::findAnnotations, DEFAULT_MIN_IMAGES,
+                DEFAULT_MAX_ANNOTATIONS_PER_IMAGE);
+    }
+
+    /**
+     * @param images The images
+     * @return The annotations for all the images. An annotation is only included
+     *  once even if several images share its imaged moment.
+     */
+    public CompletableFuture<List<Annotation>> findAnnotations(Collection<Image> images) {
+        Map<UUID, List<Image>> byVideo = new LinkedHashMap<>();
+        List<Image> singles = new ArrayList<>();
+        Set<UUID> seen = new HashSet<>();
+        for (Image image : images) {
+            if (image.getImageReferenceUuid() == null || !seen.add(image.getImageReferenceUuid())) {
+                continue;
+            }
+            if (image.getVideoReferenceUuid() == null) {
+                singles.add(image);
+            }
+            else {
+                byVideo.computeIfAbsent(image.getVideoReferenceUuid(), k -> new ArrayList<>()).add(image);
+            }
+        }
+
+        List<List<Image>> candidates = new ArrayList<>();
+        byVideo.values().forEach(xs -> {
+            if (xs.size() < minImages) {
+                singles.addAll(xs);
+            }
+            else {
+                candidates.add(xs);
+            }
+        });
+
+        return AsyncUtils.collectAll(candidates, this::isWorthFetching, AsyncUtils.DEFAULT_MAX_IN_FLIGHT)
+                .thenCompose(xs -> {
+                    List<Boolean> worthFetching = new ArrayList<>(xs);
+                    List<List<Image>> batches = new ArrayList<>();
+                    for (int i = 0; i < candidates.size(); i++) {
+                        if (worthFetching.get(i)) {
+                            batches.add(candidates.get(i));
+                        }
+                        else {
+                            singles.addAll(candidates.get(i));
+                        }
+                    }
+                    List<CompletableFuture<List<Annotation>>> futures = new ArrayList<>();
+                    futures.add(AsyncUtils.collectAll(batches, this::findForVideo, AsyncUtils.DEFAULT_MAX_IN_FLIGHT)
+                            .thenApply(ImageAnnotationResolver::flatten));
+                    futures.add(findEach(singles));
+                    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                            .thenApply(v -> {
+                                Map<UUID, Annotation> annotations = new LinkedHashMap<>();
+                                futures.forEach(f -> f.join()
+                                        .forEach(a -> annotations.putIfAbsent(a.getObservationUuid(), a)));
+                                return new ArrayList<>(annotations.values());
+                            });
+                });
+    }
+
+    /**
+     * @param images Images that all belong to the same video
+     * @return true if fetching all the video's annotations is cheaper than looking up
+     *  each image
+     */
+    private CompletableFuture<Boolean> isWorthFetching(List<Image> images) {
+        long maxAnnotations = (long) images.size() * maxAnnotationsPerImage;
+        return annotationService.countAnnotations(images.get(0).getVideoReferenceUuid())
+                .thenApply(ac -> ac != null && ac.getCount() != null && ac.getCount() <= maxAnnotations);
+    }
+
+    /**
+     * @param images Images that all belong to the same video
+     */
+    private CompletableFuture<List<Annotation>> findForVideo(List<Image> images) {
+        UUID videoReferenceUuid = images.get(0).getVideoReferenceUuid();
+        // The images from the image view have an imaged moment, but ones built from just
+        // an image reference might not. One request fills them all in.
+        boolean missingMoments = images.stream().anyMatch(i -> i.getImagedMomentUuid() == null);
+        CompletableFuture<Map<UUID, UUID>> momentsFuture = missingMoments ?
+                annotationService.findImagesByVideoReferenceUuid(videoReferenceUuid)
+                        .thenApply(xs -> xs.stream()
+                                .filter(i -> i.getImageReferenceUuid() != null && i.getImagedMomentUuid() != null)
+                                .collect(Collectors.toMap(Image::getImageReferenceUuid,
+                                        Image::getImagedMomentUuid,
+                                        (a, b) -> a))) :
+                CompletableFuture.completedFuture(Map.of());
+
+        return momentsFuture.thenCompose(moments -> {
+            Set<UUID> imagedMomentUuids = new HashSet<>();
+            List<Image> unresolved = new ArrayList<>();
+            for (Image image : images) {
+                UUID imagedMomentUuid = image.getImagedMomentUuid() != null ?
+                        image.getImagedMomentUuid() : moments.get(image.getImageReferenceUuid());
+                if (imagedMomentUuid == null) {
+                    unresolved.add(image);
+                }
+                else {
+                    imagedMomentUuids.add(imagedMomentUuid);
+                }
+            }
+            CompletableFuture<List<Annotation>> matched = videoLoader.apply(videoReferenceUuid)
+                    .thenApply(annotations -> annotations.stream()
+                            .filter(a -> imagedMomentUuids.contains(a.getImagedMomentUuid()))
+                            .collect(Collectors.toList()));
+            return matched.thenCombine(findEach(unresolved), (a, b) -> {
+                List<Annotation> xs = new ArrayList<>(a);
+                xs.addAll(b);
+                return xs;
+            });
+        });
+    }
+
+    private CompletableFuture<List<Annotation>> findEach(List<Image> images) {
+        if (images.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return AsyncUtils.collectAll(images,
+                image -> annotationService.findByImageReference(image.getImageReferenceUuid()),
+                AsyncUtils.DEFAULT_MAX_IN_FLIGHT)
+                .thenApply(ImageAnnotationResolver::flatten);
+    }
+
+    private static List<Annotation> flatten(Collection<List<Annotation>> annotationLists) {
+        return annotationLists.stream()
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+}
@@ -2,6 +2,9 @@ package org.mbari.vars.services;
 
 import org.mbari.vars.services.model.ImageUploadResults;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.concurrent.CompletableFuture;
 
@@ -13,6 +16,34 @@ public interface ImageArchiveService {
 
     CompletableFuture<ImageUploadResults> upload(String cameraId, String deploymentId, String name, Path image);
 
+    /**
+     * Uploads an image that's in memory. Services that can send the encoded bytes directly
+     * should override this; the default writes them to a temp file and uploads that.
+     *
+     * @param cameraId The camera the image was captured from
+     * @param deploymentId The deployment (e.g. dive) the image belongs to
+     * @param name The image's name in the archive
+     * @param image Encodes the image
+     * @return The upload results
+     */
+    default CompletableFuture<ImageUploadResults> upload(String cameraId,
+                                                         String deploymentId,
+                                                         String name,
+                                                         ImageEncoder image) {
+        Path path;
+        try {
+            path = Files.createTempFile("vars-", "--" + name);
+            try (OutputStream out = Files.newOutputStream(path)) {
+                image.encode(out);
+            }
+        }
+        catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return upload(cameraId, deploymentId, name, path)
+                .whenComplete((results, ex) -> path.toFile().delete());
+    }
+
     CompletableFuture<ImageUploadResults> locate(String cameraId, String deploymentId, String name);
 
 }
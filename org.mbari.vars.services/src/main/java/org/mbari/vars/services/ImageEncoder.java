@@ -0,0 +1,106 @@
+package org.mbari.vars.services;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Writes an image, in some format, to a stream. This lets an {@link ImageArchiveService}
+ * encode an image that's in memory straight into a request instead of reading it from
+ * disk. {@link #encode(OutputStream)} may be called more than once (e.g. when a request
+ * is retried) and has to write the same bytes each time.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T21:00:00
+ */
+public interface ImageEncoder {
+
+    /**
+     * @return The encoded image's mime type, e.g. image/png
+     */
+    String getMediaType();
+
+    /**
+     * Writes the encoded image. The stream is not closed.
+     *
+     * @param out The stream to write to
+     * @throws IOException if the image can't be encoded or written
+     */
+    void encode(OutputStream out) throws IOException;
+
+    /**
+     * @return The number of bytes {@link #encode(OutputStream)} writes, or -1 if that's not
+     *      known until the image is encoded
+     */
+    default long getContentLength() {
+        return -1;
+    }
+
+    /**
+     * @param bytes An image that's already encoded
+     * @param mediaType The encoded image's mime type, e.g. image/jpeg
+     * @return An encoder that writes the bytes as they are
+     */
+    static ImageEncoder of(byte[] bytes, String mediaType) {
+        return new ImageEncoder() {
+            @Override
+            public String getMediaType() {
+                return mediaType;
+            }
+
+            @Override
+            public void encode(OutputStream out) throws IOException {
+                out.write(bytes);
+            }
+
+            @Override
+            public long getContentLength() {
+                return bytes.length;
+            }
+        };
+    }
+
+    /**
+     * Encodes with the default ImageIO writer for the format. The encoded image is buffered in
+     * memory, never in ImageIO's disk cache.
+     *
+     * @param image The image to encode
+     * @param format The informal format name, e.g. png or jpg
+     * @return An encoder for the image
+     * @throws IllegalArgumentException if there's no writer for the format
+     */
+    static ImageEncoder of(RenderedImage image, String format) {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IllegalArgumentException("No ImageIO writer is available for " + format);
+        }
+        String[] mimeTypes = writers.next().getOriginatingProvider().getMIMETypes();
+        String mediaType = mimeTypes == null || mimeTypes.length == 0 ?
+                "application/octet-stream" : mimeTypes[0];
+
+        return new ImageEncoder() {
+            @Override
+            public String getMediaType() {
+                return mediaType;
+            }
+
+            @Override
+            public void encode(OutputStream out) throws IOException {
+                ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+                // Closing the image stream flushes it but leaves `out` open
+                try (ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+                    writer.setOutput(ios);
+                    writer.write(image);
+                }
+                finally {
+                    writer.dispose();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,188 @@
+package org.mbari.vars.services;
+
+import com.auth0.jwt.JWT;
+import org.mbari.vars.services.model.Authorization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the JWT for an {@link AuthService}. The token's expiry is decoded once, when
+ * the token arrives, instead of on every request.
+ *
+ * Tokens are fetched on a background thread and only one fetch runs at a time:
+ * callers that need a token while a fetch is running all wait on the same future.
+ * When a token is used within `refreshMargin` of its expiry a new one is fetched in
+ * the background, while callers keep using the current one, so requests normally
+ * never wait for the auth server.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T15:00:00
+ */
+public class JWTTokenManager {
+
+    /** Tokens used within this long of their expiry are refreshed in the background */
+    public static final Duration DEFAULT_REFRESH_MARGIN = Duration.ofMinutes(1);
+
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, JWTTokenManager.class.getSimpleName());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * An authorization along with when it expires and when we should start refreshing it
+     */
+    private static class Token {
+        final Authorization authorization;
+        final Instant expiresAt;
+        final Instant refreshAt;
+
+        Token(Authorization authorization, Instant expiresAt, Instant refreshAt) {
+            this.authorization = authorization;
+            this.expiresAt = expiresAt;
+            this.refreshAt = refreshAt;
+        }
+
+        boolean isValid(Instant now) {
+            return expiresAt.isAfter(now);
+        }
+    }
+
+    private final AuthService authService;
+    private final Runnable onFailureAction;
+    private final Clock clock;
+    private final Duration refreshMargin;
+    private final Executor executor;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private volatile Token token;
+    private final AtomicReference<CompletableFuture<Token>> refreshing = new AtomicReference<>();
+
+    public JWTTokenManager(AuthService authService) {
+        this(authService, () -> {});
+    }
+
+    public JWTTokenManager(AuthService authService, Runnable onFailureAction) {
+        this(authService, onFailureAction, Clock.systemUTC(), DEFAULT_REFRESH_MARGIN, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     *
+     * @param authService Fetches new tokens. Its calls may block.
+     * @param onFailureAction Run when the auth service doesn't return a token
+     * @param clock Used to check the token expiry
+     * @param refreshMargin How long before a token expires to start fetching a new one
+     * @param executor Runs the token fetches
+     */
+    public JWTTokenManager(AuthService authService,
+                           Runnable onFailureAction,
+                           Clock clock,
+                           Duration refreshMargin,
+                           Executor executor) {
+        this.authService = authService;
+        this.onFailureAction = onFailureAction;
+        this.clock = clock;
+        this.refreshMargin = refreshMargin;
+        this.executor = executor;
+    }
+
+    /**
+     * @return A future that completes with an unexpired authorization. It's already
+     *  complete unless there's no valid token yet. If the auth service fails the
+     *  authorization is `ERROR key not found`, just like before there was a
+     *  manager, and the next call tries again.
+     */
+    public CompletableFuture<Authorization> authorization() {
+        Token t = token;
+        Instant now = clock.instant();
+        if (t != null && t.isValid(now)) {
+            if (!now.isBefore(t.refreshAt)) {
+                refresh();
+            }
+            return CompletableFuture.completedFuture(t.authorization);
+        }
+        return refresh().thenApply(x -> x.authorization);
+    }
+
+    /**
+     * Starts fetching a new token unless a fetch is already running.
+     * @return The future of the running fetch
+     */
+    private CompletableFuture<Token> refresh() {
+        while (true) {
+            CompletableFuture<Token> f = refreshing.get();
+            if (f != null) {
+                return f;
+            }
+            CompletableFuture<Token> g = new CompletableFuture<>();
+            if (refreshing.compareAndSet(null, g)) {
+                try {
+                    executor.execute(() -> fetch(g));
+                }
+                catch (Exception e) {
+                    refreshing.set(null);
+                    g.completeExceptionally(e);
+                }
+                return g;
+            }
+        }
+    }
+
+    private void fetch(CompletableFuture<Token> f) {
+        try {
+            log.debug("Reauthorizing using {}", authService);
+            Token t = authService.authorize()
+                    .map(this::toToken)
+                    .orElse(null);
+            if (t == null) {
+                Token current = token;
+                if (current != null && current.isValid(clock.instant())) {
+                    // A failed early refresh. Keep using the token we have.
+                    log.warn("Failed to refresh the authorization using {}", authService);
+                    t = current;
+                }
+                else {
+                    onFailureAction.run();
+                    t = new Token(new Authorization("ERROR", "key not found"), Instant.MIN, Instant.MIN);
+                }
+            }
+            token = t;
+            refreshing.set(null);
+            f.complete(t);
+        }
+        catch (Throwable e) {
+            refreshing.set(null);
+            f.completeExceptionally(e);
+        }
+    }
+
+    private Token toToken(Authorization a) {
+        Instant now = clock.instant();
+        Instant expiresAt;
+        try {
+            Date exp = JWT.decode(a.getAccessToken()).getExpiresAt();
+            expiresAt = exp == null ? Instant.MIN : exp.toInstant();
+        }
+        catch (Exception e) {
+            // Can't tell when it expires, so treat it as expired. It gets
+            // used by the requests waiting on it but is refetched next time.
+            expiresAt = Instant.MIN;
+        }
+        if (!expiresAt.isAfter(now)) {
+            return new Token(a, expiresAt, expiresAt);
+        }
+        // Don't refresh before half the token's lifetime has passed, even with a big margin
+        Instant halfLife = now.plus(Duration.between(now, expiresAt).dividedBy(2));
+        Instant refreshAt = expiresAt.minus(refreshMargin);
+        return new Token(a, expiresAt, refreshAt.isBefore(halfLife) ? halfLife : refreshAt);
+    }
+}
@@ -0,0 +1,14 @@
+package org.mbari.vars.services;
+
+/**
+ * The server rejected our credentials (401, 403). Retrying will not help.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-20T10:00:00
+ */
+public class NotAuthorizedException extends ServiceException {
+
+    public NotAuthorizedException(String message, int statusCode, String url) {
+        super(message, statusCode, url);
+    }
+}
@@ -0,0 +1,14 @@
+package org.mbari.vars.services;
+
+/**
+ * The requested resource does not exist (404).
+ *
+ * @author Brian Schlining
+ * @since 2020-10-20T10:00:00
+ */
+public class NotFoundException extends ServiceException {
+
+    public NotFoundException(String message, String url) {
+        super(message, 404, url);
+    }
+}
@@ -28,6 +28,23 @@ public class Pager<T> implements Runnable {
      * @param pageSize The number of objects to retrieve per page request
      */
     public Pager(BiFunction<Long, Long, T> fetchFn, Long limit, Long pageSize) {
+        this(fetchFn, limit, pageSize, RetryPolicy.DEFAULT, 2);
+    }
+
+    /**
+     *
+     * @param fetchFn Takes limit, offset as args and returns a value or collection
+     *                of values from a page
+     * @param limit The maximum number of objects to retrieve
+     * @param pageSize The number of objects to retrieve per page request
+     * @param retryPolicy How failed page requests are retried
+     * @param threadCount The number of pages to fetch simultaneously
+     */
+    public Pager(BiFunction<Long, Long, T> fetchFn,
+                 Long limit,
+                 Long pageSize,
+                 RetryPolicy retryPolicy,
+                 int threadCount) {
 
         Function<RequestPager.Page, T> fn = (page) -> {
             try {
@@ -37,10 +54,10 @@ public class Pager<T> implements Runnable {
                 Long start = page.getOffset();
                 Long end = start + page.getLimit();
                 throw new RuntimeException("Page request from " + start +
-                        " + to " + end + " failed");
+                        " + to " + end + " failed", e);
             }
         };
-        RequestPager<T> pager = new RequestPager<>(fn, 2, 2);
+        RequestPager<T> pager = new RequestPager<>(fn, retryPolicy, threadCount);
         runner = pager.build(limit.intValue(), pageSize.intValue());
     }
 
@@ -20,8 +20,8 @@ import java.util.function.Supplier;
  *  // A function that accepts a page (limit, offset) and fetches data using those
  *  Function<RequestPager.Page, List<Integer> fn = (page) -> //some data list
  *
- *  // Instantiate pager with function, number of retries on a fn fail, and number of fetch threads
- *  RequestPager<List<Integer>> pager = new RequestPager<>(fn, 2, 2)
+ *  // Instantiate pager with function, the retry policy used when a fn fails, and number of fetch threads
+ *  RequestPager<List<Integer>> pager = new RequestPager<>(fn, RetryPolicy.DEFAULT, 2)
  *
  *  int count = 1000; // The expected number of returns
  *  int pageSize = 50; // The number of items requested per page
@@ -141,7 +141,7 @@ public class RequestPager<B> {
 
 
     private final Function<Page, B> function;
-    private final int retries;
+    private final RetryPolicy retryPolicy;
     private final int threadCount;
 
     public RequestPager(Function<Page, B> function) {
@@ -153,9 +153,20 @@ public class RequestPager<B> {
     }
 
     public RequestPager(Function<Page, B> function, int retries, int threadCount) {
+        this(function, RetryPolicy.DEFAULT.withMaxRetries(retries), threadCount);
+    }
+
+    /**
+     *
+     * @param function Fetches a single page
+     * @param retryPolicy Used for every page request. All pages (and all runners built by
+     *                    this pager) draw retries from the policy's shared budget.
+     * @param threadCount The number of pages to fetch simultaneously
+     */
+    public RequestPager(Function<Page, B> function, RetryPolicy retryPolicy, int threadCount) {
         Preconditions.checkArgument(threadCount > 0, "The min");
         this.function = function;
-        this.retries = retries;
+        this.retryPolicy = retryPolicy;
         this.threadCount = threadCount;
     }
 
@@ -171,7 +182,7 @@ public class RequestPager<B> {
         for (int i = 0; i < n; i++) {
             long offset = i * pageSize;
             Supplier<B> supplier = () -> function.apply(new Page(limit, offset));
-            RequestWithRetry<B> request = new RequestWithRetry<>(supplier, retries);
+            RequestWithRetry<B> request = new RequestWithRetry<>(supplier, retryPolicy);
             requests.add(request);
         }
         return requests;
@@ -1,14 +1,15 @@
 package org.mbari.vars.services;
 
 import io.reactivex.Observable;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.function.Supplier;
 
 /**
  * Wrapper around a Supplier (intended to be making remote service request),
- * that will attempt to retry a request if an exception occurs.
+ * that will attempt to retry a request if an exception occurs. Requests that fail
+ * with a {@link ServiceException} that is not retryable (e.g. 404, 401, 400) are
+ * not retried as repeating them only adds load to the server. Retries are spaced out
+ * and limited as described by a {@link RetryPolicy}.
  *
  * @author Brian Schlining
  * @since 2019-04-24T13:54:00
@@ -16,7 +17,7 @@ import java.util.function.Supplier;
 public class RequestWithRetry<T> implements Supplier<Observable<T>> {
 
     private final Supplier<T> supplier;
-    private final int retries;
+    private final RetryPolicy retryPolicy;
 
     public RequestWithRetry(Supplier<T> supplier) {
         this(supplier, 0);
@@ -26,11 +27,22 @@ public class RequestWithRetry<T> implements Supplier<Observable<T>> {
      *
      * @param supplier Our request function. If a null is returned it is treated
      *                 as a failed attempt.
-     * @param retries The number of retries to attempt.
+     * @param retries The number of retries to attempt. Backoff and the retry budget
+     *                are taken from {@link RetryPolicy#DEFAULT}
      */
     public RequestWithRetry(Supplier<T> supplier, int retries) {
+        this(supplier, RetryPolicy.DEFAULT.withMaxRetries(retries));
+    }
+
+    /**
+     *
+     * @param supplier Our request function. If a null is returned it is treated
+     *                 as a failed attempt.
+     * @param retryPolicy Describes how (and if) failed attempts are retried
+     */
+    public RequestWithRetry(Supplier<T> supplier, RetryPolicy retryPolicy) {
         this.supplier = supplier;
-        this.retries = retries;
+        this.retryPolicy = retryPolicy;
     }
 
     /**
@@ -41,33 +53,7 @@ public class RequestWithRetry<T> implements Supplier<Observable<T>> {
      *  observable will complete with the last error thrown by the supplier.
      */
     public Observable<T> get() {
-        return Observable.defer(() -> Observable.just(execute(retries)));
+        return Observable.defer(() -> Observable.just(retryPolicy.execute(supplier)));
     }
 
-    private T execute(int remainingRetries) {
-        try {
-            T v =  supplier.get();
-            if (v == null) {
-                throw new NullPointerException("Supplier in RequestWithRetry return null.  This is not allowed");
-            }
-            return v;
-        } catch (Exception e) {
-            Logger log = LoggerFactory.getLogger(getClass());
-            if (remainingRetries == 0) {
-                int attempts = retries + 1;
-                String msg = "Execution failed after " + attempts + " attempts. Terminating Request";
-                log.warn(msg, e);
-                throw new RuntimeException(msg, e);
-            }
-            else {
-                int attempts = retries - remainingRetries + 1;
-                int allowedAttempts = retries + 1;
-                log.warn("Execution failed. Retrying (" + attempts +
-                        " of " + allowedAttempts + ")", e);
-                return execute(remainingRetries - 1);
-            }
-        }
-    }
-
-
 }
@@ -2,7 +2,6 @@ package org.mbari.vars.services;
 
 import com.google.gson.Gson;
 import okhttp3.OkHttpClient;
-import okhttp3.logging.HttpLoggingInterceptor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,6 +9,8 @@ import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
@@ -24,7 +25,10 @@ public abstract class RetrofitServiceFactory {
 
     private final Duration timeout;
     private final Retrofit.Builder retrofitBuilder;
+    private final OkHttpClient httpClient;
     private final Logger log = LoggerFactory.getLogger(getClass());
+    /** Services created with the same AuthService share its token */
+    private final Map<AuthService, JWTTokenManager> tokenManagers = new ConcurrentHashMap<>();
 
 
     public RetrofitServiceFactory(String endpoint) {
@@ -32,7 +36,20 @@ public abstract class RetrofitServiceFactory {
     }
 
     public RetrofitServiceFactory(String endpoint, Duration timeout) {
+        this(endpoint, timeout, SharedHttpClient.getDefault());
+    }
+
+    /**
+     *
+     * @param endpoint The base URL of the service
+     * @param timeout The read/write timeout to use for this service
+     * @param httpClient The client that this factory derives its clients from. The
+     *                   connection pool and dispatcher of this client are shared
+     *                   by all services created by this factory.
+     */
+    public RetrofitServiceFactory(String endpoint, Duration timeout, OkHttpClient httpClient) {
         this.timeout = timeout;
+        this.httpClient = httpClient;
         String correctedEndpoint = (endpoint.endsWith("/")) ? endpoint : endpoint + "/";
 
         retrofitBuilder  = new Retrofit.Builder()
@@ -41,7 +58,15 @@ public abstract class RetrofitServiceFactory {
     }
 
     public RetrofitServiceFactory(String endpoint, Duration timeout, Executor executor) {
+        this(endpoint, timeout, executor, SharedHttpClient.getDefault());
+    }
+
+    public RetrofitServiceFactory(String endpoint,
+                                  Duration timeout,
+                                  Executor executor,
+                                  OkHttpClient httpClient) {
         this.timeout = timeout;
+        this.httpClient = httpClient;
         String correctedEndpoint = (endpoint.endsWith("/")) ? endpoint : endpoint + "/";
 
         retrofitBuilder  = new Retrofit.Builder()
@@ -56,18 +81,16 @@ public abstract class RetrofitServiceFactory {
 
 
     public <S> S create(Class<S> clazz, AuthService auth) {
-
-        HttpLoggingInterceptor logger = new HttpLoggingInterceptor(log::debug);
-        logger.setLevel(HttpLoggingInterceptor.Level.BODY);
-        OkHttpClient.Builder httpClient = new OkHttpClient.Builder()
+        // Derive from the shared client so that we reuse its connection pool and dispatcher
+        OkHttpClient.Builder clientBuilder = httpClient.newBuilder()
                 .readTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
                 .writeTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
 
         if (auth != null) {
-            httpClient.addInterceptor(new BasicJWTAuthInterceptor(auth));
+            JWTTokenManager tokenManager = tokenManagers.computeIfAbsent(auth, JWTTokenManager::new);
+            clientBuilder.addInterceptor(new BasicJWTAuthInterceptor(tokenManager));
         }
-        httpClient.addInterceptor(logger);
-        retrofitBuilder.client(httpClient.build());
+        retrofitBuilder.client(clientBuilder.build());
 
         return retrofitBuilder.build()
                 .create(clazz);
@@ -17,6 +17,11 @@ public interface RetrofitWebService {
      * Wraps a retrofit call with a CompletableFuture and does an async request using
      * the Call object. This keeps us from polluting the code base with retrofit specific
      * code.
+     *
+     * If the server responds with an error status the future is completed exceptionally
+     * with a {@link ServiceException} subclass (e.g. {@link NotFoundException},
+     * {@link TransientServiceException}). Failures without a response (timeouts, refused
+     * connections) complete with a {@link TransientServiceException}.
      * @param call
      * @param <T>
      * @return
@@ -26,19 +31,57 @@ public interface RetrofitWebService {
         call.enqueue(new Callback<T>() {
             @Override
             public void onResponse(Call<T> call, Response<T> response) {
-                f.complete(response.body());
+                if (response.isSuccessful()) {
+                    f.complete(response.body());
+                }
+                else {
+                    ServiceException e = ServiceException.fromResponse(response);
+                    LoggerFactory.getLogger(getClass())
+                            .debug("Unsuccessful REST call: {}", e.getMessage());
+                    f.completeExceptionally(e);
+                }
             }
 
             @Override
             public void onFailure(Call<T> call, Throwable throwable) {
                 LoggerFactory.getLogger(getClass())
                         .warn("Exception thrown when making a REST call", throwable);
-                f.completeExceptionally(throwable);
+                if (call.isCanceled()) {
+                    f.completeExceptionally(throwable);
+                }
+                else {
+                    f.completeExceptionally(ServiceException.fromFailure(throwable,
+                            call.request().url().toString()));
+                }
             }
         });
         return f;
     }
 
+    /**
+     * Same as {@link #sendRequest(Call)} except that a 404 completes the future with
+     * null. Use this for lookups where a missing resource is an expected result rather
+     * than an error. All other errors still complete exceptionally.
+     * @param call
+     * @param <T>
+     * @return
+     */
+    default <T> CompletableFuture<T> sendRequestOrNull(Call<T> call) {
+        return sendRequest(call)
+                .handle((v, ex) -> {
+                    if (ex == null) {
+                        return CompletableFuture.completedFuture(v);
+                    }
+                    else if (ServiceException.isNotFound(ex)) {
+                        return CompletableFuture.<T>completedFuture(null);
+                    }
+                    else {
+                        return CompletableFuture.<T>failedFuture(ex);
+                    }
+                })
+                .thenCompose(f -> f);
+    }
+
     /**
      * Convert an object to it's string form or null if the object is null
      * @param obj
@@ -0,0 +1,65 @@
+package org.mbari.vars.services;
+
+/**
+ * Token bucket that limits how many retries can be made across everything that shares it.
+ * The first attempt of a request is always free; each retry has to take a token. When
+ * the server is struggling and every request starts failing the bucket empties quickly and
+ * requests fail fast instead of piling even more load onto the server.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-20T14:00:00
+ */
+public class RetryBudget {
+
+    private final double capacity;
+    private final double refillPerSecond;
+    private final RetryPolicy.Clock clock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     *
+     * @param capacity The maximum number of tokens (i.e. the largest burst of retries)
+     * @param refillPerSecond The number of tokens added back each second
+     */
+    public RetryBudget(int capacity, double refillPerSecond) {
+        this(capacity, refillPerSecond, RetryPolicy.Clock.SYSTEM);
+    }
+
+    public RetryBudget(int capacity, double refillPerSecond, RetryPolicy.Clock clock) {
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.clock = clock;
+        this.tokens = capacity;
+        this.lastRefillNanos = clock.nanoTime();
+    }
+
+    /**
+     * @return true if a token was available (and taken). false means don't retry.
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1D) {
+            tokens = tokens - 1D;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of whole tokens currently available
+     */
+    public synchronized int getAvailable() {
+        refill();
+        return (int) tokens;
+    }
+
+    private void refill() {
+        long now = clock.nanoTime();
+        double elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000D;
+        if (elapsedSeconds > 0) {
+            tokens = Math.min(capacity, tokens + elapsedSeconds * refillPerSecond);
+            lastRefillNanos = now;
+        }
+    }
+}
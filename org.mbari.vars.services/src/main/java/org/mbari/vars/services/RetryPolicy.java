@@ -0,0 +1,210 @@
+package org.mbari.vars.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Describes how a failed remote request is retried. Retries use exponential backoff with
+ * full jitter (the delay before retry n is a random value between 0 and
+ * min(maxDelay, initialDelay * 2^n)), stop after maxRetries or once maxElapsed has passed, and
+ * each retry has to take a token from a {@link RetryBudget}, which is normally shared by all
+ * the requests hitting the same server.
+ *
+ * Only failures that are worth retrying are retried. A {@link ServiceException} that is not
+ * retryable (e.g. 404) fails immediately.
+ *
+ * <pre>
+ *     RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(250), Duration.ofSeconds(5),
+ *          Duration.ofSeconds(30), new RetryBudget(20, 2));
+ *     List&lt;Annotation&gt; xs = policy.execute(() -&gt; fetchPage());
+ * </pre>
+ *
+ * @author Brian Schlining
+ * @since 2020-10-20T14:00:00
+ */
+public class RetryPolicy {
+
+    /**
+     * Source of time. Swap in a fake for testing so that no real sleeping happens.
+     */
+    public interface Clock {
+        long nanoTime();
+        void sleep(long nanos) throws InterruptedException;
+
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+
+            @Override
+            public void sleep(long nanos) throws InterruptedException {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            }
+        };
+    }
+
+    /** Used when no policy is explicitly given. Has its own shared budget */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(2,
+            Duration.ofMillis(250),
+            Duration.ofSeconds(5),
+            Duration.ofSeconds(60),
+            new RetryBudget(20, 2D));
+
+    private final int maxRetries;
+    private final Duration initialDelay;
+    private final Duration maxDelay;
+    private final Duration maxElapsed;
+    private final RetryBudget budget;
+    private final Clock clock;
+    private final DoubleSupplier random;
+
+    public RetryPolicy(int maxRetries,
+                       Duration initialDelay,
+                       Duration maxDelay,
+                       Duration maxElapsed,
+                       RetryBudget budget) {
+        this(maxRetries, initialDelay, maxDelay, maxElapsed, budget, Clock.SYSTEM,
+                () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     *
+     * @param maxRetries The number of retries (not counting the first attempt)
+     * @param initialDelay The backoff ceiling of the first retry
+     * @param maxDelay The largest backoff ceiling
+     * @param maxElapsed No retry will be started after this much time has passed since the
+     *                   first attempt
+     * @param budget The retry budget. Share the same instance to limit retries globally
+     * @param clock Source of time
+     * @param random Supplies values in [0, 1) used for jitter
+     */
+    public RetryPolicy(int maxRetries,
+                       Duration initialDelay,
+                       Duration maxDelay,
+                       Duration maxElapsed,
+                       RetryBudget budget,
+                       Clock clock,
+                       DoubleSupplier random) {
+        this.maxRetries = maxRetries;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.maxElapsed = maxElapsed;
+        this.budget = budget;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * @param maxRetries The new number of retries
+     * @return A copy of this policy, that shares the same budget, with a different number of retries
+     */
+    public RetryPolicy withMaxRetries(int maxRetries) {
+        return new RetryPolicy(maxRetries, initialDelay, maxDelay, maxElapsed, budget, clock, random);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public Duration getInitialDelay() {
+        return initialDelay;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    public Duration getMaxElapsed() {
+        return maxElapsed;
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * @param retry The retry number (0 is the first retry)
+     * @return The amount of time to wait before making that retry
+     */
+    public Duration backoff(int retry) {
+        long initialNanos = initialDelay.toNanos();
+        long maxNanos = maxDelay.toNanos();
+        // Cap the shift so we don't overflow
+        long ceiling = retry >= 62 || initialNanos > (maxNanos >> Math.min(retry, 62)) ?
+                maxNanos : Math.min(maxNanos, initialNanos << retry);
+        return Duration.ofNanos((long) (random.getAsDouble() * ceiling));
+    }
+
+    /**
+     * Runs the supplier, retrying according to this policy. A null return is treated as a
+     * failure.
+     * @param supplier The request
+     * @param <T> The type of the result
+     * @return The result of the first successful attempt
+     * @throws RuntimeException wrapping the last failure when the request can not be completed
+     */
+    public <T> T execute(Supplier<T> supplier) {
+        Logger log = LoggerFactory.getLogger(getClass());
+        long start = clock.nanoTime();
+        int attempt = 0;
+        while (true) {
+            try {
+                T v = supplier.get();
+                if (v == null) {
+                    throw new NullPointerException("Supplier in RetryPolicy returned null. This is not allowed");
+                }
+                return v;
+            }
+            catch (Exception e) {
+                attempt++;
+                String reason = checkRetry(e, attempt, start);
+                if (reason != null) {
+                    String msg = "Execution failed after " + attempt + " attempt(s), " +
+                            reason + ". Terminating Request";
+                    log.warn(msg, e);
+                    throw new RuntimeException(msg, e);
+                }
+                Duration delay = backoff(attempt - 1);
+                log.warn("Execution failed. Retrying (" + attempt + " of " + maxRetries +
+                        ") in " + delay.toMillis() + "ms", e);
+                try {
+                    clock.sleep(delay.toNanos());
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting to retry", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return null if we can retry, otherwise the reason we can't.
+     */
+    private String checkRetry(Exception e, int attempt, long start) {
+        boolean retryable = ServiceException.find(e)
+                .map(se -> se.isRetryable())
+                .orElse(true);
+        if (!retryable) {
+            return "the error is not retryable";
+        }
+        if (attempt > maxRetries) {
+            return "no retries remain";
+        }
+        long elapsed = clock.nanoTime() - start;
+        if (elapsed >= maxElapsed.toNanos()) {
+            return "the maximum elapsed time of " + maxElapsed + " was exceeded";
+        }
+        if (!budget.tryAcquire()) {
+            return "the retry budget is exhausted";
+        }
+        return null;
+    }
+}
@@ -1,7 +1,9 @@
 package org.mbari.vars.services;
 
 import com.typesafe.config.Config;
+import okhttp3.logging.HttpLoggingInterceptor;
 import org.mbari.vars.core.BaseConfig;
+import org.mbari.vars.services.impl.annosaurus.v1.AnnoService;
 
 import java.time.Duration;
 import java.util.Collections;
@@ -18,11 +20,32 @@ public class ServiceConfig extends BaseConfig {
         private final String endpoint;
         private final Duration timeout;
         private final String clientSecret;
+        private final Duration connectTimeout;
+        private final HttpLogParams logParams;
 
         public ServiceParams(String endpoint, Duration timeout, String clientSecret) {
+            this(endpoint, timeout, clientSecret, null, HttpLogParams.DEFAULT);
+        }
+
+        /**
+         *
+         * @param endpoint The base URL of the service
+         * @param timeout The read/write timeout
+         * @param clientSecret The secret used for the JWT handshake
+         * @param connectTimeout Overrides the connect timeout of the shared http
+         *                       client. null means use the shared value.
+         * @param logParams How much of the http traffic to log
+         */
+        public ServiceParams(String endpoint,
+                             Duration timeout,
+                             String clientSecret,
+                             Duration connectTimeout,
+                             HttpLogParams logParams) {
             this.endpoint = endpoint;
             this.timeout = timeout;
             this.clientSecret = clientSecret;
+            this.connectTimeout = connectTimeout;
+            this.logParams = logParams;
         }
 
         public String getEndpoint() {
@@ -36,6 +59,89 @@ public class ServiceConfig extends BaseConfig {
         public String getClientSecret() {
             return clientSecret;
         }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public HttpLogParams getLogParams() {
+            return logParams;
+        }
+    }
+
+    /**
+     * Settings for the http wire logging of a service
+     */
+    public static class HttpLogParams {
+
+        public static final HttpLogParams DEFAULT =
+                new HttpLogParams(HttpLoggingInterceptor.Level.BASIC, 4096);
+
+        private final HttpLoggingInterceptor.Level level;
+        private final long maxBodyBytes;
+
+        public HttpLogParams(HttpLoggingInterceptor.Level level, long maxBodyBytes) {
+            this.level = level;
+            this.maxBodyBytes = maxBodyBytes;
+        }
+
+        public HttpLoggingInterceptor.Level getLevel() {
+            return level;
+        }
+
+        public long getMaxBodyBytes() {
+            return maxBodyBytes;
+        }
+    }
+
+    /**
+     * Settings for the OkHttpClient that is shared by all the web services
+     */
+    public static class HttpClientParams {
+
+        public static final HttpClientParams DEFAULT = new HttpClientParams(5,
+                Duration.ofMinutes(5),
+                64,
+                10,
+                Duration.ofSeconds(10));
+
+        private final int maxIdleConnections;
+        private final Duration keepAlive;
+        private final int maxRequests;
+        private final int maxRequestsPerHost;
+        private final Duration connectTimeout;
+
+        public HttpClientParams(int maxIdleConnections,
+                                Duration keepAlive,
+                                int maxRequests,
+                                int maxRequestsPerHost,
+                                Duration connectTimeout) {
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAlive = keepAlive;
+            this.maxRequests = maxRequests;
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            this.connectTimeout = connectTimeout;
+        }
+
+        public int getMaxIdleConnections() {
+            return maxIdleConnections;
+        }
+
+        public Duration getKeepAlive() {
+            return keepAlive;
+        }
+
+        public int getMaxRequests() {
+            return maxRequests;
+        }
+
+        public int getMaxRequestsPerHost() {
+            return maxRequestsPerHost;
+        }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
     }
 
     public ServiceConfig(Config config) {
@@ -46,13 +152,64 @@ public class ServiceConfig extends BaseConfig {
         String endpoint = read(basePath + ".url", config::getString, null);
         Duration timeout = read(basePath + ".timeout", config::getDuration, defaultTimeout);
         String clientSecret = read(basePath + ".client.secret", config::getString, "");
-        return new ServiceParams(endpoint, timeout, clientSecret);
+        Duration connectTimeout = config.hasPath(basePath + ".connect.timeout") ?
+                read(basePath + ".connect.timeout", config::getDuration, null) : null;
+        HttpLogParams logParams = readHttpLogParams(basePath);
+        return new ServiceParams(endpoint, timeout, clientSecret, connectTimeout, logParams);
+    }
+
+    /**
+     * Reads the log settings for a service. Values in the service's block (e.g.
+     * `annotation.service.log.level`) override the ones in `http.client.log`
+     * @param basePath The path of the service's block
+     * @return The log settings
+     */
+    public HttpLogParams readHttpLogParams(String basePath) {
+        HttpLogParams d = HttpLogParams.DEFAULT;
+        HttpLoggingInterceptor.Level defaultLevel = read("http.client.log.level",
+                this::readLogLevel, d.getLevel());
+        long defaultMaxBodyBytes = read("http.client.log.body.max.size",
+                config::getBytes, d.getMaxBodyBytes());
+        HttpLoggingInterceptor.Level level = config.hasPath(basePath + ".log.level") ?
+                read(basePath + ".log.level", this::readLogLevel, defaultLevel) : defaultLevel;
+        long maxBodyBytes = config.hasPath(basePath + ".log.body.max.size") ?
+                read(basePath + ".log.body.max.size", config::getBytes, defaultMaxBodyBytes) :
+                defaultMaxBodyBytes;
+        return new HttpLogParams(level, maxBodyBytes);
+    }
+
+    private HttpLoggingInterceptor.Level readLogLevel(String path) {
+        return HttpLoggingInterceptor.Level.valueOf(config.getString(path).trim().toUpperCase());
+    }
+
+    public HttpClientParams getHttpClientParams() {
+        HttpClientParams d = HttpClientParams.DEFAULT;
+        int maxIdleConnections = read("http.client.connection.pool.max.idle",
+                config::getInt, d.getMaxIdleConnections());
+        Duration keepAlive = read("http.client.connection.pool.keep.alive",
+                config::getDuration, d.getKeepAlive());
+        int maxRequests = read("http.client.dispatcher.requests.max",
+                config::getInt, d.getMaxRequests());
+        int maxRequestsPerHost = read("http.client.dispatcher.requests.per.host.max",
+                config::getInt, d.getMaxRequestsPerHost());
+        Duration connectTimeout = read("http.client.connect.timeout",
+                config::getDuration, d.getConnectTimeout());
+        return new HttpClientParams(maxIdleConnections, keepAlive, maxRequests,
+                maxRequestsPerHost, connectTimeout);
     }
 
     public int getAnnotationServiceV1PageSize() {
         return read("annotation.service.page.size", config::getInt, 20);
     }
 
+    /**
+     * @return The number of annotations requested per page when searching by concept
+     */
+    public int getAnnotationServiceConceptPageSize() {
+        return read("annotation.service.concept.page.size", config::getInt,
+                AnnoService.DEFAULT_CONCEPT_PAGE_SIZE);
+    }
+
     public int getAnnotationsServiceV1PageCount() {
         PagingStyle pagingStyle = getAnnotationServiceV1Paging();
         return pagingStyle.equals(PagingStyle.SEQUENTIAL) ?
@@ -64,6 +221,59 @@ public class ServiceConfig extends BaseConfig {
                 PagingStyle.PARALLEL : PagingStyle.SEQUENTIAL, PagingStyle.SEQUENTIAL);
     }
 
+    /**
+     * Builds a new retry policy, with its own budget, from the `annotation.service.retry`
+     * block. Call this once and share the result; the budget only limits retries made by
+     * requests using the same instance.
+     * @return A new retry policy
+     */
+    public RetryPolicy getAnnotationServiceRetryPolicy() {
+        RetryPolicy d = RetryPolicy.DEFAULT;
+        String base = "annotation.service.retry";
+        int maxRetries = read(base + ".attempts.max", config::getInt, d.getMaxRetries());
+        Duration initialDelay = read(base + ".delay.initial", config::getDuration, d.getInitialDelay());
+        Duration maxDelay = read(base + ".delay.max", config::getDuration, d.getMaxDelay());
+        Duration maxElapsed = read(base + ".elapsed.max", config::getDuration, d.getMaxElapsed());
+        int budgetCapacity = read(base + ".budget.capacity", config::getInt, 20);
+        double budgetRefill = read(base + ".budget.refill.per.second", config::getDouble, 2D);
+        return new RetryPolicy(maxRetries, initialDelay, maxDelay, maxElapsed,
+                new RetryBudget(budgetCapacity, budgetRefill));
+    }
+
+    /**
+     * @return true if annotations for a video should be loaded with keyset paging
+     *  against the v2 endpoints instead of counted and loaded by limit/offset.
+     */
+    public boolean isAnnotationServiceStreaming() {
+        return read("annotation.service.streaming", config::getBoolean, true);
+    }
+
+    /**
+     * @return true if a video's annotations should be cached on the local disk and shown
+     *  while they're reloaded from the server (see {@link CachingAnnotationLoader})
+     */
+    public boolean isAnnotationServiceCacheEnabled() {
+        return read("annotation.service.cache.enabled", config::getBoolean, false);
+    }
+
+    /**
+     * @return Only fetch a video's annotations to find the annotations for a set of images
+     *  when it has at least this many of them (see {@link ImageAnnotationResolver})
+     */
+    public int getAnnotationServiceImagesBatchMinImages() {
+        return read("annotation.service.images.batch.min.images", config::getInt,
+                ImageAnnotationResolver.DEFAULT_MIN_IMAGES);
+    }
+
+    /**
+     * @return Only fetch a video's annotations to find the annotations for a set of images
+     *  when it has no more than this many annotations per image (see {@link ImageAnnotationResolver})
+     */
+    public int getAnnotationServiceImagesBatchMaxAnnotationsPerImage() {
+        return read("annotation.service.images.batch.max.annotations.per.image", config::getInt,
+                ImageAnnotationResolver.DEFAULT_MAX_ANNOTATIONS_PER_IMAGE);
+    }
+
     public ServiceParams getAccountsServiceParamsV1() {
         return readServiceParams("accounts.service");
     }
@@ -75,7 +285,8 @@ public class ServiceConfig extends BaseConfig {
     public ServiceParams getAnnotationServiceParamsV2() {
         ServiceParams serviceParams = readServiceParams("annotation.service");
         String endpoint = read("annotation.service.v2.url", config::getString, null);
-        return new ServiceParams(endpoint, serviceParams.timeout, serviceParams.clientSecret);
+        return new ServiceParams(endpoint, serviceParams.timeout, serviceParams.clientSecret,
+                serviceParams.connectTimeout, serviceParams.logParams);
     }
 
     public ServiceParams getConceptServiceParamsV1() {
@@ -0,0 +1,161 @@
+package org.mbari.vars.services;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Base class for failures returned by {@link RetrofitWebService#sendRequest(retrofit2.Call)}.
+ * The subclasses let callers tell the difference between "the thing you asked for doesn't exist"
+ * and "the server is overloaded, back off".
+ * <ul>
+ *     <li>{@link TransientServiceException} - 429, 502, 503, 504, timeouts and connection failures.
+ *     These are the only errors that are worth retrying.</li>
+ *     <li>{@link NotAuthorizedException} - 401, 403</li>
+ *     <li>{@link NotFoundException} - 404</li>
+ *     <li>{@link ClientErrorException} - all other 4xx</li>
+ *     <li>ServiceException - anything else (e.g. 500)</li>
+ * </ul>
+ *
+ * @author Brian Schlining
+ * @since 2020-10-20T10:00:00
+ */
+public class ServiceException extends RuntimeException {
+
+    /** Status code used when there was no HTTP response at all */
+    public static final int NO_RESPONSE = -1;
+
+    private static final int MAX_ERROR_BODY_LENGTH = 256;
+
+    private final int statusCode;
+    private final String url;
+
+    public ServiceException(String message, int statusCode, String url) {
+        this(message, statusCode, url, null);
+    }
+
+    public ServiceException(String message, int statusCode, String url, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+        this.url = url;
+    }
+
+    /**
+     * @return The HTTP status code or {@link #NO_RESPONSE}
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return true if repeating the same request later may succeed.
+     */
+    public boolean isRetryable() {
+        return false;
+    }
+
+    /**
+     * Maps an unsuccessful (non 2xx) response to the matching exception type
+     * @param response The unsuccessful response
+     * @return The matching exception
+     */
+    public static ServiceException fromResponse(Response<?> response) {
+        int code = response.code();
+        String url = response.raw().request().url().toString();
+        String msg = "HTTP " + code + " " + response.message() + " from " + url + readErrorBody(response);
+        switch (code) {
+            case 401:
+            case 403:
+                return new NotAuthorizedException(msg, code, url);
+            case 404:
+                return new NotFoundException(msg, url);
+            case 429:
+            case 502:
+            case 503:
+            case 504:
+                return new TransientServiceException(msg, code, url, null);
+            default:
+                if (code >= 400 && code < 500) {
+                    return new ClientErrorException(msg, code, url);
+                }
+                return new ServiceException(msg, code, url);
+        }
+    }
+
+    /**
+     * Maps a failure where no response was received (e.g. timeout).
+     * @param throwable The failure reported by retrofit
+     * @param url The URL of the request
+     * @return The matching exception
+     */
+    public static ServiceException fromFailure(Throwable throwable, String url) {
+        if (throwable instanceof ServiceException) {
+            return (ServiceException) throwable;
+        }
+        String msg = "Request to " + url + " failed: " + throwable.getMessage();
+        // Timeouts, refused/reset connections and unknown hosts are all IOExceptions
+        if (throwable instanceof IOException) {
+            return new TransientServiceException(msg, NO_RESPONSE, url, throwable);
+        }
+        return new ServiceException(msg, NO_RESPONSE, url, throwable);
+    }
+
+    /**
+     * Futures and pagers usually wrap our exceptions (CompletionException,
+     * ExecutionException, RuntimeException). This digs through the cause chain
+     * to find a ServiceException.
+     * @param throwable The exception to search
+     * @return The first ServiceException in the cause chain, empty if none are found.
+     */
+    public static Optional<ServiceException> find(Throwable throwable) {
+        Throwable t = throwable;
+        int depth = 0;
+        while (t != null && depth < 20) {
+            if (t instanceof ServiceException) {
+                return Optional.of((ServiceException) t);
+            }
+            t = t.getCause();
+            depth++;
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @param throwable The exception to search
+     * @return true if the cause chain contains a {@link NotFoundException}
+     */
+    public static boolean isNotFound(Throwable throwable) {
+        return find(throwable).map(e -> e instanceof NotFoundException).orElse(false);
+    }
+
+    /**
+     * @param throwable The exception to search
+     * @return true if the cause chain contains a retryable ServiceException
+     */
+    public static boolean isTransient(Throwable throwable) {
+        return find(throwable).map(e -> e.isRetryable()).orElse(false);
+    }
+
+    private static String readErrorBody(Response<?> response) {
+        // Retrofit has already buffered the error body so this doesn't touch the network
+        try (ResponseBody body = response.errorBody()) {
+            if (body == null) {
+                return "";
+            }
+            String s = body.string();
+            if (s.length() > MAX_ERROR_BODY_LENGTH) {
+                s = s.substring(0, MAX_ERROR_BODY_LENGTH) + "...";
+            }
+            return s.isBlank() ? "" : ": " + s;
+        }
+        catch (Exception e) {
+            return "";
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class Services {
     private final UserService userService;
     private final PreferencesService preferencesService;
     private final PreferencesFactory preferencesFactory;
+    private final RetryPolicy retryPolicy;
 
     @Inject
     public Services(AnnotationService annotationService,
@@ -29,6 +30,20 @@ public class Services {
                     UserService userService,
                     PreferencesService preferencesService,
                     PreferencesFactory preferencesFactory) {
+        this(annotationService, annoServiceV2, conceptService, imageArchiveService,
+                mediaService, userService, preferencesService, preferencesFactory,
+                RetryPolicy.DEFAULT);
+    }
+
+    public Services(AnnotationService annotationService,
+                    AnnoServiceV2 annoServiceV2,
+                    ConceptService conceptService,
+                    ImageArchiveService imageArchiveService,
+                    MediaService mediaService,
+                    UserService userService,
+                    PreferencesService preferencesService,
+                    PreferencesFactory preferencesFactory,
+                    RetryPolicy retryPolicy) {
         this.annotationService = annotationService;
         this.annoServiceV2 = annoServiceV2;
         this.conceptService = conceptService;
@@ -37,6 +52,7 @@ public class Services {
         this.userService = userService;
         this.preferencesService = preferencesService;
         this.preferencesFactory = preferencesFactory;
+        this.retryPolicy = retryPolicy;
     }
 
     public AnnotationService getAnnotationService() {
@@ -70,4 +86,12 @@ public class Services {
     public PreferencesFactory getPreferencesFactory() {
         return preferencesFactory;
     }
+
+    /**
+     * @return The retry policy used for paged annotation requests. Its retry budget
+     *  is shared by everything using this policy.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
 }
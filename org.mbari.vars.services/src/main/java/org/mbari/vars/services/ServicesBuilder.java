@@ -3,6 +3,8 @@ package org.mbari.vars.services;
 import com.typesafe.config.Config;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
 import org.mbari.vars.services.impl.annosaurus.v1.AnnoService;
 import org.mbari.vars.services.impl.annosaurus.v1.AnnoWebServiceFactory;
 import org.mbari.vars.services.impl.annosaurus.v2.AnnoServiceV2;
@@ -26,6 +28,7 @@ public class ServicesBuilder {
   private final Config config;
   private final ServiceConfig appConfig;
   private final Executor defaultExecutor = new ForkJoinPool();
+  private final OkHttpClient httpClient;
 
   public static class Prefs {
     final PreferencesFactory preferencesFactory;
@@ -48,6 +51,7 @@ public class ServicesBuilder {
   public ServicesBuilder(Config config) {
     this.config = config;
     this.appConfig = new ServiceConfig(config);
+    this.httpClient = SharedHttpClient.create(appConfig.getHttpClientParams());
   }
 
   public static Services build(Config config) {
@@ -64,24 +68,27 @@ public class ServicesBuilder {
         buildMediaService(),
         buildUserService(),
         prefs.getPreferencesService(),
-        prefs.getPreferencesFactory());
+        prefs.getPreferencesFactory(),
+        appConfig.getAnnotationServiceRetryPolicy());
   }
 
-  public AnnoService buildAnnotationService() {
+  public AnnotationService buildAnnotationService() {
     ServiceConfig.ServiceParams params = appConfig.getAnnotationServiceParamsV1();
     AnnoWebServiceFactory factory =
-        new AnnoWebServiceFactory(params.getEndpoint(), params.getTimeout());
+        new AnnoWebServiceFactory(params.getEndpoint(), params.getTimeout(), httpClientFor(params));
     AuthService authService =
         new BasicJWTAuthService(factory, new Authorization("APIKEY", params.getClientSecret()));
     // AnnoWebServiceFactory serviceFactory =
     //     new AnnoWebServiceFactory(params.getEndpoint(), params.getTimeout());
-    return new AnnoService(factory, authService);
+    // --- Identical lookups made at the same time only hit the server once
+    return new SingleFlightAnnotationService(new AnnoService(factory, authService,
+        appConfig.getAnnotationServiceConceptPageSize()));
   }
 
   private AnnoServiceV2 buildAnnotationV2Service() {
     ServiceConfig.ServiceParams params = appConfig.getAnnotationServiceParamsV2();
     AnnoWebServiceFactoryV2 factory =
-        new AnnoWebServiceFactoryV2(params.getEndpoint(), params.getTimeout());
+        new AnnoWebServiceFactoryV2(params.getEndpoint(), params.getTimeout(), httpClientFor(params));
     AuthService authService =
         new BasicJWTAuthService(factory, new Authorization("APIKEY", params.getClientSecret()));
     return new AnnoServiceV2(factory, authService);
@@ -90,29 +97,33 @@ public class ServicesBuilder {
   public MediaService buildMediaService() {
     ServiceConfig.ServiceParams params = appConfig.getMediaServiceParamsV1();
     VamWebServiceFactory factory =
-        new VamWebServiceFactory(params.getEndpoint(), params.getTimeout());
+        new VamWebServiceFactory(params.getEndpoint(), params.getTimeout(), httpClientFor(params));
     AuthService authService =
         new BasicJWTAuthService(factory, new Authorization("APIKEY", params.getClientSecret()));
-    return new VamService(factory, authService);
+    return new SingleFlightMediaService(new VamService(factory, authService));
   }
 
   public ConceptService buildConceptService() {
     ServiceConfig.ServiceParams params = appConfig.getConceptServiceParamsV1();
     KBWebServiceFactory factory =
-        new KBWebServiceFactory(params.getEndpoint(), params.getTimeout(), defaultExecutor);
+        new KBWebServiceFactory(params.getEndpoint(), params.getTimeout(), defaultExecutor,
+            httpClientFor(params));
     KBConceptService service = new KBConceptService(factory);
     // --- Create a service that munges the data from the service for a better UI experience.
     ModifyingConceptService modService = new ModifyingConceptService(service, config);
+    // --- Identical lookups made at the same time only hit the server once
+    SingleFlightConceptService singleFlightService = new SingleFlightConceptService(modService);
     // --- Using a local cache
-    return new CachedConceptService(modService);
+    return new CachedConceptService(singleFlightService);
   }
 
   private Prefs buildPrefs() {
     ServiceConfig.ServiceParams params = appConfig.getPreferencesServiceParamsV1();
     PrefWebServiceFactory factory =
-        new PrefWebServiceFactory(params.getEndpoint(), params.getTimeout());
+        new PrefWebServiceFactory(params.getEndpoint(), params.getTimeout(), httpClientFor(params));
     RetrofitServiceFactory authFactory =
-        new BasicJWTAuthServiceFactorySC(params.getEndpoint(), params.getTimeout());
+        new BasicJWTAuthServiceFactorySC(params.getEndpoint(), params.getTimeout(),
+            httpClientFor(params));
     AuthService authService =
         new BasicJWTAuthService(authFactory, new Authorization("APIKEY", params.getClientSecret()));
     KBPrefService prefService = new KBPrefService(factory, authService);
@@ -124,9 +135,10 @@ public class ServicesBuilder {
   private UserService buildUserService() {
     ServiceConfig.ServiceParams params = appConfig.getAccountsServiceParamsV1();
     UserWebServiceFactory factory =
-        new UserWebServiceFactory(params.getEndpoint(), params.getTimeout());
+        new UserWebServiceFactory(params.getEndpoint(), params.getTimeout(), httpClientFor(params));
     RetrofitServiceFactory authFactory =
-        new BasicJWTAuthServiceFactorySC(params.getEndpoint(), params.getTimeout());
+        new BasicJWTAuthServiceFactorySC(params.getEndpoint(), params.getTimeout(),
+            httpClientFor(params));
     AuthService authService =
         new BasicJWTAuthService(authFactory, new Authorization("APIKEY", params.getClientSecret()));
     return new KBUserService(factory, authService);
@@ -135,11 +147,27 @@ public class ServicesBuilder {
   private ImageArchiveService buildImageArchiveService() {
     ServiceConfig.ServiceParams params = appConfig.getPanoptesServiceParamsV1();
     PanoptesWebServiceFactory factory =
-        new PanoptesWebServiceFactory(params.getEndpoint(), params.getTimeout());
+        new PanoptesWebServiceFactory(params.getEndpoint(), params.getTimeout(), httpClientFor(params));
     RetrofitServiceFactory authFactory =
-        new BasicJWTAuthServiceFactorySC(params.getEndpoint(), params.getTimeout());
+        new BasicJWTAuthServiceFactorySC(params.getEndpoint(), params.getTimeout(),
+            httpClientFor(params));
     AuthService authService =
         new BasicJWTAuthService(authFactory, new Authorization("APIKEY", params.getClientSecret()));
     return new PanoptesService(factory, authService);
   }
+
+  /**
+   * All services derive from the same root client so they share a single connection pool
+   * and dispatcher. A service may override the connect timeout and the http logging in its
+   * config block.
+   */
+  private OkHttpClient httpClientFor(ServiceConfig.ServiceParams params) {
+    OkHttpClient client = httpClient;
+    if (params.getConnectTimeout() != null) {
+      client = client.newBuilder()
+          .connectTimeout(params.getConnectTimeout().toMillis(), TimeUnit.MILLISECONDS)
+          .build();
+    }
+    return SharedHttpClient.withLogging(client, params.getLogParams());
+  }
 }
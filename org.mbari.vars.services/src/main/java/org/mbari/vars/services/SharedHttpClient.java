@@ -0,0 +1,83 @@
+package org.mbari.vars.services;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.logging.HttpLoggingInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the single OkHttpClient that all {@link RetrofitServiceFactory}s derive their
+ * clients from (via {@link OkHttpClient#newBuilder()}). Derived clients share the
+ * connection pool and dispatcher of the parent, so all of the web services talking to
+ * the same host reuse sockets and TLS sessions instead of each creating their own.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-19T09:30:00
+ */
+public class SharedHttpClient {
+
+    private static OkHttpClient defaultClient;
+
+    private SharedHttpClient() {
+        // No instantiation
+    }
+
+    /**
+     * @return A lazily created client with the default pool, dispatcher and timeouts.
+     *  This is used by service factories that are not given an explicit client.
+     */
+    public static synchronized OkHttpClient getDefault() {
+        if (defaultClient == null) {
+            defaultClient = withLogging(create(ServiceConfig.HttpClientParams.DEFAULT),
+                    ServiceConfig.HttpLogParams.DEFAULT);
+        }
+        return defaultClient;
+    }
+
+    /**
+     * Builds a new root client. In general, you only want to call this once per
+     * application and hand the result to all your service factories.
+     * @param params The pool, dispatcher and timeout settings
+     * @return A new client
+     */
+    public static OkHttpClient create(ServiceConfig.HttpClientParams params) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(params.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(params.getMaxRequestsPerHost());
+
+        ConnectionPool connectionPool = new ConnectionPool(params.getMaxIdleConnections(),
+                params.getKeepAlive().toMillis(),
+                TimeUnit.MILLISECONDS);
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool)
+                .connectTimeout(params.getConnectTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Derives a client that logs its traffic, at debug level, using a
+     * {@link BoundedLoggingInterceptor}. The derived client shares the pool
+     * and dispatcher of the client passed in.
+     * @param client The client to derive from
+     * @param params The log settings
+     * @return A new client that logs.
+     */
+    public static OkHttpClient withLogging(OkHttpClient client, ServiceConfig.HttpLogParams params) {
+        Logger log = LoggerFactory.getLogger(BoundedLoggingInterceptor.class);
+        // If debug is off, don't pay to format messages that are thrown away
+        HttpLoggingInterceptor.Level level = log.isDebugEnabled() ?
+                params.getLevel() : HttpLoggingInterceptor.Level.NONE;
+        if (level == HttpLoggingInterceptor.Level.NONE) {
+            return client;
+        }
+        return client.newBuilder()
+                .addInterceptor(new BoundedLoggingInterceptor(level, params.getMaxBodyBytes(), log::debug))
+                .build();
+    }
+}
@@ -0,0 +1,402 @@
+package org.mbari.vars.services;
+
+import io.reactivex.Flowable;
+import org.mbari.vars.services.model.*;
+import org.mbari.vars.core.util.SingleFlight;
+
+import java.net.URL;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Decorates an AnnotationService so that identical lookups that are in flight at the same time
+ * are only sent to the annotation server once. Later callers share the result of the first
+ * call (see {@link SingleFlight}). Calls that modify data, and lookups that
+ * take request objects as arguments, are passed straight through.
+ *
+ * Note that the returned objects are shared between the callers, so treat them as
+ * read-only.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-21T10:00:00
+ */
+public class SingleFlightAnnotationService implements AnnotationService {
+
+    private final AnnotationService annotationService;
+    private final SingleFlight<List<Object>, Object> singleFlight = new SingleFlight<>();
+
+    public SingleFlightAnnotationService(AnnotationService annotationService) {
+        this.annotationService = annotationService;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> flight(Supplier<CompletableFuture<T>> fn, Object... key) {
+        CompletableFuture<?> f = singleFlight.execute(Arrays.asList(key),
+                () -> (CompletableFuture<Object>) fn.get());
+        return (CompletableFuture<T>) f;
+    }
+
+    @Override
+    public CompletableFuture<AnnotationCount> countAnnotations(UUID videoReferenceUuid) {
+        return flight(() -> annotationService.countAnnotations(videoReferenceUuid),
+                "countAnnotations", videoReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<List<AnnotationCount>> countAnnotationsGroupByVideoReferenceUuid() {
+        return flight(() -> annotationService.countAnnotationsGroupByVideoReferenceUuid(),
+                "countAnnotationsGroupByVideoReferenceUuid");
+    }
+
+    @Override
+    public CompletableFuture<ConcurrentRequestCount> countByConcurrentRequest(ConcurrentRequest concurrentRequest) {
+        return annotationService.countByConcurrentRequest(concurrentRequest);
+    }
+
+    @Override
+    public CompletableFuture<MultiRequestCount> countByMultiRequest(MultiRequest multiRequest) {
+        return annotationService.countByMultiRequest(multiRequest);
+    }
+
+    @Override
+    public CompletableFuture<List<AnnotationCount>> countImagedMomentsGroupByVideoReferenceUuid() {
+        return flight(() -> annotationService.countImagedMomentsGroupByVideoReferenceUuid(),
+                "countImagedMomentsGroupByVideoReferenceUuid");
+    }
+
+    @Override
+    public CompletableFuture<ConceptCount> countObservationsByConcept(String concept) {
+        return flight(() -> annotationService.countObservationsByConcept(concept),
+                "countObservationsByConcept", concept);
+    }
+
+    @Override
+    public CompletableFuture<AnnotationCount> countImagedMomentsModifiedBefore(UUID videoReferenceUuid,
+                                                                               Instant date) {
+        return flight(() -> annotationService.countImagedMomentsModifiedBefore(videoReferenceUuid, date),
+                "countImagedMomentsModifiedBefore", videoReferenceUuid, date);
+    }
+
+    @Override
+    public CompletableFuture<Annotation> createAnnotation(Annotation annotation) {
+        return annotationService.createAnnotation(annotation);
+    }
+
+    @Override
+    public CompletableFuture<Collection<Annotation>> createAnnotations(Collection<Annotation> annotations) {
+        return annotationService.createAnnotations(annotations);
+    }
+
+    @Override
+    public CompletableFuture<Association> createAssociation(UUID observationUuid,
+                                                            Association association) {
+        return annotationService.createAssociation(observationUuid, association);
+    }
+
+    @Override
+    public CompletableFuture<Association> createAssociation(UUID observationUuid,
+                                                            Association association,
+                                                            UUID associationUuid) {
+        return annotationService.createAssociation(observationUuid, association, associationUuid);
+    }
+
+    @Override
+    public CompletableFuture<Image> createImage(Image image) {
+        return annotationService.createImage(image);
+    }
+
+    @Override
+    public CompletableFuture<List<AncillaryData>> createOrUpdateAncillaryData(List<AncillaryData> ancillaryData) {
+        return annotationService.createOrUpdateAncillaryData(ancillaryData);
+    }
+
+    @Override
+    public CompletableFuture<CachedVideoReference> createCachedVideoReference(CachedVideoReference cvr) {
+        return annotationService.createCachedVideoReference(cvr);
+    }
+
+    @Override
+    public CompletableFuture<AncillaryDataDeleteCount> deleteAncillaryDataByVideoReference(UUID videoReferenceUuid) {
+        return annotationService.deleteAncillaryDataByVideoReference(videoReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAnnotation(UUID observationUuid) {
+        return annotationService.deleteAnnotation(observationUuid);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAnnotations(Collection<UUID> observationUuids) {
+        return annotationService.deleteAnnotations(observationUuids);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAssociation(UUID associationUuid) {
+        return annotationService.deleteAssociation(associationUuid);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAssociations(Collection<UUID> associationUuids) {
+        return annotationService.deleteAssociations(associationUuids);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteImage(UUID imageReferenceUuid) {
+        return annotationService.deleteImage(imageReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<Annotation> deleteDuration(UUID observationUuid) {
+        return annotationService.deleteDuration(observationUuid);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteCacheVideoReference(UUID uuid) {
+        return annotationService.deleteCacheVideoReference(uuid);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findActivities() {
+        return flight(() -> annotationService.findActivities(), "findActivities");
+    }
+
+    @Override
+    public CompletableFuture<List<UUID>> findAllVideoReferenceUuids() {
+        return flight(() -> annotationService.findAllVideoReferenceUuids(),
+                "findAllVideoReferenceUuids");
+    }
+
+    @Override
+    public CompletableFuture<AncillaryData> findAncillaryData(UUID observationUuid) {
+        return flight(() -> annotationService.findAncillaryData(observationUuid),
+                "findAncillaryData", observationUuid);
+    }
+
+    @Override
+    public CompletableFuture<List<AncillaryData>> findAncillaryDataByVideoReference(UUID videoReferenceUuid) {
+        return flight(() -> annotationService.findAncillaryDataByVideoReference(videoReferenceUuid),
+                "findAncillaryDataByVideoReference", videoReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<List<Annotation>> findByConcept(String concept, Boolean data) {
+        return flight(() -> annotationService.findByConcept(concept, data),
+                "findByConcept", concept, data);
+    }
+
+    @Override
+    public CompletableFuture<List<Annotation>> findByConcept(String concept,
+                                                             Long limit,
+                                                             Long offset,
+                                                             Boolean data) {
+        return flight(() -> annotationService.findByConcept(concept, limit, offset, data),
+                "findByConcept", concept, limit, offset, data);
+    }
+
+    @Override
+    public Flowable<List<Annotation>> streamByConcept(String concept, Boolean data, int pageSize) {
+        return annotationService.streamByConcept(concept, data, pageSize);
+    }
+
+    @Override
+    public CompletableFuture<List<Annotation>> findAnnotations(UUID videoReferenceUuid) {
+        return flight(() -> annotationService.findAnnotations(videoReferenceUuid),
+                "findAnnotations", videoReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<List<Annotation>> findAnnotations(UUID videoReferenceUuid,
+                                                               boolean data) {
+        return flight(() -> annotationService.findAnnotations(videoReferenceUuid, data),
+                "findAnnotations", videoReferenceUuid, data);
+    }
+
+    @Override
+    public CompletableFuture<List<Annotation>> findAnnotations(UUID videoReferenceUuid,
+                                                               Long limit,
+                                                               Long offset) {
+        return flight(() -> annotationService.findAnnotations(videoReferenceUuid, limit, offset),
+                "findAnnotations", videoReferenceUuid, limit, offset);
+    }
+
+    @Override
+    public CompletableFuture<List<Annotation>> findAnnotations(UUID videoReferenceUuid,
+                                                               Long limit,
+                                                               Long offset,
+                                                               Boolean data) {
+        return flight(() -> annotationService.findAnnotations(videoReferenceUuid, limit, offset, data),
+                "findAnnotations", videoReferenceUuid, limit, offset, data);
+    }
+
+    @Override
+    public CompletableFuture<Long> streamAnnotations(UUID videoReferenceUuid,
+                                                     Long limit,
+                                                     Long offset,
+                                                     Boolean data,
+                                                     Consumer<Annotation> consumer) {
+        // Each caller has its own consumer so these can't be shared
+        return annotationService.streamAnnotations(videoReferenceUuid, limit, offset, data, consumer);
+    }
+
+    @Override
+    public CompletableFuture<Association> findAssociationByUuid(UUID associationUuid) {
+        return flight(() -> annotationService.findAssociationByUuid(associationUuid),
+                "findAssociationByUuid", associationUuid);
+    }
+
+    @Override
+    public CompletableFuture<ConceptAssociationResponse> findByConceptAssociationRequest(ConceptAssociationRequest request) {
+        return annotationService.findByConceptAssociationRequest(request);
+    }
+
+    @Override
+    public CompletableFuture<List<Annotation>> findByConcurrentRequest(ConcurrentRequest concurrentRequest,
+                                                                       long limit,
+                                                                       long offset) {
+        return annotationService.findByConcurrentRequest(concurrentRequest, limit, offset);
+    }
+
+    @Override
+    public CompletableFuture<List<Annotation>> findByImageReference(UUID imageReferenceUuid) {
+        return flight(() -> annotationService.findByImageReference(imageReferenceUuid),
+                "findByImageReference", imageReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<List<Annotation>> findByMultiRequest(MultiRequest multiRequest,
+                                                                  long limit,
+                                                                  long offset) {
+        return annotationService.findByMultiRequest(multiRequest, limit, offset);
+    }
+
+    @Override
+    public CompletableFuture<Annotation> findByUuid(UUID observationUuid) {
+        return flight(() -> annotationService.findByUuid(observationUuid),
+                "findByUuid", observationUuid);
+    }
+
+    @Override
+    public CompletableFuture<List<Annotation>> findByUuids(Collection<UUID> observationUuids) {
+        return annotationService.findByUuids(observationUuids);
+    }
+
+    @Override
+    public CompletableFuture<List<Association>> findByVideoReferenceAndLinkName(UUID videoReferenceUuid,
+                                                                                String linkName) {
+        return flight(() -> annotationService.findByVideoReferenceAndLinkName(videoReferenceUuid, linkName),
+                "findByVideoReferenceAndLinkName", videoReferenceUuid, linkName);
+    }
+
+    @Override
+    public CompletableFuture<List<Association>> findByVideoReferenceAndLinkNameAndConcept(UUID videoReferenceUuid,
+                                                                                          String linkName,
+                                                                                          String concept) {
+        return flight(() -> annotationService.findByVideoReferenceAndLinkNameAndConcept(videoReferenceUuid,
+                linkName, concept),
+                "findByVideoReferenceAndLinkNameAndConcept", videoReferenceUuid, linkName, concept);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findGroups() {
+        return flight(() -> annotationService.findGroups(), "findGroups");
+    }
+
+    @Override
+    public CompletableFuture<Image> findImageByUrl(URL url) {
+        return flight(() -> annotationService.findImageByUrl(url), "findImageByUrl", url);
+    }
+
+    @Override
+    public CompletableFuture<Image> findImageByUuid(UUID imageReferenceUuid) {
+        return flight(() -> annotationService.findImageByUuid(imageReferenceUuid),
+                "findImageByUuid", imageReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<List<Image>> findImagesByVideoReferenceUuid(UUID videoReferenceUuid) {
+        return flight(() -> annotationService.findImagesByVideoReferenceUuid(videoReferenceUuid),
+                "findImagesByVideoReferenceUuid", videoReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<List<ImagedMoment>> findImagedMomentsByVideoReferenceUuid(UUID videoReferenceUuid) {
+        return flight(() -> annotationService.findImagedMomentsByVideoReferenceUuid(videoReferenceUuid),
+                "findImagedMomentsByVideoReferenceUuid", videoReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<List<Index>> findIndicesByVideoReferenceUuid(UUID videoReferenceUuid) {
+        return flight(() -> annotationService.findIndicesByVideoReferenceUuid(videoReferenceUuid),
+                "findIndicesByVideoReferenceUuid", videoReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<CachedVideoReference> findVideoReferenceByVideoReferenceUuid(UUID videoReferenceUuid) {
+        return flight(() -> annotationService.findVideoReferenceByVideoReferenceUuid(videoReferenceUuid),
+                "findVideoReferenceByVideoReferenceUuid", videoReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<Collection<AncillaryData>> merge(UUID videoReferenceUuid,
+                                                              Collection<AncillaryData> data) {
+        return annotationService.merge(videoReferenceUuid, data);
+    }
+
+    @Override
+    public CompletableFuture<ConceptsRenamed> renameConcepts(String oldConcept, String newConcept) {
+        return annotationService.renameConcepts(oldConcept, newConcept);
+    }
+
+    @Override
+    public CompletableFuture<Annotation> updateAnnotation(Annotation annotation) {
+        return annotationService.updateAnnotation(annotation);
+    }
+
+    @Override
+    public CompletableFuture<Collection<Annotation>> updateAnnotations(Collection<Annotation> annotations) {
+        return annotationService.updateAnnotations(annotations);
+    }
+
+    @Override
+    public CompletableFuture<Association> updateAssociation(Association association) {
+        return annotationService.updateAssociation(association);
+    }
+
+    @Override
+    public CompletableFuture<Collection<Association>> updateAssociations(Collection<Association> associations) {
+        return annotationService.updateAssociations(associations);
+    }
+
+    @Override
+    public CompletableFuture<Image> updateImage(Image image) {
+        return annotationService.updateImage(image);
+    }
+
+    @Override
+    public CompletableFuture<List<Index>> updateIndexRecordedTimestamps(Collection<Index> indices) {
+        return annotationService.updateIndexRecordedTimestamps(indices);
+    }
+
+    @Override
+    public CompletableFuture<Collection<Annotation>> updateRecordedTimestampsForTapes(Collection<Annotation> annotations) {
+        return annotationService.updateRecordedTimestampsForTapes(annotations);
+    }
+
+    @Override
+    public CompletableFuture<Optional<ImagedMoment>> updateRecordedTimestamp(UUID imagedMomentUuid,
+                                                                             Instant recordedTimestamp) {
+        return annotationService.updateRecordedTimestamp(imagedMomentUuid, recordedTimestamp);
+    }
+
+    @Override
+    public CompletableFuture<CachedVideoReference> updateCachedVideoReference(CachedVideoReference cvr) {
+        return annotationService.updateCachedVideoReference(cvr);
+    }
+}
@@ -0,0 +1,87 @@
+package org.mbari.vars.services;
+
+import org.mbari.vars.services.model.Concept;
+import org.mbari.vars.services.model.ConceptAssociationTemplate;
+import org.mbari.vars.services.model.ConceptDetails;
+import org.mbari.vars.core.util.SingleFlight;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Decorates a ConceptService so that identical lookups that are in flight at the same time
+ * are only sent to the knowledgebase once. Later callers share the result of the first
+ * call (see {@link SingleFlight}). All of the ConceptService methods are lookups.
+ *
+ * Note that the returned objects are shared between the callers, so treat them as
+ * read-only.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-21T10:00:00
+ */
+public class SingleFlightConceptService implements ConceptService {
+
+    private final ConceptService conceptService;
+    private final SingleFlight<List<Object>, Object> singleFlight = new SingleFlight<>();
+
+    public SingleFlightConceptService(ConceptService conceptService) {
+        this.conceptService = conceptService;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> flight(Supplier<CompletableFuture<T>> fn, Object... key) {
+        CompletableFuture<?> f = singleFlight.execute(Arrays.asList(key),
+                () -> (CompletableFuture<Object>) fn.get());
+        return (CompletableFuture<T>) f;
+    }
+
+    @Override
+    public CompletableFuture<Concept> findRoot() {
+        return flight(() -> conceptService.findRoot(), "findRoot");
+    }
+
+    @Override
+    public CompletableFuture<Optional<ConceptDetails>> findDetails(String name) {
+        return flight(() -> conceptService.findDetails(name), "findDetails", name);
+    }
+
+    @Override
+    public CompletableFuture<ConceptDetails> findRootDetails() {
+        return flight(() -> conceptService.findRootDetails(), "findRootDetails");
+    }
+
+    @Override
+    public CompletableFuture<Optional<Concept>> findParent(String name) {
+        return flight(() -> conceptService.findParent(name), "findParent", name);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findAllNames() {
+        return flight(() -> conceptService.findAllNames(), "findAllNames");
+    }
+
+    @Override
+    public CompletableFuture<List<ConceptAssociationTemplate>> findAllTemplates() {
+        return flight(() -> conceptService.findAllTemplates(), "findAllTemplates");
+    }
+
+    @Override
+    public CompletableFuture<List<ConceptAssociationTemplate>> findTemplates(String name) {
+        return flight(() -> conceptService.findTemplates(name), "findTemplates", name);
+    }
+
+    @Override
+    public CompletableFuture<List<ConceptAssociationTemplate>> findTemplates(String name,
+                                                                             String linkname) {
+        return flight(() -> conceptService.findTemplates(name, linkname),
+                "findTemplates", name, linkname);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Concept>> findConcept(String name) {
+        return flight(() -> conceptService.findConcept(name), "findConcept", name);
+    }
+}
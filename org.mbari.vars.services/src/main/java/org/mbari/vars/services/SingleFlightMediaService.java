@@ -0,0 +1,178 @@
+package org.mbari.vars.services;
+
+import org.mbari.vars.services.model.LastUpdate;
+import org.mbari.vars.services.model.Media;
+import org.mbari.vars.core.util.SingleFlight;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Decorates a MediaService so that identical lookups that are in flight at the same time
+ * are only sent to the media server once. Later callers share the result of the first
+ * call (see {@link SingleFlight}). Calls that create, update or delete are passed straight through.
+ *
+ * Note that the returned objects are shared between the callers, so treat them as
+ * read-only.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-21T10:00:00
+ */
+public class SingleFlightMediaService implements MediaService {
+
+    private final MediaService mediaService;
+    private final SingleFlight<List<Object>, Object> singleFlight = new SingleFlight<>();
+
+    public SingleFlightMediaService(MediaService mediaService) {
+        this.mediaService = mediaService;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> flight(Supplier<CompletableFuture<T>> fn, Object... key) {
+        CompletableFuture<?> f = singleFlight.execute(Arrays.asList(key),
+                () -> (CompletableFuture<Object>) fn.get());
+        return (CompletableFuture<T>) f;
+    }
+
+    @Override
+    public CompletableFuture<Media> create(Media media) {
+        return mediaService.create(media);
+    }
+
+    @Override
+    public CompletableFuture<Media> create(String videoSequenceName,
+                                           String cameraId,
+                                           String videoName,
+                                           URI uri,
+                                           Instant startTimestamp) {
+        return mediaService.create(videoSequenceName, cameraId, videoName, uri, startTimestamp);
+    }
+
+    @Override
+    public CompletableFuture<Media> update(UUID videoReferenceUuid,
+                                           Instant startTimestamp,
+                                           Duration duration) {
+        return mediaService.update(videoReferenceUuid, startTimestamp, duration);
+    }
+
+    @Override
+    public CompletableFuture<Media> update(Media media) {
+        return mediaService.update(media);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> delete(UUID videoReferenceUuid) {
+        return mediaService.delete(videoReferenceUuid);
+    }
+
+    @Override
+    public CompletableFuture<Media> findByUuid(UUID uuid) {
+        return flight(() -> mediaService.findByUuid(uuid), "findByUuid", uuid);
+    }
+
+    @Override
+    public CompletableFuture<Media> findBySha512(byte[] sha512) {
+        return flight(() -> mediaService.findBySha512(sha512),
+                "findBySha512", ByteBuffer.wrap(sha512));
+    }
+
+    @Override
+    public CompletableFuture<Media> findByUri(URI uri) {
+        return flight(() -> mediaService.findByUri(uri), "findByUri", uri);
+    }
+
+    @Override
+    public CompletableFuture<List<Media>> findByVideoSequenceName(String videoSequenceName) {
+        return flight(() -> mediaService.findByVideoSequenceName(videoSequenceName),
+                "findByVideoSequenceName", videoSequenceName);
+    }
+
+    @Override
+    public CompletableFuture<List<Media>> findByVideoName(String videoName) {
+        return flight(() -> mediaService.findByVideoName(videoName), "findByVideoName", videoName);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findAllVideoSequenceNames() {
+        return flight(() -> mediaService.findAllVideoSequenceNames(), "findAllVideoSequenceNames");
+    }
+
+    @Override
+    public CompletableFuture<List<Media>> findByCameraIdAndTimestamp(String cameraId,
+                                                                     Instant timestamp) {
+        return flight(() -> mediaService.findByCameraIdAndTimestamp(cameraId, timestamp),
+                "findByCameraIdAndTimestamp", cameraId, timestamp);
+    }
+
+    @Override
+    public CompletableFuture<List<Media>> findByCameraIdAndDate(String cameraId,
+                                                                Instant startTimestamp,
+                                                                Instant endTimestamp) {
+        return flight(() -> mediaService.findByCameraIdAndDate(cameraId, startTimestamp, endTimestamp),
+                "findByCameraIdAndDate", cameraId, startTimestamp, endTimestamp);
+    }
+
+    @Override
+    public CompletableFuture<List<Media>> findByVideoSequenceNameAndTimestamp(String videoSequenceName,
+                                                                              Instant timestamp) {
+        return flight(() -> mediaService.findByVideoSequenceNameAndTimestamp(videoSequenceName, timestamp),
+                "findByVideoSequenceNameAndTimestamp", videoSequenceName, timestamp);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findAllCameraIds() {
+        return flight(() -> mediaService.findAllCameraIds(), "findAllCameraIds");
+    }
+
+    @Override
+    public CompletableFuture<List<URI>> findAllURIs() {
+        return flight(() -> mediaService.findAllURIs(), "findAllURIs");
+    }
+
+    @Override
+    public CompletableFuture<List<Media>> findConcurrentByVideoReferenceUuid(UUID uuid) {
+        return flight(() -> mediaService.findConcurrentByVideoReferenceUuid(uuid),
+                "findConcurrentByVideoReferenceUuid", uuid);
+    }
+
+    @Override
+    public CompletableFuture<List<Media>> findByFilename(String filename) {
+        return flight(() -> mediaService.findByFilename(filename), "findByFilename", filename);
+    }
+
+    @Override
+    public CompletableFuture<LastUpdate> findLastVideoSequenceUpdate(UUID uuid) {
+        return flight(() -> mediaService.findLastVideoSequenceUpdate(uuid),
+                "findLastVideoSequenceUpdate", uuid);
+    }
+
+    @Override
+    public CompletableFuture<LastUpdate> findLastVideoUpdate(UUID uuid) {
+        return flight(() -> mediaService.findLastVideoUpdate(uuid), "findLastVideoUpdate", uuid);
+    }
+
+    @Override
+    public CompletableFuture<LastUpdate> findLastVideoReferenceUpdate(UUID uuid) {
+        return flight(() -> mediaService.findLastVideoReferenceUpdate(uuid),
+                "findLastVideoReferenceUpdate", uuid);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findVideoSequenceNamesByCameraId(String cameraId) {
+        return flight(() -> mediaService.findVideoSequenceNamesByCameraId(cameraId),
+                "findVideoSequenceNamesByCameraId", cameraId);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> findVideoNamesByVideoSequenceName(String videoSequenceName) {
+        return flight(() -> mediaService.findVideoNamesByVideoSequenceName(videoSequenceName),
+                "findVideoNamesByVideoSequenceName", videoSequenceName);
+    }
+}
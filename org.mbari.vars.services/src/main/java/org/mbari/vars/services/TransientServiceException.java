@@ -0,0 +1,20 @@
+package org.mbari.vars.services;
+
+/**
+ * The server is overloaded or unreachable (429, 502, 503, 504, timeouts, connection
+ * failures). The request may succeed if it's retried later, ideally after backing off.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-20T10:00:00
+ */
+public class TransientServiceException extends ServiceException {
+
+    public TransientServiceException(String message, int statusCode, String url, Throwable cause) {
+        super(message, statusCode, url, cause);
+    }
+
+    @Override
+    public boolean isRetryable() {
+        return true;
+    }
+}
@@ -0,0 +1,375 @@
+package org.mbari.vars.services.gson;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.mbari.vars.services.model.AncillaryData;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Association;
+import org.mbari.vars.services.model.ImageReference;
+import org.mbari.vars.services.model.ImagedMoment;
+import org.mbari.vcr4j.time.Timecode;
+
+import java.io.IOException;
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Hand-written adapters for the annotation models. Annotation pages are the bulk of
+ * what we send and receive, and these read and write the fields directly instead of
+ * going through Gson's reflective adapter and the JsonSerializer/JsonDeserializer
+ * converters (which build a tree for every Instant, Duration and Timecode).
+ *
+ * The field names are annosaurus's snake_case ones, so only register this with a Gson
+ * that uses {@link com.google.gson.FieldNamingPolicy#LOWER_CASE_WITH_UNDERSCORES}.
+ * Like the reflective adapters, null fields are only written if the Gson
+ * serializes nulls, and unknown fields are skipped. {@link ImagedMoment}s are read
+ * as {@link Annotation}s (see {@link AnnotationCreator}).
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T16:00:00
+ */
+public class AnnotationTypeAdapterFactory implements TypeAdapterFactory {
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == Annotation.class || rawType == ImagedMoment.class) {
+            return (TypeAdapter<T>) new AnnotationAdapter(gson.getAdapter(AncillaryData.class))
+                    .nullSafe();
+        }
+        else if (rawType == Association.class) {
+            return (TypeAdapter<T>) new AssociationAdapter().nullSafe();
+        }
+        else if (rawType == ImageReference.class) {
+            return (TypeAdapter<T>) new ImageReferenceAdapter().nullSafe();
+        }
+        return null;
+    }
+
+    private static class AnnotationAdapter extends TypeAdapter<Annotation> {
+
+        private final TypeAdapter<AncillaryData> ancillaryDataAdapter;
+        private final AssociationAdapter associationAdapter = new AssociationAdapter();
+        private final ImageReferenceAdapter imageReferenceAdapter = new ImageReferenceAdapter();
+
+        AnnotationAdapter(TypeAdapter<AncillaryData> ancillaryDataAdapter) {
+            this.ancillaryDataAdapter = ancillaryDataAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, Annotation a) throws IOException {
+            out.beginObject();
+            writeString(out, "observation_uuid", a.getObservationUuid());
+            writeString(out, "concept", a.getConcept());
+            writeString(out, "observer", a.getObserver());
+            writeString(out, "observation_timestamp", a.getObservationTimestamp());
+            writeString(out, "video_reference_uuid", a.getVideoReferenceUuid());
+            writeString(out, "imaged_moment_uuid", a.getImagedMomentUuid());
+            writeString(out, "timecode", a.getTimecode());
+            writeMillis(out, "elapsed_time_millis", a.getElapsedTime());
+            writeString(out, "recorded_timestamp", a.getRecordedTimestamp());
+            writeMillis(out, "duration_millis", a.getDuration());
+            writeString(out, "group", a.getGroup());
+            writeString(out, "activity", a.getActivity());
+            // getAssociations() never returns null, so we can't tell a missing list
+            // from an empty one. Leave both out.
+            List<Association> associations = a.getAssociations();
+            if (!associations.isEmpty()) {
+                out.name("associations");
+                out.beginArray();
+                for (Association x : associations) {
+                    associationAdapter.write(out, x);
+                }
+                out.endArray();
+            }
+            List<ImageReference> imageReferences = a.getImageReferences();
+            out.name("image_references");
+            if (imageReferences == null) {
+                out.nullValue();
+            }
+            else {
+                out.beginArray();
+                for (ImageReference x : imageReferences) {
+                    imageReferenceAdapter.write(out, x);
+                }
+                out.endArray();
+            }
+            out.name("ancillary_data");
+            ancillaryDataAdapter.write(out, a.getAncillaryData());
+            out.endObject();
+        }
+
+        @Override
+        public Annotation read(JsonReader in) throws IOException {
+            Annotation a = new Annotation();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "observation_uuid":
+                        a.setObservationUuid(UUID.fromString(in.nextString()));
+                        break;
+                    case "concept":
+                        a.setConcept(in.nextString());
+                        break;
+                    case "observer":
+                        a.setObserver(in.nextString());
+                        break;
+                    case "observation_timestamp":
+                        a.setObservationTimestamp(parseInstant(in.nextString()));
+                        break;
+                    case "video_reference_uuid":
+                        a.setVideoReferenceUuid(UUID.fromString(in.nextString()));
+                        break;
+                    case "imaged_moment_uuid":
+                        a.setImagedMomentUuid(UUID.fromString(in.nextString()));
+                        break;
+                    case "timecode":
+                        a.setTimecode(new Timecode(in.nextString()));
+                        break;
+                    case "elapsed_time_millis":
+                        a.setElapsedTime(Duration.ofMillis(in.nextLong()));
+                        break;
+                    case "recorded_timestamp":
+                        a.setRecordedTimestamp(parseInstant(in.nextString()));
+                        break;
+                    case "duration_millis":
+                        a.setDuration(Duration.ofMillis(in.nextLong()));
+                        break;
+                    case "group":
+                        a.setGroup(in.nextString());
+                        break;
+                    case "activity":
+                        a.setActivity(in.nextString());
+                        break;
+                    case "associations":
+                        List<Association> associations = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            associations.add(associationAdapter.read(in));
+                        }
+                        in.endArray();
+                        a.setAssociations(associations);
+                        break;
+                    case "image_references":
+                        List<ImageReference> imageReferences = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) {
+                            imageReferences.add(imageReferenceAdapter.read(in));
+                        }
+                        in.endArray();
+                        a.setImageReferences(imageReferences);
+                        break;
+                    case "ancillary_data":
+                        a.setAncillaryData(ancillaryDataAdapter.read(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return a;
+        }
+    }
+
+    private static class AssociationAdapter extends TypeAdapter<Association> {
+
+        @Override
+        public void write(JsonWriter out, Association a) throws IOException {
+            out.beginObject();
+            writeString(out, "uuid", a.getUuid());
+            writeString(out, "link_name", a.getLinkName());
+            writeString(out, "to_concept", a.getToConcept());
+            writeString(out, "link_value", a.getLinkValue());
+            writeString(out, "mime_type", a.getMimeType());
+            out.endObject();
+        }
+
+        @Override
+        public Association read(JsonReader in) throws IOException {
+            UUID uuid = null;
+            String linkName = null;
+            String toConcept = null;
+            String linkValue = null;
+            String mimeType = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "uuid":
+                        uuid = UUID.fromString(in.nextString());
+                        break;
+                    case "link_name":
+                        linkName = in.nextString();
+                        break;
+                    case "to_concept":
+                        toConcept = in.nextString();
+                        break;
+                    case "link_value":
+                        linkValue = in.nextString();
+                        break;
+                    case "mime_type":
+                        mimeType = in.nextString();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Association(linkName, toConcept, linkValue, mimeType, uuid);
+        }
+    }
+
+    private static class ImageReferenceAdapter extends TypeAdapter<ImageReference> {
+
+        @Override
+        public void write(JsonWriter out, ImageReference i) throws IOException {
+            out.beginObject();
+            writeString(out, "uuid", i.getUuid());
+            writeString(out, "description", i.getDescription());
+            writeString(out, "url", i.getUrl() == null ? null : i.getUrl().toExternalForm());
+            writeString(out, "format", i.getFormat());
+            writeString(out, "last_updated_time", i.getLastUpdatedTime());
+            out.endObject();
+        }
+
+        @Override
+        public ImageReference read(JsonReader in) throws IOException {
+            ImageReference i = new ImageReference();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "uuid":
+                        i.setUuid(UUID.fromString(in.nextString()));
+                        break;
+                    case "description":
+                        i.setDescription(in.nextString());
+                        break;
+                    case "url":
+                        String url = in.nextString();
+                        // Gson's URL adapter treats the string "null" as null
+                        i.setUrl("null".equals(url) ? null : new URL(url));
+                        break;
+                    case "format":
+                        i.setFormat(in.nextString());
+                        break;
+                    case "last_updated_time":
+                        i.setLastUpdatedTime(parseInstant(in.nextString()));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return i;
+        }
+    }
+
+    /**
+     * Parses ISO-8601 instants. Annosaurus always sends `yyyy-MM-ddTHH:mm:ss[.fraction]Z`,
+     * which is read here directly; {@link Instant#parse(CharSequence)} takes about ten
+     * times longer and it's called several times per annotation. Anything else is handed
+     * to Instant.parse.
+     */
+    static Instant parseInstant(String s) {
+        int n = s.length();
+        if (n >= 20 && n <= 30 && s.charAt(4) == '-' && s.charAt(7) == '-' &&
+                s.charAt(10) == 'T' && s.charAt(13) == ':' && s.charAt(16) == ':' &&
+                s.charAt(n - 1) == 'Z') {
+            int year = digits(s, 0, 4);
+            int month = digits(s, 5, 7);
+            int day = digits(s, 8, 10);
+            int hour = digits(s, 11, 13);
+            int minute = digits(s, 14, 16);
+            int second = digits(s, 17, 19);
+            int nanos = 0;
+            boolean ok = year >= 0 && month >= 1 && month <= 12 && day >= 1 &&
+                    hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59 &&
+                    second >= 0 && second <= 59;
+            if (ok && n > 20) {
+                // a fraction of 1 to 9 digits
+                int fractionDigits = n - 21;
+                ok = s.charAt(19) == '.' && fractionDigits >= 1 && fractionDigits <= 9;
+                if (ok) {
+                    nanos = digits(s, 20, n - 1);
+                    ok = nanos >= 0;
+                    for (int i = fractionDigits; i < 9; i++) {
+                        nanos *= 10;
+                    }
+                }
+            }
+            if (ok && day <= LocalDate.of(year, month, 1).lengthOfMonth()) {
+                long epochDay = LocalDate.of(year, month, day).toEpochDay();
+                return Instant.ofEpochSecond(epochDay * 86400L + hour * 3600L + minute * 60L + second,
+                        nanos);
+            }
+        }
+        return Instant.parse(s);
+    }
+
+    /**
+     * @return The non-negative int value of s[start, end) or -1 if it's not all digits
+     */
+    private static int digits(String s, int start, int end) {
+        int v = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    /**
+     * Writes the value's toString(). Instants format as ISO-8601, like
+     * the InstantConverter from gson-javatime-serialisers.
+     */
+    private static void writeString(JsonWriter out, String name, Object value) throws IOException {
+        out.name(name);
+        if (value == null) {
+            out.nullValue();
+        }
+        else {
+            out.value(value.toString());
+        }
+    }
+
+    /**
+     * Durations are sent as milliseconds, like the {@link DurationConverter}
+     */
+    private static void writeMillis(JsonWriter out, String name, Duration value) throws IOException {
+        out.name(name);
+        if (value == null) {
+            out.nullValue();
+        }
+        else {
+            out.value(value.toMillis());
+        }
+    }
+}
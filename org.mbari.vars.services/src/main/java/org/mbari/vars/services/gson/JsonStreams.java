@@ -0,0 +1,54 @@
+package org.mbari.vars.services.gson;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Reads JSON arrays one element at a time, so a large response never has to be held
+ * as a list.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T16:00:00
+ */
+public class JsonStreams {
+
+    private JsonStreams() {
+        // No instantiation
+    }
+
+    /**
+     * Reads a JSON array, passing each element to the consumer as soon as it's parsed.
+     * Null elements are skipped. The reader is closed when done.
+     *
+     * @param reader Reads a JSON array (or `null`)
+     * @param adapter Reads one element (e.g. `gson.getAdapter(Annotation.class)`)
+     * @param consumer Gets each element
+     * @return The number of elements passed to the consumer
+     */
+    public static <T> long forEach(Reader reader,
+                                   TypeAdapter<T> adapter,
+                                   Consumer<? super T> consumer) throws IOException {
+        long n = 0;
+        try (JsonReader in = new JsonReader(reader)) {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return n;
+            }
+            in.beginArray();
+            while (in.hasNext()) {
+                T value = adapter.read(in);
+                if (value != null) {
+                    consumer.accept(value);
+                    n++;
+                }
+            }
+            in.endArray();
+        }
+        return n;
+    }
+}
@@ -0,0 +1,64 @@
+package org.mbari.vars.services.gson;
+
+import com.fatboyindustrial.gsonjavatime.Converters;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.mbari.vars.services.model.ImagedMoment;
+import org.mbari.vcr4j.time.Timecode;
+
+import java.time.Duration;
+
+/**
+ * The Gson configurations used by the service factories. Gson instances are thread-safe
+ * and cache their type adapters, so every factory shares one of these instead of
+ * building its own. The JSON is compact (no pretty printing); nobody reads the
+ * request bodies but the servers.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T16:00:00
+ */
+public class ServiceGson {
+
+    private static final Gson SNAKE_CASE = newBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .registerTypeAdapterFactory(new AnnotationTypeAdapterFactory())
+            .create();
+
+    private static final Gson CAMEL_CASE = newBuilder().create();
+
+    private ServiceGson() {
+        // No instantiation
+    }
+
+    /**
+     * @return A new builder with the converters that all the services use
+     */
+    public static GsonBuilder newBuilder() {
+        GsonBuilder gsonBuilder = new GsonBuilder()
+                .setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'")
+                .registerTypeAdapter(Duration.class, new DurationConverter())
+                .registerTypeAdapter(Timecode.class, new TimecodeConverter())
+                .registerTypeAdapter(byte[].class, new ByteArrayConverter());
+
+        // Register java.time.Instant
+        return Converters.registerInstant(gsonBuilder);
+    }
+
+    /**
+     * @return Gson for snake_case services (annosaurus, vampire-squid and the JWT auth
+     *  endpoints). Annotations, associations, image references and
+     *  {@link ImagedMoment}s use the {@link AnnotationTypeAdapterFactory} adapters.
+     */
+    public static Gson snakeCase() {
+        return SNAKE_CASE;
+    }
+
+    /**
+     * @return Gson for camelCase services (e.g. the knowledgebase, panoptes and the
+     *  user/preferences server)
+     */
+    public static Gson camelCase() {
+        return CAMEL_CASE;
+    }
+}
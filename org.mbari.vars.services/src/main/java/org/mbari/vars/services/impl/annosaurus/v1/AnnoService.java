@@ -13,19 +13,37 @@
 
 package org.mbari.vars.services.impl.annosaurus.v1;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Named;
+import com.google.gson.TypeAdapter;
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.ResponseBody;
+import org.mbari.vars.core.util.AsyncUtils;
+import org.mbari.vars.core.util.ListUtils;
 import org.mbari.vars.services.AnnotationService;
 import org.mbari.vars.services.AuthService;
+import org.mbari.vars.services.ServiceException;
+import org.mbari.vars.services.gson.JsonStreams;
 import org.mbari.vars.services.model.*;
 import org.mbari.vars.services.RetrofitWebService;
+import org.mbari.vcr4j.util.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import retrofit2.Call;
 
 /**
@@ -34,6 +52,12 @@ import retrofit2.Call;
  */
 public class AnnoService implements AnnotationService, RetrofitWebService {
 
+    /** The max number of UUIDs sent in one {@link #findByUuids(Collection)} request */
+    public static final int FIND_BY_UUIDS_CHUNK_SIZE = 200;
+
+    /** The default number of annotations per page when searching by concept */
+    public static final int DEFAULT_CONCEPT_PAGE_SIZE = 5000;
+
     private final AnnoWebService annoService;
     private final AssociationWebService assService;
     private final ImageWebService imageService;
@@ -43,6 +67,11 @@ public class AnnoService implements AnnotationService, RetrofitWebService {
     private final VideoInfoWebService videoInfoWebService;
     private final Map<String, String> defaultHeaders;
     private final Map<String, String> bulkHeaders;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    /** Set to false if the server doesn't have the bulk find endpoint */
+    private volatile boolean bulkFindSupported = true;
+    private final int conceptPageSize;
+    private final TypeAdapter<Annotation> annotationAdapter;
 
     /**
      *
@@ -52,6 +81,22 @@ public class AnnoService implements AnnotationService, RetrofitWebService {
     @Inject
     public AnnoService(AnnoWebServiceFactory serviceFactory,
             @Named("ANNO_AUTH") AuthService authService) {
+        this(serviceFactory, authService, DEFAULT_CONCEPT_PAGE_SIZE);
+    }
+
+    /**
+     *
+     * @param serviceFactory
+     * @param authService
+     * @param conceptPageSize The number of annotations per page used by
+     *                        {@link #findByConcept(String, Boolean)}
+     */
+    public AnnoService(AnnoWebServiceFactory serviceFactory,
+            AuthService authService,
+            int conceptPageSize) {
+        Preconditions.checkArgument(conceptPageSize > 0, "conceptPageSize must be greater than 0");
+        this.conceptPageSize = conceptPageSize;
+        annotationAdapter = serviceFactory.getGson().getAdapter(Annotation.class);
         annoService = serviceFactory.create(AnnoWebService.class, authService);
         assService = serviceFactory.create(AssociationWebService.class, authService);
         imageService = serviceFactory.create(ImageWebService.class, authService);
@@ -82,11 +127,103 @@ public class AnnoService implements AnnotationService, RetrofitWebService {
         return sendRequest(annoService.countAllGroupByVideoReferenceUuid());
     }
 
+    /**
+     * Fetches all the annotations for a concept. They are requested in pages (see
+     * {@link #streamByConcept(String, Boolean, int)}) so no single response is huge.
+     * Cancelling the returned future stops any remaining page requests. If you can
+     * work on the annotations as they arrive use streamByConcept instead.
+     */
     @Override
     public CompletableFuture<List<Annotation>> findByConcept(String concept, Boolean data) {
-        // TODO: add pager?
-        // HACK: Hardcoded max of a milliion annotations
-        return sendRequest(annoService.findByConcept(concept, 0L, 1000000L, data));
+        CompletableFuture<List<Annotation>> f = new CompletableFuture<>();
+        Disposable disposable = streamByConcept(concept, data, conceptPageSize)
+                .subscribeOn(Schedulers.io())
+                .collectInto(new ArrayList<Annotation>(), List::addAll)
+                .subscribe(f::complete, f::completeExceptionally);
+        f.whenComplete((v, ex) -> {
+            if (f.isCancelled()) {
+                disposable.dispose();
+            }
+        });
+        return f;
+    }
+
+    @Override
+    public Flowable<List<Annotation>> streamByConcept(String concept, Boolean data, int pageSize) {
+        Preconditions.checkArgument(pageSize > 0, "pageSize must be greater than 0");
+        return Flowable.defer(() -> {
+            ConceptCursor cursor = new ConceptCursor();
+            return Flowable.generate(() -> cursor,
+                    (ConceptCursor c, Emitter<List<Annotation>> emitter) ->
+                            nextConceptPage(concept, data, pageSize, c, emitter))
+                    .doOnCancel(cursor::cancel);
+        });
+    }
+
+    private void nextConceptPage(String concept,
+                                 Boolean data,
+                                 int pageSize,
+                                 ConceptCursor cursor,
+                                 Emitter<List<Annotation>> emitter) {
+        if (cursor.done) {
+            emitter.onComplete();
+            return;
+        }
+
+        Call<List<Annotation>> call = annoService.findByConcept(concept, (long) pageSize,
+                cursor.offset, data);
+        cursor.call = call;
+        if (cursor.cancelled) {
+            // cancelled before the call was visible to cancel()
+            call.cancel();
+        }
+        List<Annotation> page;
+        try {
+            page = sendRequest(call).get();
+        }
+        catch (InterruptedException | ExecutionException e) {
+            // After a cancel the subscriber is gone and nobody wants the error
+            if (!cursor.cancelled) {
+                emitter.onError(e instanceof ExecutionException ? e.getCause() : e);
+            }
+            return;
+        }
+        finally {
+            cursor.call = null;
+        }
+
+        if (page == null) {
+            page = Collections.emptyList();
+        }
+        cursor.offset += page.size();
+        if (page.size() < pageSize) {
+            cursor.done = true;
+        }
+
+        if (!page.isEmpty()) {
+            emitter.onNext(page);
+        }
+        else {
+            emitter.onComplete();
+        }
+    }
+
+    /**
+     * The position of a concept stream and the page request that's in flight, if any
+     */
+    private static class ConceptCursor {
+        long offset = 0;
+        boolean done = false;
+        volatile boolean cancelled = false;
+        volatile Call<?> call;
+
+        void cancel() {
+            cancelled = true;
+            Call<?> c = call;
+            if (c != null) {
+                c.cancel();
+            }
+        }
     }
 
     @Override
@@ -305,7 +442,7 @@ public class AnnoService implements AnnotationService, RetrofitWebService {
 
     @Override
     public CompletableFuture<AncillaryData> findAncillaryData(UUID observationUuid) {
-        return sendRequest(annoService.findAncillaryData(observationUuid));
+        return sendRequestOrNull(annoService.findAncillaryData(observationUuid));
     }
 
     /**
@@ -342,13 +479,31 @@ public class AnnoService implements AnnotationService, RetrofitWebService {
         return sendRequest(annoService.findByVideoReferenceUuid(videoReferenceUuid, limit, offset, data));
     }
 
+    @Override
+    public CompletableFuture<Long> streamAnnotations(UUID videoReferenceUuid,
+                                                     Long limit,
+                                                     Long offset,
+                                                     Boolean data,
+                                                     Consumer<Annotation> consumer) {
+        return sendRequest(annoService.streamByVideoReferenceUuid(videoReferenceUuid, limit, offset, data))
+                .thenApply(body -> {
+                    try (ResponseBody b = body) {
+                        return JsonStreams.forEach(b.charStream(), annotationAdapter, consumer);
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException("Failed to read annotations for " +
+                                videoReferenceUuid, e);
+                    }
+                });
+    }
+
     /**
      *
      * @param associationUuid
      * @return
      */
     public CompletableFuture<Association> findAssociationByUuid(UUID associationUuid) {
-        return sendRequest(assService.findByUuid(associationUuid));
+        return sendRequestOrNull(assService.findByUuid(associationUuid));
     }
 
     /**
@@ -402,7 +557,47 @@ public class AnnoService implements AnnotationService, RetrofitWebService {
 
     @Override
     public CompletableFuture<Annotation> findByUuid(UUID observationUuid) {
-        return sendRequest(annoService.findByUuid(observationUuid));
+        return sendRequestOrNull(annoService.findByUuid(observationUuid));
+    }
+
+    @Override
+    public CompletableFuture<List<Annotation>> findByUuids(Collection<UUID> observationUuids) {
+        List<List<UUID>> chunks = ListUtils.partition(new LinkedHashSet<>(observationUuids),
+                FIND_BY_UUIDS_CHUNK_SIZE);
+        return AsyncUtils.collectAll(chunks, this::findChunkByUuids, AsyncUtils.DEFAULT_MAX_IN_FLIGHT)
+                .thenApply(annotationLists -> annotationLists.stream()
+                        .flatMap(List::stream)
+                        .collect(Collectors.toList()));
+    }
+
+    private CompletableFuture<List<Annotation>> findChunkByUuids(List<UUID> observationUuids) {
+        if (!bulkFindSupported) {
+            return findChunkByUuid(observationUuids);
+        }
+        return sendRequest(annoService.findByUuids(observationUuids, bulkHeaders))
+                .handle((annotations, ex) -> {
+                    if (ex == null) {
+                        return CompletableFuture.completedFuture(annotations);
+                    }
+                    else if (ServiceException.isNotFound(ex)) {
+                        // Older annosaurus. Fall back to one request per UUID from now on
+                        log.info("The annotation service does not support bulk lookups by UUID");
+                        bulkFindSupported = false;
+                        return findChunkByUuid(observationUuids);
+                    }
+                    else {
+                        return CompletableFuture.<List<Annotation>>failedFuture(ex);
+                    }
+                })
+                .thenCompose(f -> f);
+    }
+
+    private CompletableFuture<List<Annotation>> findChunkByUuid(List<UUID> observationUuids) {
+        // The chunks already run in parallel, so do these one at a time
+        return AsyncUtils.collectAll(observationUuids, this::findByUuid, 1)
+                .thenApply(annotations -> annotations.stream()
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList()));
     }
 
     /**
@@ -442,7 +637,7 @@ public class AnnoService implements AnnotationService, RetrofitWebService {
      * @return
      */
     public CompletableFuture<Image> findImageByUrl(URL url) {
-        return sendRequest(imageService.findByUrl(url.toExternalForm()));
+        return sendRequestOrNull(imageService.findByUrl(url.toExternalForm()));
     }
 
     /**
@@ -451,7 +646,7 @@ public class AnnoService implements AnnotationService, RetrofitWebService {
      * @return
      */
     public CompletableFuture<Image> findImageByUuid(UUID imageReferenceUuid) {
-        return sendRequest(imageService.findByUuid(imageReferenceUuid));
+        return sendRequestOrNull(imageService.findByUuid(imageReferenceUuid));
     }
 
     @Override
@@ -475,7 +670,7 @@ public class AnnoService implements AnnotationService, RetrofitWebService {
 
     @Override
     public CompletableFuture<CachedVideoReference> findVideoReferenceByVideoReferenceUuid(UUID videoReferenceUuid) {
-        return sendRequest(videoInfoWebService.findByVideoReferenceUuid(videoReferenceUuid));
+        return sendRequestOrNull(videoInfoWebService.findByVideoReferenceUuid(videoReferenceUuid));
     }
 
     /**
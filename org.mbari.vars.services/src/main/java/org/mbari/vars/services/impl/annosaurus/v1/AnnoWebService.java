@@ -18,6 +18,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import okhttp3.ResponseBody;
 import org.mbari.vars.services.model.*;
 import org.mbari.vcr4j.time.Timecode;
 import retrofit2.Call;
@@ -140,6 +141,15 @@ public interface AnnoWebService {
     @GET("annotations/{uuid}")
     Call<Annotation> findByUuid(@Path("uuid") UUID observationUuid);
 
+    /**
+     * Bulk lookup of annotations
+     * @param observationUuids The observation UUIDs to find
+     * @return The annotations that exist
+     */
+    @POST("annotations/find/uuids")
+    Call<List<Annotation>> findByUuids(@Body Collection<UUID> observationUuids,
+            @HeaderMap Map<String, String> headers);
+
     //@GET("annotations/videoreference/{uuid}")
 //    @GET("annotations/videoreference/chunked/{uuid}")
     @GET("fast/videoreference/{uuid}")
@@ -148,6 +158,17 @@ public interface AnnoWebService {
             @Query("offset") Long offset,
             @Query("data") Boolean data);
 
+    /**
+     * Same as {@link #findByVideoReferenceUuid(UUID, Long, Long, Boolean)} but the
+     * body isn't read into memory first, so it can be parsed as it arrives.
+     */
+    @Streaming
+    @GET("fast/videoreference/{uuid}")
+    Call<ResponseBody> streamByVideoReferenceUuid(@Path("uuid") UUID uuid,
+            @Query("limit") Long limit,
+            @Query("offset") Long offset,
+            @Query("data") Boolean data);
+
     @GET("observations/groups")
     Call<List<String>> findGroups();
 
@@ -1,16 +1,9 @@
 package org.mbari.vars.services.impl.annosaurus.v1;
 
-import com.fatboyindustrial.gsonjavatime.Converters;
-import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import org.mbari.vars.services.gson.AnnotationCreator;
-import org.mbari.vars.services.gson.ByteArrayConverter;
-import org.mbari.vars.services.gson.DurationConverter;
-import org.mbari.vars.services.gson.TimecodeConverter;
+import okhttp3.OkHttpClient;
 import org.mbari.vars.services.RetrofitServiceFactory;
-import org.mbari.vars.services.model.ImagedMoment;
-import org.mbari.vcr4j.time.Timecode;
+import org.mbari.vars.services.gson.ServiceGson;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -28,21 +21,13 @@ public class AnnoWebServiceFactory extends RetrofitServiceFactory {
         super(endpoint, timeout);
     }
 
+    public AnnoWebServiceFactory(String endpoint, Duration timeout, OkHttpClient httpClient) {
+        super(endpoint, timeout, httpClient);
+    }
 
-    public Gson getGson() {
-        GsonBuilder gsonBuilder = new GsonBuilder()
-                .setPrettyPrinting()
-                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-                .setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'")
-                .registerTypeAdapter(ImagedMoment.class, new AnnotationCreator())
-                .registerTypeAdapter(Duration.class, new DurationConverter())
-                .registerTypeAdapter(Timecode.class, new TimecodeConverter())
-                .registerTypeAdapter(byte[].class, new ByteArrayConverter());
-
-        // Register java.time.Instant
-        return Converters.registerInstant(gsonBuilder)
-                .create();
 
+    public Gson getGson() {
+        return ServiceGson.snakeCase();
     }
 }
 
@@ -0,0 +1,228 @@
+package org.mbari.vars.services.impl.annosaurus.v2;
+
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
+import org.mbari.vars.services.RetryPolicy;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vcr4j.util.Preconditions;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads all the annotations for a video reference as a stream of pages, without
+ * needing to know the number of annotations first. Instead of limit/offset pages, it
+ * uses keyset paging: each page starts at the largest recordedTimestamp of the previous
+ * page. So the database never has to skip over a deep offset and annotations inserted
+ * while loading can't shift the pages. The only offset used is the number of
+ * annotations that share the cursor's timestamp, which is almost always zero or a few.
+ *
+ * Annosaurus returns annotations from the timestamp endpoint ordered by
+ * recordedTimestamp with an inclusive start and end. It doesn't promise any order for
+ * annotations with the same recordedTimestamp, so a page may end part way through a
+ * group that the next page would return in a different order. So after each full page
+ * the rest of the last timestamp's group is fetched by itself (start = end = that
+ * timestamp) and the next page skips the whole group. Only a group larger than a page
+ * has to be paged by offset, which relies on the server returning it in the same order
+ * each time. Annotations that don't have a recordedTimestamp (e.g. tapes that only have
+ * timecode) are not returned by that endpoint, so don't use this loader for those media.
+ *
+ * <pre>
+ *     StreamingAnnotationLoader loader = new StreamingAnnotationLoader(annoServiceV2,
+ *             5000, Duration.ofSeconds(30), RetryPolicy.DEFAULT);
+ *     loader.stream(videoReferenceUuid)
+ *             .subscribeOn(Schedulers.io())
+ *             .subscribe(page -&gt; ..., error -&gt; ..., () -&gt; ...);
+ * </pre>
+ *
+ * @author Brian Schlining
+ * @since 2020-10-21T15:00:00
+ */
+public class StreamingAnnotationLoader {
+
+    /**
+     * Fetches a page of annotations between two recorded timestamps. Matches
+     * {@link AnnoServiceV2#findAnnotations(UUID, Instant, Instant, Long, Long)}
+     */
+    @FunctionalInterface
+    public interface PageFetcher {
+        CompletableFuture<List<Annotation>> fetch(UUID videoReferenceUuid,
+                                                  Instant start,
+                                                  Instant end,
+                                                  Long limit,
+                                                  Long offset);
+    }
+
+    /** Used as the end of the range when one isn't given */
+    public static final Instant MAX_TIMESTAMP = Instant.parse("3000-01-01T00:00:00Z");
+
+    private final PageFetcher fetcher;
+    private final int pageSize;
+    private final Duration pageTimeout;
+    private final RetryPolicy retryPolicy;
+
+    public StreamingAnnotationLoader(AnnoServiceV2 service,
+                                     int pageSize,
+                                     Duration pageTimeout,
+                                     RetryPolicy retryPolicy) {
+        this(service::findAnnotations, pageSize, pageTimeout, retryPolicy);
+    }
+
+    /**
+     *
+     * @param fetcher Does the actual page requests
+     * @param pageSize The number of annotations requested per page
+     * @param pageTimeout The maximum time to wait for a page
+     * @param retryPolicy Used to retry failed page requests
+     */
+    public StreamingAnnotationLoader(PageFetcher fetcher,
+                                     int pageSize,
+                                     Duration pageTimeout,
+                                     RetryPolicy retryPolicy) {
+        Preconditions.checkArgument(pageSize > 0, "pageSize must be greater than 0");
+        this.fetcher = fetcher;
+        this.pageSize = pageSize;
+        this.pageTimeout = pageTimeout;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @param videoReferenceUuid The video reference whose annotations we want
+     * @return A cold flowable of pages. Each page is only requested when the subscriber
+     *  asks for it. The request is blocking so you will want to subscribe on an io
+     *  scheduler.
+     */
+    public Flowable<List<Annotation>> stream(UUID videoReferenceUuid) {
+        return stream(videoReferenceUuid, Instant.EPOCH, MAX_TIMESTAMP);
+    }
+
+    /**
+     * @param videoReferenceUuid The video reference whose annotations we want
+     * @param start Only annotations with recordedTimestamps at or after this are returned
+     * @param end Only annotations with recordedTimestamps at or before this are returned
+     * @return A cold flowable of pages. Each page is only requested when the subscriber
+     *  asks for it.
+     */
+    public Flowable<List<Annotation>> stream(UUID videoReferenceUuid, Instant start, Instant end) {
+        return Flowable.generate(() -> new Cursor(start),
+                (cursor, emitter) -> {
+                    next(videoReferenceUuid, end, cursor, emitter);
+                });
+    }
+
+    private void next(UUID videoReferenceUuid,
+                      Instant end,
+                      Cursor cursor,
+                      Emitter<List<Annotation>> emitter) {
+        if (cursor.done) {
+            emitter.onComplete();
+            return;
+        }
+
+        Instant start = cursor.timestamp;
+        long offset = cursor.seenAtTimestamp.size();
+        List<Annotation> page = fetch(videoReferenceUuid, start, end, offset);
+
+        if (page.size() < pageSize) {
+            cursor.done = true;
+        }
+
+        List<Annotation> annotations = cursor.advance(page);
+        if (!cursor.done && !annotations.isEmpty()) {
+            annotations.addAll(completeGroup(videoReferenceUuid, cursor));
+        }
+        if (!annotations.isEmpty()) {
+            emitter.onNext(annotations);
+        }
+        else if (!cursor.done) {
+            // A full page that we've already seen. The server isn't honoring the cursor.
+            emitter.onError(new IllegalStateException("Keyset paging for " + videoReferenceUuid +
+                    " stalled at " + start));
+        }
+        else {
+            emitter.onComplete();
+        }
+    }
+
+    /**
+     * Fetches every annotation at the cursor's timestamp that hasn't been seen yet, so
+     * that the next page can skip the whole group by offset in whatever order the server
+     * returns it.
+     */
+    private List<Annotation> completeGroup(UUID videoReferenceUuid, Cursor cursor) {
+        Instant timestamp = cursor.timestamp;
+        List<Annotation> fresh = new ArrayList<>();
+        long offset = 0;
+        while (true) {
+            List<Annotation> group = fetch(videoReferenceUuid, timestamp, timestamp, offset);
+            List<Annotation> unseen = cursor.advance(group);
+            fresh.addAll(unseen);
+            // A group larger than a page is paged by offset. Stop if the server isn't
+            // honoring the offset
+            if (group.size() < pageSize || unseen.isEmpty()) {
+                return fresh;
+            }
+            offset += group.size();
+        }
+    }
+
+    private List<Annotation> fetch(UUID videoReferenceUuid, Instant start, Instant end, long offset) {
+        return retryPolicy.execute(() -> {
+            try {
+                return fetcher.fetch(videoReferenceUuid, start, end, (long) pageSize, offset)
+                        .get(pageTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Failed to fetch annotations for " + videoReferenceUuid +
+                        " starting at " + start + " (offset " + offset + ")", e);
+            }
+        });
+    }
+
+    /**
+     * The position of the stream: the largest recordedTimestamp seen so far and the
+     * observations, at exactly that timestamp, that have already been emitted.
+     */
+    private static class Cursor {
+        Instant timestamp;
+        Set<UUID> seenAtTimestamp = new HashSet<>();
+        boolean done = false;
+
+        Cursor(Instant timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * Moves the cursor past a page.
+         * @return The annotations in the page that have not already been emitted
+         */
+        List<Annotation> advance(List<Annotation> page) {
+            List<Annotation> fresh = new ArrayList<>(page.size());
+            for (Annotation a : page) {
+                Instant t = a.getRecordedTimestamp();
+                if (t == null) {
+                    continue;
+                }
+                if (t.equals(timestamp)) {
+                    if (seenAtTimestamp.add(a.getObservationUuid())) {
+                        fresh.add(a);
+                    }
+                }
+                else if (t.isAfter(timestamp)) {
+                    timestamp = t;
+                    seenAtTimestamp = new HashSet<>();
+                    seenAtTimestamp.add(a.getObservationUuid());
+                    fresh.add(a);
+                }
+            }
+            return fresh;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package org.mbari.vars.services.impl.panoptes.v1;
 
+import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.mbari.vars.services.ImageEncoder;
 import org.mbari.vars.services.model.ImageUploadResults;
 import org.mbari.vars.services.AuthService;
 import org.mbari.vars.services.ImageArchiveService;
@@ -9,6 +12,7 @@ import org.mbari.vars.services.RetrofitWebService;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -19,6 +23,8 @@ import java.util.concurrent.CompletableFuture;
  */
 public class PanoptesService implements ImageArchiveService, RetrofitWebService {
 
+    private static final MediaType TEXT = MediaType.parse("text/plain");
+
     private final PanoptesWebService webService;
     private final Map<String, String> defaultHeaders;
 
@@ -34,15 +40,60 @@ public class PanoptesService implements ImageArchiveService, RetrofitWebService
     @Override
     public CompletableFuture<ImageUploadResults> upload(String cameraId, String deploymentId, String name, java.nio.file.Path image) {
         RequestBody requestBody = RequestBody.create(MultipartBody.FORM, image.toFile());
-        MultipartBody.Part body = MultipartBody.Part.createFormData("file",
-                image.getFileName().toString(),
-                requestBody);
+        return upload(cameraId, deploymentId, name, image.getFileName().toString(), requestBody);
+    }
+
+    /**
+     * The image is encoded directly into the request body as it's sent, so it's never
+     * written to disk or buffered as a whole.
+     */
+    @Override
+    public CompletableFuture<ImageUploadResults> upload(String cameraId, String deploymentId, String name, ImageEncoder image) {
+        return upload(cameraId, deploymentId, name, name, new ImageEncoderRequestBody(image));
+    }
+
+    private CompletableFuture<ImageUploadResults> upload(String cameraId,
+                                                         String deploymentId,
+                                                         String name,
+                                                         String filename,
+                                                         RequestBody requestBody) {
+        MultipartBody.Part body = MultipartBody.Part.createFormData("file", filename, requestBody);
+        // The name part is just the name. It used to be the image again, which doubled every upload
         return sendRequest(webService.uploadImage(cameraId, deploymentId, name, body,
-                requestBody, defaultHeaders));
+                RequestBody.create(TEXT, name), defaultHeaders));
     }
 
     @Override
     public CompletableFuture<ImageUploadResults> locate(String cameraId, String deploymentId, String name) {
-        return sendRequest(webService.findImage(cameraId, deploymentId, name));
+        return sendRequestOrNull(webService.findImage(cameraId, deploymentId, name));
+    }
+
+    /**
+     * Streams an {@link ImageEncoder}. If the length isn't known until it's encoded the request
+     * is sent chunked.
+     */
+    private static class ImageEncoderRequestBody extends RequestBody {
+        private final ImageEncoder encoder;
+        private final MediaType mediaType;
+
+        ImageEncoderRequestBody(ImageEncoder encoder) {
+            this.encoder = encoder;
+            this.mediaType = MediaType.parse(encoder.getMediaType());
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mediaType;
+        }
+
+        @Override
+        public long contentLength() {
+            return encoder.getContentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            encoder.encode(sink.outputStream());
+        }
     }
 }
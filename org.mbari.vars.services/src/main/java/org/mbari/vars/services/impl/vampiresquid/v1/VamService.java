@@ -119,18 +119,18 @@ public class VamService implements MediaService, RetrofitWebService {
 
     @Override
     public CompletableFuture<Media> findByUuid(UUID uuid) {
-        return sendRequest(vamWebService.findByUuid(uuid));
+        return sendRequestOrNull(vamWebService.findByUuid(uuid));
     }
 
     @Override
     public CompletableFuture<Media> findBySha512(byte[] sha512) {
         String hex = ByteArrayConverter.encode(sha512);
-        return sendRequest(vamWebService.findBySha512(hex));
+        return sendRequestOrNull(vamWebService.findBySha512(hex));
     }
 
     @Override
     public CompletableFuture<Media> findByUri(URI uri) {
-        return sendRequest(vamWebService.findByUri(uri));
+        return sendRequestOrNull(vamWebService.findByUri(uri));
     }
 
     @Override
@@ -195,15 +195,15 @@ public class VamService implements MediaService, RetrofitWebService {
     }
 
     public CompletableFuture<LastUpdate> findLastVideoSequenceUpdate(UUID uuid) {
-        return sendRequest(vamWebService.findLastVideoSequenceUpdate(uuid));
+        return sendRequestOrNull(vamWebService.findLastVideoSequenceUpdate(uuid));
     }
 
     public CompletableFuture<LastUpdate> findLastVideoUpdate(UUID uuid) {
-        return sendRequest(vamWebService.findLastVideoUpdate(uuid));
+        return sendRequestOrNull(vamWebService.findLastVideoUpdate(uuid));
     }
 
     public CompletableFuture<LastUpdate> findLastVideoReferenceUpdate(UUID uuid) {
-        return sendRequest(vamWebService.findLastVideoReferenceUpdate(uuid));
+        return sendRequestOrNull(vamWebService.findLastVideoReferenceUpdate(uuid));
     }
 
     private void addField(Map<String, String> map, String key, Object value) {
@@ -39,13 +39,13 @@ public class KBConceptService implements ConceptService, RetrofitWebService {
     }
 
     public CompletableFuture<Optional<Concept>> findParent(String name) {
-        return sendRequest(service.findParentBranch(name))
+        return sendRequestOrNull(service.findParentBranch(name))
                 .thenApply(c -> findParent(c, name));
     }
 
     @Override
     public CompletableFuture<Optional<ConceptDetails>> findDetails(String name) {
-        return sendRequest(service.findDetails(name)).thenApply(Optional::ofNullable);
+        return sendRequestOrNull(service.findDetails(name)).thenApply(Optional::ofNullable);
     }
 
     public CompletableFuture<ConceptDetails> findRootDetails() {
@@ -70,7 +70,7 @@ public class KBConceptService implements ConceptService, RetrofitWebService {
 
     @Override
     public CompletableFuture<Optional<Concept>> findConcept(String name) {
-        return sendRequest(service.findTree(name)).thenApply(Optional::ofNullable);
+        return sendRequestOrNull(service.findTree(name)).thenApply(Optional::ofNullable);
     }
 
     @Override
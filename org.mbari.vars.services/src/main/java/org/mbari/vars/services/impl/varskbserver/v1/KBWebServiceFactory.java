@@ -1,13 +1,9 @@
 package org.mbari.vars.services.impl.varskbserver.v1;
 
-import com.fatboyindustrial.gsonjavatime.Converters;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import org.mbari.vars.services.gson.ByteArrayConverter;
-import org.mbari.vars.services.gson.DurationConverter;
-import org.mbari.vars.services.gson.TimecodeConverter;
+import okhttp3.OkHttpClient;
 import org.mbari.vars.services.RetrofitServiceFactory;
-import org.mbari.vcr4j.time.Timecode;
+import org.mbari.vars.services.gson.ServiceGson;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -28,18 +24,16 @@ public class KBWebServiceFactory extends RetrofitServiceFactory {
         super(endpoint, timeout, executor);
     }
 
+    public KBWebServiceFactory(String endpoint,
+            Duration timeout,
+            Executor executor,
+            OkHttpClient httpClient) {
+        super(endpoint, timeout, executor, httpClient);
+    }
 
-    public Gson getGson() {
-        GsonBuilder gsonBuilder = new GsonBuilder()
-                .setPrettyPrinting()
-                .setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'")
-                .registerTypeAdapter(Duration.class, new DurationConverter())
-                .registerTypeAdapter(Timecode.class, new TimecodeConverter())
-                .registerTypeAdapter(byte[].class, new ByteArrayConverter());
-
-        // Register java.time.Instant
-        return Converters.registerInstant(gsonBuilder).create();
 
+    public Gson getGson() {
+        return ServiceGson.camelCase();
     }
 
 }
@@ -41,7 +41,7 @@ public class KBPrefService implements PreferencesService, RetrofitWebService {
 
     @Override
     public CompletableFuture<Optional<PreferenceNode>> update(PreferenceNode node) {
-        return sendRequest(prefService.update(node.getName(),
+        return sendRequestOrNull(prefService.update(node.getName(),
                 node.getKey(),
                 node.getValue(),
                 defaultHeaders))
@@ -65,7 +65,7 @@ public class KBPrefService implements PreferencesService, RetrofitWebService {
 
     @Override
     public CompletableFuture<Optional<PreferenceNode>> findByNameAndKey(String nodeName, String key) {
-        return sendRequest(prefService.findByNameAndKey(nodeName, key))
+        return sendRequestOrNull(prefService.findByNameAndKey(nodeName, key))
                 .thenApply(Optional::ofNullable);
     }
 
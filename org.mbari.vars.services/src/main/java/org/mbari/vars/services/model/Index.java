@@ -99,4 +99,8 @@ public class Index {
     public Instant getLastUpdatedTime() {
         return lastUpdatedTime;
     }
+
+    public void setLastUpdatedTime(Instant lastUpdatedTime) {
+        this.lastUpdatedTime = lastUpdatedTime;
+    }
 }
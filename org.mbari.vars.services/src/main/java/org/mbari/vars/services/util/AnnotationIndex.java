@@ -0,0 +1,303 @@
+package org.mbari.vars.services.util;
+
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Association;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Indexes annotations by observation UUID with secondary indices by imaged moment UUID,
+ * concept, association (by link name and by link name, to concept and link value),
+ * group and activity. Lookups are O(1) (plus the size of the result) instead of a scan
+ * of every annotation. {@link #findByQuery(CompiledAnnotationQuery)} starts from the
+ * smallest index the query can use and only tests those annotations.
+ *
+ * Annotations are mutable, so the keys that an annotation was indexed under are
+ * remembered when it's added. If an annotation is modified, {@link #put(Annotation)} it
+ * again to re-index it.
+ *
+ * This class is not thread-safe. In the UI it's owned by the JavaFX thread.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-23T10:00:00
+ */
+public class AnnotationIndex {
+
+    /**
+     * The keys an annotation was indexed under.
+     */
+    private static class Keys {
+        final UUID imagedMomentUuid;
+        final String concept;
+        final String group;
+        final String activity;
+        final Set<String> linkNames;
+        final Set<String> associations;
+
+        Keys(Annotation a) {
+            imagedMomentUuid = a.getImagedMomentUuid();
+            concept = a.getConcept();
+            group = a.getGroup();
+            activity = a.getActivity();
+            List<Association> xs = a.getAssociations();
+            linkNames = xs == null ? Collections.emptySet() :
+                    xs.stream()
+                            .filter(Objects::nonNull)
+                            .map(Association::getLinkName)
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toSet());
+            associations = xs == null ? Collections.emptySet() :
+                    xs.stream()
+                            .filter(Objects::nonNull)
+                            .map(x -> associationKey(x.getLinkName(), x.getToConcept(), x.getLinkValue()))
+                            .collect(Collectors.toSet());
+        }
+    }
+
+    private final Map<UUID, Annotation> byObservation = new HashMap<>();
+    private final Map<UUID, Keys> keys = new HashMap<>();
+    private final Map<UUID, Set<UUID>> byImagedMoment = new HashMap<>();
+    private final Map<String, Set<UUID>> byConcept = new HashMap<>();
+    private final Map<String, Set<UUID>> byLinkName = new HashMap<>();
+    private final Map<String, Set<UUID>> byAssociation = new HashMap<>();
+    private final Map<String, Set<UUID>> byGroup = new HashMap<>();
+    private final Map<String, Set<UUID>> byActivity = new HashMap<>();
+
+    /**
+     * Adds or re-indexes an annotation.
+     * @param annotation The annotation to index. Annotations without an observationUuid
+     *                   are ignored
+     * @return The annotation with the same observationUuid that was replaced. Empty if
+     *  there wasn't one.
+     */
+    public Optional<Annotation> put(Annotation annotation) {
+        UUID uuid = annotation.getObservationUuid();
+        if (uuid == null) {
+            return Optional.empty();
+        }
+        Annotation previous = byObservation.put(uuid, annotation);
+        unindex(uuid);
+        Keys k = new Keys(annotation);
+        keys.put(uuid, k);
+        link(byImagedMoment, k.imagedMomentUuid, uuid);
+        link(byConcept, k.concept, uuid);
+        link(byGroup, k.group, uuid);
+        link(byActivity, k.activity, uuid);
+        for (String linkName : k.linkNames) {
+            link(byLinkName, linkName, uuid);
+        }
+        for (String association : k.associations) {
+            link(byAssociation, association, uuid);
+        }
+        return Optional.ofNullable(previous);
+    }
+
+    public void putAll(Collection<Annotation> annotations) {
+        annotations.forEach(this::put);
+    }
+
+    /**
+     * @param observationUuid The observation to remove
+     * @return The annotation that was removed. Empty if it wasn't indexed
+     */
+    public Optional<Annotation> remove(UUID observationUuid) {
+        if (observationUuid == null) {
+            return Optional.empty();
+        }
+        Annotation previous = byObservation.remove(observationUuid);
+        unindex(observationUuid);
+        return Optional.ofNullable(previous);
+    }
+
+    public void clear() {
+        byObservation.clear();
+        keys.clear();
+        byImagedMoment.clear();
+        byConcept.clear();
+        byLinkName.clear();
+        byAssociation.clear();
+        byGroup.clear();
+        byActivity.clear();
+    }
+
+    public int size() {
+        return byObservation.size();
+    }
+
+    public boolean contains(UUID observationUuid) {
+        return observationUuid != null && byObservation.containsKey(observationUuid);
+    }
+
+    public Optional<Annotation> get(UUID observationUuid) {
+        return observationUuid == null ? Optional.empty() :
+                Optional.ofNullable(byObservation.get(observationUuid));
+    }
+
+    /**
+     * @return All annotations that share an imaged moment, in the order they were added
+     */
+    public List<Annotation> findByImagedMomentUuid(UUID imagedMomentUuid) {
+        return lookup(byImagedMoment, imagedMomentUuid);
+    }
+
+    public List<Annotation> findByConcept(String concept) {
+        return lookup(byConcept, concept);
+    }
+
+    /**
+     * @return All annotations with at least one association with the link name
+     */
+    public List<Annotation> findByLinkName(String linkName) {
+        return lookup(byLinkName, linkName);
+    }
+
+    /**
+     * Finds the annotations that match a query. The smallest of the indices that the
+     * query's criteria can use (concepts, association, link name, group or activity)
+     * gives the candidates, which are then tested against the whole query.
+     *
+     * @return The matching annotations. Annotations without an observationUuid aren't
+     *  indexed so they're never found.
+     */
+    public List<Annotation> findByQuery(CompiledAnnotationQuery query) {
+        List<Set<UUID>> candidates = null;
+        int size = Integer.MAX_VALUE;
+
+        List<List<Set<UUID>>> options = new ArrayList<>();
+        if (query.getConcepts() != null) {
+            List<Set<UUID>> xs = new ArrayList<>();
+            for (String concept : query.getConcepts()) {
+                Set<UUID> uuids = byConcept.get(concept);
+                if (uuids != null) {
+                    xs.add(uuids);
+                }
+            }
+            options.add(xs);
+        }
+        if (query.getLinkName() != null && query.getToConcept() != null && query.getLinkValue() != null) {
+            options.add(postings(byAssociation,
+                    associationKey(query.getLinkName(), query.getToConcept(), query.getLinkValue())));
+        }
+        else if (query.getLinkName() != null) {
+            options.add(postings(byLinkName, query.getLinkName()));
+        }
+        if (query.getGroup() != null) {
+            options.add(postings(byGroup, query.getGroup()));
+        }
+        if (query.getActivity() != null) {
+            options.add(postings(byActivity, query.getActivity()));
+        }
+        for (List<Set<UUID>> xs : options) {
+            int n = xs.stream().mapToInt(Set::size).sum();
+            if (n < size) {
+                candidates = xs;
+                size = n;
+            }
+        }
+
+        // When a single index answers the whole query there's nothing left to test
+        boolean associationIndexed = query.getLinkName() != null &&
+                ((query.getToConcept() == null) == (query.getLinkValue() == null));
+        int criteria = (query.getConcepts() == null ? 0 : 1) +
+                (query.hasAssociationCriteria() ? 1 : 0) +
+                (query.getGroup() == null ? 0 : 1) +
+                (query.getActivity() == null ? 0 : 1);
+        boolean exact = criteria == 1 && (!query.hasAssociationCriteria() || associationIndexed);
+
+        List<Annotation> annotations = new ArrayList<>();
+        if (candidates == null) {
+            // Nothing to narrow it down with
+            for (Annotation a : byObservation.values()) {
+                if (query.test(a)) {
+                    annotations.add(a);
+                }
+            }
+        }
+        else {
+            // An annotation has one concept so the concept postings don't overlap
+            for (Set<UUID> uuids : candidates) {
+                for (UUID uuid : uuids) {
+                    Annotation a = byObservation.get(uuid);
+                    if (exact || query.test(a)) {
+                        annotations.add(a);
+                    }
+                }
+            }
+        }
+        return annotations;
+    }
+
+    /**
+     * @return The concepts that have at least one annotation
+     */
+    public Set<String> getConcepts() {
+        return Collections.unmodifiableSet(byConcept.keySet());
+    }
+
+    private <K> List<Annotation> lookup(Map<K, Set<UUID>> index, K key) {
+        Set<UUID> uuids = key == null ? null : index.get(key);
+        if (uuids == null) {
+            return Collections.emptyList();
+        }
+        List<Annotation> annotations = new ArrayList<>(uuids.size());
+        for (UUID uuid : uuids) {
+            annotations.add(byObservation.get(uuid));
+        }
+        return annotations;
+    }
+
+    private static List<Set<UUID>> postings(Map<String, Set<UUID>> index, String key) {
+        Set<UUID> uuids = index.get(key);
+        return uuids == null ? Collections.emptyList() : Collections.singletonList(uuids);
+    }
+
+    /** NUL won't be in a link name or value, so keys for different associations can't collide */
+    private static String associationKey(String linkName, String toConcept, String linkValue) {
+        return linkName + '\u0000' + toConcept + '\u0000' + linkValue;
+    }
+
+    private void unindex(UUID observationUuid) {
+        Keys k = keys.remove(observationUuid);
+        if (k != null) {
+            unlink(byImagedMoment, k.imagedMomentUuid, observationUuid);
+            unlink(byConcept, k.concept, observationUuid);
+            unlink(byGroup, k.group, observationUuid);
+            unlink(byActivity, k.activity, observationUuid);
+            for (String linkName : k.linkNames) {
+                unlink(byLinkName, linkName, observationUuid);
+            }
+            for (String association : k.associations) {
+                unlink(byAssociation, association, observationUuid);
+            }
+        }
+    }
+
+    private static <K> void link(Map<K, Set<UUID>> index, K key, UUID observationUuid) {
+        if (key != null) {
+            index.computeIfAbsent(key, x -> new LinkedHashSet<>()).add(observationUuid);
+        }
+    }
+
+    private static <K> void unlink(Map<K, Set<UUID>> index, K key, UUID observationUuid) {
+        if (key != null) {
+            Set<UUID> uuids = index.get(key);
+            if (uuids != null) {
+                uuids.remove(observationUuid);
+                if (uuids.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+    }
+}
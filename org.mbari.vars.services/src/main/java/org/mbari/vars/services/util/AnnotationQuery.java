@@ -0,0 +1,198 @@
+package org.mbari.vars.services.util;
+
+import org.mbari.vars.services.ConceptService;
+import org.mbari.vars.services.model.Concept;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A search for annotations, like the ones the bulk editor runs: a concept (optionally
+ * with all of its descendants), an association's link name, to concept and/or link value,
+ * a group and an activity. Criteria that aren't set match anything.
+ *
+ * A query is compiled once into a {@link CompiledAnnotationQuery}, which resolves the
+ * concept's descendants through the {@link ConceptService} up front. The compiled query
+ * can then be tested against each annotation or used to look annotations up in an
+ * {@link AnnotationIndex}.
+ *
+ * <pre>
+ *     AnnotationQuery query = AnnotationQuery.builder()
+ *             .concept("Siphonophorae", true)
+ *             .linkName("eating")
+ *             .build();
+ *     query.compile(conceptService)
+ *             .thenAccept(q -&gt; index.findByQuery(q));
+ * </pre>
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T19:00:00
+ */
+public class AnnotationQuery {
+
+    private final String concept;
+    private final boolean includeDescendants;
+    private final String linkName;
+    private final String toConcept;
+    private final String linkValue;
+    private final String group;
+    private final String activity;
+
+    private AnnotationQuery(Builder builder) {
+        this.concept = builder.concept;
+        this.includeDescendants = builder.includeDescendants;
+        this.linkName = builder.linkName;
+        this.toConcept = builder.toConcept;
+        this.linkValue = builder.linkValue;
+        this.group = builder.group;
+        this.activity = builder.activity;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String getConcept() {
+        return concept;
+    }
+
+    public boolean isIncludeDescendants() {
+        return includeDescendants;
+    }
+
+    public String getLinkName() {
+        return linkName;
+    }
+
+    public String getToConcept() {
+        return toConcept;
+    }
+
+    public String getLinkValue() {
+        return linkValue;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public String getActivity() {
+        return activity;
+    }
+
+    /**
+     * Compiles the query, looking up the concept's descendants if they're included. If
+     * the concept isn't in the knowledgebase only the concept itself is matched.
+     *
+     * @param conceptService Used to find the descendants. Use a caching service, the
+     *                       branch is fetched every time a query is compiled
+     * @return The compiled query
+     */
+    public CompletableFuture<CompiledAnnotationQuery> compile(ConceptService conceptService) {
+        if (concept == null || !includeDescendants) {
+            return CompletableFuture.completedFuture(compile());
+        }
+        return conceptService.findConcept(concept)
+                .thenApply(opt -> {
+                    Set<String> concepts = new HashSet<>();
+                    concepts.add(concept);
+                    opt.map(Concept::flatten).ifPresent(concepts::addAll);
+                    return compile(concepts);
+                });
+    }
+
+    /**
+     * Compiles the query without looking up descendants. Only the concept itself is matched.
+     *
+     * @return The compiled query
+     */
+    public CompiledAnnotationQuery compile() {
+        return compile(concept == null ? null : Set.of(concept));
+    }
+
+    /**
+     * Compiles the query using concepts that have already been resolved (e.g. the
+     * concept and its descendants).
+     *
+     * @param concepts The concepts to match. null matches any concept
+     * @return The compiled query
+     */
+    public CompiledAnnotationQuery compile(Collection<String> concepts) {
+        return new CompiledAnnotationQuery(concepts == null ? null : Set.copyOf(concepts),
+                linkName, toConcept, linkValue, group, activity);
+    }
+
+    @Override
+    public String toString() {
+        return "AnnotationQuery{" +
+                "concept='" + concept + '\'' +
+                ", includeDescendants=" + includeDescendants +
+                ", linkName='" + linkName + '\'' +
+                ", toConcept='" + toConcept + '\'' +
+                ", linkValue='" + linkValue + '\'' +
+                ", group='" + group + '\'' +
+                ", activity='" + activity + '\'' +
+                '}';
+    }
+
+    public static class Builder {
+        private String concept;
+        private boolean includeDescendants;
+        private String linkName;
+        private String toConcept;
+        private String linkValue;
+        private String group;
+        private String activity;
+
+        private Builder() {
+        }
+
+        public Builder concept(String concept) {
+            return concept(concept, false);
+        }
+
+        public Builder concept(String concept, boolean includeDescendants) {
+            this.concept = concept;
+            this.includeDescendants = includeDescendants;
+            return this;
+        }
+
+        public Builder linkName(String linkName) {
+            this.linkName = linkName;
+            return this;
+        }
+
+        public Builder toConcept(String toConcept) {
+            this.toConcept = toConcept;
+            return this;
+        }
+
+        public Builder linkValue(String linkValue) {
+            this.linkValue = linkValue;
+            return this;
+        }
+
+        /**
+         * Matches associations with the same link name, to concept and link value
+         */
+        public Builder association(String linkName, String toConcept, String linkValue) {
+            return linkName(linkName).toConcept(toConcept).linkValue(linkValue);
+        }
+
+        public Builder group(String group) {
+            this.group = group;
+            return this;
+        }
+
+        public Builder activity(String activity) {
+            this.activity = activity;
+            return this;
+        }
+
+        public AnnotationQuery build() {
+            return new AnnotationQuery(this);
+        }
+    }
+}
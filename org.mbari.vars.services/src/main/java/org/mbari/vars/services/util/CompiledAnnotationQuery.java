@@ -0,0 +1,119 @@
+package org.mbari.vars.services.util;
+
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Association;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * An {@link AnnotationQuery} with its concepts resolved. {@link #test(Annotation)} only
+ * checks the criteria that were set, cheapest first, so a search doesn't re-evaluate
+ * every criterion for every annotation. Use {@link AnnotationIndex#findByQuery(CompiledAnnotationQuery)}
+ * to avoid testing most annotations at all.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T19:00:00
+ */
+public class CompiledAnnotationQuery implements Predicate<Annotation> {
+
+    private final Set<String> concepts;
+    private final String linkName;
+    private final String toConcept;
+    private final String linkValue;
+    private final String group;
+    private final String activity;
+    private final Predicate<Annotation> predicate;
+
+    CompiledAnnotationQuery(Set<String> concepts,
+                            String linkName,
+                            String toConcept,
+                            String linkValue,
+                            String group,
+                            String activity) {
+        this.concepts = concepts;
+        this.linkName = linkName;
+        this.toConcept = toConcept;
+        this.linkValue = linkValue;
+        this.group = group;
+        this.activity = activity;
+        this.predicate = compile();
+    }
+
+    private Predicate<Annotation> compile() {
+        List<Predicate<Annotation>> clauses = new ArrayList<>();
+        if (group != null) {
+            clauses.add(a -> group.equals(a.getGroup()));
+        }
+        if (activity != null) {
+            clauses.add(a -> activity.equals(a.getActivity()));
+        }
+        if (concepts != null) {
+            if (concepts.size() == 1) {
+                String concept = concepts.iterator().next();
+                clauses.add(a -> concept.equals(a.getConcept()));
+            }
+            else {
+                clauses.add(a -> a.getConcept() != null && concepts.contains(a.getConcept()));
+            }
+        }
+        if (hasAssociationCriteria()) {
+            clauses.add(a -> {
+                for (Association ass : a.getAssociations()) {
+                    if (matches(ass)) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+        return clauses.stream()
+                .reduce(Predicate::and)
+                .orElse(a -> true);
+    }
+
+    private boolean matches(Association a) {
+        return a != null &&
+                (linkName == null || linkName.equals(a.getLinkName())) &&
+                (toConcept == null || toConcept.equals(a.getToConcept())) &&
+                (linkValue == null || linkValue.equals(a.getLinkValue()));
+    }
+
+    @Override
+    public boolean test(Annotation annotation) {
+        return predicate.test(annotation);
+    }
+
+    /**
+     * @return The concepts to match (including descendants). null if any concept matches
+     */
+    public Set<String> getConcepts() {
+        return concepts;
+    }
+
+    public String getLinkName() {
+        return linkName;
+    }
+
+    public String getToConcept() {
+        return toConcept;
+    }
+
+    public String getLinkValue() {
+        return linkValue;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public String getActivity() {
+        return activity;
+    }
+
+    public boolean hasAssociationCriteria() {
+        return linkName != null || toConcept != null || linkValue != null;
+    }
+}
@@ -0,0 +1,89 @@
+package org.mbari.vars.services.util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Optional;
+
+/**
+ * Finds the width and height of images without decoding (or converting) them. Encoded
+ * images only have their header read, which is buffered in memory rather than in one of
+ * ImageIO's temp files.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T22:00:00
+ */
+public class ImageDimensions {
+
+    private ImageDimensions() {
+        // No instantiation
+    }
+
+    /**
+     * @param image An image
+     * @return The image's size. Empty if it's not known yet (e.g. a toolkit image that's
+     *      still loading)
+     */
+    public static Optional<Dimension> of(Image image) {
+        if (image instanceof BufferedImage) {
+            BufferedImage bi = (BufferedImage) image;
+            return Optional.of(new Dimension(bi.getWidth(), bi.getHeight()));
+        }
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        return width < 0 || height < 0 ? Optional.empty() : Optional.of(new Dimension(width, height));
+    }
+
+    /**
+     * @param path An image file
+     * @return The image's size read from its header. Empty if it can't be read
+     */
+    public static Optional<Dimension> read(Path path) {
+        // Closing the ImageInputStream doesn't close the stream it reads from
+        try (InputStream in = Files.newInputStream(path);
+             ImageInputStream iis = new MemoryCacheImageInputStream(in)) {
+            return read(iis);
+        }
+        catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param bytes An encoded image
+     * @return The image's size read from its header. Empty if it can't be read
+     */
+    public static Optional<Dimension> read(byte[] bytes) {
+        try (ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes))) {
+            return read(iis);
+        }
+        catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<Dimension> read(ImageInputStream iis) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        if (!readers.hasNext()) {
+            return Optional.empty();
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(iis, true, true);
+            return Optional.of(new Dimension(reader.getWidth(0), reader.getHeight(0)));
+        }
+        finally {
+            reader.dispose();
+        }
+    }
+}
@@ -15,19 +15,35 @@ public class JPGPreviewUtilities {
 
     private static final Logger log = LoggerFactory.getLogger(JPGPreviewUtilities.class);
     private static final Config config = ConfigFactory.load();
-    private static final String imageCopyrightOwner = config.getString("app.image.copyright.owner");
+    private static final String imageCopyrightOwner = config.hasPath("app.image.copyright.owner")
+            ? config.getString("app.image.copyright.owner") : "";
 
 
     /**
-     * Creates the textual overlay for the preview image
+     * Creates the textual overlay for the preview image. This is safe to call from
+     * multiple threads at once.
      *
      * @param  png Description of the Parameter
      * @param  snapTime Description of the Parameter
      * @return  A string array of ext to be overlaid onto an image.
      */
     public static String[] createOverlayText(final File png, final SnapTime snapTime) {
+        return createOverlayText(png, snapTime, imageCopyrightOwner);
+    }
+
+    /**
+     * Creates the textual overlay for the preview image
+     *
+     * @param png The image the overlay is for
+     * @param snapTime When the image was captured
+     * @param copyrightOwner Who owns the image
+     * @return  A string array of ext to be overlaid onto an image.
+     */
+    public static String[] createOverlayText(final File png,
+                                             final SnapTime snapTime,
+                                             final String copyrightOwner) {
         final String[] s = new String[4];
-        s[0] = "Copyright " + snapTime.getYear() + " " + imageCopyrightOwner;
+        s[0] = "Copyright " + snapTime.getYear() + " " + copyrightOwner;
         s[1] = png.getAbsolutePath() + " (MAIN)";
         s[2] = snapTime.getFormattedGmtTime() + " GMT (local +" +
                 snapTime.getGmtOffset().replaceFirst("-", "").replaceAll("0", "") + ")";
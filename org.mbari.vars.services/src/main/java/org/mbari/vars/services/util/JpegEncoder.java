@@ -0,0 +1,134 @@
+package org.mbari.vars.services.util;
+
+import org.mbari.vars.services.ImageEncoder;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Encodes jpgs at a fixed quality. ImageIO.write looks up a new writer (and its native
+ * state) for every image; this keeps a few writers around and reuses them. It's safe to use
+ * from several threads at once, each encode gets its own writer.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T22:00:00
+ */
+public class JpegEncoder {
+
+    public static final String MEDIA_TYPE = "image/jpeg";
+
+    /** ImageIO's default jpg quality */
+    public static final float DEFAULT_QUALITY = 0.75F;
+
+    private static final int MAX_IDLE_WRITERS = 4;
+
+    private final float quality;
+    private final Queue<ImageWriter> writers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param quality The compression quality from 0 (smallest) to 1 (best)
+     */
+    public JpegEncoder(float quality) {
+        if (quality < 0 || quality > 1) {
+            throw new IllegalArgumentException("Jpg quality must be between 0 and 1. Found " + quality);
+        }
+        this.quality = quality;
+    }
+
+    public float getQuality() {
+        return quality;
+    }
+
+    /**
+     * Writes the image as a jpg. The stream is not closed.
+     *
+     * @param image The image to encode. It must not have an alpha channel
+     * @param out Where the jpg is written
+     * @throws IOException if the image can't be encoded or written
+     */
+    public void encode(RenderedImage image, OutputStream out) throws IOException {
+        ImageWriter writer = borrow();
+        boolean ok = false;
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+            ok = true;
+        }
+        finally {
+            // A writer that failed part way through isn't reused
+            if (ok) {
+                release(writer);
+            }
+            else {
+                writer.dispose();
+            }
+        }
+    }
+
+    /**
+     * @param image The image to encode
+     * @return The image as a jpg
+     * @throws IOException if the image can't be encoded
+     */
+    public byte[] encode(RenderedImage image) throws IOException {
+        // jpgs of video frames are usually well under a byte per pixel
+        int size = Math.max(8192, image.getWidth() * image.getHeight() / 8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        encode(image, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param image The image to encode
+     * @return An encoder that encodes the image with this encoder each time it's used
+     */
+    public ImageEncoder asImageEncoder(RenderedImage image) {
+        return new ImageEncoder() {
+            @Override
+            public String getMediaType() {
+                return MEDIA_TYPE;
+            }
+
+            @Override
+            public void encode(OutputStream out) throws IOException {
+                JpegEncoder.this.encode(image, out);
+            }
+        };
+    }
+
+    private ImageWriter borrow() throws IOException {
+        ImageWriter writer = writers.poll();
+        if (writer == null) {
+            Iterator<ImageWriter> iterator = ImageIO.getImageWritersByMIMEType(MEDIA_TYPE);
+            if (!iterator.hasNext()) {
+                throw new IOException("No jpg writer is available");
+            }
+            writer = iterator.next();
+        }
+        return writer;
+    }
+
+    private void release(ImageWriter writer) {
+        writer.reset();
+        if (writers.size() < MAX_IDLE_WRITERS) {
+            writers.offer(writer);
+        }
+        else {
+            writer.dispose();
+        }
+    }
+}
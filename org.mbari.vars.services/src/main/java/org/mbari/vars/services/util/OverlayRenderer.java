@@ -0,0 +1,184 @@
+package org.mbari.vars.services.util;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Draws text over a framegrab and encodes the result as a jpg. Copying a frame into a new
+ * BufferedImage for every grab allocates 8MB (1080p) to 33MB (4K) that is garbage as soon
+ * as the jpg is written. This copies into a canvas from a small pool instead, using a plain
+ * array copy when the frame has the same layout, and hands the canvas back once it's encoded.
+ *
+ * The canvases are 3BYTE_BGR, which the jpg writer reads as is. An INT_RGB image is
+ * converted a row at a time while it's encoded, which allocates about 3 times the image's
+ * size and takes longer.
+ *
+ * Only Java2D's off-screen rendering is used so it works on a headless server.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T22:00:00
+ */
+public class OverlayRenderer {
+
+    private static final Font FONT = new Font("Monospaced", Font.PLAIN, 14);
+
+    private final JpegEncoder encoder;
+    private final int maxPooled;
+    private final Deque<BufferedImage> pool = new ArrayDeque<>();
+
+    /**
+     * @param encoder Encodes the images with their overlays
+     * @param maxPooled The most canvases kept between renders. Use the number of threads that
+     *                  render at the same time.
+     */
+    public OverlayRenderer(JpegEncoder encoder, int maxPooled) {
+        this.encoder = encoder;
+        this.maxPooled = maxPooled;
+    }
+
+    public JpegEncoder getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * @param image The framegrab. It's not modified
+     * @param overlayText The lines of text drawn in the upper left corner
+     * @return A jpg of the image with the text on it
+     * @throws IOException if the jpg can't be encoded
+     */
+    public byte[] renderJpeg(Image image, String[] overlayText) throws IOException {
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The image has not been loaded. Its size is " +
+                    width + "x" + height);
+        }
+        BufferedImage canvas = borrow(width, height);
+        try {
+            copy(image, canvas);
+            drawOverlayText(canvas, overlayText);
+            return encoder.encode(canvas);
+        }
+        finally {
+            release(canvas);
+        }
+    }
+
+    /**
+     * Draws the text, one line after another, in the upper left corner of the image.
+     *
+     * @param image The image to draw on
+     * @param overlayText The lines of text
+     */
+    public static void drawOverlayText(BufferedImage image, String[] overlayText) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setFont(FONT);
+            g.setColor(Color.CYAN);
+            final FontRenderContext frc = g.getFontRenderContext();
+            int x = 1;
+            int n = 1;
+            for (String s : overlayText) {
+                LineMetrics lineMetrics = FONT.getLineMetrics(s, frc);
+                float y = (lineMetrics.getHeight() + 1) * n + lineMetrics.getHeight();
+                g.drawString(s, x, y);
+                n++;
+            }
+        }
+        finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * @return The number of canvases waiting to be reused
+     */
+    synchronized int getPoolSize() {
+        return pool.size();
+    }
+
+    private synchronized BufferedImage borrow(int width, int height) {
+        for (Iterator<BufferedImage> i = pool.iterator(); i.hasNext(); ) {
+            BufferedImage canvas = i.next();
+            if (canvas.getWidth() == width && canvas.getHeight() == height) {
+                i.remove();
+                return canvas;
+            }
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+    }
+
+    private synchronized void release(BufferedImage canvas) {
+        // When the video's size changes the old canvases will never be used again
+        pool.removeIf(c -> c.getWidth() != canvas.getWidth() || c.getHeight() != canvas.getHeight());
+        if (pool.size() < maxPooled) {
+            pool.push(canvas);
+        }
+    }
+
+    private static void copy(Image image, BufferedImage canvas) {
+        if (image instanceof BufferedImage) {
+            byte[] src = interleavedPixels((BufferedImage) image);
+            if (src != null) {
+                byte[] dst = interleavedPixels(canvas);
+                System.arraycopy(src, 0, dst, 0, dst.length);
+                return;
+            }
+        }
+        Graphics2D g = canvas.createGraphics();
+        try {
+            boolean opaque = image instanceof BufferedImage &&
+                    ((BufferedImage) image).getTransparency() == Transparency.OPAQUE;
+            if (!opaque) {
+                // A canvas from the pool still has the last frame on it
+                g.setColor(Color.BLACK);
+                g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            }
+            g.drawImage(image, 0, 0, null);
+        }
+        finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * @return The image's pixels if they're stored as one 3BYTE_BGR array with no padding or
+     *      offsets. Otherwise null.
+     */
+    private static byte[] interleavedPixels(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_3BYTE_BGR) {
+            return null;
+        }
+        Raster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferByte) ||
+                !(raster.getSampleModel() instanceof PixelInterleavedSampleModel) ||
+                raster.getSampleModelTranslateX() != 0 ||
+                raster.getSampleModelTranslateY() != 0) {
+            return null;
+        }
+        PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+        DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+        int size = image.getWidth() * image.getHeight() * 3;
+        if (sampleModel.getPixelStride() != 3 ||
+                sampleModel.getScanlineStride() != image.getWidth() * 3 ||
+                dataBuffer.getNumBanks() != 1 ||
+                dataBuffer.getOffset() != 0 ||
+                dataBuffer.getSize() != size) {
+            return null;
+        }
+        return dataBuffer.getData();
+    }
+}
@@ -3,30 +3,31 @@ package org.mbari.vars.services.util;
 import org.mbari.vcr4j.VideoIndex;
 import org.mbari.vcr4j.time.Timecode;
 
-import java.text.DateFormat;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Calendar;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.TimeZone;
 
 /**
  * Represents an instant of time related to a Video tape. This object combines 'real' time,
  * represented by a date object, with VCR time, represented by a tape time-code.
  *
+ * SnapTimes are immutable and all the formatting uses immutable DateTimeFormatters,
+ * so they can be used from any thread.
+ *
  * @author Brian Schlining
  * @since 2013-02-15
  */
 public class SnapTime {
 
-    private final static NumberFormat format4i = new DecimalFormat("0000");
-    private final static NumberFormat format3i = new DecimalFormat("000");
-    private final static DateFormat dateFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy");
-    private final static DateFormat timezoneFormat = new SimpleDateFormat("ZZ");
-    private final Calendar gmtCalendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+    private final static DateTimeFormatter yearFormat = DateTimeFormatter.ofPattern("uuuu")
+            .withZone(ZoneOffset.UTC);
+    private final static DateTimeFormatter dayOfYearFormat = DateTimeFormatter.ofPattern("DDD")
+            .withZone(ZoneOffset.UTC);
+    private final static DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy");
+    private final static DateTimeFormatter timezoneFormat = DateTimeFormatter.ofPattern("xx");
 
     private final Instant observationTimestamp;
     private final Date observationDate;
@@ -55,7 +56,7 @@ public class SnapTime {
      * @return  The timezone offset between local and GMT
      */
     String getGmtOffset() {
-        return timezoneFormat.format(observationDate);
+        return timezoneFormat.withZone(ZoneId.systemDefault()).format(observationTimestamp);
     }
 
     public String getTimecodeString() {
@@ -99,34 +100,31 @@ public class SnapTime {
     }
 
     /**
-     * @return  YYYY
+     * @return  YYYY of the observation in GMT
      */
     String getYear() {
-        return format4i.format(gmtCalendar.get(Calendar.YEAR));
+        return yearFormat.format(observationTimestamp);
     }
 
     /**
-     * @return  DDD
+     * @return  DDD of the observation in GMT
      */
     private String getDayOfYear() {
-        return format3i.format(gmtCalendar.get(Calendar.DAY_OF_YEAR));
+        return dayOfYearFormat.format(observationTimestamp);
     }
 
     /**
      * @return time formatted for the GMT timezone
      */
     String getFormattedGmtTime() {
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        return dateFormat.format(getObservationDate());
+        return dateFormat.withZone(ZoneOffset.UTC).format(observationTimestamp);
     }
 
     /**
      * @return time formatted for the local timezone
      */
     String getFormattedLocalTime() {
-        dateFormat.setTimeZone(TimeZone.getDefault());
-
-        return dateFormat.format(observationDate);
+        return dateFormat.withZone(ZoneId.systemDefault()).format(observationTimestamp);
     }
 
 }
@@ -0,0 +1,408 @@
+package org.mbari.vars.services.util;
+
+import org.mbari.vars.services.PreferencesService;
+import org.mbari.vars.services.model.PreferenceNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.BackingStoreException;
+
+/**
+ * Local copy of the remote preferences that {@link WebPreferences} reads and writes.
+ * One cache is shared by every node created from the same root.
+ *
+ * <ul>
+ *     <li>The first time a node is read, its whole subtree is loaded with a single
+ *     `findByNameLike` request. Reads of that node and its descendants are then served
+ *     from memory.</li>
+ *     <li>Writes update the local copy right away and are queued. Repeated writes to the
+ *     same key collapse into one. The queue is sent when `flush`/`sync` is called or
+ *     after no writes have happened for the flush delay.</li>
+ * </ul>
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T11:00:00
+ */
+public class WebPreferencesCache {
+
+    /** The default delay after the last write before the writes are sent */
+    public static final Duration DEFAULT_FLUSH_DELAY = Duration.ofSeconds(2);
+
+    private final PreferencesService service;
+    private final Duration timeout;
+    private final Duration flushDelay;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /** The local view: node path -> key -> value. Sorted so a subtree is a range */
+    private final NavigableMap<String, Map<String, String>> values = new TreeMap<>();
+
+    /** Keys (as node path -> keys) that exist on the server */
+    private final Map<String, Set<String>> remoteKeys = new HashMap<>();
+
+    /** Writes that haven't been sent. A null value is a remove */
+    private final Map<String, Map<String, String>> pending = new LinkedHashMap<>();
+
+    /** Writes that are being sent. Kept so a load during a flush doesn't undo them */
+    private Map<String, Map<String, String>> inFlight = Map.of();
+    private final Object flushLock = new Object();
+
+    /** Paths of the nodes whose subtree has been loaded */
+    private final Set<String> loadedPaths = new HashSet<>();
+
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param service The remote service
+     * @param timeout How long to wait for remote calls to complete
+     * @param flushDelay How long after the last write to send the pending writes. Zero or
+     *                   negative means writes are only sent by an explicit flush/sync.
+     */
+    public WebPreferencesCache(PreferencesService service, Duration timeout, Duration flushDelay) {
+        this.service = service;
+        this.timeout = timeout;
+        this.flushDelay = flushDelay;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Don't lose writes made just before the app exits
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                flush();
+            }
+            catch (BackingStoreException e) {
+                log.warn("Failed to save preferences on shutdown", e);
+            }
+        }));
+    }
+
+    public WebPreferencesCache(PreferencesService service, Duration timeout) {
+        this(service, timeout, DEFAULT_FLUSH_DELAY);
+    }
+
+    /**
+     * @param path A node path
+     * @param key The key
+     * @return The value. null if it's not set
+     */
+    public String get(String path, String key) {
+        ensureLoaded(path);
+        synchronized (this) {
+            Map<String, String> map = values.get(path);
+            return map == null ? null : map.get(key);
+        }
+    }
+
+    public void put(String path, String key, String value) {
+        ensureLoaded(path);
+        synchronized (this) {
+            values.computeIfAbsent(path, k -> new LinkedHashMap<>()).put(key, value);
+            pending.computeIfAbsent(path, k -> new LinkedHashMap<>()).put(key, value);
+        }
+        scheduleFlush();
+    }
+
+    public void remove(String path, String key) {
+        ensureLoaded(path);
+        synchronized (this) {
+            Map<String, String> map = values.get(path);
+            if (map != null) {
+                map.remove(key);
+                if (map.isEmpty()) {
+                    values.remove(path);
+                }
+            }
+            pending.computeIfAbsent(path, k -> new LinkedHashMap<>()).put(key, null);
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Removes every key of a single node. (`AbstractPreferences` calls this for each
+     * descendant separately.)
+     * @param path A node path
+     */
+    public void removeNode(String path) {
+        ensureLoaded(path);
+        synchronized (this) {
+            Map<String, String> map = values.remove(path);
+            Map<String, String> writes = pending.computeIfAbsent(path, k -> new LinkedHashMap<>());
+            if (map != null) {
+                map.keySet().forEach(key -> writes.put(key, null));
+            }
+            remoteKeys.getOrDefault(path, Set.of()).forEach(key -> writes.put(key, null));
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * @param path A node path
+     * @return The keys of the node
+     */
+    public String[] keys(String path) {
+        ensureLoaded(path);
+        synchronized (this) {
+            Map<String, String> map = values.get(path);
+            return map == null ? new String[0] : map.keySet().toArray(new String[0]);
+        }
+    }
+
+    /**
+     * @param path A node path
+     * @return The names of the node's children that have a value somewhere below them
+     */
+    public String[] childrenNames(String path) {
+        ensureLoaded(path);
+        String prefix = path.endsWith("/") ? path : path + "/";
+        Set<String> names = new LinkedHashSet<>();
+        synchronized (this) {
+            for (String p : subtree(prefix).keySet()) {
+                String childPath = p.substring(prefix.length());
+                int i = childPath.indexOf('/');
+                String name = i < 0 ? childPath : childPath.substring(0, i);
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * Sends all pending writes. The writes are sent concurrently and this waits for
+     * all of them to finish.
+     * @throws BackingStoreException If any write failed. The failed writes are kept
+     *  and retried on the next flush
+     */
+    public void flush() throws BackingStoreException {
+        synchronized (flushLock) {
+            Map<String, Map<String, String>> writes;
+            Map<String, Set<String>> existing = new HashMap<>();
+            synchronized (this) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                writes = new LinkedHashMap<>(pending);
+                pending.clear();
+                inFlight = writes;
+                writes.keySet().forEach(p -> existing.put(p, new HashSet<>(remoteKeys.getOrDefault(p, Set.of()))));
+            }
+
+            Map<CompletableFuture<Void>, PreferenceNode> requests = new LinkedHashMap<>();
+            writes.forEach((path, map) -> map.forEach((key, value) -> {
+                boolean exists = existing.get(path).contains(key);
+                if (value == null) {
+                    if (exists) {
+                        CompletableFuture<Void> f = service.delete(new PreferenceNode(path, key, ""))
+                                .thenRun(() -> remoteRemoved(path, key));
+                        requests.put(f, new PreferenceNode(path, key, null));
+                    }
+                }
+                else {
+                    PreferenceNode node = new PreferenceNode(path, key, value);
+                    CompletableFuture<Void> f = exists ? update(node) : create(node);
+                    requests.put(f, node);
+                }
+            }));
+            log.debug("Sending {} preference changes", requests.size());
+
+            try {
+                CompletableFuture.allOf(requests.keySet().toArray(new CompletableFuture[0]))
+                        .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            catch (Exception e) {
+                // Requeue whatever didn't make it, unless it's been written again since
+                int failed = 0;
+                synchronized (this) {
+                    for (Map.Entry<CompletableFuture<Void>, PreferenceNode> entry : requests.entrySet()) {
+                        CompletableFuture<Void> f = entry.getKey();
+                        if (!f.isDone() || f.isCompletedExceptionally()) {
+                            PreferenceNode node = entry.getValue();
+                            pending.computeIfAbsent(node.getName(), k -> new LinkedHashMap<>())
+                                    .putIfAbsent(node.getKey(), node.getValue());
+                            failed++;
+                        }
+                    }
+                }
+                BackingStoreException ex = new BackingStoreException("Failed to save " + failed +
+                        " of " + requests.size() + " preference changes");
+                ex.initCause(e);
+                throw ex;
+            }
+            finally {
+                synchronized (this) {
+                    inFlight = Map.of();
+                }
+            }
+        }
+    }
+
+    private CompletableFuture<Void> create(PreferenceNode node) {
+        return service.create(node)
+                .thenRun(() -> remoteAdded(node.getName(), node.getKey()));
+    }
+
+    private CompletableFuture<Void> update(PreferenceNode node) {
+        // If someone else removed it, put it back
+        return service.update(node)
+                .thenCompose(opt -> opt.isPresent() ?
+                        CompletableFuture.completedFuture(null) : create(node));
+    }
+
+    /**
+     * Reloads a subtree from the server. Pending writes are kept and still win.
+     * @param path A node path
+     */
+    public void reload(String path) {
+        synchronized (this) {
+            // If an ancestor was loaded it stays loaded. Only this subtree is reloaded
+            loadedPaths.removeIf(p -> p.equals(path) || isAncestor(path, p));
+        }
+        load(path);
+    }
+
+    /**
+     * Forget everything that was loaded. Pending writes are kept.
+     */
+    public synchronized void clear() {
+        loadedPaths.clear();
+        remoteKeys.clear();
+        values.clear();
+        pending.forEach((path, map) -> map.forEach((key, value) -> {
+            if (value != null) {
+                values.computeIfAbsent(path, k -> new LinkedHashMap<>()).put(key, value);
+            }
+        }));
+    }
+
+    private void ensureLoaded(String path) {
+        synchronized (this) {
+            for (String p : loadedPaths) {
+                if (p.equals(path) || isAncestor(p, path)) {
+                    return;
+                }
+            }
+        }
+        load(path);
+    }
+
+    private void load(String path) {
+        log.debug("Loading preferences under {}", path);
+        List<PreferenceNode> nodes;
+        try {
+            nodes = service.findByNameLike(path)
+                    .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e) {
+            log.warn("Failed to load preferences under '" + path + "'", e);
+            return;
+        }
+
+        synchronized (this) {
+            // Replace whatever we had for the subtree. Pending writes are applied on top
+            List<String> stale = new ArrayList<>();
+            if (values.containsKey(path)) {
+                stale.add(path);
+            }
+            stale.addAll(subtree(path.endsWith("/") ? path : path + "/").keySet());
+            stale.forEach(values::remove);
+            remoteKeys.keySet().removeIf(p -> p.equals(path) || isAncestor(path, p));
+
+            for (PreferenceNode node : nodes) {
+                String name = node.getName();
+                // startswith also matches siblings like /brianna for /brian
+                if (name.equals(path) || isAncestor(path, name)) {
+                    values.computeIfAbsent(name, k -> new LinkedHashMap<>()).put(node.getKey(), node.getValue());
+                    remoteKeys.computeIfAbsent(name, k -> new HashSet<>()).add(node.getKey());
+                }
+            }
+
+            applyWrites(path, inFlight);
+            applyWrites(path, pending);
+            loadedPaths.add(path);
+        }
+    }
+
+    private void applyWrites(String path, Map<String, Map<String, String>> writes) {
+        writes.forEach((p, map) -> {
+            if (p.equals(path) || isAncestor(path, p)) {
+                map.forEach((key, value) -> {
+                    if (value == null) {
+                        Map<String, String> m = values.get(p);
+                        if (m != null) {
+                            m.remove(key);
+                            if (m.isEmpty()) {
+                                values.remove(p);
+                            }
+                        }
+                    }
+                    else {
+                        values.computeIfAbsent(p, k -> new LinkedHashMap<>()).put(key, value);
+                    }
+                });
+            }
+        });
+    }
+
+    private synchronized void remoteAdded(String path, String key) {
+        remoteKeys.computeIfAbsent(path, k -> new HashSet<>()).add(key);
+    }
+
+    private synchronized void remoteRemoved(String path, String key) {
+        Set<String> keys = remoteKeys.get(path);
+        if (keys != null) {
+            keys.remove(key);
+        }
+    }
+
+    private synchronized void scheduleFlush() {
+        if (flushDelay.isZero() || flushDelay.isNegative()) {
+            return;
+        }
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = scheduler.schedule(() -> {
+            try {
+                flush();
+            }
+            catch (Exception e) {
+                log.warn("Failed to save preferences", e);
+            }
+        }, flushDelay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** The entries strictly below a prefix that ends with '/' */
+    private NavigableMap<String, Map<String, String>> subtree(String prefix) {
+        // '0' is the character after '/'
+        return values.subMap(prefix, true, prefix.substring(0, prefix.length() - 1) + '0', false);
+    }
+
+    private static boolean isAncestor(String ancestor, String path) {
+        String prefix = ancestor.endsWith("/") ? ancestor : ancestor + "/";
+        return path.startsWith(prefix) && path.length() > prefix.length();
+    }
+
+}
@@ -0,0 +1,118 @@
+package org.mbari.vars.services;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.logging.HttpLoggingInterceptor.Level;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BoundedLoggingInterceptorTest {
+
+    private static final String BODY = "[" + String.join(",", Collections.nCopies(10000, "\"abcdefgh\"")) + "]";
+
+    private MockWebServer server;
+    private final List<String> messages = new ArrayList<>();
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    private OkHttpClient newClient(Level level) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(new BoundedLoggingInterceptor(level, 100, messages::add))
+                .build();
+    }
+
+    @Test
+    public void headersDoesNotReadBody() throws Exception {
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(BODY));
+        OkHttpClient client = newClient(Level.HEADERS);
+        Request request = new Request.Builder().url(server.url("/annotations")).build();
+        try (Response response = client.newCall(request).execute()) {
+            // Nothing has pulled the body off the wire yet
+            assertEquals(0, response.body().source().getBuffer().size());
+            assertTrue(messages.stream().noneMatch(s -> s.contains("abcdefgh")));
+            assertEquals(BODY, response.body().string());
+        }
+    }
+
+    @Test
+    public void basicLogsSummary() throws Exception {
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(BODY));
+        OkHttpClient client = newClient(Level.BASIC);
+        Request request = new Request.Builder().url(server.url("/annotations")).build();
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(0, response.body().source().getBuffer().size());
+            assertEquals(1, messages.size());
+            String summary = messages.get(0);
+            assertTrue(summary.contains("status=200"));
+            assertTrue(summary.contains("elapsed_ms="));
+            assertTrue(summary.contains("response_bytes=" + BODY.length()));
+        }
+    }
+
+    @Test
+    public void bodyIsTruncated() throws Exception {
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody(BODY));
+        OkHttpClient client = newClient(Level.BODY);
+        Request request = new Request.Builder().url(server.url("/annotations")).build();
+        try (Response response = client.newCall(request).execute()) {
+            String logged = messages.stream()
+                    .filter(s -> s.startsWith("[\"abcdefgh\""))
+                    .findFirst()
+                    .orElseThrow();
+            assertTrue(logged.contains("truncated to 100 bytes"));
+            assertTrue(logged.length() < 200);
+            // The caller still gets the entire body
+            assertEquals(BODY, response.body().string());
+        }
+    }
+
+    @Test
+    public void multipartIsNotLogged() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+        OkHttpClient client = newClient(Level.BODY);
+        byte[] image = new byte[50];
+        RequestBody body = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("file", "image.png",
+                        RequestBody.create(MediaType.get("image/png"), image))
+                .build();
+        Request request = new Request.Builder()
+                .url(server.url("/images"))
+                .post(body)
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+            assertTrue(messages.stream().anyMatch(s -> s.startsWith("(multipart body omitted")));
+            assertTrue(messages.stream().noneMatch(s -> s.contains("image.png")));
+        }
+    }
+
+}
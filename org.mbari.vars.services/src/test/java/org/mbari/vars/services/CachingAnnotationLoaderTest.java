@@ -0,0 +1,126 @@
+package org.mbari.vars.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mbari.vars.services.impl.annosaurus.v1.AnnoWebServiceFactory;
+import org.mbari.vars.services.model.Annotation;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class CachingAnnotationLoaderTest {
+
+    private final UUID videoReferenceUuid = UUID.randomUUID();
+    private final Instant now = Instant.parse("2020-10-22T12:00:00Z");
+    private final List<Runnable> pending = new ArrayList<>();
+    private Path directory;
+
+    @Before
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("vars-annotation-cache");
+    }
+
+    @After
+    public void teardown() throws Exception {
+        try (var paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private List<Annotation> newAnnotations(int n) {
+        Instant t0 = Instant.parse("2020-10-22T00:00:00Z");
+        List<Annotation> annotations = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Annotation a = new Annotation();
+            a.setObservationUuid(UUID.randomUUID());
+            a.setImagedMomentUuid(UUID.randomUUID());
+            a.setVideoReferenceUuid(videoReferenceUuid);
+            a.setConcept("Nanomia");
+            a.setRecordedTimestamp(t0.plusSeconds(i));
+            annotations.add(a);
+        }
+        return annotations;
+    }
+
+    private CachingAnnotationLoader newLoader(Executor executor) {
+        AnnotationDiskCache cache = new AnnotationDiskCache(directory,
+                new AnnoWebServiceFactory("http://localhost", Duration.ofSeconds(1)).getGson());
+        return new CachingAnnotationLoader(cache, executor, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private CachingAnnotationLoader newLoader() {
+        return newLoader(Runnable::run);
+    }
+
+    @Test
+    public void missThenHit() {
+        List<Annotation> server = newAnnotations(100);
+        CachingAnnotationLoader loader = newLoader();
+        assertTrue(loader.load(videoReferenceUuid).join().isEmpty());
+        assertEquals(1, loader.getMissCount());
+        loader.save(videoReferenceUuid, server);
+
+        // A new loader reads from the disk
+        CachingAnnotationLoader loader2 = newLoader();
+        List<Annotation> annotations = loader2.load(videoReferenceUuid).join().orElseThrow();
+        assertEquals(1, loader2.getHitCount());
+        assertEquals(0, loader2.getMissCount());
+        assertEquals(100, annotations.size());
+        assertEquals(server.get(5).getObservationUuid(), annotations.get(5).getObservationUuid());
+        assertEquals(server.get(5).getRecordedTimestamp(), annotations.get(5).getRecordedTimestamp());
+        assertEquals(1D, loader2.getHitRatio(), 0.0001);
+    }
+
+    @Test
+    public void readsOnTheExecutor() {
+        newLoader().save(videoReferenceUuid, newAnnotations(10));
+        CachingAnnotationLoader loader = newLoader(pending::add);
+        CompletableFuture<Optional<List<Annotation>>> future = loader.load(videoReferenceUuid);
+        assertFalse(future.isDone());
+        assertEquals(0, loader.getHitCount());
+
+        pending.forEach(Runnable::run);
+        assertEquals(10, future.join().orElseThrow().size());
+        assertEquals(1, loader.getHitCount());
+    }
+
+    @Test
+    public void findsAnnotationsDeletedOnTheServer() {
+        List<Annotation> cached = newAnnotations(10);
+        List<Annotation> server = cached.stream()
+                .map(Annotation::new)
+                .collect(Collectors.toList());
+        Annotation deleted = server.remove(3);
+        server.get(0).setConcept("Aegina");
+        server.addAll(newAnnotations(2));
+
+        List<Annotation> removed = CachingAnnotationLoader.findRemoved(cached, server);
+        assertEquals(List.of(deleted), removed);
+        assertTrue(CachingAnnotationLoader.findRemoved(cached, cached).isEmpty());
+    }
+
+    @Test
+    public void corruptFileIsAMiss() throws Exception {
+        Files.writeString(directory.resolve(videoReferenceUuid + ".json.gz"), "not gzip");
+        CachingAnnotationLoader loader = newLoader();
+        assertTrue(loader.load(videoReferenceUuid).join().isEmpty());
+        assertEquals(1, loader.getMissCount());
+        assertFalse(Files.exists(directory.resolve(videoReferenceUuid + ".json.gz")));
+    }
+}
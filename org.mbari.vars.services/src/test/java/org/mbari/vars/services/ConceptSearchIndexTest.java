@@ -0,0 +1,136 @@
+package org.mbari.vars.services;
+
+import org.junit.Test;
+import org.mbari.vars.services.model.Concept;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ConceptSearchIndexTest {
+
+    /**
+     * Builds a synthetic tree with `breadth` children per node. Each concept is named
+     * by its path (e.g. "c-2-0-1") and every third one has an alternate name.
+     */
+    private static Concept buildTree(String name, int depth, int breadth) {
+        List<Concept> children = new ArrayList<>();
+        if (depth > 0) {
+            for (int i = 0; i < breadth; i++) {
+                children.add(buildTree(name + "-" + i, depth - 1, breadth));
+            }
+        }
+        List<String> alternateNames = name.hashCode() % 3 == 0 ?
+                List.of("Alt " + name) : Collections.emptyList();
+        return new Concept(name, "species", alternateNames, children);
+    }
+
+    private static Concept namedTree() {
+        Concept nanomia = new Concept("Nanomia bijuga", "species", List.of("Nanomia cara"), List.of());
+        Concept apolemia = new Concept("Apolemia", "genus", List.of(), List.of());
+        Concept siphonophorae = new Concept("Siphonophorae", "order", List.of(), List.of(nanomia, apolemia));
+        Concept aegina = new Concept("Aegina citrea", "species", List.of(), List.of());
+        Concept cnidaria = new Concept("Cnidaria", "phylum", List.of(), List.of(siphonophorae, aegina));
+        return new Concept("object", "", List.of(), List.of(cnidaria));
+    }
+
+    @Test
+    public void matchesAndPaths() {
+        ConceptSearchIndex index = ConceptSearchIndex.build(namedTree(), List.of("Nanomia bijuga", "orphan"));
+
+        List<ConceptSearchIndex.Match> matches = index.search("NANOMIA");
+        assertEquals(2, matches.size());
+        assertEquals("Nanomia bijuga", matches.get(0).getName());
+        assertEquals(List.of("object", "Cnidaria", "Siphonophorae", "Nanomia bijuga"), matches.get(0).getPath());
+        // The alternate name matches but belongs to the same concept
+        assertEquals("Nanomia cara", matches.get(1).getName());
+        assertEquals("Nanomia bijuga", matches.get(1).getConcept().get().getName());
+        assertEquals(Set.of("Nanomia bijuga"), index.findConceptNames("nanomia"));
+
+        // Short queries don't use trigrams
+        assertEquals(Set.of("Siphonophorae"), index.findConceptNames("ph"));
+        assertEquals(Set.of("Nanomia bijuga", "Aegina citrea"), index.findConceptNames("a "));
+        assertTrue(index.search("").isEmpty());
+        assertTrue(index.search("xyz").isEmpty());
+
+        // Names from findAllNames that aren't in the tree have no path
+        List<ConceptSearchIndex.Match> orphans = index.search("orph");
+        assertEquals(1, orphans.size());
+        assertFalse(orphans.get(0).getConcept().isPresent());
+        assertTrue(orphans.get(0).getPath().isEmpty());
+        assertEquals(List.of("object", "Cnidaria", "Aegina citrea"), index.findPath("Aegina citrea"));
+    }
+
+    @Test
+    public void trigramsAreVerified() {
+        // "abcd" has the trigrams "abc" and "bcd", as does "abcxbcd", which doesn't contain "abcd"
+        Concept root = new Concept("root", "", List.of(),
+                List.of(new Concept("abcxbcd", "", List.of(), List.of()),
+                        new Concept("zabcdz", "", List.of(), List.of())));
+        ConceptSearchIndex index = ConceptSearchIndex.build(root, List.of());
+        assertEquals(Set.of("zabcdz"), index.findConceptNames("abcd"));
+    }
+
+    @Test
+    public void sameResultsAsScanning() {
+        // 1 + 8 + 64 + 512 + 4096 + 32768 concepts
+        Concept root = buildTree("c", 5, 8);
+        ConceptSearchIndex index = ConceptSearchIndex.build(root, List.of());
+        List<Concept> all = new ArrayList<>();
+        flatten(root, all);
+        assertTrue(index.size() > all.size());
+
+        for (String query : List.of("c-3-4", "-7-7-7", "ALT C-1", "c-1-2-3-4-5", "-0", "nope")) {
+            String q = query.toLowerCase();
+            Set<String> expected = all.stream()
+                    .filter(c -> c.getName().toLowerCase().contains(q) ||
+                            c.getAlternativeNames().stream().anyMatch(n -> n.toLowerCase().contains(q)))
+                    .map(Concept::getName)
+                    .collect(Collectors.toSet());
+            assertEquals(query, expected, index.findConceptNames(query));
+        }
+    }
+
+    private static void flatten(Concept concept, List<Concept> accum) {
+        accum.add(concept);
+        concept.getChildren().forEach(c -> flatten(c, accum));
+    }
+
+    @Test
+    public void clearInvalidatesTheIndex() {
+        AtomicInteger rootRequests = new AtomicInteger();
+        ConceptService service = (ConceptService) Proxy.newProxyInstance(ConceptService.class.getClassLoader(),
+                new Class<?>[]{ConceptService.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findRoot":
+                            rootRequests.incrementAndGet();
+                            return CompletableFuture.completedFuture(namedTree());
+                        case "findAllNames":
+                            return CompletableFuture.completedFuture(List.of("Nanomia bijuga"));
+                        case "findDetails":
+                            return CompletableFuture.completedFuture(Optional.empty());
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        CachedConceptService cachedService = new CachedConceptService(service);
+        ConceptSearchIndex index = cachedService.findSearchIndex().join();
+        assertSame(index, cachedService.findSearchIndex().join());
+        int requests = rootRequests.get();
+
+        cachedService.clear();
+        ConceptSearchIndex index2 = cachedService.findSearchIndex().join();
+        assertNotSame(index, index2);
+        assertEquals(requests + 1, rootRequests.get());
+        assertEquals(Set.of("Apolemia"), index2.findConceptNames("apo"));
+    }
+}
@@ -0,0 +1,213 @@
+package org.mbari.vars.services;
+
+import org.junit.Test;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.AnnotationCount;
+import org.mbari.vars.services.model.Image;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ImageAnnotationResolverTest {
+
+    /**
+     * A backend with some videos. Every imaged moment has an image and 2 annotations.
+     */
+    private static class StubBackend {
+        final List<Image> images = new ArrayList<>();
+        final List<Annotation> annotations = new ArrayList<>();
+        final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+        UUID addVideo(int moments) {
+            UUID videoReferenceUuid = UUID.randomUUID();
+            for (int i = 0; i < moments; i++) {
+                UUID imagedMomentUuid = UUID.randomUUID();
+                Image image = new Image();
+                image.setImageReferenceUuid(UUID.randomUUID());
+                image.setImagedMomentUuid(imagedMomentUuid);
+                image.setVideoReferenceUuid(videoReferenceUuid);
+                images.add(image);
+                for (int j = 0; j < 2; j++) {
+                    Annotation a = new Annotation();
+                    a.setObservationUuid(UUID.randomUUID());
+                    a.setImagedMomentUuid(imagedMomentUuid);
+                    a.setVideoReferenceUuid(videoReferenceUuid);
+                    annotations.add(a);
+                }
+            }
+            return videoReferenceUuid;
+        }
+
+        List<Image> imagesFor(UUID videoReferenceUuid) {
+            return images.stream()
+                    .filter(i -> i.getVideoReferenceUuid().equals(videoReferenceUuid))
+                    .collect(Collectors.toList());
+        }
+
+        int count(String method) {
+            return requests.getOrDefault(method, new AtomicInteger()).get();
+        }
+
+        int total() {
+            return requests.values().stream().mapToInt(AtomicInteger::get).sum();
+        }
+
+        AnnotationService service() {
+            return (AnnotationService) Proxy.newProxyInstance(AnnotationService.class.getClassLoader(),
+                    new Class<?>[]{AnnotationService.class},
+                    (proxy, method, args) -> {
+                        requests.computeIfAbsent(method.getName(), k -> new AtomicInteger()).incrementAndGet();
+                        switch (method.getName()) {
+                            case "findAnnotations":
+                                return CompletableFuture.completedFuture(annotations.stream()
+                                        .filter(a -> a.getVideoReferenceUuid().equals(args[0]))
+                                        .collect(Collectors.toList()));
+                            case "countAnnotations":
+                                int count = (int) annotations.stream()
+                                        .filter(a -> a.getVideoReferenceUuid().equals(args[0]))
+                                        .count();
+                                return CompletableFuture.completedFuture(new AnnotationCount((UUID) args[0], count));
+                            case "findImagesByVideoReferenceUuid":
+                                return CompletableFuture.completedFuture(imagesFor((UUID) args[0]));
+                            case "findByImageReference":
+                                UUID imagedMomentUuid = images.stream()
+                                        .filter(i -> i.getImageReferenceUuid().equals(args[0]))
+                                        .findFirst()
+                                        .map(Image::getImagedMomentUuid)
+                                        .orElse(null);
+                                return CompletableFuture.completedFuture(annotations.stream()
+                                        .filter(a -> a.getImagedMomentUuid().equals(imagedMomentUuid))
+                                        .collect(Collectors.toList()));
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+
+    private static Set<UUID> observationUuids(List<Annotation> annotations) {
+        return annotations.stream().map(Annotation::getObservationUuid).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void resolvesWithAHandfulOfRequests() {
+        StubBackend backend = new StubBackend();
+        UUID videoA = backend.addVideo(300);
+        UUID videoB = backend.addVideo(150);
+        UUID videoC = backend.addVideo(10);
+
+        List<Image> selected = new ArrayList<>(backend.imagesFor(videoA).subList(0, 200));
+        selected.addAll(backend.imagesFor(videoB));
+        // Too few to be worth loading the whole video
+        selected.addAll(backend.imagesFor(videoC).subList(0, 3));
+        // Images that only have their image reference and video filled in
+        for (Image image : backend.imagesFor(videoA).subList(200, 202)) {
+            Image i = new Image(image);
+            i.setImagedMomentUuid(null);
+            selected.add(i);
+        }
+        // Duplicates are ignored
+        selected.add(selected.get(0));
+
+        List<Annotation> annotations = new ImageAnnotationResolver(backend.service())
+                .findAnnotations(selected)
+                .join();
+
+        assertEquals((200 + 150 + 3 + 2) * 2, annotations.size());
+        Set<UUID> expected = new ReferenceResolver(backend).find(selected);
+        assertEquals(expected, observationUuids(annotations));
+
+        // 2 counts and 2 video loads, 1 image lookup to fill in the missing imaged
+        // moments and 3 single lookups
+        assertEquals(2, backend.count("countAnnotations"));
+        assertEquals(2, backend.count("findAnnotations"));
+        assertEquals(1, backend.count("findImagesByVideoReferenceUuid"));
+        assertEquals(3, backend.count("findByImageReference"));
+        assertEquals(8, backend.total());
+    }
+
+    @Test
+    public void comparesTheImagesWithTheVideosAnnotationCount() {
+        StubBackend backend = new StubBackend();
+        UUID video = backend.addVideo(100);
+        List<Image> selected = backend.imagesFor(video).subList(0, 10);
+        Set<UUID> expected = new ReferenceResolver(backend).find(selected);
+        AnnotationService service = backend.service();
+
+        // 200 annotations is more than 10 per image, so each image is looked up
+        List<Annotation> annotations = new ImageAnnotationResolver(service, service::findAnnotations, 8, 10)
+                .findAnnotations(selected)
+                .join();
+        assertEquals(expected, observationUuids(annotations));
+        assertEquals(1, backend.count("countAnnotations"));
+        assertEquals(0, backend.count("findAnnotations"));
+        assertEquals(10, backend.count("findByImageReference"));
+
+        // But not more than 20 per image, so the video is fetched
+        backend.requests.clear();
+        annotations = new ImageAnnotationResolver(service, service::findAnnotations, 8, 20)
+                .findAnnotations(selected)
+                .join();
+        assertEquals(expected, observationUuids(annotations));
+        assertEquals(1, backend.count("findAnnotations"));
+        assertEquals(0, backend.count("findByImageReference"));
+
+        // Too few images to even count the video's annotations
+        backend.requests.clear();
+        annotations = new ImageAnnotationResolver(service, service::findAnnotations, 11, 20)
+                .findAnnotations(selected)
+                .join();
+        assertEquals(expected, observationUuids(annotations));
+        assertEquals(0, backend.count("countAnnotations"));
+        assertEquals(10, backend.total());
+    }
+
+    @Test
+    public void imagesWithoutAVideo() {
+        StubBackend backend = new StubBackend();
+        UUID video = backend.addVideo(2);
+        Image image = new Image(backend.imagesFor(video).get(0));
+        image.setVideoReferenceUuid(null);
+
+        List<Annotation> annotations = new ImageAnnotationResolver(backend.service())
+                .findAnnotations(List.of(image))
+                .join();
+        assertEquals(2, annotations.size());
+        assertEquals(1, backend.total());
+        assertTrue(new ImageAnnotationResolver(backend.service()).findAnnotations(List.of()).join().isEmpty());
+    }
+
+    /**
+     * What one findByImageReference per image would have found
+     */
+    private static class ReferenceResolver {
+        final Map<UUID, UUID> moments = new HashMap<>();
+        final StubBackend backend;
+
+        ReferenceResolver(StubBackend backend) {
+            this.backend = backend;
+            backend.images.forEach(i -> moments.put(i.getImageReferenceUuid(), i.getImagedMomentUuid()));
+        }
+
+        Set<UUID> find(List<Image> images) {
+            Set<UUID> imagedMomentUuids = images.stream()
+                    .map(i -> moments.get(i.getImageReferenceUuid()))
+                    .collect(Collectors.toSet());
+            return backend.annotations.stream()
+                    .filter(a -> imagedMomentUuids.contains(a.getImagedMomentUuid()))
+                    .map(Annotation::getObservationUuid)
+                    .collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.mbari.vars.services;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mbari.vars.services.model.Authorization;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class JWTTokenManagerTest {
+
+    static class MutableClock extends Clock {
+        volatile Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    /**
+     * A stub auth endpoint that hands out tokens that expire an hour after the clock's
+     * time. Any other POST echoes the Authorization header it was sent.
+     */
+    private class StubDispatcher extends Dispatcher {
+        final AtomicInteger authRequests = new AtomicInteger();
+        final Set<String> seenAuthorizations = ConcurrentHashMap.newKeySet();
+        volatile CountDownLatch authGate;
+        volatile boolean authFails = false;
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            if (request.getPath().endsWith("/auth")) {
+                int n = authRequests.incrementAndGet();
+                CountDownLatch gate = authGate;
+                if (gate != null) {
+                    gate.await(5, TimeUnit.SECONDS);
+                }
+                if (authFails) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                String token = JWT.create()
+                        .withClaim("n", n)
+                        .withExpiresAt(Date.from(clock.instant().plus(Duration.ofHours(1))))
+                        .sign(Algorithm.HMAC256("secret"));
+                return new MockResponse()
+                        .setBody("{\"token_type\": \"Bearer\", \"access_token\": \"" + token + "\"}");
+            }
+            String authorization = request.getHeader("Authorization");
+            if (authorization != null) {
+                seenAuthorizations.add(authorization);
+            }
+            return new MockResponse().setBody("ok");
+        }
+    }
+
+    private MockWebServer server;
+    private StubDispatcher dispatcher;
+    private MutableClock clock;
+    private AuthService authService;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() throws Exception {
+        clock = new MutableClock(Instant.now());
+        dispatcher = new StubDispatcher();
+        server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+        BasicJWTAuthServiceFactorySC factory = new BasicJWTAuthServiceFactorySC(server.url("/").toString(),
+                Duration.ofSeconds(10));
+        authService = new BasicJWTAuthService(factory, new Authorization("APIKEY", "foo"));
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        CountDownLatch gate = dispatcher.authGate;
+        if (gate != null) {
+            gate.countDown();
+        }
+        executor.shutdownNow();
+        server.shutdown();
+    }
+
+    private JWTTokenManager newManager(Runnable onFailureAction) {
+        return new JWTTokenManager(authService, onFailureAction, clock, Duration.ofMinutes(1), executor);
+    }
+
+    private Authorization get(JWTTokenManager manager) throws Exception {
+        return manager.authorization().get(5, TimeUnit.SECONDS);
+    }
+
+    private void awaitAuthRequests(int n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.authRequests.get() < n && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void interceptorReusesTheToken() throws Exception {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new BasicJWTAuthInterceptor(newManager(() -> {})))
+                .build();
+        for (int i = 0; i < 20; i++) {
+            Request request = new Request.Builder()
+                    .url(server.url("/things"))
+                    .post(RequestBody.create(MediaType.get("application/json"), "{}"))
+                    .build();
+            try (Response response = client.newCall(request).execute()) {
+                assertTrue(response.isSuccessful());
+            }
+        }
+        assertEquals(1, dispatcher.authRequests.get());
+        assertEquals(1, dispatcher.seenAuthorizations.size());
+        assertTrue(dispatcher.seenAuthorizations.iterator().next().startsWith("Bearer "));
+    }
+
+    @Test
+    public void concurrentCallersShareOneFetch() throws Exception {
+        JWTTokenManager manager = newManager(() -> {});
+        dispatcher.authGate = new CountDownLatch(1);
+
+        List<CompletableFuture<Authorization>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(CompletableFuture.supplyAsync(() -> manager.authorization().join(), executor));
+        }
+        awaitAuthRequests(1);
+        Thread.sleep(100);
+        assertTrue(futures.stream().noneMatch(CompletableFuture::isDone));
+        dispatcher.authGate.countDown();
+
+        Set<String> tokens = ConcurrentHashMap.newKeySet();
+        for (CompletableFuture<Authorization> f : futures) {
+            tokens.add(f.get(5, TimeUnit.SECONDS).getAccessToken());
+        }
+        assertEquals(1, tokens.size());
+        assertEquals(1, dispatcher.authRequests.get());
+    }
+
+    @Test
+    public void refreshesInTheBackgroundBeforeExpiry() throws Exception {
+        JWTTokenManager manager = newManager(() -> {});
+        Authorization first = get(manager);
+
+        // Not close to expiring yet
+        clock.advance(Duration.ofMinutes(30));
+        assertSame(first, get(manager));
+        assertEquals(1, dispatcher.authRequests.get());
+
+        // Inside the refresh margin. Callers get the current token right away, even
+        // though the auth server is stalled, while a new one is fetched.
+        clock.advance(Duration.ofSeconds(29 * 60 + 30));
+        dispatcher.authGate = new CountDownLatch(1);
+        assertSame(first, manager.authorization().getNow(null));
+        assertSame(first, manager.authorization().getNow(null));
+        awaitAuthRequests(2);
+        dispatcher.authGate.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        Authorization second = first;
+        while (second == first && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            second = get(manager);
+        }
+        assertNotEquals(first.getAccessToken(), second.getAccessToken());
+        assertEquals(2, dispatcher.authRequests.get());
+    }
+
+    @Test
+    public void expiredTokensAreReplacedBeforeUse() throws Exception {
+        JWTTokenManager manager = newManager(() -> {});
+        Authorization first = get(manager);
+        clock.advance(Duration.ofHours(2));
+        Authorization second = get(manager);
+        assertNotEquals(first.getAccessToken(), second.getAccessToken());
+        assertEquals(2, dispatcher.authRequests.get());
+    }
+
+    @Test
+    public void failedRefreshes() throws Exception {
+        AtomicInteger failures = new AtomicInteger();
+        JWTTokenManager manager = newManager(failures::incrementAndGet);
+        Authorization first = get(manager);
+
+        // A failed early refresh keeps the token that's still valid
+        dispatcher.authFails = true;
+        clock.advance(Duration.ofSeconds(59 * 60 + 30));
+        assertSame(first, get(manager));
+        awaitAuthRequests(2);
+        Thread.sleep(100);
+        assertSame(first, get(manager));
+        assertEquals(0, failures.get());
+
+        // Once it's expired there's nothing to fall back on
+        clock.advance(Duration.ofMinutes(1));
+        Authorization error = get(manager);
+        assertEquals("ERROR", error.getTokenType());
+        assertEquals(1, failures.get());
+
+        // And the next call tries again
+        dispatcher.authFails = false;
+        assertEquals("Bearer", get(manager).getTokenType());
+    }
+}
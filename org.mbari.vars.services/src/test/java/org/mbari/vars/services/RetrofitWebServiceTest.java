@@ -0,0 +1,126 @@
+package org.mbari.vars.services;
+
+import com.google.gson.Gson;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.http.GET;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RetrofitWebServiceTest {
+
+    interface NamesWebService {
+        @GET("names")
+        Call<List<String>> findAll();
+    }
+
+    static class NamesService implements RetrofitWebService {
+        final NamesWebService webService;
+
+        NamesService(RetrofitServiceFactory factory) {
+            webService = factory.create(NamesWebService.class);
+        }
+    }
+
+    private MockWebServer server;
+    private NamesService service;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        RetrofitServiceFactory factory = new RetrofitServiceFactory(server.url("/").toString(),
+                Duration.ofSeconds(2)) {
+            @Override
+            public Gson getGson() {
+                return new Gson();
+            }
+        };
+        service = new NamesService(factory);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    private Throwable failure(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the request to fail");
+            return null;
+        }
+        catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    @Test
+    public void success() throws Exception {
+        server.enqueue(new MockResponse().setBody("[\"a\", \"b\"]"));
+        List<String> names = service.sendRequest(service.webService.findAll())
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(2, names.size());
+    }
+
+    @Test
+    public void statusCodesAreTyped() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setResponseCode(400).setBody("bad field"));
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        Throwable e = failure(service.sendRequest(service.webService.findAll()));
+        assertTrue(e instanceof NotFoundException);
+
+        e = failure(service.sendRequest(service.webService.findAll()));
+        assertTrue(e instanceof TransientServiceException);
+        assertEquals(503, ((ServiceException) e).getStatusCode());
+        assertTrue(((ServiceException) e).isRetryable());
+
+        e = failure(service.sendRequest(service.webService.findAll()));
+        assertTrue(e instanceof NotAuthorizedException);
+
+        e = failure(service.sendRequest(service.webService.findAll()));
+        assertTrue(e instanceof ClientErrorException);
+        assertTrue(e.getMessage().contains("bad field"));
+
+        e = failure(service.sendRequest(service.webService.findAll()));
+        assertEquals(ServiceException.class, e.getClass());
+        assertFalse(((ServiceException) e).isRetryable());
+    }
+
+    @Test
+    public void notFoundAsNull() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(504));
+        assertNull(service.sendRequestOrNull(service.webService.findAll()).get(5, TimeUnit.SECONDS));
+        Throwable e = failure(service.sendRequestOrNull(service.webService.findAll()));
+        assertTrue(ServiceException.isTransient(e));
+    }
+
+    @Test
+    public void notFoundIsNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        RequestWithRetry<List<String>> request = new RequestWithRetry<>(() -> {
+            attempts.incrementAndGet();
+            throw new RuntimeException(new NotFoundException("missing", "http://foo"));
+        }, 3);
+        request.get()
+                .test()
+                .assertError(RuntimeException.class);
+        assertEquals(1, attempts.get());
+    }
+}
@@ -0,0 +1,183 @@
+package org.mbari.vars.services;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    /** Time only moves when someone sleeps (or we advance it) */
+    static class FakeClock implements RetryPolicy.Clock {
+        long now = 0;
+        final List<Long> sleeps = new ArrayList<>();
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            sleeps.add(nanos);
+            now += nanos;
+        }
+
+        void advance(Duration d) {
+            now += d.toNanos();
+        }
+    }
+
+    /** Stands in for a remote service that fails a set number of times before succeeding */
+    static class FlakyService implements Supplier<String> {
+        final AtomicInteger calls = new AtomicInteger();
+        final int failures;
+
+        FlakyService(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public String get() {
+            int n = calls.incrementAndGet();
+            if (n <= failures) {
+                throw new TransientServiceException("Unavailable", 503, "http://foo/annotations", null);
+            }
+            return "ok";
+        }
+    }
+
+    private RetryPolicy newPolicy(int retries, FakeClock clock, RetryBudget budget) {
+        return new RetryPolicy(retries,
+                Duration.ofMillis(100),
+                Duration.ofSeconds(1),
+                Duration.ofSeconds(10),
+                budget,
+                clock,
+                () -> 0.5);
+    }
+
+    @Test
+    public void retriesUntilSuccess() {
+        FakeClock clock = new FakeClock();
+        FlakyService service = new FlakyService(3);
+        RetryPolicy policy = newPolicy(5, clock, new RetryBudget(10, 1, clock));
+        assertEquals("ok", policy.execute(service));
+        assertEquals(4, service.calls.get());
+        // full jitter of 0.5 over 100, 200, 400 ms
+        List<Long> expected = List.of(TimeUnit.MILLISECONDS.toNanos(50),
+                TimeUnit.MILLISECONDS.toNanos(100),
+                TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(expected, clock.sleeps);
+    }
+
+    @Test
+    public void backoffIsCapped() {
+        FakeClock clock = new FakeClock();
+        RetryPolicy policy = new RetryPolicy(100,
+                Duration.ofMillis(100),
+                Duration.ofSeconds(1),
+                Duration.ofSeconds(10),
+                new RetryBudget(10, 1, clock),
+                clock,
+                () -> 0.999999);
+        assertTrue(policy.backoff(3).compareTo(Duration.ofMillis(800)) < 0);
+        assertTrue(policy.backoff(4).compareTo(Duration.ofSeconds(1)) < 0);
+        assertTrue(policy.backoff(80).compareTo(Duration.ofSeconds(1)) < 0);
+        assertTrue(policy.backoff(80).compareTo(Duration.ofMillis(999)) >= 0);
+    }
+
+    @Test
+    public void stopsAfterMaxRetries() {
+        FakeClock clock = new FakeClock();
+        FlakyService service = new FlakyService(10);
+        RetryPolicy policy = newPolicy(2, clock, new RetryBudget(10, 1, clock));
+        new RequestWithRetry<>(service, policy).get()
+                .test()
+                .assertError(RuntimeException.class);
+        assertEquals(3, service.calls.get());
+    }
+
+    @Test
+    public void stopsAfterMaxElapsed() {
+        FakeClock clock = new FakeClock();
+        Supplier<String> slow = () -> {
+            clock.advance(Duration.ofSeconds(4));
+            throw new TransientServiceException("Timeout", 504, "http://foo", null);
+        };
+        RetryPolicy policy = newPolicy(100, clock, new RetryBudget(100, 1, clock));
+        try {
+            policy.execute(slow);
+            fail("Expected the request to fail");
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("elapsed"));
+        }
+        // 4s, 8s, then 12s has passed which is over the 10s limit
+        assertEquals(2, clock.sleeps.size());
+    }
+
+    @Test
+    public void budgetIsShared() {
+        FakeClock clock = new FakeClock();
+        RetryBudget budget = new RetryBudget(3, 1, clock);
+        RetryPolicy policy = newPolicy(2, clock, budget);
+
+        // Uses 2 tokens
+        FlakyService a = new FlakyService(2);
+        assertEquals("ok", policy.execute(a));
+        assertEquals(3, a.calls.get());
+
+        // Only 1 token left so the second retry is refused
+        FlakyService b = new FlakyService(2);
+        try {
+            policy.execute(b);
+            fail("Expected the retry budget to be exhausted");
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("budget"));
+        }
+        assertEquals(2, b.calls.get());
+        assertEquals(0, budget.getAvailable());
+
+        // Tokens refill over time
+        clock.advance(Duration.ofSeconds(2));
+        assertEquals(2, budget.getAvailable());
+        clock.advance(Duration.ofSeconds(60));
+        assertEquals(3, budget.getAvailable());
+    }
+
+    @Test
+    public void pagerUsesPolicy() {
+        FakeClock clock = new FakeClock();
+        RetryBudget budget = new RetryBudget(100, 1, clock);
+        RetryPolicy policy = newPolicy(2, clock, budget);
+        AtomicInteger calls = new AtomicInteger();
+        // Every page fails once before succeeding
+        List<Long> failedOnce = new ArrayList<>();
+        RequestPager<Long> pager = new RequestPager<>(page -> {
+            calls.incrementAndGet();
+            synchronized (failedOnce) {
+                if (!failedOnce.contains(page.getOffset())) {
+                    failedOnce.add(page.getOffset());
+                    throw new TransientServiceException("Unavailable", 503, "http://foo", null);
+                }
+            }
+            return page.getOffset();
+        }, policy, 2);
+        RequestPager.Runner<Long> runner = pager.build(100, 10);
+        var test = runner.getObservable().test();
+        runner.run();
+        test.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        test.assertComplete();
+        test.assertValueCount(10);
+        assertEquals(20, calls.get());
+        assertEquals(90, budget.getAvailable());
+    }
+}
@@ -0,0 +1,81 @@
+package org.mbari.vars.services;
+
+import com.typesafe.config.ConfigFactory;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class ServiceConfigTest {
+
+    private static ServiceConfig parse(String hocon) {
+        return new ServiceConfig(ConfigFactory.parseString(hocon));
+    }
+
+    @Test
+    public void readsBothDispatcherLimits() {
+        ServiceConfig config = parse("http.client {\n" +
+                "  connect.timeout = \"3 seconds\"\n" +
+                "  dispatcher.requests.max = 12\n" +
+                "  dispatcher.requests.per.host.max = 3\n" +
+                "}");
+        ServiceConfig.HttpClientParams params = config.getHttpClientParams();
+        assertEquals(12, params.getMaxRequests());
+        assertEquals(3, params.getMaxRequestsPerHost());
+        assertEquals(Duration.ofSeconds(3), params.getConnectTimeout());
+    }
+
+    @Test
+    public void usesDefaultDispatcherLimitsWhenMissing() {
+        ServiceConfig.HttpClientParams params = parse("").getHttpClientParams();
+        ServiceConfig.HttpClientParams d = ServiceConfig.HttpClientParams.DEFAULT;
+        assertEquals(d.getMaxRequests(), params.getMaxRequests());
+        assertEquals(d.getMaxRequestsPerHost(), params.getMaxRequestsPerHost());
+    }
+
+    @Test
+    public void readsBothRetryLimits() {
+        ServiceConfig config = parse("annotation.service {\n" +
+                "  retry.attempts.max = 7\n" +
+                "  retry.delay.initial = \"100 millis\"\n" +
+                "  retry.delay.max = \"2 seconds\"\n" +
+                "  retry.elapsed.max = \"30 seconds\"\n" +
+                "}");
+        RetryPolicy policy = config.getAnnotationServiceRetryPolicy();
+        assertEquals(7, policy.getMaxRetries());
+        assertEquals(Duration.ofSeconds(30), policy.getMaxElapsed());
+        assertEquals(Duration.ofMillis(100), policy.getInitialDelay());
+        assertEquals(Duration.ofSeconds(2), policy.getMaxDelay());
+    }
+
+    @Test
+    public void usesDefaultRetryLimitsWhenMissing() {
+        RetryPolicy policy = parse("").getAnnotationServiceRetryPolicy();
+        assertEquals(RetryPolicy.DEFAULT.getMaxRetries(), policy.getMaxRetries());
+        assertEquals(RetryPolicy.DEFAULT.getMaxElapsed(), policy.getMaxElapsed());
+    }
+
+    @Test
+    public void readsImageBatchThresholds() {
+        ServiceConfig config = parse("annotation.service {\n" +
+                "  images.batch.min.images = 3\n" +
+                "  images.batch.max.annotations.per.image = 20\n" +
+                "}");
+        assertEquals(3, config.getAnnotationServiceImagesBatchMinImages());
+        assertEquals(20, config.getAnnotationServiceImagesBatchMaxAnnotationsPerImage());
+
+        ServiceConfig defaults = parse("");
+        assertEquals(ImageAnnotationResolver.DEFAULT_MIN_IMAGES,
+                defaults.getAnnotationServiceImagesBatchMinImages());
+        assertEquals(ImageAnnotationResolver.DEFAULT_MAX_ANNOTATIONS_PER_IMAGE,
+                defaults.getAnnotationServiceImagesBatchMaxAnnotationsPerImage());
+    }
+
+    @Test
+    public void streamsByDefault() {
+        // Same default as reference.conf
+        assertTrue(parse("").isAnnotationServiceStreaming());
+        assertFalse(parse("annotation.service.streaming = false").isAnnotationServiceStreaming());
+    }
+}
@@ -0,0 +1,181 @@
+package org.mbari.vars.services;
+
+import org.junit.Test;
+import org.mbari.vars.services.model.ConceptDetails;
+import org.mbari.vars.services.model.Media;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightServiceTest {
+
+    /**
+     * Builds a stub for any of the service interfaces. Every call is counted by method
+     * name and returns a future that doesn't complete until {@link #release(Object)}
+     */
+    static class CountingStub {
+        final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+        final List<CompletableFuture<Object>> pending = new ArrayList<>();
+
+        @SuppressWarnings("unchecked")
+        <T> T create(Class<T> clazz) {
+            return (T) Proxy.newProxyInstance(clazz.getClassLoader(),
+                    new Class<?>[]{clazz},
+                    (proxy, method, args) -> {
+                        counts.computeIfAbsent(method.getName(), k -> new AtomicInteger())
+                                .incrementAndGet();
+                        CompletableFuture<Object> f = new CompletableFuture<>();
+                        synchronized (pending) {
+                            pending.add(f);
+                        }
+                        return f;
+                    });
+        }
+
+        int count(String method) {
+            AtomicInteger n = counts.get(method);
+            return n == null ? 0 : n.get();
+        }
+
+        void release(Object value) {
+            synchronized (pending) {
+                pending.forEach(f -> f.complete(value));
+                pending.clear();
+            }
+        }
+
+        void fail(Throwable e) {
+            synchronized (pending) {
+                pending.forEach(f -> f.completeExceptionally(e));
+                pending.clear();
+            }
+        }
+    }
+
+    private <T> List<CompletableFuture<T>> callConcurrently(int n, Supplier<CompletableFuture<T>> fn)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<CompletableFuture<T>>> calls = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            calls.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return fn.get();
+            }, executor));
+        }
+        start.countDown();
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (CompletableFuture<CompletableFuture<T>> c : calls) {
+            futures.add(c.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        return futures;
+    }
+
+    @Test
+    public void conceptLookupsAreCoalesced() throws Exception {
+        CountingStub stub = new CountingStub();
+        ConceptService service = new SingleFlightConceptService(stub.create(ConceptService.class));
+
+        List<CompletableFuture<Optional<ConceptDetails>>> futures =
+                callConcurrently(20, () -> service.findDetails("Nanomia"));
+        assertEquals(1, stub.count("findDetails"));
+
+        // Different arguments are different requests
+        service.findDetails("Aegina");
+        assertEquals(2, stub.count("findDetails"));
+
+        stub.release(Optional.empty());
+        for (CompletableFuture<Optional<ConceptDetails>> f : futures) {
+            assertTrue(f.get(5, TimeUnit.SECONDS).isEmpty());
+        }
+
+        // Nothing is in flight so this goes to the backend. i.e. it's not a cache
+        service.findDetails("Nanomia");
+        assertEquals(3, stub.count("findDetails"));
+    }
+
+    @Test
+    public void mediaLookupsAreCoalesced() throws Exception {
+        CountingStub stub = new CountingStub();
+        MediaService service = new SingleFlightMediaService(stub.create(MediaService.class));
+        UUID uuid = UUID.randomUUID();
+        List<CompletableFuture<Media>> futures = callConcurrently(20, () -> service.findByUuid(uuid));
+        assertEquals(1, stub.count("findByUuid"));
+
+        // Equal byte arrays are the same key
+        service.findBySha512(new byte[]{1, 2, 3});
+        service.findBySha512(new byte[]{1, 2, 3});
+        assertEquals(1, stub.count("findBySha512"));
+
+        // Writes are never coalesced
+        Media media = new Media();
+        service.update(media);
+        service.update(media);
+        assertEquals(2, stub.count("update"));
+
+        Media expected = new Media();
+        stub.release(expected);
+        for (CompletableFuture<Media> f : futures) {
+            assertSame(expected, f.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void annotationLookupsAreCoalesced() throws Exception {
+        CountingStub stub = new CountingStub();
+        AnnotationService service = new SingleFlightAnnotationService(stub.create(AnnotationService.class));
+        List<CompletableFuture<List<String>>> futures = callConcurrently(20, service::findGroups);
+        callConcurrently(20, service::findActivities);
+        assertEquals(1, stub.count("findGroups"));
+        assertEquals(1, stub.count("findActivities"));
+
+        // All callers see the failure
+        stub.fail(new TransientServiceException("Unavailable", 503, "http://foo", null));
+        for (CompletableFuture<List<String>> f : futures) {
+            try {
+                f.get(5, TimeUnit.SECONDS);
+                fail("Expected a failure");
+            }
+            catch (ExecutionException e) {
+                assertTrue(ServiceException.isTransient(e));
+            }
+        }
+
+        // A failure is not remembered
+        service.findGroups();
+        assertEquals(2, stub.count("findGroups"));
+    }
+
+    @Test
+    public void cancellingOneCallerDoesNotCancelOthers() throws Exception {
+        CountingStub stub = new CountingStub();
+        AnnotationService service = new SingleFlightAnnotationService(stub.create(AnnotationService.class));
+        CompletableFuture<List<String>> a = service.findGroups();
+        CompletableFuture<List<String>> b = service.findGroups();
+        a.cancel(true);
+        stub.release(List.of("foo"));
+        assertEquals(List.of("foo"), b.get(5, TimeUnit.SECONDS));
+        assertEquals(1, stub.count("findGroups"));
+    }
+}
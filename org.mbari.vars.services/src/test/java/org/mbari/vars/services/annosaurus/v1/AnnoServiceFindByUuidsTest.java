@@ -0,0 +1,156 @@
+package org.mbari.vars.services.annosaurus.v1;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mbari.vars.services.NoopAuthService;
+import org.mbari.vars.services.impl.annosaurus.v1.AnnoService;
+import org.mbari.vars.services.impl.annosaurus.v1.AnnoWebServiceFactory;
+import org.mbari.vars.services.model.Annotation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class AnnoServiceFindByUuidsTest {
+
+    /**
+     * Acts like annosaurus. It knows every UUID except the ones in `missing`.
+     */
+    private class StubDispatcher extends Dispatcher {
+        final AtomicInteger bulkRequests = new AtomicInteger();
+        final AtomicInteger singleRequests = new AtomicInteger();
+        final AtomicInteger maxChunk = new AtomicInteger();
+        volatile boolean bulkSupported = true;
+        final Set<UUID> missing;
+
+        StubDispatcher(Set<UUID> missing) {
+            this.missing = missing;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String path = request.getPath();
+            if (path.endsWith("annotations/find/uuids") && request.getMethod().equals("POST")) {
+                bulkRequests.incrementAndGet();
+                if (!bulkSupported) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                List<UUID> uuids = gson.fromJson(request.getBody().readUtf8(),
+                        new TypeToken<List<UUID>>(){}.getType());
+                maxChunk.accumulateAndGet(uuids.size(), Math::max);
+                List<Annotation> annotations = uuids.stream()
+                        .filter(uuid -> !missing.contains(uuid))
+                        .map(AnnoServiceFindByUuidsTest::newAnnotation)
+                        .collect(Collectors.toList());
+                return new MockResponse().setBody(gson.toJson(annotations));
+            }
+            else if (path.contains("annotations/") && request.getMethod().equals("GET")) {
+                singleRequests.incrementAndGet();
+                UUID uuid = UUID.fromString(path.substring(path.lastIndexOf('/') + 1));
+                if (missing.contains(uuid)) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                return new MockResponse().setBody(gson.toJson(newAnnotation(uuid)));
+            }
+            return new MockResponse().setResponseCode(500);
+        }
+    }
+
+    private MockWebServer server;
+    private AnnoService service;
+    private Gson gson;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        AnnoWebServiceFactory factory = new AnnoWebServiceFactory(server.url("/").toString(),
+                Duration.ofSeconds(5));
+        gson = factory.getGson();
+        service = new AnnoService(factory, new NoopAuthService());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    private static Annotation newAnnotation(UUID observationUuid) {
+        Annotation a = new Annotation();
+        a.setObservationUuid(observationUuid);
+        a.setConcept("Nanomia bijuga");
+        return a;
+    }
+
+    private static List<UUID> uuids(int n) {
+        List<UUID> uuids = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            uuids.add(UUID.randomUUID());
+        }
+        return uuids;
+    }
+
+    @Test
+    public void findsInChunks() throws Exception {
+        List<UUID> uuids = uuids(2000);
+        Set<UUID> missing = Set.of(uuids.get(10), uuids.get(1500));
+        StubDispatcher dispatcher = new StubDispatcher(missing);
+        server.setDispatcher(dispatcher);
+
+        List<Annotation> annotations = service.findByUuids(uuids).get(10, TimeUnit.SECONDS);
+
+        assertEquals(uuids.size() - missing.size(), annotations.size());
+        Set<UUID> found = annotations.stream()
+                .map(Annotation::getObservationUuid)
+                .collect(Collectors.toSet());
+        assertFalse(found.contains(uuids.get(10)));
+        // 2000 UUIDs in 10 requests instead of 2000
+        assertEquals(2000 / AnnoService.FIND_BY_UUIDS_CHUNK_SIZE, dispatcher.bulkRequests.get());
+        assertEquals(AnnoService.FIND_BY_UUIDS_CHUNK_SIZE, dispatcher.maxChunk.get());
+        assertEquals(0, dispatcher.singleRequests.get());
+    }
+
+    @Test
+    public void fallsBackWhenTheServerHasNoBulkEndpoint() throws Exception {
+        List<UUID> uuids = uuids(450);
+        StubDispatcher dispatcher = new StubDispatcher(Set.of(uuids.get(0)));
+        dispatcher.bulkSupported = false;
+        server.setDispatcher(dispatcher);
+
+        List<Annotation> annotations = service.findByUuids(uuids).get(10, TimeUnit.SECONDS);
+        assertEquals(449, annotations.size());
+        assertEquals(450, dispatcher.singleRequests.get());
+        int bulkRequests = dispatcher.bulkRequests.get();
+
+        // Once it knows, it doesn't try the bulk endpoint again
+        service.findByUuids(uuids.subList(0, 5)).get(10, TimeUnit.SECONDS);
+        assertEquals(bulkRequests, dispatcher.bulkRequests.get());
+        assertEquals(455, dispatcher.singleRequests.get());
+    }
+
+    @Test
+    public void emptyAndDuplicates() throws Exception {
+        StubDispatcher dispatcher = new StubDispatcher(Set.of());
+        server.setDispatcher(dispatcher);
+        assertTrue(service.findByUuids(List.of()).get(10, TimeUnit.SECONDS).isEmpty());
+        assertEquals(0, dispatcher.bulkRequests.get());
+
+        UUID uuid = UUID.randomUUID();
+        assertEquals(1, service.findByUuids(List.of(uuid, uuid)).get(10, TimeUnit.SECONDS).size());
+        assertEquals(1, dispatcher.bulkRequests.get());
+    }
+}
@@ -0,0 +1,228 @@
+package org.mbari.vars.services.annosaurus.v1;
+
+import com.google.gson.Gson;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.DefaultSubscriber;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mbari.vars.services.NoopAuthService;
+import org.mbari.vars.services.ServiceException;
+import org.mbari.vars.services.impl.annosaurus.v1.AnnoService;
+import org.mbari.vars.services.impl.annosaurus.v1.AnnoWebServiceFactory;
+import org.mbari.vars.services.model.Annotation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AnnoServiceStreamByConceptTest {
+
+    /**
+     * Acts like the annosaurus fast/concept endpoint for a concept with `count`
+     * annotations. Pages are built when they're requested, so the stub itself doesn't
+     * hold them all. Each observationUuid encodes the annotation's position.
+     */
+    private class StubDispatcher extends Dispatcher {
+        final int count;
+        final AtomicInteger requests = new AtomicInteger();
+        volatile int failAtRequest = -1;
+        volatile CountDownLatch blockAtSecondRequest;
+
+        StubDispatcher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            HttpUrl url = request.getRequestUrl();
+            if (!url.encodedPath().endsWith("fast/concept/Nanomia")) {
+                return new MockResponse().setResponseCode(404);
+            }
+            int n = requests.incrementAndGet();
+            if (n == failAtRequest) {
+                return new MockResponse().setResponseCode(500);
+            }
+            if (n == 2 && blockAtSecondRequest != null) {
+                blockAtSecondRequest.await(5, TimeUnit.SECONDS);
+            }
+            long limit = Long.parseLong(url.queryParameter("limit"));
+            long offset = Long.parseLong(url.queryParameter("offset"));
+            List<Annotation> page = new ArrayList<>();
+            for (long i = offset; i < Math.min(count, offset + limit); i++) {
+                Annotation a = new Annotation();
+                a.setObservationUuid(new UUID(0, i));
+                a.setConcept("Nanomia");
+                page.add(a);
+            }
+            return new MockResponse().setBody(gson.toJson(page));
+        }
+    }
+
+    /**
+     * Asks for one page at a time and keeps nothing but counts
+     */
+    private static class CountingSubscriber extends DefaultSubscriber<List<Annotation>> {
+        final StubDispatcher dispatcher;
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        long received = 0;
+        long nextIndex = 0;
+        int pages = 0;
+        int maxPageSize = 0;
+        int maxPagesAhead = 0;
+        boolean inOrder = true;
+
+        CountingSubscriber(StubDispatcher dispatcher) {
+            this.dispatcher = dispatcher;
+        }
+
+        @Override
+        protected void onStart() {
+            request(1);
+        }
+
+        @Override
+        public void onNext(List<Annotation> page) {
+            pages++;
+            // Pages requested from the server but not yet handled by this subscriber
+            maxPagesAhead = Math.max(maxPagesAhead, dispatcher.requests.get() - pages);
+            maxPageSize = Math.max(maxPageSize, page.size());
+            for (Annotation a : page) {
+                inOrder &= a.getObservationUuid().getLeastSignificantBits() == nextIndex;
+                nextIndex++;
+            }
+            received += page.size();
+            request(1);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error.set(t);
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+
+    private MockWebServer server;
+    private AnnoWebServiceFactory factory;
+    private Gson gson;
+    private final List<Throwable> undeliverable = new ArrayList<>();
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        factory = new AnnoWebServiceFactory(server.url("/").toString(), Duration.ofSeconds(10));
+        gson = factory.getGson();
+        RxJavaPlugins.setErrorHandler(undeliverable::add);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        RxJavaPlugins.reset();
+        server.shutdown();
+    }
+
+    @Test
+    public void streamsALargeConceptOnePageAtATime() throws Exception {
+        int count = 500_000;
+        int pageSize = 5000;
+        StubDispatcher dispatcher = new StubDispatcher(count);
+        server.setDispatcher(dispatcher);
+        AnnoService service = new AnnoService(factory, new NoopAuthService());
+
+        CountingSubscriber subscriber = new CountingSubscriber(dispatcher);
+        service.streamByConcept("Nanomia", false, pageSize)
+                .subscribeOn(Schedulers.io())
+                .subscribe(subscriber);
+        assertTrue(subscriber.done.await(60, TimeUnit.SECONDS));
+
+        assertNull(subscriber.error.get());
+        assertEquals(count, subscriber.received);
+        assertTrue(subscriber.inOrder);
+        assertEquals(count / pageSize, subscriber.pages);
+        // Memory stays flat: at most one page is held at a time and the next one
+        // isn't requested until the subscriber asks for it.
+        assertEquals(pageSize, subscriber.maxPageSize);
+        assertEquals(0, subscriber.maxPagesAhead);
+        // The last page was full so one more (empty) request ends the stream
+        assertEquals(count / pageSize + 1, dispatcher.requests.get());
+    }
+
+    @Test
+    public void findByConceptCollectsThePages() throws Exception {
+        StubDispatcher dispatcher = new StubDispatcher(12_345);
+        server.setDispatcher(dispatcher);
+        AnnoService service = new AnnoService(factory, new NoopAuthService(), 1000);
+
+        List<Annotation> annotations = service.findByConcept("Nanomia", false)
+                .get(30, TimeUnit.SECONDS);
+        assertEquals(12_345, annotations.size());
+        assertEquals(13, dispatcher.requests.get());
+        assertEquals(new UUID(0, 12_344), annotations.get(12_344).getObservationUuid());
+    }
+
+    @Test
+    public void cancellingStopsThePaging() throws Exception {
+        StubDispatcher dispatcher = new StubDispatcher(100_000);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.blockAtSecondRequest = release;
+        server.setDispatcher(dispatcher);
+        AnnoService service = new AnnoService(factory, new NoopAuthService());
+
+        CountDownLatch firstPage = new CountDownLatch(1);
+        Disposable disposable = service.streamByConcept("Nanomia", false, 100)
+                .subscribeOn(Schedulers.io())
+                .subscribe(page -> firstPage.countDown());
+        assertTrue(firstPage.await(10, TimeUnit.SECONDS));
+
+        // Cancel while the second page is in flight
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.requests.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        disposable.dispose();
+        release.countDown();
+        Thread.sleep(200);
+
+        assertEquals(2, dispatcher.requests.get());
+        assertTrue(undeliverable.isEmpty());
+    }
+
+    @Test
+    public void errorsEndTheStream() throws Exception {
+        StubDispatcher dispatcher = new StubDispatcher(10_000);
+        dispatcher.failAtRequest = 3;
+        server.setDispatcher(dispatcher);
+        AnnoService service = new AnnoService(factory, new NoopAuthService(), 1000);
+
+        try {
+            service.findByConcept("Nanomia", false).get(30, TimeUnit.SECONDS);
+            fail("Expected the failed page to fail the search");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ServiceException);
+        }
+        assertEquals(3, dispatcher.requests.get());
+    }
+}
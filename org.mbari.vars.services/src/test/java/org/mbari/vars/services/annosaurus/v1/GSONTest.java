@@ -1,9 +1,36 @@
 package org.mbari.vars.services.annosaurus.v1;
 
 import static org.junit.Assert.*;
+
+import com.fatboyindustrial.gsonjavatime.Converters;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
 import org.junit.Test;
 import org.mbari.vars.services.TestConstants;
+import org.mbari.vars.services.gson.AnnotationCreator;
+import org.mbari.vars.services.gson.DurationConverter;
+import org.mbari.vars.services.gson.JsonStreams;
+import org.mbari.vars.services.gson.ServiceGson;
+import org.mbari.vars.services.gson.TimecodeConverter;
+import org.mbari.vars.services.model.AncillaryData;
 import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Association;
+import org.mbari.vars.services.model.ImageReference;
+import org.mbari.vars.services.model.ImagedMoment;
+import org.mbari.vcr4j.time.Timecode;
+
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.UUID;
 
 
 /**
@@ -12,10 +39,135 @@ import org.mbari.vars.services.model.Annotation;
  */
 public class GSONTest {
 
+    private static final Type ANNOTATIONS_TYPE = new TypeToken<List<Annotation>>(){}.getType();
+
+    /**
+     * The reflective configuration that AnnoWebServiceFactory used before the
+     * hand-written adapters
+     */
+    private static final Gson REFLECTIVE = Converters.registerInstant(new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .setDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'")
+            .registerTypeAdapter(ImagedMoment.class, new AnnotationCreator())
+            .registerTypeAdapter(Duration.class, new DurationConverter())
+            .registerTypeAdapter(Timecode.class, new TimecodeConverter()))
+            .create();
+
+    private static List<Annotation> newAnnotations() throws Exception {
+        Instant now = Instant.parse("2020-10-24T12:34:56.789Z");
+        List<Annotation> annotations = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Annotation a = new Annotation();
+            a.setObservationUuid(UUID.randomUUID());
+            a.setImagedMomentUuid(UUID.randomUUID());
+            a.setVideoReferenceUuid(UUID.randomUUID());
+            a.setConcept("Nanomia \"bijuga\"");
+            a.setObserver("brian");
+            a.setObservationTimestamp(now.plusSeconds(i));
+            a.setRecordedTimestamp(now);
+            a.setElapsedTime(Duration.ofMillis(123456 + i));
+            a.setDuration(Duration.ofMillis(1500));
+            a.setTimecode(new Timecode("01:02:03:04"));
+            a.setGroup("ROV");
+            a.setActivity("descend");
+            a.setAssociations(List.of(new Association("eating", "Pyrosoma", "nil", "text/plain",
+                    UUID.randomUUID())));
+            ImageReference ir = new ImageReference();
+            ir.setUuid(UUID.randomUUID());
+            ir.setUrl(new URL("http://localhost/framegrabs/" + i + ".png"));
+            ir.setFormat("image/png");
+            ir.setLastUpdatedTime(now);
+            a.setImageReferences(List.of(ir));
+            AncillaryData data = new AncillaryData();
+            data.setDepthMeters(812.5);
+            data.setLatitude(36.7);
+            a.setAncillaryData(data);
+            annotations.add(a);
+        }
+        // Mostly empty, like a new annotation
+        Annotation a = new Annotation();
+        a.setConcept("nearly-object");
+        annotations.add(a);
+        return annotations;
+    }
+
     @Test
     public void fromJson() {
         Annotation annotation = TestConstants.newTestAnnotation();
         assertTrue(annotation.getImages() != null);
         assertTrue(annotation.getImages().size() == 2);
     }
+
+    @Test
+    public void adaptersMatchTheReflectiveJson() throws Exception {
+        Gson gson = ServiceGson.snakeCase();
+        List<Annotation> annotations = newAnnotations();
+
+        // What we write reads the same with the old configuration ...
+        String json = gson.toJson(annotations);
+        assertFalse("Expected compact JSON", json.contains("\n"));
+        List<Annotation> a = REFLECTIVE.fromJson(json, ANNOTATIONS_TYPE);
+        assertEquals(JsonParser.parseString(REFLECTIVE.toJson(annotations)),
+                JsonParser.parseString(REFLECTIVE.toJson(a)));
+
+        // ... and what the old configuration writes, we read the same
+        List<Annotation> b = gson.fromJson(REFLECTIVE.toJson(annotations), ANNOTATIONS_TYPE);
+        assertEquals(JsonParser.parseString(REFLECTIVE.toJson(annotations)),
+                JsonParser.parseString(REFLECTIVE.toJson(b)));
+    }
+
+    @Test
+    public void readsAnnosaurusJson() throws Exception {
+        String json;
+        try (Scanner scanner = new Scanner(getClass().getResourceAsStream("/json/annotation.json"), "UTF-8")) {
+            json = scanner.useDelimiter("\\A").next();
+        }
+        Annotation a = ServiceGson.snakeCase().fromJson(json, Annotation.class);
+        Annotation b = REFLECTIVE.fromJson(json, Annotation.class);
+        assertEquals(REFLECTIVE.toJson(b), REFLECTIVE.toJson(a));
+        assertEquals(2, a.getAssociations().size());
+
+        // ImagedMoments are still read as annotations
+        ImagedMoment im = ServiceGson.snakeCase().fromJson(json, ImagedMoment.class);
+        assertTrue(im instanceof Annotation);
+        assertEquals(b.getImagedMomentUuid(), im.getImagedMomentUuid());
+    }
+
+    @Test
+    public void parsesInstants() {
+        List<String> timestamps = List.of("2001-03-07T21:17:04Z",
+                "2020-10-24T12:34:56.7Z",
+                "2020-10-24T12:34:56.789Z",
+                "1969-12-31T23:59:59.123456789Z",
+                "2020-02-29T00:00:00Z");
+        for (String t : timestamps) {
+            String json = "{\"recorded_timestamp\": \"" + t + "\"}";
+            Annotation a = ServiceGson.snakeCase().fromJson(json, Annotation.class);
+            assertEquals(t, Instant.parse(t), a.getRecordedTimestamp());
+        }
+        try {
+            ServiceGson.snakeCase().fromJson("{\"recorded_timestamp\": \"2019-02-29T00:00:00Z\"}",
+                    Annotation.class);
+            fail("Expected an invalid date to fail");
+        }
+        catch (Exception e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void streamsAnArray() throws Exception {
+        Gson gson = ServiceGson.snakeCase();
+        List<Annotation> annotations = newAnnotations();
+        List<Annotation> streamed = new ArrayList<>();
+        long n = JsonStreams.forEach(new StringReader(gson.toJson(annotations)),
+                gson.getAdapter(Annotation.class),
+                streamed::add);
+        assertEquals(annotations.size(), n);
+        assertEquals(REFLECTIVE.toJson(annotations), REFLECTIVE.toJson(streamed));
+
+        assertEquals(0, JsonStreams.forEach(new StringReader("null"),
+                gson.getAdapter(Annotation.class),
+                streamed::add));
+    }
 }
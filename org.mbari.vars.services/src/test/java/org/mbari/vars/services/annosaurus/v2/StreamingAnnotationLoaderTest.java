@@ -0,0 +1,192 @@
+package org.mbari.vars.services.annosaurus.v2;
+
+import io.reactivex.subscribers.TestSubscriber;
+import org.junit.Test;
+import org.mbari.vars.services.RetryPolicy;
+import org.mbari.vars.services.impl.annosaurus.v2.StreamingAnnotationLoader;
+import org.mbari.vars.services.model.Annotation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class StreamingAnnotationLoaderTest {
+
+    /**
+     * Behaves like the annosaurus v2 timestamp endpoint: annotations ordered by
+     * recordedTimestamp, start and end are inclusive. Requests for a single timestamp
+     * (the loader completing a group) are counted separately from page requests.
+     */
+    static class StubService implements StreamingAnnotationLoader.PageFetcher {
+        final List<Annotation> annotations;
+        final List<Long> offsets = new ArrayList<>();
+        final List<Long> groupOffsets = new ArrayList<>();
+
+        StubService(List<Annotation> annotations) {
+            this.annotations = annotations;
+        }
+
+        @Override
+        public CompletableFuture<List<Annotation>> fetch(UUID videoReferenceUuid,
+                                                         Instant start,
+                                                         Instant end,
+                                                         Long limit,
+                                                         Long offset) {
+            if (start.equals(end)) {
+                groupOffsets.add(offset);
+            }
+            else {
+                offsets.add(offset);
+            }
+            List<Annotation> page = order(annotations).stream()
+                    .filter(a -> a.getRecordedTimestamp() != null)
+                    .filter(a -> !a.getRecordedTimestamp().isBefore(start) &&
+                            !a.getRecordedTimestamp().isAfter(end))
+                    .skip(offset)
+                    .limit(limit)
+                    .collect(Collectors.toList());
+            return CompletableFuture.completedFuture(page);
+        }
+
+        List<Annotation> order(List<Annotation> xs) {
+            return xs;
+        }
+    }
+
+    /**
+     * Builds annotations 1 second apart with 3 observations per timestamp, plus a
+     * burst of 25 observations that share a single timestamp.
+     */
+    private static List<Annotation> buildAnnotations(int n) {
+        Instant t0 = Instant.parse("2020-10-21T00:00:00Z");
+        List<Annotation> xs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Instant t = i >= 100 && i < 125 ? t0.plusSeconds(100) : t0.plusSeconds(i / 3);
+            Annotation a = new Annotation();
+            a.setObservationUuid(UUID.randomUUID());
+            a.setRecordedTimestamp(t);
+            xs.add(a);
+        }
+        xs.sort((a, b) -> a.getRecordedTimestamp().compareTo(b.getRecordedTimestamp()));
+        return xs;
+    }
+
+    private StreamingAnnotationLoader newLoader(StubService stub, int pageSize) {
+        return new StreamingAnnotationLoader(stub, pageSize, Duration.ofSeconds(1),
+                RetryPolicy.DEFAULT.withMaxRetries(0));
+    }
+
+    @Test
+    public void streamsEveryAnnotationOnce() {
+        List<Annotation> annotations = buildAnnotations(1000);
+        StubService stub = new StubService(annotations);
+        List<Annotation> loaded = newLoader(stub, 10)
+                .stream(UUID.randomUUID())
+                .toList()
+                .blockingGet()
+                .stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+        assertEquals(annotations.size(), loaded.size());
+        for (int i = 0; i < annotations.size(); i++) {
+            assertEquals(annotations.get(i).getObservationUuid(), loaded.get(i).getObservationUuid());
+        }
+        // Offsets only skip the annotations that share the cursor's timestamp. The
+        // largest group is the burst (25) plus the 3 regular ones at that time
+        assertTrue(stub.offsets.stream().allMatch(offset -> offset <= 28));
+    }
+
+    @Test
+    public void toleratesUnstableOrderOfTies() {
+        // Each request returns annotations that share a timestamp in a different order
+        Random random = new Random(42);
+        List<Annotation> annotations = buildAnnotations(1000);
+        StubService stub = new StubService(annotations) {
+            @Override
+            List<Annotation> order(List<Annotation> xs) {
+                List<Annotation> shuffled = new ArrayList<>(xs);
+                Collections.shuffle(shuffled, random);
+                shuffled.sort(Comparator.comparing(Annotation::getRecordedTimestamp));
+                return shuffled;
+            }
+        };
+        List<Annotation> loaded = newLoader(stub, 50)
+                .stream(UUID.randomUUID())
+                .toList()
+                .blockingGet()
+                .stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+        Set<UUID> expected = annotations.stream()
+                .map(Annotation::getObservationUuid)
+                .collect(Collectors.toSet());
+        Set<UUID> actual = loaded.stream()
+                .map(Annotation::getObservationUuid)
+                .collect(Collectors.toSet());
+        assertEquals(annotations.size(), loaded.size());
+        assertEquals(expected, actual);
+        for (int i = 1; i < loaded.size(); i++) {
+            assertFalse(loaded.get(i).getRecordedTimestamp().isBefore(loaded.get(i - 1).getRecordedTimestamp()));
+        }
+        // Every full page is followed by one request for the rest of its last timestamp
+        assertEquals(stub.offsets.size() - 1, stub.groupOffsets.size());
+    }
+
+    @Test
+    public void pagesAreOnlyFetchedOnRequest() {
+        StubService stub = new StubService(buildAnnotations(100));
+        TestSubscriber<List<Annotation>> subscriber = newLoader(stub, 10)
+                .stream(UUID.randomUUID())
+                .test(1);
+        subscriber.assertValueCount(1);
+        assertEquals(1, stub.offsets.size());
+
+        subscriber.requestMore(2);
+        subscriber.assertValueCount(3);
+        assertEquals(3, stub.offsets.size());
+
+        subscriber.cancel();
+        assertEquals(3, stub.offsets.size());
+    }
+
+    @Test
+    public void emptyVideoCompletes() {
+        StubService stub = new StubService(new ArrayList<>());
+        newLoader(stub, 10)
+                .stream(UUID.randomUUID())
+                .test()
+                .assertNoValues()
+                .assertComplete();
+        assertEquals(1, stub.offsets.size());
+    }
+
+    @Test
+    public void stallIsAnError() {
+        // A server that ignores the cursor and always returns the first page
+        StubService stub = new StubService(buildAnnotations(100)) {
+            @Override
+            public CompletableFuture<List<Annotation>> fetch(UUID videoReferenceUuid,
+                                                             Instant start,
+                                                             Instant end,
+                                                             Long limit,
+                                                             Long offset) {
+                return super.fetch(videoReferenceUuid, Instant.EPOCH, end, limit, 0L);
+            }
+        };
+        newLoader(stub, 10)
+                .stream(UUID.randomUUID())
+                .test()
+                .assertValueCount(1)
+                .assertError(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,144 @@
+package org.mbari.vars.services.panoptes.v1;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mbari.vars.services.ImageArchiveService;
+import org.mbari.vars.services.ImageEncoder;
+import org.mbari.vars.services.NoopAuthService;
+import org.mbari.vars.services.impl.panoptes.v1.PanoptesService;
+import org.mbari.vars.services.impl.panoptes.v1.PanoptesWebServiceFactory;
+import org.mbari.vars.services.model.ImageUploadResults;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PanoptesServiceUploadTest {
+
+    private MockWebServer server;
+    private PanoptesService service;
+
+    @Before
+    public void setup() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        PanoptesWebServiceFactory factory = new PanoptesWebServiceFactory(server.url("/").toString(),
+                Duration.ofSeconds(5));
+        service = new PanoptesService(factory, new NoopAuthService());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        server.shutdown();
+    }
+
+    private static BufferedImage newFrame(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | 0x40);
+            }
+        }
+        return image;
+    }
+
+    private void enqueueResults(String name) {
+        server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"cameraId\":\"Ventana\",\"deploymentId\":\"V4242\",\"name\":\"" + name +
+                        "\",\"uri\":\"http://localhost/images/Ventana/V4242/" + name + "\"}"));
+    }
+
+    /** The bytes of the multipart part named `file` */
+    private static byte[] filePart(RecordedRequest request) {
+        byte[] body = request.getBody().readByteArray();
+        String contentType = request.getHeader("Content-Type");
+        String boundary = "--" + contentType.substring(contentType.indexOf("boundary=") + 9);
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        int nameIdx = text.indexOf("name=\"file\"");
+        int start = text.indexOf("\r\n\r\n", nameIdx) + 4;
+        int end = text.indexOf("\r\n" + boundary, start);
+        byte[] part = new byte[end - start];
+        System.arraycopy(body, start, part, 0, part.length);
+        return part;
+    }
+
+    @Test
+    public void streamsEncodedImageIntoTheRequest() throws Exception {
+        BufferedImage frame = newFrame(320, 240);
+        enqueueResults("frame.png");
+
+        ImageUploadResults results = service.upload("Ventana", "V4242", "frame.png",
+                ImageEncoder.of(frame, "png"))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(URI.create("http://localhost/images/Ventana/V4242/frame.png"), results.getUri());
+
+        RecordedRequest request = server.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("/images/Ventana/V4242/frame.png", request.getPath());
+        assertTrue(request.getChunkSizes().size() > 0);
+        byte[] png = filePart(request);
+        BufferedImage uploaded = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(320, uploaded.getWidth());
+        assertEquals(frame.getRGB(100, 200), uploaded.getRGB(100, 200));
+
+        // The image is only sent once
+        assertTrue(request.getBodySize() < png.length * 2);
+    }
+
+    @Test
+    public void encodesJpgs() throws Exception {
+        ImageEncoder encoder = ImageEncoder.of(newFrame(64, 48), "jpg");
+        assertEquals("image/jpeg", encoder.getMediaType());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(out);
+        byte[] first = out.toByteArray();
+        out.reset();
+        encoder.encode(out);
+        // A retried request has to send the same bytes
+        assertArrayEquals(first, out.toByteArray());
+        assertEquals(48, ImageIO.read(new ByteArrayInputStream(first)).getHeight());
+    }
+
+    @Test
+    public void defaultUploadUsesATempFile() throws Exception {
+        Path[] uploaded = new Path[1];
+        byte[][] bytes = new byte[1][];
+        ImageArchiveService fileOnly = new ImageArchiveService() {
+            @Override
+            public CompletableFuture<ImageUploadResults> upload(String cameraId, String deploymentId, String name, Path image) {
+                uploaded[0] = image;
+                try {
+                    bytes[0] = Files.readAllBytes(image);
+                }
+                catch (IOException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+                return CompletableFuture.completedFuture(new ImageUploadResults());
+            }
+
+            @Override
+            public CompletableFuture<ImageUploadResults> locate(String cameraId, String deploymentId, String name) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        fileOnly.upload("Ventana", "V4242", "frame.png", ImageEncoder.of(newFrame(16, 16), "png"))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(16, ImageIO.read(new ByteArrayInputStream(bytes[0])).getWidth());
+        assertFalse(Files.exists(uploaded[0]));
+    }
+}
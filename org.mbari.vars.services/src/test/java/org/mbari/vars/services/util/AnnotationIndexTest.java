@@ -0,0 +1,79 @@
+package org.mbari.vars.services.util;
+
+import org.junit.Test;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Association;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class AnnotationIndexTest {
+
+    private static Annotation newAnnotation(UUID imagedMomentUuid, String concept, String... linkNames) {
+        Annotation a = new Annotation();
+        a.setObservationUuid(UUID.randomUUID());
+        a.setImagedMomentUuid(imagedMomentUuid);
+        a.setConcept(concept);
+        List<Association> associations = new ArrayList<>();
+        for (String linkName : linkNames) {
+            associations.add(new Association(linkName, "self", "nil"));
+        }
+        a.setAssociations(associations);
+        return a;
+    }
+
+    @Test
+    public void lookups() {
+        UUID im = UUID.randomUUID();
+        Annotation a = newAnnotation(im, "Nanomia", "comment");
+        Annotation b = newAnnotation(im, "Aegina", "identity-reference", "comment");
+        Annotation c = newAnnotation(UUID.randomUUID(), "Nanomia");
+        AnnotationIndex index = new AnnotationIndex();
+        index.putAll(List.of(a, b, c));
+
+        assertEquals(3, index.size());
+        assertSame(b, index.get(b.getObservationUuid()).get());
+        assertEquals(List.of(a, b), index.findByImagedMomentUuid(im));
+        assertEquals(List.of(a, c), index.findByConcept("Nanomia"));
+        assertEquals(List.of(b), index.findByLinkName("identity-reference"));
+        assertEquals(List.of(a, b), index.findByLinkName("comment"));
+        assertTrue(index.findByConcept("Bathochordaeus").isEmpty());
+    }
+
+    @Test
+    public void putReindexes() {
+        Annotation a = newAnnotation(UUID.randomUUID(), "Nanomia", "comment");
+        AnnotationIndex index = new AnnotationIndex();
+        index.put(a);
+
+        // A modified copy, like the ones in an AnnotationsChangedEvent
+        Annotation b = new Annotation(a);
+        b.setConcept("Aegina");
+        b.getAssociations().clear();
+        assertSame(a, index.put(b).get());
+
+        assertEquals(1, index.size());
+        assertTrue(index.findByConcept("Nanomia").isEmpty());
+        assertTrue(index.findByLinkName("comment").isEmpty());
+        assertEquals(List.of(b), index.findByConcept("Aegina"));
+        assertFalse(index.getConcepts().contains("Nanomia"));
+    }
+
+    @Test
+    public void remove() {
+        UUID im = UUID.randomUUID();
+        Annotation a = newAnnotation(im, "Nanomia", "comment");
+        Annotation b = newAnnotation(im, "Nanomia");
+        AnnotationIndex index = new AnnotationIndex();
+        index.putAll(List.of(a, b));
+
+        assertSame(a, index.remove(a.getObservationUuid()).get());
+        assertFalse(index.remove(a.getObservationUuid()).isPresent());
+        assertFalse(index.contains(a.getObservationUuid()));
+        assertEquals(List.of(b), index.findByImagedMomentUuid(im));
+        assertTrue(index.findByLinkName("comment").isEmpty());
+    }
+}
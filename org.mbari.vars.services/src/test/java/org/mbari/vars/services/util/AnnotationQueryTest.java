@@ -0,0 +1,175 @@
+package org.mbari.vars.services.util;
+
+import org.junit.Test;
+import org.mbari.vars.services.ConceptService;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Association;
+import org.mbari.vars.services.model.Concept;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class AnnotationQueryTest {
+
+    private static Annotation newAnnotation(String concept, String group, Association... associations) {
+        Annotation a = new Annotation();
+        a.setObservationUuid(UUID.randomUUID());
+        a.setConcept(concept);
+        a.setGroup(group);
+        a.setActivity("transect");
+        a.setAssociations(List.of(associations));
+        return a;
+    }
+
+    private static Concept newConcept(String name, Concept... children) {
+        return new Concept(name, null, Collections.emptyList(), List.of(children));
+    }
+
+    /** Siphonophorae -> Physonectae -> Nanomia, Apolemia */
+    private static ConceptService newConceptService(AtomicInteger requests) {
+        Concept branch = newConcept("Siphonophorae",
+                newConcept("Physonectae", newConcept("Nanomia"), newConcept("Apolemia")));
+        return (ConceptService) Proxy.newProxyInstance(ConceptService.class.getClassLoader(),
+                new Class<?>[]{ConceptService.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findConcept")) {
+                        requests.incrementAndGet();
+                        return CompletableFuture.completedFuture(
+                                args[0].equals("Siphonophorae") ? Optional.of(branch) : Optional.empty());
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @Test
+    public void compilesDescendants() {
+        AtomicInteger requests = new AtomicInteger();
+        ConceptService conceptService = newConceptService(requests);
+        Annotation nanomia = newAnnotation("Nanomia", "ROV");
+        Annotation aegina = newAnnotation("Aegina", "ROV");
+        Annotation siphonophorae = newAnnotation("Siphonophorae", "ROV");
+
+        CompiledAnnotationQuery withDescendants = AnnotationQuery.builder()
+                .concept("Siphonophorae", true)
+                .build()
+                .compile(conceptService)
+                .join();
+        assertEquals(1, requests.get());
+        assertEquals(Set.of("Siphonophorae", "Physonectae", "Nanomia", "Apolemia"),
+                withDescendants.getConcepts());
+        assertTrue(withDescendants.test(nanomia));
+        assertTrue(withDescendants.test(siphonophorae));
+        assertFalse(withDescendants.test(aegina));
+
+        // Without descendants the knowledgebase isn't needed
+        CompiledAnnotationQuery exact = AnnotationQuery.builder()
+                .concept("Siphonophorae")
+                .build()
+                .compile(conceptService)
+                .join();
+        assertEquals(1, requests.get());
+        assertFalse(exact.test(nanomia));
+        assertTrue(exact.test(siphonophorae));
+
+        // Unknown concepts match themselves
+        CompiledAnnotationQuery unknown = AnnotationQuery.builder()
+                .concept("Aegina", true)
+                .build()
+                .compile(conceptService)
+                .join();
+        assertEquals(Set.of("Aegina"), unknown.getConcepts());
+        assertTrue(unknown.test(aegina));
+    }
+
+    @Test
+    public void matchesOnlyTheCriteriaThatAreSet() {
+        Association eating = new Association("eating", "Pyrosoma", "nil");
+        Association comment = new Association("comment", "self", "blurry");
+        Annotation a = newAnnotation("Nanomia", "ROV", eating, comment);
+        Annotation b = newAnnotation("Nanomia", "Image", comment);
+
+        assertTrue(AnnotationQuery.builder().build().compile().test(a));
+        assertTrue(AnnotationQuery.builder().linkName("eating").build().compile().test(a));
+        assertFalse(AnnotationQuery.builder().linkName("eating").build().compile().test(b));
+        assertTrue(AnnotationQuery.builder().linkValue("blurry").build().compile().test(b));
+        CompiledAnnotationQuery q = AnnotationQuery.builder()
+                .association("comment", "self", "blurry")
+                .group("ROV")
+                .activity("transect")
+                .build()
+                .compile(Set.of("Nanomia"));
+        assertTrue(q.test(a));
+        assertFalse(q.test(b));
+        // Each criterion has to match the same association
+        assertFalse(AnnotationQuery.builder()
+                .association("eating", "self", "blurry")
+                .build()
+                .compile()
+                .test(a));
+    }
+
+    @Test
+    public void indexFindsWhatAScanFinds() {
+        Random random = new Random(3);
+        List<String> concepts = List.of("Nanomia", "Apolemia", "Physonectae", "Aegina", "Bathochordaeus");
+        List<String> groups = List.of("ROV", "Image", "Sample");
+        List<Annotation> annotations = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            List<Association> associations = new ArrayList<>();
+            for (int j = random.nextInt(3); j > 0; j--) {
+                associations.add(new Association("link-" + random.nextInt(4),
+                        random.nextBoolean() ? "self" : "Pyrosoma",
+                        "value-" + random.nextInt(4)));
+            }
+            annotations.add(newAnnotation(concepts.get(random.nextInt(concepts.size())),
+                    groups.get(random.nextInt(groups.size())),
+                    associations.toArray(new Association[0])));
+        }
+        AnnotationIndex index = new AnnotationIndex();
+        index.putAll(annotations);
+
+        List<AnnotationQuery> queries = List.of(
+                AnnotationQuery.builder().concept("Nanomia").build(),
+                AnnotationQuery.builder().concept("Siphonophorae", true).build(),
+                AnnotationQuery.builder().association("link-1", "self", "value-2").build(),
+                AnnotationQuery.builder().concept("Siphonophorae", true).linkName("link-3").build(),
+                AnnotationQuery.builder().linkValue("value-0").group("Image").build(),
+                AnnotationQuery.builder().concept("Aegina").toConcept("Pyrosoma").activity("transect").build(),
+                AnnotationQuery.builder().group("Sample").build(),
+                AnnotationQuery.builder().concept("Nope").build());
+        ConceptService conceptService = newConceptService(new AtomicInteger());
+        for (AnnotationQuery query : queries) {
+            CompiledAnnotationQuery q = query.compile(conceptService).join();
+            Set<Annotation> expected = annotations.stream()
+                    .filter(q)
+                    .collect(Collectors.toSet());
+            List<Annotation> found = index.findByQuery(q);
+            assertEquals(query.toString(), expected.size(), found.size());
+            assertEquals(query.toString(), expected, new HashSet<>(found));
+        }
+
+        // The index follows changes
+        Annotation renamed = new Annotation(annotations.get(0));
+        renamed.setConcept("Apolemia");
+        renamed.setGroup("Renamed");
+        index.put(renamed);
+        CompiledAnnotationQuery q = AnnotationQuery.builder()
+                .concept("Apolemia")
+                .group("Renamed")
+                .build()
+                .compile();
+        assertEquals(List.of(renamed), index.findByQuery(q));
+    }
+}
@@ -0,0 +1,159 @@
+package org.mbari.vars.services.util;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class OverlayRendererTest {
+
+    private static final String[] TEXT = {"Copyright 2020 MBARI",
+            "http://localhost/images/Ventana/V4242/frame.png", "2020-10-24T00:00:42Z", ""};
+
+    @BeforeClass
+    public static void headless() {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    private static BufferedImage newFrame(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0xFF000000 | (x * 255 / width) << 16 | (y * 255 / height) << 8 | 0x40);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage decode(byte[] jpg) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpg));
+    }
+
+    private static int distance(int rgb0, int rgb1) {
+        int d = 0;
+        for (int shift = 0; shift < 24; shift += 8) {
+            d = Math.max(d, Math.abs((rgb0 >> shift & 0xFF) - (rgb1 >> shift & 0xFF)));
+        }
+        return d;
+    }
+
+    @Test
+    public void drawsTheSameOverlayAsBefore() throws Exception {
+        BufferedImage frame = newFrame(640, 360, BufferedImage.TYPE_INT_RGB);
+        JpegEncoder encoder = new JpegEncoder(0.9F);
+        OverlayRenderer renderer = new OverlayRenderer(encoder, 1);
+        byte[] jpg = renderer.renderJpeg(frame, TEXT);
+        assertEquals(Optional.of(new Dimension(640, 360)), ImageDimensions.read(jpg));
+
+        // The frame is copied, not drawn on
+        BufferedImage original = newFrame(640, 360, BufferedImage.TYPE_INT_RGB);
+        assertEquals(original.getRGB(5, 25), frame.getRGB(5, 25));
+
+        // Draw the overlay on a new image, the way it was always done, and compare
+        BufferedImage expected = newFrame(640, 360, BufferedImage.TYPE_INT_RGB);
+        OverlayRenderer.drawOverlayText(expected, TEXT);
+        int textPixels = 0;
+        for (int y = 0; y < 80; y++) {
+            for (int x = 0; x < 400; x++) {
+                if (expected.getRGB(x, y) != original.getRGB(x, y)) {
+                    textPixels++;
+                }
+            }
+        }
+        assertTrue(textPixels > 500);
+        assertArrayEquals(encoder.encode(expected), jpg);
+    }
+
+    @Test
+    public void reusesCanvases() throws Exception {
+        OverlayRenderer renderer = new OverlayRenderer(new JpegEncoder(JpegEncoder.DEFAULT_QUALITY), 2);
+        BufferedImage red = newFrame(320, 240, BufferedImage.TYPE_INT_RGB);
+        renderer.renderJpeg(red, TEXT);
+        assertEquals(1, renderer.getPoolSize());
+
+        // A translucent frame drawn on a reused canvas doesn't show the last frame through it
+        BufferedImage clear = new BufferedImage(320, 240, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage jpg = decode(renderer.renderJpeg(clear, new String[0]));
+        assertTrue(distance(0, jpg.getRGB(200, 200)) < 8);
+        assertEquals(1, renderer.getPoolSize());
+
+        // A new size replaces the old canvases
+        BufferedImage bgr = newFrame(160, 120, BufferedImage.TYPE_3BYTE_BGR);
+        jpg = decode(renderer.renderJpeg(bgr, TEXT));
+        assertEquals(160, jpg.getWidth());
+        assertTrue(distance(bgr.getRGB(100, 100), jpg.getRGB(100, 100)) < 8);
+        assertEquals(1, renderer.getPoolSize());
+    }
+
+    @Test
+    public void rendersConcurrently() throws Exception {
+        OverlayRenderer renderer = new OverlayRenderer(new JpegEncoder(JpegEncoder.DEFAULT_QUALITY), 2);
+        BufferedImage frame = newFrame(320, 240, BufferedImage.TYPE_INT_RGB);
+        byte[] expected = renderer.renderJpeg(frame, TEXT);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> renderer.renderJpeg(frame, TEXT)));
+            }
+            for (Future<byte[]> future : futures) {
+                assertArrayEquals(expected, future.get());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertTrue(renderer.getPoolSize() <= 2);
+    }
+
+    @Test
+    public void qualityChangesTheSize() throws Exception {
+        BufferedImage frame = newFrame(320, 240, BufferedImage.TYPE_INT_RGB);
+        byte[] small = new JpegEncoder(0.2F).encode(frame);
+        byte[] large = new JpegEncoder(0.95F).encode(frame);
+        assertTrue(small.length < large.length);
+
+        // Same bytes as ImageIO's writer at its default quality
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(frame, "jpg", out);
+        assertArrayEquals(out.toByteArray(), new JpegEncoder(JpegEncoder.DEFAULT_QUALITY).encode(frame));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadQuality() {
+        new JpegEncoder(1.5F);
+    }
+
+    @Test
+    public void readsDimensionsFromHeaders() throws Exception {
+        BufferedImage frame = newFrame(321, 123, BufferedImage.TYPE_INT_RGB);
+        byte[] jpg = new JpegEncoder(JpegEncoder.DEFAULT_QUALITY).encode(frame);
+        assertEquals(Optional.of(new Dimension(321, 123)), ImageDimensions.read(jpg));
+
+        Path png = Files.createTempFile("vars-", ".png");
+        try {
+            ImageIO.write(frame, "png", png.toFile());
+            assertEquals(Optional.of(new Dimension(321, 123)), ImageDimensions.read(png));
+        }
+        finally {
+            Files.delete(png);
+        }
+        assertEquals(Optional.of(new Dimension(321, 123)), ImageDimensions.of(frame));
+        assertEquals(Optional.empty(), ImageDimensions.read(new byte[] {1, 2, 3}));
+    }
+}
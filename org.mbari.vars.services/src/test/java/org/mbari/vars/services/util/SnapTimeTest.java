@@ -0,0 +1,95 @@
+package org.mbari.vars.services.util;
+
+import org.junit.Test;
+import org.mbari.vcr4j.VideoIndex;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SnapTimeTest {
+
+    private static SnapTime newSnapTime(Instant timestamp) {
+        Duration elapsedTime = Duration.ofMillis(timestamp.toEpochMilli() % 3600000);
+        return new SnapTime(timestamp,
+                new VideoIndex(Optional.of(timestamp), Optional.of(elapsedTime), Optional.empty()));
+    }
+
+    @Test
+    public void formatsTheObservationTime() {
+        SnapTime snapTime = newSnapTime(Instant.parse("2013-02-15T01:02:03.456Z"));
+        assertEquals("2013", snapTime.getYear());
+        assertEquals("2013046", snapTime.getTrackingNumber());
+        // Day and month names depend on the locale
+        assertTrue(snapTime.getFormattedGmtTime().endsWith(" 15 01:02:03 2013"));
+        assertEquals(1360890123L, snapTime.getTimeInSecs());
+        assertTrue(snapTime.getGmtOffset().matches("[+-]\\d{4}"));
+
+        // The year and day come from the observation, not from when the SnapTime was made
+        assertEquals("1999365", newSnapTime(Instant.parse("1999-12-31T23:59:59Z")).getTrackingNumber());
+        assertEquals("2000001", newSnapTime(Instant.parse("2000-01-01T00:00:00Z")).getTrackingNumber());
+    }
+
+    @Test
+    public void formatsConcurrently() throws Exception {
+        File png = new File("/tmp/framegrab.png");
+        Instant start = Instant.parse("1989-01-01T00:00:00Z");
+        int count = 2000;
+        List<SnapTime> snapTimes = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SnapTime snapTime = newSnapTime(start.plus(Duration.ofHours(i * 97L)).plusMillis(i));
+            snapTimes.add(snapTime);
+            expected.add(describe(png, snapTime));
+        }
+
+        // Lots of threads all formatting at once, like parallel frame grabs
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<List<String>>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                tasks.add(() -> {
+                    List<String> actual = new ArrayList<>(count);
+                    for (int r = 0; r < 5; r++) {
+                        for (int i = 0; i < count; i++) {
+                            // Each thread walks the list from a different starting point
+                            int j = (i + offset * 131) % count;
+                            if (!expected.get(j).equals(describe(png, snapTimes.get(j)))) {
+                                actual.add(describe(png, snapTimes.get(j)));
+                            }
+                        }
+                    }
+                    return actual;
+                });
+            }
+            for (Future<List<String>> f : executor.invokeAll(tasks)) {
+                assertEquals(List.of(), f.get(30, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String describe(File png, SnapTime snapTime) {
+        return snapTime.getTrackingNumber() + "|"
+                + snapTime.getFormattedGmtTime() + "|"
+                + snapTime.getFormattedLocalTime() + "|"
+                + snapTime.getFramegrabName() + "|"
+                + Arrays.toString(JPGPreviewUtilities.createOverlayText(png, snapTime, "MBARI"));
+    }
+
+}
@@ -0,0 +1,216 @@
+package org.mbari.vars.services.util;
+
+import org.junit.Test;
+import org.mbari.vars.services.PreferencesService;
+import org.mbari.vars.services.model.PreferenceNode;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class WebPreferencesCacheTest {
+
+    /**
+     * In-memory PreferencesService that counts requests
+     */
+    private static class InMemoryPreferencesService implements PreferencesService {
+
+        final Map<String, PreferenceNode> store = new ConcurrentHashMap<>();
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+        volatile boolean failWrites = false;
+
+        InMemoryPreferencesService(PreferenceNode... nodes) {
+            for (PreferenceNode node : nodes) {
+                store.put(id(node.getName(), node.getKey()), node);
+            }
+        }
+
+        static String id(String name, String key) {
+            return name + "|" + key;
+        }
+
+        String value(String name, String key) {
+            PreferenceNode node = store.get(id(name, key));
+            return node == null ? null : node.getValue();
+        }
+
+        private <T> CompletableFuture<T> write(T value) {
+            writes.incrementAndGet();
+            return failWrites ? CompletableFuture.failedFuture(new RuntimeException("Boom")) :
+                    CompletableFuture.completedFuture(value);
+        }
+
+        @Override
+        public CompletableFuture<PreferenceNode> create(PreferenceNode node) {
+            if (!failWrites) {
+                store.put(id(node.getName(), node.getKey()), node);
+            }
+            return write(node);
+        }
+
+        @Override
+        public CompletableFuture<Optional<PreferenceNode>> update(PreferenceNode node) {
+            if (!failWrites) {
+                store.replace(id(node.getName(), node.getKey()), node);
+            }
+            return write(Optional.of(node));
+        }
+
+        @Override
+        public CompletableFuture<Void> delete(PreferenceNode node) {
+            if (!failWrites) {
+                store.remove(id(node.getName(), node.getKey()));
+            }
+            return write(null);
+        }
+
+        @Override
+        public CompletableFuture<List<PreferenceNode>> findByName(String nodeName) {
+            reads.incrementAndGet();
+            return CompletableFuture.completedFuture(store.values().stream()
+                    .filter(n -> n.getName().equals(nodeName))
+                    .collect(Collectors.toList()));
+        }
+
+        @Override
+        public CompletableFuture<List<PreferenceNode>> findByNameLike(String nodeName) {
+            reads.incrementAndGet();
+            return CompletableFuture.completedFuture(store.values().stream()
+                    .filter(n -> n.getName().startsWith(nodeName))
+                    .collect(Collectors.toList()));
+        }
+
+        @Override
+        public CompletableFuture<Optional<PreferenceNode>> findByNameAndKey(String nodeName, String key) {
+            reads.incrementAndGet();
+            return CompletableFuture.completedFuture(Optional.ofNullable(store.get(id(nodeName, key))));
+        }
+    }
+
+    private static InMemoryPreferencesService newService() {
+        return new InMemoryPreferencesService(
+                new PreferenceNode("/brian", "theme", "dark"),
+                new PreferenceNode("/brian/table", "width", "100"),
+                new PreferenceNode("/brian/table", "height", "50"),
+                new PreferenceNode("/brian/tabs/tab0", "name", "Fishes"),
+                new PreferenceNode("/brianna", "theme", "light"));
+    }
+
+    private static Preferences newRoot(PreferencesService service, Duration flushDelay) {
+        return new WebPreferences(new WebPreferencesCache(service, Duration.ofSeconds(5), flushDelay), null, "");
+    }
+
+    @Test
+    public void readsComeFromOneSubtreeLoad() throws Exception {
+        InMemoryPreferencesService service = newService();
+        Preferences brian = newRoot(service, Duration.ZERO).node("brian");
+
+        assertEquals("dark", brian.get("theme", null));
+        assertEquals("100", brian.node("table").get("width", null));
+        assertEquals("50", brian.node("table").get("height", null));
+        assertEquals(Set.of("width", "height"), Set.of(brian.node("table").keys()));
+        // /brianna starts with /brian but isn't a child
+        assertEquals(Set.of("table", "tabs"), Set.of(brian.childrenNames()));
+        assertEquals("Fishes", brian.node("tabs/tab0").get("name", null));
+        assertNull(brian.get("missing", null));
+        assertEquals(1, service.reads.get());
+        assertEquals(0, service.writes.get());
+    }
+
+    @Test
+    public void writesAreCoalescedUntilFlush() throws Exception {
+        InMemoryPreferencesService service = newService();
+        Preferences brian = newRoot(service, Duration.ZERO).node("brian");
+
+        for (int i = 0; i < 10; i++) {
+            brian.node("table").put("width", Integer.toString(i));
+        }
+        brian.node("new").put("key", "value");
+        brian.remove("theme");
+        brian.node("tabs").removeNode();
+
+        // Reads see the writes before they're sent
+        assertEquals("9", brian.node("table").get("width", null));
+        assertNull(brian.get("theme", null));
+        assertEquals(Set.of("table", "new"), Set.of(brian.childrenNames()));
+        assertEquals(0, service.writes.get());
+
+        brian.flush();
+        // one update, one create, two deletes
+        assertEquals(4, service.writes.get());
+        assertEquals("9", service.value("/brian/table", "width"));
+        assertEquals("value", service.value("/brian/new", "key"));
+        assertNull(service.value("/brian", "theme"));
+        assertNull(service.value("/brian/tabs/tab0", "name"));
+        assertEquals("light", service.value("/brianna", "theme"));
+
+        // Nothing left to send
+        brian.flush();
+        assertEquals(4, service.writes.get());
+    }
+
+    @Test
+    public void writesAreSentAfterTheDelay() throws Exception {
+        InMemoryPreferencesService service = newService();
+        Preferences brian = newRoot(service, Duration.ofMillis(50)).node("brian");
+        brian.put("theme", "solarized");
+        brian.put("theme", "light");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"light".equals(service.value("/brian", "theme")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("light", service.value("/brian", "theme"));
+        assertEquals(1, service.writes.get());
+    }
+
+    @Test
+    public void failedWritesAreRetried() throws Exception {
+        InMemoryPreferencesService service = newService();
+        Preferences brian = newRoot(service, Duration.ZERO).node("brian");
+        brian.put("theme", "light");
+
+        service.failWrites = true;
+        try {
+            brian.flush();
+            fail("Expected a BackingStoreException");
+        }
+        catch (BackingStoreException e) {
+            // expected
+        }
+        assertEquals("dark", service.value("/brian", "theme"));
+        assertEquals("light", brian.get("theme", null));
+
+        service.failWrites = false;
+        brian.flush();
+        assertEquals("light", service.value("/brian", "theme"));
+    }
+
+    @Test
+    public void syncPicksUpRemoteChanges() throws Exception {
+        InMemoryPreferencesService service = newService();
+        Preferences brian = newRoot(service, Duration.ZERO).node("brian");
+        assertEquals("100", brian.node("table").get("width", null));
+        brian.put("theme", "light");
+
+        // Someone else changes a value
+        service.store.put(InMemoryPreferencesService.id("/brian/table", "width"),
+                new PreferenceNode("/brian/table", "width", "200"));
+        int reads = service.reads.get();
+        brian.sync();
+        assertEquals("light", service.value("/brian", "theme"));
+        assertEquals("200", brian.node("table").get("width", null));
+        assertEquals(reads + 1, service.reads.get());
+    }
+}
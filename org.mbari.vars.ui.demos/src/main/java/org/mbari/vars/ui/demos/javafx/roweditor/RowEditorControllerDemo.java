@@ -15,7 +15,9 @@ import org.mbari.vars.services.model.Association;
 import org.mbari.vars.ui.javafx.roweditor.RowEditorController;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -85,8 +87,10 @@ public class RowEditorControllerDemo extends Application {
 
         obs.ofType(CreateAssociationsCmd.class)
                 .subscribe(ca -> {
-                    Association at = ca.getAssociationTemplate();
-                    a.getAssociations().add(at);
+                    // Annotation's association list is unmodifiable, so set a new one
+                    List<Association> associations = new ArrayList<>(a.getAssociations());
+                    associations.add(ca.getAssociationTemplate());
+                    a.setAssociations(associations);
                     eventBus.send(new AnnotationsSelectedEvent(Arrays.asList(a)));
                 });
     }
@@ -128,6 +128,14 @@ public class AppConfig extends ServiceConfig  {
         return read("app.image.copyright.owner", config::getString, "");
     }
 
+    public boolean isAppImageLocalCopy() {
+        return read("app.image.local.copy", config::getBoolean, false);
+    }
+
+    public double getAppImageJpgQuality() {
+        return read("app.image.jpg.quality", config::getDouble, 0.75);
+    }
+
     public String getAppInjectorModuleClass() {
         return read("app.injector.module.class", config::getString, null);
     }
@@ -1,6 +1,7 @@
 package org.mbari.vars.ui;
 
 import io.reactivex.Observable;
+import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.scene.Scene;
 import javafx.stage.FileChooser;
@@ -14,6 +15,7 @@ import org.mbari.vars.ui.events.*;
 import org.mbari.vars.services.model.Annotation;
 import org.mbari.vars.services.model.Media;
 import org.mbari.vars.services.CachedConceptService;
+import org.mbari.vars.services.CachingAnnotationLoader;
 import org.mbari.vars.services.ConceptService;
 import org.mbari.vars.ui.javafx.Alerts;
 import org.mbari.vars.ui.javafx.AnnotationServiceDecorator;
@@ -31,6 +33,9 @@ import java.net.URL;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
 
 /**
  * This is the main controller for the App
@@ -71,14 +76,17 @@ public class AppController {
     }
 
     private void initialize() {
-        // wire up data to listen to events
+        // wire up data to listen to events. The events arrive on whatever thread sent
+        // them but data's annotations are bound to the UI, so they're only changed on the
+        // JavaFX thread. runLater (rather than running in place when already on the FX
+        // thread) keeps the changes in the order the events were sent.
         EventBus eventBus = toolBox.getEventBus();
         Data data = toolBox.getData();
         Observable<Object> eventObservable = eventBus.toObserverable();
         eventObservable.ofType(AnnotationsAddedEvent.class)
                 .subscribe(e -> {
                             if (e.get() != null) {
-                                data.getAnnotations().addAll(e.get());
+                                Platform.runLater(() -> data.getAnnotations().addAll(e.get()));
                             }
                         },
                         er -> log.error("Subscriber failed", er));
@@ -88,18 +96,26 @@ public class AppController {
                     // Remove from both annotations and selectedAnnotations.
                     // Reset selected to exclude any that were removed.
                     ArrayList<Annotation> selected = new ArrayList<>(data.getSelectedAnnotations());
-                    selected.removeAll(e.get());
+                    selected.removeAll(new HashSet<>(e.get()));
                     eventBus.send(new AnnotationsSelectedEvent(selected));
-                    data.getAnnotations().removeAll(e.get());
+                    Platform.runLater(() -> data.getAnnotations().removeAll(e.get()));
                 });
 
         eventObservable.ofType(AnnotationsChangedEvent.class)
                 .subscribe(e -> {
-                    // They use observation UUID as hash key. Remove and replace with new ones
-                    data.getAnnotations().removeAll(e.get());
-                    data.getAnnotations().addAll(e.get());
+                    // They use observation UUID as hash key. addAll replaces existing ones in place
+                    Platform.runLater(() -> data.getAnnotations().addAll(e.get()));
                 });
 
+        // Drop the cached copy of any video whose annotations were edited, so the next
+        // load doesn't show the old ones while it waits for the server.
+        Observable.merge(eventObservable.ofType(AnnotationsAddedEvent.class),
+                    eventObservable.ofType(AnnotationsRemovedEvent.class),
+                    eventObservable.ofType(AnnotationsChangedEvent.class))
+                .filter(e -> e.getEventSource() != AnnotationServiceDecorator.EVENT_SOURCE)
+                .subscribe(e -> evictFromAnnotationCache(e.get()),
+                        er -> log.error("Subscriber failed", er));
+
         eventObservable.ofType(AnnotationsSelectedEvent.class)
                 .subscribe(e -> data.setSelectedAnnotations(e.get()));
 
@@ -115,6 +131,10 @@ public class AppController {
                     if (conceptService instanceof CachedConceptService) {
                         ((CachedConceptService) conceptService).clear();
                     }
+                    CachingAnnotationLoader annotationCache = Initializer.getAnnotationCache();
+                    if (annotationCache != null) {
+                        annotationCache.clear();
+                    }
                 });
 
         eventObservable.ofType(MediaPlayerChangedEvent.class)
@@ -134,6 +154,17 @@ public class AppController {
 
     }
 
+    private void evictFromAnnotationCache(Collection<Annotation> annotations) {
+        CachingAnnotationLoader annotationCache = Initializer.getAnnotationCache();
+        if (annotationCache != null && annotations != null) {
+            annotations.stream()
+                    .map(Annotation::getVideoReferenceUuid)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .forEach(annotationCache::remove);
+        }
+    }
+
     private void saveImage(SaveImageMsg msg) {
         URL url = msg.getUrl();
         if (url != null ) {
@@ -182,7 +213,8 @@ public class AppController {
 
         // Clear out old data
         eventBus.send(new AnnotationsSelectedEvent(new ArrayList<>()));
-        eventBus.send(new AnnotationsRemovedEvent(data.getAnnotations()));
+        eventBus.send(new AnnotationsRemovedEvent(AnnotationServiceDecorator.EVENT_SOURCE,
+                data.getAnnotations()));
         eventBus.send(new ClearCommandManagerMsg());
 
         // Load new data
@@ -216,7 +248,8 @@ public class AppController {
                 ObservableList<Annotation> annotations = toolBox.getData().getAnnotations();
                 EventBus eventBus = toolBox.getEventBus();
                 eventBus.send(new AnnotationsSelectedEvent(new ArrayList<>()));
-                eventBus.send(new AnnotationsRemovedEvent(annotations));
+                eventBus.send(new AnnotationsRemovedEvent(AnnotationServiceDecorator.EVENT_SOURCE,
+                        annotations));
             }
 
         }
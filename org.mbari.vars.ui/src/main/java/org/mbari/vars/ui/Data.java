@@ -7,6 +7,7 @@ import javafx.collections.ObservableList;
 import org.mbari.vars.services.model.Annotation;
 import org.mbari.vars.services.model.Media;
 import org.mbari.vars.services.model.User;
+import org.mbari.vars.ui.util.IndexedAnnotationList;
 
 import java.util.Collection;
 
@@ -20,7 +21,7 @@ public class  Data {
 
     private final ObjectProperty<Media> media = new SimpleObjectProperty<>();
 
-    private final ObservableList<Annotation> annotations = FXCollections.observableArrayList();
+    private final IndexedAnnotationList annotations = new IndexedAnnotationList();
 
     private final ObservableList<Annotation> selectedAnnotations = FXCollections.observableArrayList();
 
@@ -46,16 +47,17 @@ public class  Data {
         this.media.set(media);
     }
 
-    public ObservableList<Annotation> getAnnotations() {
+    /**
+     * @return The annotations for the current media. The list is indexed so use its
+     *  find methods instead of scanning it.
+     */
+    public IndexedAnnotationList getAnnotations() {
         return annotations;
     }
 
     public void setAnnotations(Collection<Annotation> annotations) {
         synchronized (this.annotations) {
-            Platform.runLater(() -> {
-                this.annotations.clear();
-                this.annotations.addAll(annotations);
-            });
+            Platform.runLater(() -> this.annotations.setAll(annotations));
         }
     }
 
@@ -3,9 +3,12 @@ package org.mbari.vars.ui;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import org.mbari.vars.core.EventBus;
+import org.mbari.vars.services.AnnotationDiskCache;
+import org.mbari.vars.services.CachingAnnotationLoader;
 import org.mbari.vars.services.ServicesBuilder;
 import org.mbari.vars.services.Services;
 import org.mbari.vars.core.util.LessCSSLoader;
+import org.mbari.vars.services.gson.ServiceGson;
 import org.mbari.vars.ui.mediaplayers.sharktopoda.SharktopodaSettingsPaneController;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +36,8 @@ public class Initializer {
 
     private static UIToolBox toolBox;
 
+    private static CachingAnnotationLoader annotationCache;
+
     private static Config config;
 
     /**
@@ -88,6 +93,24 @@ public class Initializer {
 
 
 
+    /**
+     * @return The local annotation cache. null if it's disabled
+     *  (`annotation.service.cache.enabled`) or the settings directory isn't usable.
+     *  Synchronized as it's called from the event bus and loader threads.
+     */
+    public static synchronized CachingAnnotationLoader getAnnotationCache() {
+        if (annotationCache == null) {
+            AppConfig appConfig = getToolBox().getAppConfig();
+            Path settingsDir = getSettingsDirectory();
+            if (appConfig.isAnnotationServiceCacheEnabled() && settingsDir != null) {
+                AnnotationDiskCache diskCache = new AnnotationDiskCache(settingsDir.resolve("annotations"),
+                        ServiceGson.snakeCase());
+                annotationCache = new CachingAnnotationLoader(diskCache);
+            }
+        }
+        return annotationCache;
+    }
+
     /**
      * The settingsDirectory is scratch space for VARS
      *
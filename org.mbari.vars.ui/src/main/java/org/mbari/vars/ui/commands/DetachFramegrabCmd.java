@@ -59,7 +59,8 @@ public class DetachFramegrabCmd implements Command {
 
             // Get the original images from the database. We'll need them for undo
             CompletableFuture<Collection<Image>> findImagesFuture =
-                    AsyncUtils.collectAll(imageReferenceUuids, annotationService::findImageByUuid);
+                    AsyncUtils.collectAll(imageReferenceUuids, annotationService::findImageByUuid,
+                            AsyncUtils.DEFAULT_MAX_IN_FLIGHT);
             findImagesFuture.whenComplete((images, exception) -> {
                 if (exception == null) {
                     originalImages.addAll(images);
@@ -104,7 +105,7 @@ public class DetachFramegrabCmd implements Command {
 
         findImagesToDelete(toolBox)
                 .thenCompose(images -> decorator.findAnnotationsForImages(images)
-                        .thenCompose(annotations -> AsyncUtils.completeAll(images, deleteImageFn).thenApply(v -> annotations))
+                        .thenCompose(annotations -> AsyncUtils.completeAll(images, deleteImageFn, AsyncUtils.DEFAULT_MAX_IN_FLIGHT).thenApply(v -> annotations))
                         .thenAccept(annotations -> {
                             Set<UUID> observationUuids = annotations.stream()
                                     .map(Annotation::getObservationUuid)
@@ -127,7 +128,7 @@ public class DetachFramegrabCmd implements Command {
                         .thenCompose(image1 -> annotationService.findByImageReference(image1.getImageReferenceUuid()));
 
 
-        AsyncUtils.collectAll(originalImages, createImageAndFindAnnotationFn)
+        AsyncUtils.collectAll(originalImages, createImageAndFindAnnotationFn, AsyncUtils.DEFAULT_MAX_IN_FLIGHT)
                 .whenComplete((annotationLists, exception) -> {
                     List<Annotation> annotations = annotationLists.stream()
                             .flatMap(List::stream)
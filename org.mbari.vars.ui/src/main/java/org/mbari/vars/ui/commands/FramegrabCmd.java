@@ -1,65 +1,56 @@
 package org.mbari.vars.ui.commands;
 
 import org.mbari.vars.core.EventBus;
+import org.mbari.vars.ui.AppConfig;
+import org.mbari.vars.ui.Initializer;
 import org.mbari.vars.ui.UIToolBox;
 import org.mbari.vars.ui.events.AnnotationsAddedEvent;
 import org.mbari.vars.ui.events.AnnotationsRemovedEvent;
 import org.mbari.vars.ui.events.AnnotationsSelectedEvent;
 import org.mbari.vars.ui.mediaplayers.MediaPlayer;
+import org.mbari.vars.ui.messages.SetStatusBarMsg;
 import org.mbari.vars.ui.messages.ShowAlert;
 import org.mbari.vars.ui.messages.ShowExceptionAlert;
 import org.mbari.vars.ui.messages.ShowWarningAlert;
 import org.mbari.vars.services.model.*;
 import org.mbari.vars.services.AnnotationService;
 import org.mbari.vars.services.ConceptService;
-import org.mbari.vars.services.ImageCaptureService;
 import org.mbari.vars.ui.javafx.ImageArchiveServiceDecorator;
 import org.mbari.vcr4j.VideoError;
 import org.mbari.vcr4j.VideoIndex;
 import org.mbari.vcr4j.VideoState;
 
-import java.io.File;
-import java.time.Instant;
-
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
 
 /**
+ * Captures a framegrab and creates an annotation with it. The capture runs on the
+ * {@link CommandManager}'s thread, everything else runs in a {@link FramegrabPipeline}
+ * so that the next command doesn't have to wait for the uploads.
+ *
  * @author Brian Schlining
  * @since 2018-08-13T11:41:00
  */
 public class FramegrabCmd implements Command {
 
-
+    /** Shared by all framegrabs so rapid grabs don't draw more overlays at once than we have threads for */
+    private static final ExecutorService executor = FramegrabPipeline.newExecutor(2, 16);
+    private volatile FramegrabPipeline.Job job;
     private volatile Annotation annotationRef;
     private volatile Image pngImageRef;
     private volatile Image jpgImageRef;
-    //private static final Logger log = LoggerFactory.getLogger(FramegrabCmd.class);
-
-    private class CreatedData {
-        final Annotation annotation;
-        final Image image;
 
-        public CreatedData(Annotation annotation, Image image) {
-            this.annotation = annotation;
-            this.image = image;
-        }
-    }
-
-    private class ArchiveResults {
-        final ImageUploadResults imageUploadResults;
-        final CreatedData createdData;
-
-        public ArchiveResults(ImageUploadResults imageUploadResults, CreatedData createdData) {
-            this.imageUploadResults = imageUploadResults;
-            this.createdData = createdData;
-        }
-    }
+    // apply, unapply and re-apply are chained so that an undo waits for the framegrab
+    // (or redo) it's undoing to finish.
+    private CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
 
     @Override
     public void apply(UIToolBox toolBox) {
-        if (annotationRef != null && pngImageRef != null) {
-            applyFromCachedData(toolBox);
+        if (job != null) {
+            chain(() -> applyFromCachedData(toolBox));
         }
         else {
             Media media = toolBox.getData().getMedia();
@@ -84,123 +75,120 @@ public class FramegrabCmd implements Command {
 
     @Override
     public void unapply(UIToolBox toolBox) {
+        chain(() -> delete(toolBox));
+    }
+
+    @Override
+    public String getDescription() {
+        return null;
+    }
+
+    private synchronized void chain(Supplier<CompletableFuture<?>> next) {
+        last = last.handle((v, ex) -> null)
+                .thenCompose(v -> next.get())
+                .handle((v, ex) -> null);
+    }
+
+    private CompletableFuture<?> delete(UIToolBox toolBox) {
         AnnotationService annotationService = toolBox.getServices().getAnnotationService();
         ImageArchiveServiceDecorator decorator = new ImageArchiveServiceDecorator(toolBox);
         EventBus eventBus = toolBox.getEventBus();
-        List<CompletableFuture> futures = new ArrayList<>();
-        if (annotationRef != null) {
+        Annotation annotation = annotationRef;
+        Image pngImage = pngImageRef;
+        Image jpgImage = jpgImageRef;
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        if (annotation != null) {
             // Delete annotation and notify UI
-            CompletableFuture cf = annotationService.deleteAnnotation(annotationRef.getObservationUuid())
-                    .thenAccept(b -> eventBus.send(new AnnotationsRemovedEvent(annotationRef)));
-            futures.add(cf);
+            futures.add(annotationService.deleteAnnotation(annotation.getObservationUuid())
+                    .thenAccept(b -> eventBus.send(new AnnotationsRemovedEvent(annotation))));
         }
-        if (pngImageRef != null) {
-            futures.add(annotationService.deleteImage(pngImageRef.getImageReferenceUuid()));
+        if (pngImage != null) {
+            futures.add(annotationService.deleteImage(pngImage.getImageReferenceUuid()));
         }
-        if (jpgImageRef != null) {
-            futures.add(annotationService.deleteImage(jpgImageRef.getImageReferenceUuid()));
+        if (jpgImage != null) {
+            futures.add(annotationService.deleteImage(jpgImage.getImageReferenceUuid()));
         }
-        CompletableFuture[] futuresArray = futures.toArray(new CompletableFuture[futures.size()]);
-        CompletableFuture.allOf(futuresArray)
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
                 .thenAccept(v -> {
-                    // The png is the first one created so it HAS to be present for the others to exist
+                    // The png is created before the jpg so it HAS to be present for the jpg to exist
                     // We only need this one to find all the annotations that were affected
-                    if (pngImageRef != null) {
-                        decorator.refreshRelatedAnnotations(pngImageRef.getImageReferenceUuid());
+                    if (pngImage != null) {
+                        decorator.refreshRelatedAnnotations(pngImage.getImageReferenceUuid());
                     }
                 });
     }
 
-    @Override
-    public String getDescription() {
-        return null;
-    }
-
-    private void applyFromCachedData(UIToolBox toolBox) {
-
-        if (annotationRef != null && pngImageRef != null) {
-            AnnotationService annotationService  = toolBox.getServices().getAnnotationService();
-            ImageArchiveServiceDecorator decorator = new ImageArchiveServiceDecorator(toolBox);
-            List<CompletableFuture> futures = new ArrayList<>();
-            futures.add(annotationService.createAnnotation(annotationRef));
-            futures.add(annotationService.createImage(pngImageRef));
-            if (jpgImageRef != null) {
-                futures.add(annotationService.createImage(jpgImageRef));
-            }
-            CompletableFuture[] futureArray = futures.toArray(new CompletableFuture[futures.size()]);
-            CompletableFuture.allOf(futureArray)
-                    .thenAccept(v -> decorator.refreshRelatedAnnotations(pngImageRef.getImageReferenceUuid()));
+    private CompletableFuture<?> applyFromCachedData(UIToolBox toolBox) {
+        if (annotationRef == null) {
+            return CompletableFuture.completedFuture(null);
         }
-
+        AnnotationService annotationService = toolBox.getServices().getAnnotationService();
+        ImageArchiveServiceDecorator decorator = new ImageArchiveServiceDecorator(toolBox);
+        EventBus eventBus = toolBox.getEventBus();
+        // One at a time so the images end up in the annotation's imaged moment
+        return annotationService.createAnnotation(annotationRef)
+                .thenCompose(annotation -> {
+                    annotationRef = annotation;
+                    eventBus.send(new AnnotationsAddedEvent(annotation));
+                    return pngImageRef == null ? CompletableFuture.completedFuture(null) :
+                            annotationService.createImage(pngImageRef);
+                })
+                .thenCompose(png -> {
+                    if (png != null) {
+                        pngImageRef = png;
+                    }
+                    return png == null || jpgImageRef == null ? CompletableFuture.completedFuture(null) :
+                            annotationService.createImage(jpgImageRef);
+                })
+                .thenAccept(jpg -> {
+                    if (jpg != null) {
+                        jpgImageRef = jpg;
+                    }
+                    if (pngImageRef != null) {
+                        decorator.refreshRelatedAnnotations(pngImageRef.getImageReferenceUuid());
+                    }
+                });
     }
 
     private void lookupDataAndApply(UIToolBox toolBox,
                                     Media media,
                                     MediaPlayer<? extends VideoState, ? extends VideoError> mediaPlayer) {
 
+        AnnotationService annotationService = toolBox.getServices().getAnnotationService();
+        AppConfig appConfig = toolBox.getAppConfig();
+        Path localCopyDirectory = appConfig.isAppImageLocalCopy() ? Initializer.getImageDirectory() : null;
+        FramegrabPipeline pipeline = new FramegrabPipeline(annotationService,
+                toolBox.getServices().getImageArchiveService(),
+                appConfig.getAppImageCopyrightOwner(),
+                executor,
+                ImageArchiveServiceDecorator.getOverlayRenderer(appConfig),
+                localCopyDirectory);
+        EventBus eventBus = toolBox.getEventBus();
 
-        // -- Capture image
-        File imageFile = ImageArchiveServiceDecorator.buildLocalImageFile(media, ".png");
-        Optional<Framegrab> framegrabOpt = capture(imageFile, media, mediaPlayer);
-
-        if (!framegrabOpt.isPresent()) {
-            //log.warn("No framegrab was captured for {} at {}", media.getVideoName(), media.getUri());
-            ResourceBundle i18n = toolBox.getI18nBundle();
-            String content = i18n.getString("commands.framecapture.nomedia.content") +
-                    imageFile.getAbsolutePath();
-            showWarningAlert(toolBox,  content);
-        }
-        else {
-
-            Framegrab framegrab = framegrabOpt.get();
-            //log.info("Captured image at {}", framegrab.getVideoIndex());
-
-            ImageArchiveServiceDecorator decorator = new ImageArchiveServiceDecorator(toolBox);
-            // -- 1. Upload image to server and register in annotation service
-            decorator.createImageFromExistingImagePath(media, framegrab, imageFile.toPath())
-                    .thenCompose(pngOpt -> {
-                        if (pngOpt.isPresent()) {
-                            CreatedImageData createdImageData = pngOpt.get();
-                            pngImageRef = createdImageData.getImage();
-                            // -- 2. Create an annotation at the same index as the image
-                            return createAnnotationInDatastore(toolBox, pngImageRef.getVideoIndex()).thenCompose(annotation -> {
-                                annotationRef = annotation;
-                                EventBus eventBus = toolBox.getEventBus();
-                                eventBus.send(new AnnotationsAddedEvent(annotationRef));
-                                eventBus.send(new AnnotationsSelectedEvent(annotationRef));
-                                // -- 3. Create a jpeg
-                                return decorator.createdCompressedFramegrab(media,
-                                        framegrab,
-                                        createdImageData.getImageUploadResults())
-                                        .thenApply(jpgOpt -> {
-                                            jpgOpt.ifPresent(cid -> jpgImageRef = cid.getImage());
-                                            return jpgOpt;
-                                        });
-
-                            });
-                        }
-                        else {
-                            throw new RuntimeException("Failed to capture framgrab");
-                        }
-                    })
-                    .whenComplete((opt, throwable) -> {
-                        // refresh whether is succeeds or fails
-                        boolean deleteImage = false;
-                        ResourceBundle i18n = toolBox.getI18nBundle();
-                        if (pngImageRef == null) {
-                            String msg = i18n.getString("commands.framecapture.fail.noimage");
-                            showWarningAlert(toolBox, msg, throwable);
-                        }
-                        else if (pngImageRef != null && annotationRef == null) {
-                            String msg = i18n.getString("commands.framecapture.faile.noannotation");
-                            showWarningAlert(toolBox, msg, throwable);
-                            deleteImage = true;
-                        }
-                        decorator.refreshRelatedAnnotations(pngImageRef.getImageReferenceUuid(), deleteImage);
-                    });
-
+        FramegrabPipeline.Job job = pipeline.run(mediaPlayer.getImageCaptureService(),
+                media,
+                videoIndex -> createAnnotationInDatastore(toolBox, videoIndex),
+                new StageListener(toolBox));
+        this.job = job;
+
+        // The annotation is shown as soon as it exists, the images are added by the refresh
+        CompletableFuture<Void> annotationFuture = job.getAnnotation()
+                .thenAccept(annotation -> {
+                    annotationRef = annotation;
+                    eventBus.send(new AnnotationsAddedEvent(annotation));
+                    eventBus.send(new AnnotationsSelectedEvent(annotation));
+                });
+        CompletableFuture<Void> pngFuture = job.getPngImage().thenAccept(image -> pngImageRef = image);
+        CompletableFuture<Void> jpgFuture = job.getJpgImage().thenAccept(image -> jpgImageRef = image);
 
-        }
+        chain(() -> CompletableFuture.allOf(annotationFuture, pngFuture, jpgFuture)
+                .whenComplete((v, ex) -> {
+                    // refresh whether it succeeds or fails
+                    if (pngImageRef != null) {
+                        ImageArchiveServiceDecorator decorator = new ImageArchiveServiceDecorator(toolBox);
+                        decorator.refreshRelatedAnnotations(pngImageRef.getImageReferenceUuid());
+                    }
+                }));
     }
 
     private void showWarningAlert(UIToolBox toolBox, String content) {
@@ -213,35 +201,13 @@ public class FramegrabCmd implements Command {
         String title = i18n.getString("commands.framecapture.title");
         String header = i18n.getString("commands.framecapture.header");
         EventBus eventBus = toolBox.getEventBus();
-        
-        ShowAlert alert = (throwable == null) ? 
+
+        ShowAlert alert = (throwable == null) ?
             new ShowWarningAlert(title, header, content) :
             new ShowExceptionAlert(title, header, content, new RuntimeException(content, throwable));
         eventBus.send(alert);
     }
 
-    private static Optional<Framegrab> capture(File imageFile,
-                                               Media media,
-                                               MediaPlayer<? extends VideoState, ? extends VideoError> mediaPlayer) {
-        try {
-            ImageCaptureService service = mediaPlayer.getImageCaptureService();
-            Framegrab framegrab = service.capture(imageFile);
-
-            // If there's an elapsed time, make sure the recordedTimestamp is
-            // set and correct
-            framegrab.getVideoIndex().ifPresent(videoIndex ->
-                videoIndex.getElapsedTime().ifPresent(elapsedTime -> {
-                    Instant recordedDate = media.getStartTimestamp().plus(elapsedTime);
-                    framegrab.setVideoIndex(new VideoIndex(elapsedTime, recordedDate));
-                }));
-            return Optional.of(framegrab);
-        }
-        catch (Exception e) {
-            // TODO show error
-            return Optional.empty();
-        }
-    }
-
     private CompletableFuture<Annotation> createAnnotationInDatastore(UIToolBox toolBox, VideoIndex videoIndex) {
         AnnotationService annotationService = toolBox.getServices().getAnnotationService();
         ConceptService conceptService = toolBox.getServices().getConceptService();
@@ -256,5 +222,53 @@ public class FramegrabCmd implements Command {
 
     }
 
+    /**
+     * Shows each stage in the status bar and alerts the user when one fails
+     */
+    private class StageListener implements FramegrabPipeline.Listener {
+
+        private final UIToolBox toolBox;
+
+        StageListener(UIToolBox toolBox) {
+            this.toolBox = toolBox;
+        }
+
+        @Override
+        public void started(FramegrabPipeline.Stage stage) {
+            toolBox.getEventBus().send(new SetStatusBarMsg("Framegrab: " + stage.getDescription()));
+        }
+
+        @Override
+        public void completed(FramegrabPipeline.Stage stage) {
+            if (stage == FramegrabPipeline.Stage.JPG_IMAGE) {
+                toolBox.getEventBus().send(new SetStatusBarMsg(""));
+            }
+        }
+
+        @Override
+        public void failed(FramegrabPipeline.Stage stage, Throwable throwable) {
+            ResourceBundle i18n = toolBox.getI18nBundle();
+            String content;
+            switch (stage) {
+                case CAPTURE:
+                    content = i18n.getString("commands.framecapture.fail.noimage");
+                    break;
+                case ANNOTATION:
+                    content = i18n.getString("commands.framecapture.faile.noannotation");
+                    break;
+                case PNG_UPLOAD:
+                case PNG_IMAGE:
+                    content = i18n.getString("commands.framecapture.fail.png");
+                    break;
+                case LOCAL_COPY:
+                    content = i18n.getString("commands.framecapture.fail.localcopy");
+                    break;
+                default:
+                    content = i18n.getString("commands.framecapture.fail.jpg");
+            }
+            toolBox.getEventBus().send(new SetStatusBarMsg("Framegrab failed: " + stage.getDescription()));
+            showWarningAlert(toolBox, content, throwable);
+        }
+    }
 
 }
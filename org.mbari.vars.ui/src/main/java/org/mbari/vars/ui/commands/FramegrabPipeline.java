@@ -0,0 +1,382 @@
+package org.mbari.vars.ui.commands;
+
+import org.mbari.vars.services.AnnotationService;
+import org.mbari.vars.services.ImageArchiveService;
+import org.mbari.vars.services.ImageCaptureService;
+import org.mbari.vars.services.ImageEncoder;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Framegrab;
+import org.mbari.vars.services.model.Image;
+import org.mbari.vars.services.model.ImageUploadResults;
+import org.mbari.vars.services.model.Media;
+import org.mbari.vars.services.util.JpegEncoder;
+import org.mbari.vars.services.util.OverlayRenderer;
+import org.mbari.vars.ui.javafx.ImageArchiveServiceDecorator;
+import org.mbari.vcr4j.VideoIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Turns a framegrab into an annotation with a png and a jpg (with a text overlay) image.
+ * Only the capture runs on the calling thread. The annotation is created as soon as the
+ * image is captured while the png is uploaded. Once the png's URL is known the jpg's overlay
+ * is drawn on the executor and the jpg is uploaded. The image records are created after the
+ * annotation so that the annotation service doesn't create a second imaged moment at the
+ * same index.
+ *
+ * <pre>
+ *     Capture --+--> Annotation ------------------+
+ *               |                                 +--> Png image --+
+ *               +--> Png upload --+---------------+                +--> Jpg image
+ *               |                 +--> Jpg overlay --> Jpg upload -+
+ *               +--> Local copy (optional)
+ * </pre>
+ *
+ * The captured frame stays in memory. The png is encoded straight into its upload request
+ * (see {@link ImageEncoder}). The jpg is drawn and encoded by an {@link OverlayRenderer},
+ * which reuses its canvases, and uploaded from the encoded bytes. A png is only written to
+ * disk if a local copy directory is given.
+ *
+ * Each stage is reported to a {@link Listener}. A stage that depends on a failed stage is
+ * never started.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T20:00:00
+ */
+public class FramegrabPipeline {
+
+    public enum Stage {
+        CAPTURE("Capturing image"),
+        ANNOTATION("Creating annotation"),
+        PNG_UPLOAD("Uploading png"),
+        PNG_IMAGE("Registering png"),
+        JPG_OVERLAY("Drawing and encoding jpg"),
+        JPG_UPLOAD("Uploading jpg"),
+        JPG_IMAGE("Registering jpg"),
+        LOCAL_COPY("Saving local copy");
+
+        private final String description;
+
+        Stage(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * Listener methods are called from whichever thread ran the stage.
+     */
+    public interface Listener {
+        default void started(Stage stage) {}
+        default void completed(Stage stage) {}
+        default void failed(Stage stage, Throwable throwable) {}
+    }
+
+    /**
+     * The results of one framegrab. Each future completes exceptionally if its stage, or a
+     * stage it depends on, failed.
+     */
+    public static class Job {
+        private final Framegrab framegrab;
+        private final CompletableFuture<Annotation> annotation;
+        private final CompletableFuture<Image> pngImage;
+        private final CompletableFuture<Image> jpgImage;
+        private final CompletableFuture<Path> localCopy;
+
+        private Job(Framegrab framegrab,
+                    CompletableFuture<Annotation> annotation,
+                    CompletableFuture<Image> pngImage,
+                    CompletableFuture<Image> jpgImage,
+                    CompletableFuture<Path> localCopy) {
+            this.framegrab = framegrab;
+            this.annotation = annotation;
+            this.pngImage = pngImage;
+            this.jpgImage = jpgImage;
+            this.localCopy = localCopy;
+        }
+
+        private static Job failed(Throwable throwable) {
+            CompletableFuture<Annotation> a = CompletableFuture.failedFuture(throwable);
+            CompletableFuture<Image> i = CompletableFuture.failedFuture(throwable);
+            return new Job(null, a, i, i, CompletableFuture.failedFuture(throwable));
+        }
+
+        /**
+         * @return The captured framegrab. Empty if the capture failed
+         */
+        public Optional<Framegrab> getFramegrab() {
+            return Optional.ofNullable(framegrab);
+        }
+
+        public CompletableFuture<Annotation> getAnnotation() {
+            return annotation;
+        }
+
+        public CompletableFuture<Image> getPngImage() {
+            return pngImage;
+        }
+
+        public CompletableFuture<Image> getJpgImage() {
+            return jpgImage;
+        }
+
+        /**
+         * @return The local copy of the png. null if no local copy was requested
+         */
+        public CompletableFuture<Path> getLocalCopy() {
+            return localCopy;
+        }
+
+        /**
+         * @return A future that completes, successfully, once every stage has finished or been skipped
+         */
+        public CompletableFuture<Void> getDone() {
+            return CompletableFuture.allOf(annotation, pngImage, jpgImage, localCopy)
+                    .handle((v, ex) -> null);
+        }
+    }
+
+    private final AnnotationService annotationService;
+    private final ImageArchiveService imageArchiveService;
+    private final String copyrightOwner;
+    private final Executor executor;
+    private final OverlayRenderer overlayRenderer;
+    private final Path localCopyDirectory;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * @param annotationService Creates the image records
+     * @param imageArchiveService Stores the png and jpg
+     * @param copyrightOwner Written in the jpg's overlay
+     * @param executor Draws the jpg overlays and writes local copies. Use a bounded executor,
+     *                 e.g. {@link #newExecutor(int, int)}
+     * @param overlayRenderer Draws and encodes the jpgs. Share one between pipelines so its
+     *                        canvases are reused
+     * @param localCopyDirectory Where a copy of each png is saved. null to not keep local copies
+     */
+    public FramegrabPipeline(AnnotationService annotationService,
+                             ImageArchiveService imageArchiveService,
+                             String copyrightOwner,
+                             Executor executor,
+                             OverlayRenderer overlayRenderer,
+                             Path localCopyDirectory) {
+        this.annotationService = annotationService;
+        this.imageArchiveService = imageArchiveService;
+        this.copyrightOwner = copyrightOwner;
+        this.executor = executor;
+        this.overlayRenderer = overlayRenderer;
+        this.localCopyDirectory = localCopyDirectory;
+    }
+
+    /**
+     * An executor with a fixed number of daemon threads and a bounded queue. When the queue
+     * is full the submitting thread does the work itself, which slows down rapid framegrabs
+     * instead of piling up images in memory.
+     *
+     * @param threads The number of threads
+     * @param queueSize The number of tasks that can wait for a thread
+     * @return A new executor
+     */
+    public static ExecutorService newExecutor(int threads, int queueSize) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "vars-framegrab-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Captures a framegrab and starts the rest of the stages.
+     *
+     * @param captureService Captures the image. Called on this thread
+     * @param media The media being captured
+     * @param annotationFactory Creates the annotation in the annotation service at the
+     *                          framegrab's index
+     * @param listener Notified as each stage starts and finishes
+     * @return The framegrab's results
+     */
+    public Job run(ImageCaptureService captureService,
+                   Media media,
+                   Function<VideoIndex, CompletableFuture<Annotation>> annotationFactory,
+                   Listener listener) {
+
+        // -- Capture
+        listener.started(Stage.CAPTURE);
+        Framegrab framegrab;
+        BufferedImage png;
+        try {
+            framegrab = capture(captureService, media);
+            png = toBufferedImage(framegrab.getImage().get());
+        }
+        catch (Exception e) {
+            log.warn("Failed to capture a framegrab", e);
+            listener.failed(Stage.CAPTURE, e);
+            return Job.failed(e);
+        }
+        listener.completed(Stage.CAPTURE);
+        VideoIndex videoIndex = framegrab.getVideoIndex().get();
+
+        // -- Annotation, png upload and local copy run concurrently
+        CompletableFuture<Annotation> annotation = stage(Stage.ANNOTATION, listener,
+                () -> annotationFactory.apply(videoIndex));
+        CompletableFuture<ImageUploadResults> pngUpload = stage(Stage.PNG_UPLOAD, listener,
+                () -> upload(media, videoIndex, ImageEncoder.of(png, "png"), "png"));
+        CompletableFuture<Path> localCopy = localCopyDirectory == null ?
+                CompletableFuture.completedFuture(null) :
+                CompletableFuture.supplyAsync(() -> stage(Stage.LOCAL_COPY, listener,
+                        () -> CompletableFuture.completedFuture(saveLocalCopy(media, videoIndex, png))), executor)
+                        .thenCompose(f -> f);
+
+        // -- The jpg's overlay needs the png's URL
+        CompletableFuture<byte[]> jpgOverlay = pngUpload.thenComposeAsync(r -> stage(Stage.JPG_OVERLAY, listener,
+                () -> CompletableFuture.completedFuture(renderJpg(framegrab, png, r))), executor);
+        CompletableFuture<ImageUploadResults> jpgUpload = jpgOverlay.thenCompose(jpg -> stage(Stage.JPG_UPLOAD, listener,
+                () -> upload(media, videoIndex, ImageEncoder.of(jpg, JpegEncoder.MEDIA_TYPE), "jpg")));
+
+        // -- Image records are created one at a time, after the annotation
+        CompletableFuture<Image> pngImage = annotation.thenCombine(pngUpload, (a, r) -> r)
+                .thenCompose(r -> stage(Stage.PNG_IMAGE, listener,
+                        () -> createImage(media, framegrab, r, "png", "uncompressed image")));
+        CompletableFuture<Image> jpgImage = pngImage.thenCombine(jpgUpload, (i, r) -> r)
+                .thenCompose(r -> stage(Stage.JPG_IMAGE, listener,
+                        () -> createImage(media, framegrab, r, "jpg", "compressed image")));
+
+        return new Job(framegrab, annotation, pngImage, jpgImage, localCopy);
+    }
+
+    private static Framegrab capture(ImageCaptureService captureService, Media media) {
+        // No file, the capture service keeps the image in memory
+        Framegrab framegrab = captureService.capture(null);
+        if (framegrab == null || framegrab.getImage().isEmpty() || framegrab.getVideoIndex().isEmpty()) {
+            throw new IllegalStateException("No image was captured");
+        }
+
+        // If there's an elapsed time, make sure the recordedTimestamp is
+        // set and correct
+        VideoIndex videoIndex = framegrab.getVideoIndex().get();
+        if (videoIndex.getElapsedTime().isPresent() && media.getStartTimestamp() != null) {
+            Instant recordedDate = media.getStartTimestamp().plus(videoIndex.getElapsedTime().get());
+            framegrab.setVideoIndex(new VideoIndex(videoIndex.getElapsedTime().get(), recordedDate));
+        }
+        return framegrab;
+    }
+
+    private <T> CompletableFuture<T> stage(Stage stage,
+                                           Listener listener,
+                                           Supplier<CompletableFuture<T>> supplier) {
+        listener.started(stage);
+        CompletableFuture<T> future;
+        try {
+            future = supplier.get();
+        }
+        catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((v, ex) -> {
+            if (ex == null) {
+                listener.completed(stage);
+            }
+            else {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ?
+                        ex.getCause() : ex;
+                log.warn("Framegrab stage " + stage + " failed", cause);
+                listener.failed(stage, cause);
+            }
+        });
+    }
+
+    private CompletableFuture<ImageUploadResults> upload(Media media,
+                                                         VideoIndex videoIndex,
+                                                         ImageEncoder image,
+                                                         String ext) {
+        String name = ImageArchiveServiceDecorator.buildName(media.getVideoReferenceUuid(), videoIndex, ext);
+        String deploymentId = CommandUtil.getDeploymentId(media);
+        return imageArchiveService.upload(media.getCameraId(), deploymentId, name, image);
+    }
+
+    private byte[] renderJpg(Framegrab framegrab, BufferedImage png, ImageUploadResults pngUploadResults) {
+        String[] overlayText = ImageArchiveServiceDecorator.createOverlayText(copyrightOwner,
+                framegrab, pngUploadResults);
+        try {
+            return overlayRenderer.renderJpeg(png, overlayText);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode the jpg", e);
+        }
+    }
+
+    private Path saveLocalCopy(Media media, VideoIndex videoIndex, BufferedImage png) {
+        String name = ImageArchiveServiceDecorator.buildName(media.getVideoReferenceUuid(), videoIndex, "png");
+        Path path = localCopyDirectory.resolve(name);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            ImageEncoder.of(png, "png").encode(out);
+            return path;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to save png image to " + path, e);
+        }
+    }
+
+    private static BufferedImage toBufferedImage(java.awt.Image image) {
+        if (image instanceof BufferedImage) {
+            return (BufferedImage) image;
+        }
+        BufferedImage bi = new BufferedImage(image.getWidth(null), image.getHeight(null),
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = bi.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return bi;
+    }
+
+    private CompletableFuture<Image> createImage(Media media,
+                                                 Framegrab framegrab,
+                                                 ImageUploadResults uploadResults,
+                                                 String ext,
+                                                 String description) {
+        URL url;
+        try {
+            url = uploadResults.getUri().toURL();
+        }
+        catch (MalformedURLException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        java.awt.Image awtImage = framegrab.getImage().get();
+        Image image = ImageArchiveServiceDecorator.newImage(media, framegrab.getVideoIndex().get(),
+                url, ext, description, awtImage.getWidth(null), awtImage.getHeight(null));
+        return annotationService.createImage(image);
+    }
+}
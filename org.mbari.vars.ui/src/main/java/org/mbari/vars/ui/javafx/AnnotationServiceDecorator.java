@@ -5,6 +5,8 @@ import com.google.common.collect.Lists;
 import io.reactivex.Observable;
 import io.reactivex.schedulers.Schedulers;
 import org.mbari.vars.core.EventBus;
+import org.mbari.vars.ui.AppConfig;
+import org.mbari.vars.ui.Initializer;
 import org.mbari.vars.ui.UIToolBox;
 import org.mbari.vars.ui.events.AnnotationsAddedEvent;
 import org.mbari.vars.ui.events.AnnotationsChangedEvent;
@@ -16,8 +18,11 @@ import org.mbari.vars.ui.messages.ShowNonfatalErrorAlert;
 import org.mbari.vars.ui.messages.ShowProgress;
 import org.mbari.vars.services.model.*;
 import org.mbari.vars.services.AnnotationService;
+import org.mbari.vars.services.CachingAnnotationLoader;
+import org.mbari.vars.services.ImageAnnotationResolver;
 import org.mbari.vars.services.MediaService;
 import org.mbari.vars.services.RequestPager;
+import org.mbari.vars.services.impl.annosaurus.v2.StreamingAnnotationLoader;
 import org.mbari.vars.core.util.AsyncUtils;
 import org.mbari.vars.ui.util.JFXUtilities;
 import org.mbari.vars.ui.services.CachedReferenceNumberDecorator;
@@ -34,8 +39,10 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 /**
@@ -44,6 +51,12 @@ import java.util.stream.Collectors;
  */
 public class AnnotationServiceDecorator {
 
+    /**
+     * The source of annotation events that only change which annotations are shown
+     * (loading a video, clearing the view), as opposed to edits.
+     */
+    public static final String EVENT_SOURCE = AnnotationServiceDecorator.class.getName();
+
     private enum PagingStyle {
         PARALLEL,
         SEQUENTIAL
@@ -55,6 +68,7 @@ public class AnnotationServiceDecorator {
     private final Duration chunkTimeout;
     private PagingStyle pagingStyle;
     private final int numberSimultaneousPages;
+    private final boolean streaming;
 
     // When loading concurrent annotations we need to avoid swamping the annosaurus
     private final ExecutorService pagingExecutor = Executors.newSingleThreadExecutor();
@@ -64,6 +78,7 @@ public class AnnotationServiceDecorator {
         this.chunkSize = toolBox.getConfig().getInt("annotation.service.page.size");
         this.chunkTimeout = toolBox.getConfig().getDuration("annotation.service.timeout");
         this.numberSimultaneousPages = toolBox.getConfig().getInt("annotation.service.page.count");
+        this.streaming = toolBox.getAppConfig().isAnnotationServiceStreaming();
 
         /*
          When deploed on infrastructures with multiple annosaurus servers we
@@ -90,30 +105,170 @@ public class AnnotationServiceDecorator {
         return findAnnotations(videoReferenceUuid, toolBox.getExecutorService());
     }
     /**
-     * Find all annotations for a given video reference. The calls to retrieve
-     * the annotations are
+     * Find all annotations for a given video reference. They're always loaded from the
+     * server. If the local annotation cache is enabled, the cached copy is shown while
+     * they load and the server's annotations replace it as they arrive.
      * @param videoReferenceUuid
      */
     public CompletableFuture<Void>  findAnnotations(UUID videoReferenceUuid, ExecutorService executor) {
+        CachingAnnotationLoader cache = Initializer.getAnnotationCache();
+        if (cache == null) {
+            return loadAnnotations(videoReferenceUuid, executor, annotations -> {});
+        }
+
+        EventBus eventBus = toolBox.getEventBus();
+        return cache.load(videoReferenceUuid)
+                .thenCompose(opt -> {
+                    // The table and Data replace annotations with the same observationUuid
+                    // in place, so the cached ones are updated as the pages arrive
+                    List<Annotation> cached = opt.orElse(Collections.emptyList());
+                    AtomicInteger shownAnnotationCount = new AtomicInteger(0);
+                    for (List<Annotation> page : Lists.partition(cached, chunkSize)) {
+                        updateUI(eventBus, page, false, cached.size(), shownAnnotationCount);
+                    }
+                    List<Annotation> loaded = Collections.synchronizedList(new ArrayList<>());
+                    return loadAnnotations(videoReferenceUuid, executor, loaded::addAll)
+                            .thenRun(() -> {
+                                List<Annotation> removed = CachingAnnotationLoader.findRemoved(cached, loaded);
+                                if (!removed.isEmpty()) {
+                                    log.info("{} cached annotations for {} were deleted on the server",
+                                            removed.size(), videoReferenceUuid);
+                                    eventBus.send(new AnnotationsRemovedEvent(EVENT_SOURCE, removed));
+                                }
+                                cache.save(videoReferenceUuid, loaded);
+                                logCacheMetrics(cache);
+                            });
+                });
+    }
+
+    private void logCacheMetrics(CachingAnnotationLoader cache) {
+        log.info("Annotation cache: {} hits, {} misses. Hit ratio = {}",
+                cache.getHitCount(),
+                cache.getMissCount(),
+                String.format("%.2f", cache.getHitRatio()));
+    }
+
+    /**
+     * Loads all the annotations for a video reference from the server. When streaming is
+     * enabled, media with a start timestamp are streamed (see
+     * {@link #streamAnnotations(UUID, Consumer)}). Media without one, like tapes that only
+     * have timecode, have no recordedTimestamps to stream on so they're paged by offset.
+     * @param onPage Called with each page of annotations as it's loaded
+     * @return A future that completes once every page is loaded
+     */
+    private CompletableFuture<Void> loadAnnotations(UUID videoReferenceUuid,
+                                                    ExecutorService executor,
+                                                    Consumer<List<Annotation>> onPage) {
+        if (!streaming) {
+            return pageAnnotations(videoReferenceUuid, onPage);
+        }
+        return findMedia(videoReferenceUuid)
+                .thenCompose(media -> {
+                    if (media != null && media.getStartTimestamp() != null) {
+                        return streamAnnotations(videoReferenceUuid, onPage);
+                    }
+                    return pageAnnotations(videoReferenceUuid, onPage);
+                });
+    }
+
+    /**
+     * @return The media being annotated if it's the one we want, otherwise it's looked up.
+     *  Completes with null if the lookup fails.
+     */
+    private CompletableFuture<Media> findMedia(UUID videoReferenceUuid) {
+        Media media = toolBox.getData().getMedia();
+        if (media != null && videoReferenceUuid.equals(media.getVideoReferenceUuid())) {
+            return CompletableFuture.completedFuture(media);
+        }
+        return toolBox.getServices()
+                .getMediaService()
+                .findByUuid(videoReferenceUuid)
+                .exceptionally(ex -> {
+                    log.warn("Failed to find media for " + videoReferenceUuid, ex);
+                    return null;
+                });
+    }
+
+    /**
+     * Loads annotations using limit/offset paging
+     */
+    private CompletableFuture<Void> pageAnnotations(UUID videoReferenceUuid,
+                                                    Consumer<List<Annotation>> onPage) {
         AnnotationService service = toolBox.getServices().getAnnotationService();
         EventBus eventBus = toolBox.getEventBus();
         AtomicInteger loadedAnnotationCount = new AtomicInteger(0);
         return service.countAnnotations(videoReferenceUuid)
                 .whenComplete((v, ex) -> eventBus.send(new ShowProgress()))
-                .thenAccept(ac ->
+                .thenCompose(ac ->
                         loadAnnotationPages(loadedAnnotationCount,
                                 ac.getCount(),
                                 ac,
                                 true,
-                                null,
-                                executor)
-                            .whenComplete((v, ex) -> {
-                                eventBus.send(new HideProgress());
-                                if (ex != null) {
-                                    // Show error dialog
-                                    showFindAnnotationsError(videoReferenceUuid, ex);
-                                }
-                            }));
+                                annotations -> annotations,
+                                onPage))
+                .whenComplete((v, ex) -> {
+                    eventBus.send(new HideProgress());
+                    if (ex != null) {
+                        // Show error dialog
+                        showFindAnnotationsError(videoReferenceUuid, ex);
+                    }
+                });
+    }
+
+    /**
+     * Loads annotations using keyset paging on recorded timestamps (see
+     * {@link StreamingAnnotationLoader}), so there's no up-front count and no deep offsets.
+     * The count is fetched alongside the stream and is only used for the progress bar.
+     * The stream can't return annotations without a recordedTimestamp. Annosaurus has no
+     * query for just those, and paging the whole video again to find them would double
+     * the download, so they're only logged. They're rare on media with a start timestamp.
+     */
+    private CompletableFuture<Void> streamAnnotations(UUID videoReferenceUuid,
+                                                      Consumer<List<Annotation>> onPage) {
+        AnnotationService service = toolBox.getServices().getAnnotationService();
+        EventBus eventBus = toolBox.getEventBus();
+        AtomicInteger loadedAnnotationCount = new AtomicInteger(0);
+        eventBus.send(new ShowProgress());
+
+        CompletableFuture<AnnotationCount> countFuture = service.countAnnotations(videoReferenceUuid);
+        StreamingAnnotationLoader loader = new StreamingAnnotationLoader(toolBox.getServices().getAnnoServiceV2(),
+                chunkSize,
+                chunkTimeout,
+                toolBox.getServices().getRetryPolicy());
+
+        CompletableFuture<Void> streamFuture = new CompletableFuture<>();
+        loader.stream(videoReferenceUuid)
+                .subscribeOn(Schedulers.io())
+                .subscribe(annotations -> {
+                            onPage.accept(annotations);
+                            AnnotationCount ac = countFuture.getNow(null);
+                            int total = ac == null ? 0 : ac.getCount();
+                            updateUI(eventBus, annotations, total > 0, total, loadedAnnotationCount);
+                        },
+                        streamFuture::completeExceptionally,
+                        () -> streamFuture.complete(null));
+
+        return streamFuture
+                .thenRun(() -> {
+                    int loaded = loadedAnnotationCount.get();
+                    log.info("Streamed {} annotations for {}", loaded, videoReferenceUuid);
+                    // Every page was delivered, so a failed count isn't a failed load
+                    countFuture.whenComplete((ac, ex) -> {
+                        if (ex != null) {
+                            log.warn("Failed to count the annotations for " + videoReferenceUuid, ex);
+                        }
+                        else if (ac.getCount() > loaded) {
+                            log.warn("{} annotations for {} were not loaded. They don't have a recordedTimestamp or were deleted while loading",
+                                    ac.getCount() - loaded, videoReferenceUuid);
+                        }
+                    });
+                })
+                .whenComplete((v, ex) -> {
+                    eventBus.send(new HideProgress());
+                    if (ex != null) {
+                        showFindAnnotationsError(videoReferenceUuid, ex);
+                    }
+                });
     }
 
     private void showFindAnnotationsError(UUID videoReferenceUuid, Throwable ex) {
@@ -141,16 +296,34 @@ public class AnnotationServiceDecorator {
                                                          boolean sendNotifications,
                                                          Media masterMedia,
                                                          ExecutorService executor) {
+        return loadAnnotationPages(loadedAnnotationCount,
+                totalAnnotationCount,
+                ac,
+                sendNotifications,
+                annotations -> masterMedia == null ? annotations : filterWithinMedia(annotations, masterMedia),
+                annotations -> {});
+    }
+
+    private CompletableFuture<Void> loadAnnotationPages(AtomicInteger loadedAnnotationCount,
+                                                         int totalAnnotationCount,
+                                                         AnnotationCount ac,
+                                                         boolean sendNotifications,
+                                                         UnaryOperator<List<Annotation>> pageFilter,
+                                                         Consumer<List<Annotation>> onPage) {
 
         AnnotationService service = toolBox.getServices()
                 .getAnnotationService();
 
         EventBus eventBus = toolBox.getEventBus();
 
+        // Each annotation is parsed straight off the response body as it arrives rather
+        // than the whole page being deserialized after it's read.
         Function<RequestPager.Page, List<Annotation>> function = (page) -> {
             try {
-                return service.findAnnotations(ac.getVideoReferenceUuid(), page.getLimit(), page.getOffset(), false)
+                List<Annotation> annotations = new ArrayList<>((int) page.getLimit());
+                service.streamAnnotations(ac.getVideoReferenceUuid(), page.getLimit(), page.getOffset(), false, annotations::add)
                         .get(chunkTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                return annotations;
             } catch (Exception e) {
                 log.info("A page request failed.", e);
                 throw new RuntimeException(e);
@@ -162,16 +335,20 @@ public class AnnotationServiceDecorator {
 
         if (ac.getCount() > 0) {
             int threadCount = pagingStyle.equals(PagingStyle.PARALLEL) ? numberSimultaneousPages : 1;
-            RequestPager<List<Annotation>> pager = new RequestPager<>(function, 2, threadCount);
+            RequestPager<List<Annotation>> pager = new RequestPager<>(function,
+                    toolBox.getServices().getRetryPolicy(), threadCount);
             RequestPager.Runner<List<Annotation>> runner = pager.build(ac.getCount(), chunkSize);
             Observable<List<Annotation>> observable = runner.getObservable();
             observable.subscribeOn(Schedulers.io())
-                    .map(annotations -> masterMedia == null ? annotations : filterWithinMedia(annotations, masterMedia))
-                    .subscribe(annotations -> updateUI(eventBus,
-                            annotations,
-                            sendNotifications,
-                            totalAnnotationCount,
-                            loadedAnnotationCount),
+                    .map(pageFilter::apply)
+                    .subscribe(annotations -> {
+                                onPage.accept(annotations);
+                                updateUI(eventBus,
+                                        annotations,
+                                        sendNotifications,
+                                        totalAnnotationCount,
+                                        loadedAnnotationCount);
+                            },
                             future::completeExceptionally,
                             () -> {
                                 log.info("Loaded annotations for " + ac.getVideoReferenceUuid());
@@ -318,7 +495,7 @@ public class AnnotationServiceDecorator {
                 eventBus.send(new SetProgress(progress));
             }
 
-            eventBus.send(new AnnotationsAddedEvent(annotations));
+            eventBus.send(new AnnotationsAddedEvent(EVENT_SOURCE, annotations));
         }
 
     }
@@ -410,7 +587,7 @@ public class AnnotationServiceDecorator {
                 .collect(Collectors.toList());
         EventBus eventBus = toolBox.getEventBus();
         eventBus.send(new AnnotationsSelectedEvent(new ArrayList<>()));
-        eventBus.send(new AnnotationsRemovedEvent(removeMe));
+        eventBus.send(new AnnotationsRemovedEvent(EVENT_SOURCE, removeMe));
     }
 
     /**
@@ -421,7 +598,10 @@ public class AnnotationServiceDecorator {
 
         final EventBus eventBus = toolBox.getEventBus();
         final AnnotationService annotationService = toolBox.getServices().getAnnotationService();
-        AsyncUtils.collectAll(observationUuids, annotationService::findByUuid)
+        if (observationUuids.isEmpty()) {
+            return;
+        }
+        annotationService.findByUuids(observationUuids)
                 .thenAccept(annotations -> eventBus.send(new AnnotationsChangedEvent(annotations)));
 
     }
@@ -508,15 +688,30 @@ public class AnnotationServiceDecorator {
         return f;
     }
 
+    /**
+     * Finds the annotations for images. Images are resolved per video (see
+     * {@link ImageAnnotationResolver}) rather than with one request per image.
+     * @param images The images
+     * @return The annotations on the images' imaged moments
+     */
     public CompletableFuture<List<Annotation>> findAnnotationsForImages(Collection<Image> images) {
         AnnotationService annotationService = toolBox.getServices().getAnnotationService();
-        Function<Image, CompletableFuture<List<Annotation>>> findAnnosFn = image ->
-                annotationService.findByImageReference(image.getImageReferenceUuid());
-
-        return AsyncUtils.collectAll(images, findAnnosFn)
-                .thenApply(annotationLists -> annotationLists.stream()
-                        .flatMap(List::stream)
-                        .collect(Collectors.toList()));
+        AppConfig appConfig = toolBox.getAppConfig();
+        CachingAnnotationLoader cache = Initializer.getAnnotationCache();
+        // A cached copy may be out of date, so always fetch the video's annotations. The
+        // cache is refreshed while we have them.
+        Function<UUID, CompletableFuture<List<Annotation>>> videoLoader = cache == null ?
+                annotationService::findAnnotations :
+                uuid -> annotationService.findAnnotations(uuid)
+                        .thenApply(annotations -> {
+                            cache.save(uuid, annotations);
+                            return annotations;
+                        });
+        return new ImageAnnotationResolver(annotationService,
+                videoLoader,
+                appConfig.getAnnotationServiceImagesBatchMinImages(),
+                appConfig.getAnnotationServiceImagesBatchMaxAnnotationsPerImage())
+                .findAnnotations(images);
     }
 
 
@@ -5,10 +5,12 @@ import com.jfoenix.controls.JFXButton;
 import com.jfoenix.controls.JFXCheckBox;
 
 import java.net.URL;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.function.Predicate;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 //import de.jensd.fx.glyphs.GlyphsFactory;
@@ -34,17 +36,20 @@ import org.mbari.vars.ui.UIToolBox;
 import org.mbari.vars.ui.commands.*;
 import org.mbari.vars.ui.events.*;
 import org.mbari.vars.core.util.AsyncUtils;
-import org.mbari.vars.core.util.FnUtils;
 import org.mbari.vars.core.util.ListUtils;
 import org.mbari.vars.core.util.StringUtils;
 import org.mbari.vars.services.model.*;
-import org.mbari.vars.services.AnnotationService;
 import org.mbari.vars.services.ConceptService;
 import org.mbari.vars.ui.javafx.mediadialog.SelectMediaDialog;
 import org.mbari.vars.ui.javafx.shared.ConceptSelectionDialogController;
 import org.mbari.vars.ui.javafx.shared.DetailsDialog;
 import org.mbari.vars.ui.javafx.shared.FilteredComboBoxDecorator;
+import org.mbari.vars.ui.messages.ClearCacheMsg;
 import org.mbari.vars.ui.messages.ShowExceptionAlert;
+import org.mbari.vars.services.util.AnnotationQuery;
+import org.mbari.vars.services.util.CompiledAnnotationQuery;
+import org.mbari.vars.ui.util.AnnotationAggregates;
+import org.mbari.vars.ui.util.IndexedAnnotationList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -85,6 +90,9 @@ public class BulkEditorPaneController {
     @FXML
     private JFXCheckBox associationCheckBox;
 
+    @FXML
+    private JFXCheckBox descendantsCheckBox;
+
     @FXML
     private ComboBox<String> conceptCombobox;
 
@@ -130,6 +138,17 @@ public class BulkEditorPaneController {
 
     private ListChangeListener<Annotation> selectionChangeListener;
 
+    /** Distinct concepts, associations, groups and activities of the annotations */
+    private final AnnotationAggregates aggregates = new AnnotationAggregates();
+    private volatile long refreshedVersion = -1;
+
+    private final CachedLookup<List<String>> groups = new CachedLookup<>(() ->
+            toolBox.getServices().getAnnotationService().findGroups());
+    private final CachedLookup<List<String>> activities = new CachedLookup<>(() ->
+            toolBox.getServices().getAnnotationService().findActivities());
+
+    private static final Duration REFRESH_PERIOD = Duration.ofMillis(250);
+
 
 
     @FXML
@@ -190,6 +209,10 @@ public class BulkEditorPaneController {
                     && !conceptCombobox.getSelectionModel().isEmpty()) {
                 String concept = conceptCombobox.getSelectionModel().getSelectedItem();
                 sb.append(concept);
+                if (descendantsCheckBox.isSelected()) {
+                    sb.append(" ")
+                            .append(toolBox.getI18nBundle().getString("bulkeditor.concept.descendants.label"));
+                }
             }
 
             if (associationCheckBox.isSelected()
@@ -213,6 +236,10 @@ public class BulkEditorPaneController {
 
         conceptCheckBox.selectedProperty()
                 .addListener((obs, oldv, newv) -> updateSearchLabelFn.run());
+        descendantsCheckBox.disableProperty()
+                .bind(conceptCheckBox.selectedProperty().not());
+        descendantsCheckBox.selectedProperty()
+                .addListener((obs, oldv, newv) -> updateSearchLabelFn.run());
         conceptCombobox.getSelectionModel()
                 .selectedItemProperty()
                 .addListener((obs, oldv, newv) -> updateSearchLabelFn.run());
@@ -325,95 +352,155 @@ public class BulkEditorPaneController {
     private void setAnnotations(ObservableList<Annotation> annotations) {
         Preconditions.checkNotNull(annotations);
         this.annotations = annotations;
+        aggregates.attach(annotations);
+        refresh();
     }
 
     private void setEventBus(EventBus eventBus) {
         Preconditions.checkNotNull(eventBus);
-        final Observable<Object> obs = eventBus.toObserverable();
-        obs.ofType(AnnotationsChangedEvent.class)
-                .subscribe(e -> refresh());
-        obs.ofType(AnnotationsAddedEvent.class)
-                .subscribe(e -> refresh());
-        obs.ofType(AnnotationsRemovedEvent.class)
-                .subscribe(e -> refresh());
-        obs.ofType(MediaChangedEvent.class)
-                .subscribe(e -> refresh());
+        // A paged load sends lots of events. Refresh at most once per REFRESH_PERIOD
+        // (and once after the last event)
+        Observable.merge(eventBus.toObservable(AnnotationsChangedEvent.class),
+                eventBus.toObservable(AnnotationsAddedEvent.class),
+                eventBus.toObservable(AnnotationsRemovedEvent.class),
+                eventBus.toObservable(MediaChangedEvent.class))
+                .throttleLatest(REFRESH_PERIOD.toMillis(), TimeUnit.MILLISECONDS, true)
+                .subscribe(e -> refreshIfChanged());
+        toolBox.getEventBus()
+                .toObservable(ClearCacheMsg.class)
+                .subscribe(e -> {
+                    groups.invalidate();
+                    activities.invalidate();
+                    refresh();
+                });
         this.eventBus = eventBus;
     }
 
-    public void refresh() {
+    /**
+     * Refreshes the comboboxes if the distinct concepts, associations, groups or
+     * activities of the annotations have changed since the last refresh.
+     */
+    private void refreshIfChanged() {
+        if (aggregates.getVersion() != refreshedVersion) {
+            refresh();
+        }
+    }
 
-        List<String> concepts = annotations.stream()
-                .map(Annotation::getConcept)
-                .distinct()
-                .sorted(String.CASE_INSENSITIVE_ORDER)
-                .collect(Collectors.toList());
+    public void refresh() {
 
-        List<Association> associations = annotations.stream()
-                .map(Annotation::getAssociations)
-                .flatMap(List::stream)
-                .filter(FnUtils.distinctBy(Association::toString))
-                .sorted(Comparator.comparing(Association::toString))
-                .collect(Collectors.toList());
+        refreshedVersion = aggregates.getVersion();
+        List<String> concepts = aggregates.getConcepts();
+        List<Association> associations = aggregates.getAssociations();
+        List<String> localGroups = aggregates.getGroups();
+        List<String> localActivities = aggregates.getActivities();
 
         Platform.runLater(() -> {
             conceptCombobox.setItems(FXCollections.observableArrayList(concepts));
             associationCombobox.setItems(FXCollections.observableArrayList(associations));
         });
 
-        final AnnotationService annotationService = toolBox.getServices().getAnnotationService();
-        annotationService
-                .findGroups()
-                .thenAccept(groups -> Platform.runLater(() -> {
+        // Groups or activities that were just used may not be in the cached lists yet
+        groups.get()
+                .thenAccept(gs -> Platform.runLater(() -> {
                     // Remove the actionhandler or it gets triggered when we set the items
                     groupComboBox.setOnAction(noopHandler);
-                    groupComboBox.setItems(FXCollections.observableArrayList(groups));
+                    groupComboBox.setItems(FXCollections.observableArrayList(union(gs, localGroups)));
                     groupComboBox.setOnAction(groupHandler);
                 }));
-        annotationService
-                .findActivities()
-                .thenAccept(activities -> Platform.runLater(() -> {
+        activities.get()
+                .thenAccept(as -> Platform.runLater(() -> {
                     // Remove the actionhandler or it gets triggered when we set the items
                     activityComboBox.setOnAction(noopHandler);
-                    activityComboBox.setItems(FXCollections.observableArrayList(activities));
+                    activityComboBox.setItems(FXCollections.observableArrayList(union(as, localActivities)));
                     activityComboBox.setOnAction(activityHandler);
                 }));
 
     }
 
+    private static List<String> union(List<String> xs, List<String> ys) {
+        Set<String> union = new LinkedHashSet<>(xs);
+        union.addAll(ys);
+        return new ArrayList<>(union);
+    }
+
+    /**
+     * Caches the result of a remote lookup until it's invalidated. A failed lookup
+     * isn't cached.
+     */
+    private static class CachedLookup<T> {
+        private final Supplier<CompletableFuture<T>> lookup;
+        private CompletableFuture<T> future;
+
+        CachedLookup(Supplier<CompletableFuture<T>> lookup) {
+            this.lookup = lookup;
+        }
+
+        synchronized CompletableFuture<T> get() {
+            if (future == null) {
+                CompletableFuture<T> f = lookup.get();
+                future = f;
+                f.whenComplete((v, ex) -> {
+                    if (ex != null) {
+                        invalidate(f);
+                    }
+                });
+            }
+            return future;
+        }
+
+        synchronized void invalidate() {
+            future = null;
+        }
+
+        private synchronized void invalidate(CompletableFuture<T> f) {
+            if (future == f) {
+                future = null;
+            }
+        }
+    }
+
     private void search() {
         boolean searchConcepts = conceptCheckBox.isSelected();
         boolean searchDetails = associationCheckBox.isSelected();
         String concept = conceptCombobox.getSelectionModel().getSelectedItem();
         Association association = associationCombobox.getSelectionModel().getSelectedItem();
         log.info("Selected concept = " + concept + "\nSelected Association = " + association);
-        Predicate<Annotation> nullPredicate = a -> false;
-        Predicate<Annotation> conceptPredicate = a -> a.getConcept().equals(concept);
-        Predicate<Annotation> associationPredicate = a -> a.getAssociations()
-                .stream()
-                .anyMatch(ass -> ass != null &&
-                        association != null &&
-                        ass.getLinkName().equals(association.getLinkName()) &&
-                        ass.getToConcept().equals(association.getToConcept()) &&
-                        ass.getLinkValue().equals(association.getLinkValue()));
-
-        Predicate<Annotation> predicate = nullPredicate;
-
-        if (searchConcepts && searchDetails) {
-            predicate = conceptPredicate.and(associationPredicate);
+
+        // A checked criteria without a value matches nothing
+        if ((!searchConcepts && !searchDetails) ||
+                (searchConcepts && concept == null) ||
+                (searchDetails && association == null)) {
+            eventBus.send(new AnnotationsSelectedEvent(Collections.emptyList()));
+            return;
         }
-        else if (searchConcepts) {
-            predicate = conceptPredicate;
+
+        AnnotationQuery.Builder builder = AnnotationQuery.builder();
+        if (searchConcepts) {
+            builder.concept(concept, descendantsCheckBox.isSelected());
         }
-        else if (searchDetails) {
-            predicate = associationPredicate;
+        if (searchDetails) {
+            builder.association(association.getLinkName(),
+                    association.getToConcept(),
+                    association.getLinkValue());
         }
+        AnnotationQuery query = builder.build();
+
+        query.compile(toolBox.getServices().getConceptService())
+                .exceptionally(ex -> {
+                    log.warn("Failed to find the descendants of " + concept + ". Searching for it alone", ex);
+                    return query.compile(List.of(concept));
+                })
+                .thenAccept(q -> Platform.runLater(() ->
+                        eventBus.send(new AnnotationsSelectedEvent(find(q)))));
+    }
 
-        List<Annotation> foundAnnotations = annotations.stream()
-                .filter(predicate)
+    private List<Annotation> find(CompiledAnnotationQuery query) {
+        if (annotations instanceof IndexedAnnotationList) {
+            return ((IndexedAnnotationList) annotations).findByQuery(query);
+        }
+        return annotations.stream()
+                .filter(query)
                 .collect(Collectors.toList());
-
-        eventBus.send(new AnnotationsSelectedEvent(foundAnnotations));
     }
 
 
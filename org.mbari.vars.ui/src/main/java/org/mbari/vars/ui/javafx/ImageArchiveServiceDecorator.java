@@ -4,6 +4,7 @@ package org.mbari.vars.ui.javafx;
 import mbarix4j.awt.image.ImageUtilities;
 import mbarix4j.io.FileUtilities;
 import org.mbari.vars.core.EventBus;
+import org.mbari.vars.ui.AppConfig;
 import org.mbari.vars.ui.Initializer;
 import org.mbari.vars.ui.UIToolBox;
 import org.mbari.vars.ui.commands.CommandUtil;
@@ -11,7 +12,9 @@ import org.mbari.vars.ui.events.AnnotationsChangedEvent;
 import org.mbari.vars.services.model.*;
 import org.mbari.vars.services.AnnotationService;
 import org.mbari.vars.services.ImageArchiveService;
-import org.mbari.vars.core.util.AsyncUtils;
+import org.mbari.vars.services.util.ImageDimensions;
+import org.mbari.vars.services.util.JpegEncoder;
+import org.mbari.vars.services.util.OverlayRenderer;
 import org.mbari.vcr4j.VideoIndex;
 import org.mbari.vcr4j.time.Timecode;
 import org.slf4j.Logger;
@@ -19,8 +22,6 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.*;
 import java.awt.Image;
-import java.awt.font.FontRenderContext;
-import java.awt.font.LineMetrics;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -51,6 +52,8 @@ public class ImageArchiveServiceDecorator {
     private static final DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("uuuuMMdd'T'HHmmss'Z'")
             .withZone(ZoneOffset.UTC);
 
+    /** Shared so the canvases are reused by every framegrab. One per framegrab thread. */
+    private static OverlayRenderer overlayRenderer;
 
     private final UIToolBox toolBox;
     private final ImageArchiveService imageArchiveService;
@@ -80,14 +83,27 @@ public class ImageArchiveServiceDecorator {
 
     }
 
+    /**
+     * @param appConfig The app's configuration
+     * @return The renderer that draws the overlays on framegrab jpgs, at the configured quality
+     */
+    public static synchronized OverlayRenderer getOverlayRenderer(AppConfig appConfig) {
+        if (overlayRenderer == null) {
+            float quality = (float) appConfig.getAppImageJpgQuality();
+            overlayRenderer = new OverlayRenderer(new JpegEncoder(quality), 2);
+        }
+        return overlayRenderer;
+    }
+
     private CompletableFuture<Path> compressImage(Media media, Framegrab framegrab, ImageUploadResults imageUploadResults) {
         return CompletableFuture.supplyAsync(() -> {
             // -- Write image locally
             String[] overlayText = createOverlayText(copyrightOwner, framegrab, imageUploadResults);
-            BufferedImage imageWithOverlay = createImageWithOverlay(framegrab.getImage().get(), overlayText);
             File localImageFile = buildLocalImageFile(media, ".jpg");
             try {
-                ImageUtilities.saveImage(imageWithOverlay, localImageFile);
+                byte[] jpg = getOverlayRenderer(toolBox.getAppConfig())
+                        .renderJpeg(framegrab.getImage().get(), overlayText);
+                Files.write(localImageFile.toPath(), jpg);
                 return localImageFile.toPath();
             }
             catch (IOException e) {
@@ -107,10 +123,12 @@ public class ImageArchiveServiceDecorator {
             String name = ImageArchiveServiceDecorator.buildName(media.getVideoReferenceUuid(), framegrab.getVideoIndex().get(), extension);
             String deploymentId = CommandUtil.getDeploymentId(media);
 
+            // Only the file's header is read
+            Optional<Dimension> size = ImageDimensions.read(imagePath);
             CompletableFuture<org.mbari.vars.services.model.Image> future = imageArchiveService.upload(media.getCameraId(), deploymentId, name, imagePath)
                     .thenCompose(imageUploadResults -> {
                         createdImageData.setImageUploadResults(imageUploadResults);
-                        return createImageInDatastore(media, framegrab, toUrl(imageUploadResults.getUri()));
+                        return createImageInDatastore(media, framegrab, toUrl(imageUploadResults.getUri()), size);
                     });
 
             future.whenComplete((image, throwable) -> {
@@ -168,7 +186,7 @@ public class ImageArchiveServiceDecorator {
                                 List<UUID> uuids = affectedAnnotations.stream()
                                         .map(Annotation::getObservationUuid)
                                         .collect(Collectors.toList());
-                                return AsyncUtils.collectAll(uuids, annotationService::findByUuid);
+                                return annotationService.findByUuids(uuids);
                             })
                             .thenAccept(annotations -> eventBus.send(new AnnotationsChangedEvent(annotations)));
                 } else {
@@ -185,6 +203,13 @@ public class ImageArchiveServiceDecorator {
     }
 
     public CompletableFuture<org.mbari.vars.services.model.Image> createImageInDatastore(Media media, Framegrab framegrab, URL imageUrl) {
+        return createImageInDatastore(media, framegrab, imageUrl, Optional.empty());
+    }
+
+    private CompletableFuture<org.mbari.vars.services.model.Image> createImageInDatastore(Media media,
+                Framegrab framegrab,
+                URL imageUrl,
+                Optional<Dimension> imageSize) {
 
 
         // FIXME - Taking a framegrab of annotation with existing framegrab will
@@ -213,21 +238,17 @@ public class ImageArchiveServiceDecorator {
                         description = null;
                 }
                 Image awtImage = awtImageOpt.get();
-                BufferedImage bi = ImageUtilities.toBufferedImage(awtImage);
-                org.mbari.vars.services.model.Image image = new org.mbari.vars.services.model.Image();
-                image.setFormat("image/" + ext);
-                image.setHeight(bi.getHeight());
-                image.setWidth(bi.getWidth());
-                image.setVideoReferenceUuid(media.getVideoReferenceUuid());
-                image.setDescription(description);
-                image.setUrl(imageUrl);
-
+                // Converting the image just to get its size copies every pixel. Only fall
+                // back to that if the image hasn't finished loading.
+                Dimension size = imageSize.or(() -> ImageDimensions.of(awtImage))
+                        .orElseGet(() -> {
+                            BufferedImage bi = ImageUtilities.toBufferedImage(awtImage);
+                            return new Dimension(bi.getWidth(), bi.getHeight());
+                        });
                 // If no index use the current timestamp
                 VideoIndex videoIndex = framegrab.getVideoIndex().orElse(new VideoIndex(Instant.now()));
-                videoIndex.getElapsedTime().ifPresent(image::setElapsedTime);
-                videoIndex.getTimecode().ifPresent(image::setTimecode);
-                videoIndex.getTimestamp().ifPresent(image::setRecordedTimestamp);
-                return image;
+                return newImage(media, videoIndex, imageUrl, ext, description,
+                        size.width, size.height);
             }
         });
 
@@ -236,6 +257,38 @@ public class ImageArchiveServiceDecorator {
 
     }
 
+    /**
+     * Builds the image record for an image that's been uploaded to the image archive
+     *
+     * @param media The media the image was captured from
+     * @param videoIndex The index of the framegrab
+     * @param imageUrl The URL of the archived image
+     * @param ext The image's extension (e.g. jpg or png)
+     * @param description The description of the image. May be null
+     * @param width The width of the image in pixels
+     * @param height The height of the image in pixels
+     * @return An image that can be created with {@link AnnotationService#createImage}
+     */
+    public static org.mbari.vars.services.model.Image newImage(Media media,
+                VideoIndex videoIndex,
+                URL imageUrl,
+                String ext,
+                String description,
+                int width,
+                int height) {
+        org.mbari.vars.services.model.Image image = new org.mbari.vars.services.model.Image();
+        image.setFormat("image/" + ext);
+        image.setHeight(height);
+        image.setWidth(width);
+        image.setVideoReferenceUuid(media.getVideoReferenceUuid());
+        image.setDescription(description);
+        image.setUrl(imageUrl);
+        videoIndex.getElapsedTime().ifPresent(image::setElapsedTime);
+        videoIndex.getTimecode().ifPresent(image::setTimecode);
+        videoIndex.getTimestamp().ifPresent(image::setRecordedTimestamp);
+        return image;
+    }
+
     private static String parseExtension(URL url) {
         String[] parts = url.toExternalForm().split("\\.");
         return parts[parts.length - 1].toLowerCase();
@@ -244,7 +297,8 @@ public class ImageArchiveServiceDecorator {
 
 
     /**
-     * Add overlay text to the image and save as a .jpg file.
+     * Add overlay text to the image and save as a .jpg file. This allocates a new image each
+     * time; {@link OverlayRenderer#renderJpeg} reuses its images when all you need is the jpg.
      *
      * @param  image        a java.awt.Image to add the text overlay to
      * @param  overlayText  The text to overlay onto the image
@@ -257,20 +311,8 @@ public class ImageArchiveServiceDecorator {
                 BufferedImage.TYPE_INT_RGB);
         Graphics2D g = (Graphics2D) bi.getGraphics();
         g.drawImage(image, 0, 0, null);
-        final Font font = new Font("Monospaced", Font.PLAIN, 14);
-        g.setFont(font);
-        g.setColor(Color.CYAN);
-        final FontRenderContext frc = g.getFontRenderContext();
-        int x = 1;
-        int n = 1;
-        for (String s : overlayText) {
-            LineMetrics lineMetrics = font.getLineMetrics(s, frc);
-            float y = (lineMetrics.getHeight() + 1) * n + lineMetrics.getHeight();
-            g.drawString(s, x, y);
-            n++;
-        }
-
         g.dispose();
+        OverlayRenderer.drawOverlayText(bi, overlayText);
 
         return bi;
     }
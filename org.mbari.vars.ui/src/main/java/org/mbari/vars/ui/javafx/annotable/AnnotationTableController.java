@@ -2,7 +2,6 @@ package org.mbari.vars.ui.javafx.annotable;
 
 import javafx.scene.control.skin.TableViewSkin;
 import javafx.scene.control.skin.VirtualFlow;
-import io.reactivex.Observable;
 import javafx.beans.binding.Bindings;
 import javafx.collections.ObservableList;
 import javafx.scene.control.*;
@@ -13,15 +12,19 @@ import org.mbari.vars.ui.events.AnnotationsAddedEvent;
 import org.mbari.vars.ui.events.AnnotationsChangedEvent;
 import org.mbari.vars.ui.events.AnnotationsRemovedEvent;
 import org.mbari.vars.ui.events.AnnotationsSelectedEvent;
+import org.mbari.vars.ui.events.UIEvent;
 import org.mbari.vars.ui.messages.SeekMsg;
 import org.mbari.vars.ui.javafx.shared.AnnotationTableViewFactory;
 import org.mbari.vars.ui.UIToolBox;
 import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.ui.util.IndexedAnnotationList;
 import org.mbari.vars.ui.util.JFXUtilities;
-import org.mbari.vars.core.util.ListUtils;
 
 import javax.inject.Inject;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.ResourceBundle;
 import java.util.prefs.Preferences;
@@ -34,6 +37,9 @@ import java.util.prefs.Preferences;
  */
 public class AnnotationTableController {
 
+    /** Events that arrive within this long of each other are applied together */
+    private static final Duration FRAME = Duration.ofMillis(16);
+
     private TableView<Annotation> tableView;
     private final ResourceBundle i18n;
     private final EventBus eventBus;
@@ -46,39 +52,9 @@ public class AnnotationTableController {
         this.eventBus = toolBox.getEventBus();
         this.data = toolBox.getData();
 
-        Observable<Object> observable = eventBus.toObserverable();
-
-        observable.ofType(AnnotationsAddedEvent.class)
-                .subscribe(e -> JFXUtilities.runOnFXThread(() -> {
-                    getTableView().getItems().addAll(e.get());
-                    getTableView().sort();
-                }));
-
-        observable.ofType(AnnotationsRemovedEvent.class)
-                .subscribe(e -> JFXUtilities.runOnFXThread(() ->
-                        getTableView().getItems().removeAll(e.get())));
-
-        // Listen for external selection events, but ignore ones generated by this controlle
-        observable.ofType(AnnotationsSelectedEvent.class)
-                .filter(e -> e.getEventSource() != AnnotationTableController.this)
-                .subscribe(e -> select(e.get()));
-
-        observable.ofType(AnnotationsChangedEvent.class)
-                .subscribe(e -> {
-                    JFXUtilities.runOnFXThread(() -> {
-                        Collection<Annotation> annotations = e.get();
-                        ObservableList<Annotation> items = getTableView().getItems();
-                        List<Annotation> intersection = ListUtils.intersection(annotations, items);
-                        for (Annotation a : intersection) {
-                            int idx = items.indexOf(a);
-                            items.remove(idx); // FIXME Got a -1 in the bulk edito. Maybe getting this twice??
-                            items.add(idx, a);
-                        }
-                        getTableView().refresh();
-                        getTableView().sort();
-                        eventBus.send(new AnnotationsSelectedEvent(intersection));
-                    });
-                });
+        // Table changes are coalesced over about a frame and applied together, on the
+        // FX thread, in the order they were sent.
+        eventBus.subscribeBatches(UIEvent.class, FRAME, JFXUtilities::runOnFXThread, this::apply);
 
 
         // Load the column visibility and width
@@ -116,6 +92,56 @@ public class AnnotationTableController {
 
     }
 
+    /**
+     * Applies a batch of events to the table. Consecutive AnnotationsAddedEvents (e.g.
+     * the pages of a media's annotations) are added as a single change. Everything else
+     * is applied in order, after any adds that came before it. Call this on the FX thread.
+     */
+    void apply(List<UIEvent> events) {
+        List<Annotation> added = new ArrayList<>();
+        for (UIEvent event : events) {
+            if (event instanceof AnnotationsAddedEvent) {
+                added.addAll(((AnnotationsAddedEvent) event).get());
+            }
+            else if (event instanceof AnnotationsRemovedEvent) {
+                add(added);
+                getTableView().getItems().removeAll(((AnnotationsRemovedEvent) event).get());
+            }
+            else if (event instanceof AnnotationsChangedEvent) {
+                add(added);
+                // Replaces the ones in the table, in place, as a single change
+                List<Annotation> intersection = getItems().replaceExisting(((AnnotationsChangedEvent) event).get());
+                getTableView().refresh();
+                getTableView().sort();
+                eventBus.send(new AnnotationsSelectedEvent(intersection));
+            }
+            // Listen for external selection events, but ignore ones generated by this controller
+            else if (event instanceof AnnotationsSelectedEvent &&
+                    event.getEventSource() != AnnotationTableController.this) {
+                add(added);
+                select(((AnnotationsSelectedEvent) event).get());
+            }
+        }
+        add(added);
+    }
+
+    /**
+     * Adds annotations to the table. If the table is sorted they're merged into place
+     * instead of re-sorting the whole table.
+     */
+    private void add(List<Annotation> annotations) {
+        if (!annotations.isEmpty()) {
+            Comparator<Annotation> comparator = getTableView().getComparator();
+            if (comparator == null) {
+                getItems().addAll(annotations);
+            }
+            else {
+                getItems().mergeSorted(annotations, comparator);
+            }
+            annotations.clear();
+        }
+    }
+
     private void select(Collection<Annotation> annotations) {
         JFXUtilities.runOnFXThread(() -> {
             TableView.TableViewSelectionModel<Annotation> selectionModel = getTableView().getSelectionModel();
@@ -125,9 +151,14 @@ public class AnnotationTableController {
     }
 
 
+    private IndexedAnnotationList getItems() {
+        return (IndexedAnnotationList) getTableView().getItems();
+    }
+
     public TableView<Annotation> getTableView() {
         if (tableView == null) {
             tableView = AnnotationTableViewFactory.newTableView(i18n);
+            tableView.setItems(new IndexedAnnotationList());
 
             tableView.getSelectionModel()
                     .selectedItemProperty()
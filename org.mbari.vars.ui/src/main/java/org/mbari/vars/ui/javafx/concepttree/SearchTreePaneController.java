@@ -3,6 +3,8 @@ package org.mbari.vars.ui.javafx.concepttree;
 import com.jfoenix.controls.JFXTextField;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.scene.control.*;
@@ -14,11 +16,17 @@ import org.mbari.vars.ui.UIToolBox;
 import org.mbari.vars.ui.javafx.shared.FilterableTreeItem;
 import org.mbari.vars.ui.messages.ClearCacheMsg;
 import org.mbari.vars.services.model.Concept;
+import org.mbari.vars.services.CachedConceptService;
+import org.mbari.vars.services.ConceptSearchIndex;
 import org.mbari.vars.services.ConceptService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -32,6 +40,10 @@ public class SearchTreePaneController {
     private BorderPane root;
     private TextField textField;
     private TreeViewController treeViewController;
+    /** Null until it's loaded. The filter falls back to scanning the names until then */
+    private final ObjectProperty<ConceptSearchIndex> searchIndex = new SimpleObjectProperty<>();
+    private volatile boolean loadingSearchIndex = false;
+    private final Logger log = LoggerFactory.getLogger(getClass());
 
     public SearchTreePaneController(ConceptService conceptService, ResourceBundle uiBundle) {
         this.conceptService = conceptService;
@@ -50,7 +62,9 @@ public class SearchTreePaneController {
                 .toObserverable()
                 .ofType(ClearCacheMsg.class)
                 .subscribe(msg -> {
-                   // TODO implement refresh
+                    // The concept service is cleared by the AppController. Running later
+                    // makes sure that's happened before the filter asks for a new index
+                    Platform.runLater(() -> searchIndex.set(null));
                 });
     }
 
@@ -107,7 +121,14 @@ public class SearchTreePaneController {
                             if (tf.getText() == null || tf.getText().isEmpty()) {
                                 return (Concept c) -> true;
                             }
+                            ConceptSearchIndex index = searchIndex.get();
+                            if (index != null) {
+                                // One index lookup per keystroke instead of a scan per concept
+                                Set<String> names = index.findConceptNames(tf.getText());
+                                return (Concept c) -> names.contains(c.getName());
+                            }
                             else {
+                                loadSearchIndex();
                                 return (Concept c) -> {
                                     String t = c.getName();
                                     List<String> alternativeNames = c.getAlternativeNames();
@@ -118,7 +139,7 @@ public class SearchTreePaneController {
                                 };
 
                             }
-                        }, tf.textProperty()));
+                        }, tf.textProperty(), searchIndex));
                         completed = true;
                     }
                 }
@@ -128,6 +149,25 @@ public class SearchTreePaneController {
         return treeViewController.getTreeView();
     }
 
+    private void loadSearchIndex() {
+        if (loadingSearchIndex) {
+            return;
+        }
+        loadingSearchIndex = true;
+        CompletableFuture<ConceptSearchIndex> f = conceptService instanceof CachedConceptService ?
+                ((CachedConceptService) conceptService).findSearchIndex() :
+                conceptService.findRoot().thenCombine(conceptService.findAllNames(), ConceptSearchIndex::build);
+        f.whenComplete((index, ex) -> Platform.runLater(() -> {
+            loadingSearchIndex = false;
+            if (ex != null) {
+                log.warn("Failed to build the concept search index", ex);
+            }
+            else {
+                searchIndex.set(index);
+            }
+        }));
+    }
+
     private TextField getTextField() {
         if (textField == null) {
             textField = new JFXTextField();
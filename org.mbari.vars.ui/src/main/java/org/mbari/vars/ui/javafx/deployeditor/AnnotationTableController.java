@@ -96,7 +96,7 @@ public class AnnotationTableController {
         if (newUuids.size() > 0) {
             videoReferenceUriMap.clear();
             MediaService mediaService = toolBox.getServices().getMediaService();
-            AsyncUtils.collectAll(uuids, mediaService::findByUuid)
+            AsyncUtils.collectAll(uuids, mediaService::findByUuid, AsyncUtils.DEFAULT_MAX_IN_FLIGHT)
                     .thenAccept(medias ->
                             medias.forEach(m -> videoReferenceUriMap.put(m.getVideoReferenceUuid(), m.getUri())))
                     .thenAccept(v -> getTableView().refresh());
@@ -12,6 +12,8 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
@@ -73,11 +75,42 @@ public class AVFImageCaptureService implements SelectableImageCaptureService {
 
 
 
+    /**
+     * AVFoundation can only hand us frames by writing them to disk. If no file is given the
+     * frame is written to a temp file that's deleted once it's been read.
+     */
     @Override
     public Framegrab capture(File file) {
+        File target;
+        try {
+            if (file == null) {
+                // Only reserve the name. The capture waits for the native code to write the file
+                target = File.createTempFile("vars-framegrab-", ".png");
+                Files.delete(target.toPath());
+            }
+            else {
+                target = file;
+            }
+        }
+        catch (IOException e) {
+            log.warn("Image capture failed. Unable to create a temp file", e);
+            return new Framegrab();
+        }
+
+        try {
+            return captureTo(target);
+        }
+        finally {
+            if (file == null && !target.delete()) {
+                target.deleteOnExit();
+            }
+        }
+    }
+
+    private Framegrab captureTo(File target) {
         Framegrab framegrab = new Framegrab();
         start();
-        Optional<Image> imageOpt = imageCapture.capture(file, Duration.ofSeconds(10));
+        Optional<Image> imageOpt = imageCapture.capture(target, Duration.ofSeconds(10));
         if (imageOpt.isPresent()) {
             framegrab.setImage(imageOpt.get());
 
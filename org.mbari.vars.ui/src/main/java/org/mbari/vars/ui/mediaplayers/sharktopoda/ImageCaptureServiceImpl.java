@@ -12,6 +12,7 @@ import org.slf4j.LoggerFactory;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.time.Duration;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -34,9 +35,22 @@ public class ImageCaptureServiceImpl implements ImageCaptureService {
         decorator = new FramecaptureDecorator(io, port);
     }
 
+    /**
+     * Sharktopoda can only hand us frames by writing them to disk. If no file is given the
+     * frame is written to a temp file that's deleted once it's been read.
+     */
     @Override
     public Framegrab capture(File file) {
 
+        File target;
+        try {
+            target = file == null ? File.createTempFile("vars-framegrab-", ".png") : file;
+        }
+        catch (IOException e) {
+            log.warn("Image capture failed. Unable to create a temp file", e);
+            return new Framegrab();
+        }
+
         CompletableFuture<Framegrab> future = new CompletableFuture<>();
 
 
@@ -59,7 +73,7 @@ public class ImageCaptureServiceImpl implements ImageCaptureService {
                     future.complete(framegrab);
                 });
 
-        io.send(new FramecaptureCmd(UUID.randomUUID(), file));
+        io.send(new FramecaptureCmd(UUID.randomUUID(), target));
 
         try {
             return future.get(5, TimeUnit.SECONDS);
@@ -67,6 +81,11 @@ public class ImageCaptureServiceImpl implements ImageCaptureService {
         catch (InterruptedException | TimeoutException | ExecutionException e) {
             return new Framegrab();
         }
+        finally {
+            if (file == null && !target.delete()) {
+                target.deleteOnExit();
+            }
+        }
     }
 
     @Override
@@ -31,8 +31,7 @@ public class LocalizationLifecycleController {
 
     private void init() {
         EventBus eventBus = toolBox.getEventBus();
-        eventBus.toObserverable()
-                .ofType(MediaChangedEvent.class)
+        eventBus.toObservable(MediaChangedEvent.class)
                 .map(MediaChangedEvent::get)
                 .subscribe(this::manageControllerLifecycle);
     }
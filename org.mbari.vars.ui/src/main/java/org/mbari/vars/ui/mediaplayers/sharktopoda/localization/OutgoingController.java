@@ -31,23 +31,19 @@ public class  OutgoingController implements Closeable {
     public OutgoingController(EventBus eventBus, IO io, Gson gson) {
         this.io = io;
         this.gson = gson;
-        disposables.add(eventBus.toObserverable()
-                .ofType(AnnotationsAddedEvent.class)
+        disposables.add(eventBus.toObservable(AnnotationsAddedEvent.class)
                 .filter(evt -> evt.getEventSource() != LocalizationController.EVENT_SOURCE)
                 .filter(evt -> !evt.get().isEmpty())
                 .subscribe(this::handleAddedLocally));
-        disposables.add(eventBus.toObserverable()
-                .ofType(AnnotationsRemovedEvent.class)
+        disposables.add(eventBus.toObservable(AnnotationsRemovedEvent.class)
                 .filter(evt -> evt.getEventSource() != LocalizationController.EVENT_SOURCE)
                 .filter(evt -> !evt.get().isEmpty())
                 .subscribe(this::handleRemovedLocally));
-        disposables.add(eventBus.toObserverable()
-                .ofType(AnnotationsChangedEvent.class)
+        disposables.add(eventBus.toObservable(AnnotationsChangedEvent.class)
                 .filter(evt -> evt.getEventSource() != LocalizationController.EVENT_SOURCE)
                 .filter(evt -> !evt.get().isEmpty())
                 .subscribe(this::handleChangedLocally));
-        disposables.add(eventBus.toObserverable()
-                .ofType(AnnotationsSelectedEvent.class)
+        disposables.add(eventBus.toObservable(AnnotationsSelectedEvent.class)
                 .filter(evt -> evt.getEventSource() != LocalizationController.EVENT_SOURCE)
                 .subscribe(this::handleSelectedLocally));
 
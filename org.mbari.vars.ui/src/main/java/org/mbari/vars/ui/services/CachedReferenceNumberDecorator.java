@@ -39,8 +39,7 @@ public class CachedReferenceNumberDecorator {
         associationKey = toolBox.getConfig()
                 .getString("app.annotation.identity.reference");
         toolBox.getEventBus()
-                .toObserverable()
-                .ofType(MediaChangedEvent.class)
+                .toObservable(MediaChangedEvent.class)
                 .subscribe(evt -> clear());
     }
 
@@ -123,6 +122,7 @@ public class CachedReferenceNumberDecorator {
     private List<Association> currentReferences() {
         return toolBox.getData()
                 .getAnnotations()
+                .findByLinkName(associationKey)
                 .stream()
                 .flatMap(a -> a.getAssociations().stream())
                 .filter(a -> a.getLinkName().equals(associationKey))
@@ -132,6 +132,7 @@ public class CachedReferenceNumberDecorator {
     private List<Association> currentReferences(String concept) {
         return toolBox.getData()
                 .getAnnotations()
+                .findByLinkName(associationKey)
                 .stream()
                 .filter(a -> a.getConcept().equals(concept))
                 .flatMap(a -> a.getAssociations().stream())
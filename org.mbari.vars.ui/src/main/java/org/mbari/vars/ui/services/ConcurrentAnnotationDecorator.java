@@ -12,6 +12,7 @@ import org.mbari.vars.services.model.*;
 import org.mbari.vars.services.AnnotationService;
 import org.mbari.vars.services.MediaService;
 import org.mbari.vars.services.RequestPager;
+import org.mbari.vars.ui.javafx.AnnotationServiceDecorator;
 import org.mbari.vars.ui.util.JFXUtilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -119,7 +120,7 @@ public class ConcurrentAnnotationDecorator {
     }
 
     private void doNext(List<Annotation> annotations, long totalCount, AtomicInteger loadedCount) {
-        eventBus.send(new AnnotationsAddedEvent(annotations));
+        eventBus.send(new AnnotationsAddedEvent(AnnotationServiceDecorator.EVENT_SOURCE, annotations));
         updateLoadProgress(totalCount, loadedCount.addAndGet(annotations.size()));
     }
 
@@ -148,7 +149,8 @@ public class ConcurrentAnnotationDecorator {
             }
         };
 
-        RequestPager<List<Annotation>> pager = new RequestPager<>(function, 2, numberSimultaneousPages);
+        RequestPager<List<Annotation>> pager = new RequestPager<>(function,
+                toolBox.getServices().getRetryPolicy(), numberSimultaneousPages);
         return pager.build(count.getCount().intValue(), pageSize);
     }
 
@@ -158,7 +158,8 @@ public class MultiAnnotationDecorator {
             }
         };
 
-        RequestPager<List<Annotation>> pager = new RequestPager<>(function, 2, numberSimultaneousPages);
+        RequestPager<List<Annotation>> pager = new RequestPager<>(function,
+                toolBox.getServices().getRetryPolicy(), numberSimultaneousPages);
         return pager.build(count.getCount().intValue(), pageSize);
     }
 
@@ -0,0 +1,255 @@
+package org.mbari.vars.ui.util;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Association;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Counts of the concepts, associations, groups and activities in a list of annotations,
+ * kept up to date as the list changes. Each change to the list costs O(annotations
+ * changed) instead of a scan of the whole list, so it's cheap to keep it attached to
+ * the annotations of a big dive while they're being loaded page by page.
+ *
+ * What each annotation contributed is recorded when it's added, so that removing or
+ * replacing it subtracts exactly what was counted, even if the instance was modified
+ * in place since. Associations are distinct by their `toString` (`linkName | toConcept | linkValue`).
+ *
+ * The list may be modified from any thread; the counts are guarded by this object's
+ * lock. {@link #getVersion()} changes only when a value appears or disappears, which
+ * is what a UI listing the distinct values cares about.
+ *
+ * <pre>
+ *     AnnotationAggregates aggregates = new AnnotationAggregates();
+ *     aggregates.attach(annotations);
+ * </pre>
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T18:00:00
+ */
+public class AnnotationAggregates implements ListChangeListener<Annotation> {
+
+    /** What an annotation added to the counts */
+    private static class Entry {
+        final String concept;
+        final String group;
+        final String activity;
+        final List<Association> associations;
+        int copies = 1;
+
+        Entry(Annotation a) {
+            concept = a.getConcept();
+            group = a.getGroup();
+            activity = a.getActivity();
+            associations = new ArrayList<>(a.getAssociations());
+        }
+    }
+
+    private final Map<UUID, Entry> entries = new HashMap<>();
+    /** Annotations without an observationUuid (not saved yet) */
+    private final Map<Annotation, Entry> unsavedEntries = new IdentityHashMap<>();
+
+    private final Map<String, Integer> conceptCounts = new HashMap<>();
+    private final Map<String, Integer> associationCounts = new HashMap<>();
+    private final Map<String, Association> associations = new HashMap<>();
+    private final Map<String, Integer> groupCounts = new HashMap<>();
+    private final Map<String, Integer> activityCounts = new HashMap<>();
+
+    private ObservableList<Annotation> source;
+    private long version;
+
+    /**
+     * Counts the annotations in the list and follows its changes. Detaches from the
+     * previous list, if any.
+     */
+    public synchronized void attach(ObservableList<Annotation> annotations) {
+        detach();
+        source = annotations;
+        annotations.addListener(this);
+        addAll(new ArrayList<>(annotations));
+    }
+
+    public synchronized void detach() {
+        if (source != null) {
+            source.removeListener(this);
+            source = null;
+        }
+        clear();
+    }
+
+    @Override
+    public synchronized void onChanged(Change<? extends Annotation> c) {
+        while (c.next()) {
+            // A sort only reorders the list
+            if (c.wasPermutated() || c.wasUpdated()) {
+                continue;
+            }
+            // Add before removing so a replacement doesn't look like a value
+            // disappearing and coming back
+            if (c.wasAdded()) {
+                addAll(c.getAddedSubList());
+            }
+            if (c.wasRemoved()) {
+                removeAll(c.getRemoved());
+            }
+        }
+    }
+
+    public synchronized void addAll(Collection<? extends Annotation> annotations) {
+        for (Annotation a : annotations) {
+            Entry entry = new Entry(a);
+            Entry old = a.getObservationUuid() == null ?
+                    unsavedEntries.put(a, entry) : entries.put(a.getObservationUuid(), entry);
+            add(entry);
+            if (old != null) {
+                // The same observation again. Count its latest state once
+                subtract(old);
+                entry.copies = old.copies + 1;
+            }
+        }
+    }
+
+    public synchronized void removeAll(Collection<? extends Annotation> annotations) {
+        for (Annotation a : annotations) {
+            Map<?, Entry> map = a.getObservationUuid() == null ? unsavedEntries : entries;
+            Object key = a.getObservationUuid() == null ? a : a.getObservationUuid();
+            Entry entry = map.get(key);
+            if (entry != null) {
+                entry.copies--;
+                if (entry.copies == 0) {
+                    map.remove(key);
+                    subtract(entry);
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        unsavedEntries.clear();
+        conceptCounts.clear();
+        associationCounts.clear();
+        associations.clear();
+        groupCounts.clear();
+        activityCounts.clear();
+        version++;
+    }
+
+    private void add(Entry entry) {
+        increment(conceptCounts, entry.concept);
+        increment(groupCounts, entry.group);
+        increment(activityCounts, entry.activity);
+        for (Association a : entry.associations) {
+            String key = a.toString();
+            if (increment(associationCounts, key)) {
+                associations.put(key, a);
+            }
+        }
+    }
+
+    private void subtract(Entry entry) {
+        decrement(conceptCounts, entry.concept);
+        decrement(groupCounts, entry.group);
+        decrement(activityCounts, entry.activity);
+        for (Association a : entry.associations) {
+            String key = a.toString();
+            if (decrement(associationCounts, key)) {
+                associations.remove(key);
+            }
+        }
+    }
+
+    /** @return true if the key is new */
+    private boolean increment(Map<String, Integer> counts, String key) {
+        if (key == null) {
+            return false;
+        }
+        boolean isNew = counts.merge(key, 1, Integer::sum) == 1;
+        if (isNew) {
+            version++;
+        }
+        return isNew;
+    }
+
+    /** @return true if the key is gone */
+    private boolean decrement(Map<String, Integer> counts, String key) {
+        if (key == null || !counts.containsKey(key)) {
+            return false;
+        }
+        boolean isGone = counts.computeIfPresent(key, (k, n) -> n == 1 ? null : n - 1) == null;
+        if (isGone) {
+            version++;
+        }
+        return isGone;
+    }
+
+    /**
+     * @return A number that changes whenever a concept, association, group or
+     *  activity appears or disappears.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /** @return The number of annotations counted */
+    public synchronized int size() {
+        int n = 0;
+        for (Entry e : entries.values()) {
+            n += e.copies;
+        }
+        for (Entry e : unsavedEntries.values()) {
+            n += e.copies;
+        }
+        return n;
+    }
+
+    /** @return The distinct concepts, in case-insensitive order */
+    public synchronized List<String> getConcepts() {
+        return sorted(conceptCounts.keySet(), String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /** @return The distinct associations, ordered by their toString */
+    public synchronized List<Association> getAssociations() {
+        return associations.entrySet()
+                .stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+    }
+
+    public synchronized List<String> getGroups() {
+        return sorted(groupCounts.keySet(), String.CASE_INSENSITIVE_ORDER);
+    }
+
+    public synchronized List<String> getActivities() {
+        return sorted(activityCounts.keySet(), String.CASE_INSENSITIVE_ORDER);
+    }
+
+    public synchronized int getConceptCount(String concept) {
+        return conceptCounts.getOrDefault(concept, 0);
+    }
+
+    /**
+     * @return The number of annotations with an association that has the same
+     *  linkName, toConcept and linkValue
+     */
+    public synchronized int getAssociationCount(Association association) {
+        return associationCounts.getOrDefault(association.toString(), 0);
+    }
+
+    private static <T> List<T> sorted(Collection<T> xs, Comparator<? super T> comparator) {
+        List<T> list = new ArrayList<>(xs);
+        list.sort(comparator);
+        return list;
+    }
+}
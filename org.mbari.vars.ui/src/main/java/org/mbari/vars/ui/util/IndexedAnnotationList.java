@@ -0,0 +1,391 @@
+package org.mbari.vars.ui.util;
+
+import javafx.collections.ModifiableObservableListBase;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.util.AnnotationIndex;
+import org.mbari.vars.services.util.CompiledAnnotationQuery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * An ObservableList of annotations that can be used anywhere a plain
+ * `FXCollections.observableArrayList()` is used (e.g. as the items of a TableView) but
+ * which keeps an {@link AnnotationIndex} of its contents. So `contains`, `indexOf`,
+ * lookups by observation, imaged moment, concept or link name, and searches with a
+ * {@link CompiledAnnotationQuery} don't scan the list.
+ *
+ * Annotations are keyed by observationUuid (which is what Annotation.equals uses).
+ * {@link #addAll(Collection)} replaces annotations that are already in the list, in
+ * place, and appends the rest. {@link #mergeSorted(Collection, Comparator)} does the
+ * same but merges the rest into a sorted list. Bulk operations (addAll, mergeSorted,
+ * removeAll, setAll and {@link #replaceExisting(Collection)}) fire a single change to
+ * listeners no matter how many annotations they touch.
+ *
+ * Like any JavaFX list that's bound to a control, only modify it on the JavaFX thread.
+ * The index isn't synchronized, so that includes the annotation events, which AppController
+ * applies with Platform.runLater.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-23T10:00:00
+ */
+public class IndexedAnnotationList extends ModifiableObservableListBase<Annotation> {
+
+    private final List<Annotation> annotations = new ArrayList<>();
+    private final AnnotationIndex index = new AnnotationIndex();
+
+    /** observationUuid -> position. Rebuilt lazily after inserts or removes in the middle */
+    private final Map<UUID, Integer> positions = new HashMap<>();
+    private boolean positionsValid = true;
+
+    public IndexedAnnotationList() {
+    }
+
+    public IndexedAnnotationList(Collection<Annotation> annotations) {
+        addAll(annotations);
+    }
+
+    @Override
+    public Annotation get(int index) {
+        return annotations.get(index);
+    }
+
+    @Override
+    public int size() {
+        return annotations.size();
+    }
+
+    @Override
+    protected void doAdd(int i, Annotation annotation) {
+        annotations.add(i, annotation);
+        index.put(annotation);
+        UUID uuid = annotation.getObservationUuid();
+        if (positionsValid && i == annotations.size() - 1) {
+            if (uuid != null) {
+                positions.putIfAbsent(uuid, i);
+            }
+        }
+        else {
+            positionsValid = false;
+        }
+    }
+
+    @Override
+    protected Annotation doSet(int i, Annotation annotation) {
+        Annotation old = annotations.set(i, annotation);
+        unindex(old);
+        index.put(annotation);
+        positionsValid = false;
+        return old;
+    }
+
+    @Override
+    protected Annotation doRemove(int i) {
+        Annotation old = annotations.remove(i);
+        unindex(old);
+        positionsValid = false;
+        return old;
+    }
+
+    private void unindex(Annotation annotation) {
+        UUID uuid = annotation.getObservationUuid();
+        // Only unindex if it's the instance that's indexed. Another copy may replace it
+        if (index.get(uuid).orElse(null) == annotation) {
+            index.remove(uuid);
+        }
+    }
+
+    private Integer positionOf(UUID observationUuid) {
+        if (observationUuid == null) {
+            return null;
+        }
+        if (!positionsValid) {
+            positions.clear();
+            for (int i = 0; i < annotations.size(); i++) {
+                UUID uuid = annotations.get(i).getObservationUuid();
+                if (uuid != null) {
+                    positions.putIfAbsent(uuid, i);
+                }
+            }
+            positionsValid = true;
+        }
+        return positions.get(observationUuid);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Annotation && index.contains(((Annotation) o).getObservationUuid());
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Annotation) || !contains(o)) {
+            return -1;
+        }
+        Integer i = positionOf(((Annotation) o).getObservationUuid());
+        return i == null ? -1 : i;
+    }
+
+    @Override
+    public boolean add(Annotation annotation) {
+        return addAll(Collections.singletonList(annotation));
+    }
+
+    /**
+     * Adds the annotations. If an annotation with the same observationUuid is already
+     * in the list it's replaced in place.
+     * @return true if the list changed
+     */
+    @Override
+    public boolean addAll(Collection<? extends Annotation> xs) {
+        if (xs.isEmpty()) {
+            return false;
+        }
+        beginChange();
+        try {
+            modCount++;
+            for (Annotation a : xs) {
+                Integer i = contains(a) ? positionOf(a.getObservationUuid()) : null;
+                if (i == null) {
+                    int n = annotations.size();
+                    doAdd(n, a);
+                    nextAdd(n, n + 1);
+                }
+                else {
+                    Annotation old = annotations.set(i, a);
+                    unindex(old);
+                    index.put(a);
+                    nextSet(i, old);
+                }
+            }
+        }
+        finally {
+            endChange();
+        }
+        return true;
+    }
+
+    /**
+     * Adds the annotations to a list that's already sorted by the comparator (e.g.
+     * the comparator of a sorted TableView), keeping it sorted. The new annotations
+     * are sorted and then merged in with a single pass over the list, which is much
+     * cheaper than appending them and re-sorting everything. Annotations that are
+     * already in the list are replaced in place, like {@link #addAll(Collection)}.
+     *
+     * @param xs The annotations to add. They don't need to be sorted.
+     * @param comparator The order the list is sorted in
+     * @return true if the list changed
+     */
+    public boolean mergeSorted(Collection<? extends Annotation> xs,
+                               Comparator<? super Annotation> comparator) {
+        if (xs.isEmpty()) {
+            return false;
+        }
+        beginChange();
+        try {
+            modCount++;
+            // Keep the last copy of each new annotation
+            Map<UUID, Annotation> fresh = new LinkedHashMap<>();
+            List<Annotation> added = new ArrayList<>();
+            for (Annotation a : xs) {
+                Integer i = contains(a) ? positionOf(a.getObservationUuid()) : null;
+                if (i != null) {
+                    Annotation old = annotations.set(i, a);
+                    unindex(old);
+                    index.put(a);
+                    nextSet(i, old);
+                }
+                else if (a.getObservationUuid() == null) {
+                    added.add(a);
+                }
+                else {
+                    fresh.put(a.getObservationUuid(), a);
+                }
+            }
+            added.addAll(fresh.values());
+            if (!added.isEmpty()) {
+                added.sort(comparator);
+                List<Annotation> merged = new ArrayList<>(annotations.size() + added.size());
+                int i = 0;
+                int j = 0;
+                while (i < annotations.size() || j < added.size()) {
+                    // New annotations go after existing ones that compare equal
+                    if (j < added.size() &&
+                            (i == annotations.size() || comparator.compare(added.get(j), annotations.get(i)) < 0)) {
+                        Annotation a = added.get(j++);
+                        merged.add(a);
+                        index.put(a);
+                        nextAdd(merged.size() - 1, merged.size());
+                    }
+                    else {
+                        merged.add(annotations.get(i++));
+                    }
+                }
+                annotations.clear();
+                annotations.addAll(merged);
+                positionsValid = false;
+            }
+        }
+        finally {
+            endChange();
+        }
+        return true;
+    }
+
+    /**
+     * Replaces annotations that are already in the list with the ones with the same
+     * observationUuid. Annotations that aren't in the list are ignored.
+     * @return The annotations that were in the list (and so were replaced)
+     */
+    public List<Annotation> replaceExisting(Collection<Annotation> xs) {
+        List<Annotation> replaced = new ArrayList<>();
+        for (Annotation a : xs) {
+            if (contains(a)) {
+                replaced.add(a);
+            }
+        }
+        addAll(replaced);
+        return replaced;
+    }
+
+    /**
+     * Removes the annotations in one pass over the list.
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Set<UUID> uuids = new HashSet<>();
+        for (Object o : c) {
+            if (contains(o)) {
+                uuids.add(((Annotation) o).getObservationUuid());
+            }
+        }
+        if (uuids.isEmpty()) {
+            return false;
+        }
+        beginChange();
+        try {
+            modCount++;
+            // Report removals from the end so that each index is still correct when
+            // the change is applied
+            for (int i = annotations.size() - 1; i >= 0; i--) {
+                Annotation a = annotations.get(i);
+                if (uuids.contains(a.getObservationUuid())) {
+                    nextRemove(i, a);
+                }
+            }
+            annotations.removeIf(a -> uuids.contains(a.getObservationUuid()));
+            uuids.forEach(index::remove);
+            positionsValid = false;
+        }
+        finally {
+            endChange();
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        if (annotations.isEmpty()) {
+            return;
+        }
+        beginChange();
+        try {
+            modCount++;
+            List<Annotation> old = new ArrayList<>(annotations);
+            annotations.clear();
+            index.clear();
+            positions.clear();
+            positionsValid = true;
+            nextRemove(0, old);
+        }
+        finally {
+            endChange();
+        }
+    }
+
+    /**
+     * Replaces the contents of the list. If the new contents are just a reordering of
+     * the current ones (which is what a TableView sort does) the index is kept.
+     */
+    @Override
+    public boolean setAll(Collection<? extends Annotation> col) {
+        if (!isPermutation(col)) {
+            return super.setAll(col);
+        }
+        beginChange();
+        try {
+            modCount++;
+            List<Annotation> old = new ArrayList<>(annotations);
+            annotations.clear();
+            annotations.addAll(col);
+            for (Annotation a : annotations) {
+                if (index.get(a.getObservationUuid()).orElse(null) != a) {
+                    index.put(a);
+                }
+            }
+            positionsValid = false;
+            nextReplace(0, annotations.size(), old);
+        }
+        finally {
+            endChange();
+        }
+        return true;
+    }
+
+    private boolean isPermutation(Collection<? extends Annotation> col) {
+        if (col.size() != annotations.size() || index.size() != annotations.size()) {
+            return false;
+        }
+        Set<UUID> seen = new HashSet<>();
+        for (Annotation a : col) {
+            UUID uuid = a == null ? null : a.getObservationUuid();
+            if (uuid == null || !index.contains(uuid) || !seen.add(uuid)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Optional<Annotation> find(UUID observationUuid) {
+        return index.get(observationUuid);
+    }
+
+    public List<Annotation> findByImagedMomentUuid(UUID imagedMomentUuid) {
+        return index.findByImagedMomentUuid(imagedMomentUuid);
+    }
+
+    public List<Annotation> findByConcept(String concept) {
+        return index.findByConcept(concept);
+    }
+
+    public List<Annotation> findByLinkName(String linkName) {
+        return index.findByLinkName(linkName);
+    }
+
+    /**
+     * @return The annotations that match the query, using the index to avoid testing
+     *  every annotation
+     */
+    public List<Annotation> findByQuery(CompiledAnnotationQuery query) {
+        List<Annotation> found = index.findByQuery(query);
+        if (index.size() < annotations.size()) {
+            // Unsaved annotations (no observationUuid) aren't indexed
+            for (Annotation a : annotations) {
+                if (a.getObservationUuid() == null && query.test(a)) {
+                    found.add(a);
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,379 @@
+package org.mbari.vars.ui.commands;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mbari.vars.services.AnnotationService;
+import org.mbari.vars.services.ImageArchiveService;
+import org.mbari.vars.services.ImageCaptureService;
+import org.mbari.vars.services.ImageEncoder;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Framegrab;
+import org.mbari.vars.services.model.Image;
+import org.mbari.vars.services.model.ImageUploadResults;
+import org.mbari.vars.services.model.Media;
+import org.mbari.vars.services.util.JpegEncoder;
+import org.mbari.vars.services.util.OverlayRenderer;
+import org.mbari.vcr4j.VideoIndex;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the framegrab pipeline against a fake capture service that makes synthetic frames,
+ * an image archive that stores what it's sent in a temp directory and an annotation service
+ * that records what's created.
+ */
+public class FramegrabPipelineTest {
+
+    private Path root;
+    private ExecutorService executor;
+    private OverlayRenderer overlayRenderer;
+    private Media media;
+    private List<String> created;
+
+    @BeforeClass
+    public static void headless() {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @Before
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("framegrab");
+        executor = FramegrabPipeline.newExecutor(2, 4);
+        overlayRenderer = new OverlayRenderer(new JpegEncoder(JpegEncoder.DEFAULT_QUALITY), 2);
+        media = new Media();
+        media.setVideoReferenceUuid(UUID.randomUUID());
+        media.setCameraId("Ventana");
+        media.setVideoSequenceName("Ventana 4242");
+        media.setStartTimestamp(Instant.parse("2020-10-24T00:00:00Z"));
+        created = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        executor.shutdownNow();
+        try (var paths = Files.walk(root)) {
+            paths.sorted((a, b) -> b.compareTo(a))
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+
+    private static BufferedImage newFrame() {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, x << 18 | y << 10 | 0x80);
+            }
+        }
+        return image;
+    }
+
+    /** Makes synthetic frames. Writes them to the file, like a real capture service, if one is given */
+    private static class FakeCaptureService implements ImageCaptureService {
+        final List<File> files = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean fail;
+
+        @Override
+        public Framegrab capture(File file) {
+            files.add(file);
+            if (fail) {
+                throw new RuntimeException("No video");
+            }
+            BufferedImage image = newFrame();
+            if (file != null) {
+                try {
+                    ImageIO.write(image, "png", file);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return new Framegrab(image, new VideoIndex(Duration.ofSeconds(42)));
+        }
+
+        @Override
+        public void dispose() {}
+    }
+
+    /**
+     * Stores uploads in a directory. Uploads wait for the gate to open. Only in-memory
+     * images are accepted
+     */
+    private static class LocalImageArchive implements ImageArchiveService {
+        final Path dir;
+        final CountDownLatch gate = new CountDownLatch(1);
+        volatile String failExtension;
+
+        LocalImageArchive(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        public CompletableFuture<ImageUploadResults> upload(String cameraId, String deploymentId, String name, Path image) {
+            throw new UnsupportedOperationException("Images should be uploaded from memory");
+        }
+
+        @Override
+        public CompletableFuture<ImageUploadResults> upload(String cameraId, String deploymentId, String name, ImageEncoder image) {
+            // Encode now, like a request body would
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                image.encode(out);
+            }
+            catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            byte[] bytes = out.toByteArray();
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                    if (failExtension != null && name.endsWith(failExtension)) {
+                        throw new IOException("Upload of " + name + " failed");
+                    }
+                    Path target = dir.resolve(name);
+                    Files.write(target, bytes);
+                    ImageUploadResults results = new ImageUploadResults();
+                    results.setCameraId(cameraId);
+                    results.setDeploymentId(deploymentId);
+                    results.setName(name);
+                    results.setUri(target.toUri());
+                    return results;
+                }
+                catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        @Override
+        public CompletableFuture<ImageUploadResults> locate(String cameraId, String deploymentId, String name) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private AnnotationService newAnnotationService() {
+        return (AnnotationService) Proxy.newProxyInstance(AnnotationService.class.getClassLoader(),
+                new Class<?>[]{AnnotationService.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("createImage")) {
+                        Image image = new Image((Image) args[0]);
+                        image.setImageReferenceUuid(UUID.randomUUID());
+                        created.add(image.getFormat());
+                        return CompletableFuture.completedFuture(image);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private CompletableFuture<Annotation> createAnnotation(VideoIndex videoIndex) {
+        Annotation annotation = new Annotation();
+        annotation.setConcept("nil");
+        annotation.setObservationUuid(UUID.randomUUID());
+        videoIndex.getElapsedTime().ifPresent(annotation::setElapsedTime);
+        videoIndex.getTimestamp().ifPresent(annotation::setRecordedTimestamp);
+        created.add("annotation");
+        return CompletableFuture.completedFuture(annotation);
+    }
+
+    private static class RecordingListener implements FramegrabPipeline.Listener {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void started(FramegrabPipeline.Stage stage) {
+            events.add("started " + stage);
+        }
+
+        @Override
+        public void completed(FramegrabPipeline.Stage stage) {
+            events.add("completed " + stage);
+        }
+
+        @Override
+        public void failed(FramegrabPipeline.Stage stage, Throwable throwable) {
+            events.add("failed " + stage);
+        }
+
+        List<String> with(String prefix) {
+            synchronized (events) {
+                return events.stream()
+                        .filter(s -> s.startsWith(prefix))
+                        .map(s -> s.substring(prefix.length() + 1))
+                        .collect(Collectors.toList());
+            }
+        }
+    }
+
+    private FramegrabPipeline.Job run(ImageCaptureService captureService,
+                                      ImageArchiveService archive,
+                                      FramegrabPipeline.Listener listener) {
+        FramegrabPipeline pipeline = new FramegrabPipeline(newAnnotationService(), archive,
+                "MBARI", executor, overlayRenderer, null);
+        return pipeline.run(captureService, media, this::createAnnotation, listener);
+    }
+
+    @Test
+    public void createsAnnotationBeforeUploadsFinish() throws Exception {
+        Path archiveDir = Files.createDirectory(root.resolve("archive"));
+        LocalImageArchive archive = new LocalImageArchive(archiveDir);
+        RecordingListener listener = new RecordingListener();
+        FakeCaptureService captureService = new FakeCaptureService();
+        FramegrabPipeline.Job job = run(captureService, archive, listener);
+
+        // The annotation doesn't wait for the upload
+        Annotation annotation = job.getAnnotation().get(5, TimeUnit.SECONDS);
+        assertEquals(Instant.parse("2020-10-24T00:00:42Z"), annotation.getRecordedTimestamp());
+        assertFalse(job.getPngImage().isDone());
+
+        archive.gate.countDown();
+        job.getDone().get(5, TimeUnit.SECONDS);
+        Image png = job.getPngImage().join();
+        Image jpg = job.getJpgImage().join();
+        assertEquals("image/png", png.getFormat());
+        assertEquals("image/jpg", jpg.getFormat());
+        assertEquals(Integer.valueOf(64), jpg.getWidth());
+        assertEquals(annotation.getRecordedTimestamp(), jpg.getRecordedTimestamp());
+        assertEquals(List.of("annotation", "image/png", "image/jpg"), created);
+
+        // The frame went straight from memory to the archive
+        assertEquals(Collections.singletonList(null), captureService.files);
+        BufferedImage archivedPng = ImageIO.read(png.getUrl());
+        assertEquals(newFrame().getRGB(40, 30), archivedPng.getRGB(40, 30));
+        BufferedImage archivedJpg = ImageIO.read(jpg.getUrl());
+        assertEquals(48, archivedJpg.getHeight());
+        try (var paths = Files.list(root)) {
+            assertEquals(List.of(archiveDir), paths.collect(Collectors.toList()));
+        }
+
+        Set<FramegrabPipeline.Stage> completed = listener.with("completed").stream()
+                .map(FramegrabPipeline.Stage::valueOf)
+                .collect(Collectors.toSet());
+        assertEquals(EnumSet.complementOf(EnumSet.of(FramegrabPipeline.Stage.LOCAL_COPY)), completed);
+        assertTrue(listener.with("failed").isEmpty());
+    }
+
+    @Test
+    public void reportsFailedStagesAndSkipsTheirDependents() throws Exception {
+        Path archiveDir = Files.createDirectory(root.resolve("archive"));
+
+        // Capture fails: nothing else runs
+        FakeCaptureService captureService = new FakeCaptureService();
+        captureService.fail = true;
+        RecordingListener listener = new RecordingListener();
+        LocalImageArchive archive = new LocalImageArchive(archiveDir);
+        archive.gate.countDown();
+        FramegrabPipeline.Job job = run(captureService, archive, listener);
+        job.getDone().get(5, TimeUnit.SECONDS);
+        assertFalse(job.getFramegrab().isPresent());
+        assertTrue(job.getAnnotation().isCompletedExceptionally());
+        assertEquals(List.of("started CAPTURE", "failed CAPTURE"), listener.events);
+        assertTrue(created.isEmpty());
+
+        // png upload fails: the annotation is kept, no images are created
+        listener = new RecordingListener();
+        archive.failExtension = ".png";
+        job = run(new FakeCaptureService(), archive, listener);
+        job.getDone().get(5, TimeUnit.SECONDS);
+        assertNotNull(job.getAnnotation().join());
+        assertTrue(job.getPngImage().isCompletedExceptionally());
+        assertTrue(job.getJpgImage().isCompletedExceptionally());
+        assertEquals(List.of("PNG_UPLOAD"), listener.with("failed"));
+        assertEquals(List.of("CAPTURE", "ANNOTATION", "PNG_UPLOAD"), listener.with("started"));
+        assertEquals(List.of("annotation"), created);
+
+        // jpg upload fails: the annotation and png are kept
+        created.clear();
+        listener = new RecordingListener();
+        archive.failExtension = ".jpg";
+        job = run(new FakeCaptureService(), archive, listener);
+        job.getDone().get(5, TimeUnit.SECONDS);
+        assertNotNull(job.getPngImage().join());
+        assertTrue(job.getJpgImage().isCompletedExceptionally());
+        assertEquals(List.of("JPG_UPLOAD"), listener.with("failed"));
+        assertEquals(List.of("annotation", "image/png"), created);
+
+        // Annotation fails: no images are registered
+        created.clear();
+        listener = new RecordingListener();
+        archive.failExtension = null;
+        FramegrabPipeline pipeline = new FramegrabPipeline(newAnnotationService(), archive, "MBARI",
+                executor, overlayRenderer, null);
+        job = pipeline.run(new FakeCaptureService(), media,
+                videoIndex -> CompletableFuture.failedFuture(new RuntimeException("annosaurus is down")),
+                listener);
+        job.getDone().get(5, TimeUnit.SECONDS);
+        assertTrue(job.getAnnotation().isCompletedExceptionally());
+        assertTrue(job.getPngImage().isCompletedExceptionally());
+        assertEquals(List.of("ANNOTATION"), listener.with("failed"));
+        assertTrue(created.isEmpty());
+    }
+
+    @Test
+    public void handlesRapidFramegrabs() throws Exception {
+        Path archiveDir = Files.createDirectory(root.resolve("archive"));
+        LocalImageArchive archive = new LocalImageArchive(archiveDir);
+        FakeCaptureService captureService = new FakeCaptureService();
+        List<FramegrabPipeline.Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            jobs.add(run(captureService, archive, new FramegrabPipeline.Listener() {}));
+        }
+        // Every annotation is created while all the uploads are still waiting
+        for (FramegrabPipeline.Job job : jobs) {
+            assertNotNull(job.getAnnotation().get(5, TimeUnit.SECONDS));
+        }
+        archive.gate.countDown();
+        for (FramegrabPipeline.Job job : jobs) {
+            job.getDone().get(10, TimeUnit.SECONDS);
+            assertNotNull(job.getJpgImage().join());
+        }
+        assertEquals(60, created.size());
+    }
+
+    @Test
+    public void savesLocalCopyWhenAsked() throws Exception {
+        Path archiveDir = Files.createDirectory(root.resolve("archive"));
+        Path localDir = Files.createDirectory(root.resolve("local"));
+        LocalImageArchive archive = new LocalImageArchive(archiveDir);
+        RecordingListener listener = new RecordingListener();
+        FramegrabPipeline pipeline = new FramegrabPipeline(newAnnotationService(), archive, "MBARI",
+                executor, overlayRenderer, localDir);
+        FramegrabPipeline.Job job = pipeline.run(new FakeCaptureService(), media, this::createAnnotation, listener);
+
+        // The local copy doesn't wait for the uploads
+        Path localCopy = job.getLocalCopy().get(5, TimeUnit.SECONDS);
+        assertEquals(localDir, localCopy.getParent());
+        assertEquals(newFrame().getRGB(10, 20), ImageIO.read(localCopy.toFile()).getRGB(10, 20));
+        assertFalse(job.getPngImage().isDone());
+
+        archive.gate.countDown();
+        job.getDone().get(5, TimeUnit.SECONDS);
+        assertTrue(listener.with("completed").contains("LOCAL_COPY"));
+        try (var paths = Files.list(localDir)) {
+            assertEquals(1, paths.count());
+        }
+    }
+}
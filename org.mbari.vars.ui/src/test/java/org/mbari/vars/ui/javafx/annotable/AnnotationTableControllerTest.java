@@ -0,0 +1,222 @@
+package org.mbari.vars.ui.javafx.annotable;
+
+import com.typesafe.config.ConfigFactory;
+import javafx.application.Platform;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mbari.vars.core.EventBus;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.ui.Data;
+import org.mbari.vars.ui.UIToolBox;
+import org.mbari.vars.ui.events.AnnotationsAddedEvent;
+import org.mbari.vars.ui.events.AnnotationsChangedEvent;
+import org.mbari.vars.ui.events.AnnotationsRemovedEvent;
+import org.mbari.vars.ui.events.AnnotationsSelectedEvent;
+import org.mbari.vars.ui.events.UIEvent;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.ResourceBundle;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds batches of UIEvents, like the ones the event bus coalesces, to an
+ * {@link AnnotationTableController} and checks what ends up in the table and its
+ * selection. The FX toolkit is started with Monocle's headless platform and the table is
+ * never shown.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-26T10:00:00
+ */
+public class AnnotationTableControllerTest {
+
+    private static final Instant START = Instant.parse("2020-10-26T00:00:00Z");
+
+    private ExecutorService executor;
+    private AnnotationTableController controller;
+
+    @BeforeClass
+    public static void startToolkit() throws Exception {
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+        System.setProperty("java.awt.headless", "true");
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            Platform.startup(latch::countDown);
+        }
+        catch (IllegalStateException e) {
+            // Already started
+            latch.countDown();
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Platform.setImplicitExit(false);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        UIToolBox toolBox = new UIToolBox(new Data(),
+                null,
+                new EventBus(),
+                ResourceBundle.getBundle("i18n"),
+                ConfigFactory.empty(),
+                Collections.emptyList(),
+                executor);
+        controller = onFXThread(() -> new AnnotationTableController(toolBox));
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static <T> T onFXThread(Callable<T> fn) throws Exception {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                f.complete(fn.call());
+            }
+            catch (Throwable e) {
+                f.completeExceptionally(e);
+            }
+        });
+        return f.get(10, TimeUnit.SECONDS);
+    }
+
+    private static Annotation newAnnotation(int i) {
+        Annotation a = new Annotation();
+        a.setObservationUuid(UUID.randomUUID());
+        a.setRecordedTimestamp(START.plusSeconds(i));
+        a.setConcept("concept-" + (i % 10));
+        return a;
+    }
+
+    private static List<Annotation> newAnnotations(int from, int to) {
+        List<Annotation> xs = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            xs.add(newAnnotation(i));
+        }
+        return xs;
+    }
+
+    private static Annotation renamed(Annotation a) {
+        Annotation b = new Annotation(a);
+        b.setConcept("renamed");
+        return b;
+    }
+
+    private static void assertIdentical(List<Annotation> expected, List<Annotation> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame("Different annotation at " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void appliesAMixedBatchInOrder() throws Exception {
+        List<Annotation> page1 = newAnnotations(0, 10);
+        List<Annotation> page2 = newAnnotations(10, 20);
+        List<Annotation> page3 = newAnnotations(20, 30);
+        Annotation changed = renamed(page2.get(4));
+        Annotation notInTable = newAnnotation(100);
+        List<UIEvent> events = List.of(new AnnotationsAddedEvent(page1),
+                new AnnotationsAddedEvent(page2),
+                new AnnotationsRemovedEvent(List.of(page1.get(0), page1.get(5))),
+                new AnnotationsChangedEvent(List.of(changed, notInTable)),
+                new AnnotationsAddedEvent(page3),
+                new AnnotationsSelectedEvent(this, List.of(page3.get(2), changed)));
+
+        List<Annotation> expected = new ArrayList<>();
+        expected.addAll(page1);
+        expected.addAll(page2);
+        expected.addAll(page3);
+        expected.remove(page1.get(5));
+        expected.remove(page1.get(0));
+        expected.set(expected.indexOf(changed), changed);
+
+        onFXThread(() -> {
+            controller.apply(events);
+            TableView<Annotation> tableView = controller.getTableView();
+            // The table isn't sorted so everything is in the order it was added
+            assertIdentical(expected, tableView.getItems());
+            assertSame(changed, tableView.getItems().get(12));
+            assertFalse(tableView.getItems().contains(notInTable));
+            assertIdentical(List.of(changed, page3.get(2)),
+                    new ArrayList<>(tableView.getSelectionModel().getSelectedItems()));
+            return null;
+        });
+    }
+
+    @Test
+    public void mergesAddedPagesIntoASortedTable() throws Exception {
+        List<Annotation> annotations = newAnnotations(0, 500);
+        List<List<Annotation>> pages = new ArrayList<>();
+        for (int i = 0; i < annotations.size(); i += 50) {
+            pages.add(annotations.subList(i, i + 50));
+        }
+        // With parallel paging the pages arrive in any order
+        Collections.shuffle(pages, new Random(42));
+        List<UIEvent> batch1 = new ArrayList<>();
+        List<UIEvent> batch2 = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            (i < 4 ? batch1 : batch2).add(new AnnotationsAddedEvent(pages.get(i)));
+        }
+        Annotation changed = renamed(annotations.get(250));
+        batch2.add(new AnnotationsChangedEvent(List.of(changed)));
+
+        onFXThread(() -> {
+            TableView<Annotation> tableView = controller.getTableView();
+            TableColumn<Annotation, ?> timestampCol = tableView.getColumns()
+                    .stream()
+                    .filter(tc -> "recordedTimestamp".equals(tc.getId()))
+                    .findFirst()
+                    .orElseThrow();
+            tableView.getSortOrder().add(timestampCol);
+
+            controller.apply(batch1);
+            controller.apply(batch2);
+
+            List<Annotation> expected = new ArrayList<>(annotations);
+            expected.set(250, changed);
+            assertIdentical(expected, tableView.getItems());
+            return null;
+        });
+    }
+
+    @Test
+    public void ignoresItsOwnSelections() throws Exception {
+        List<Annotation> annotations = newAnnotations(0, 10);
+        onFXThread(() -> {
+            controller.apply(List.of(new AnnotationsAddedEvent(annotations),
+                    new AnnotationsSelectedEvent(annotations.get(3))));
+            TableView<Annotation> tableView = controller.getTableView();
+            assertEquals(List.of(annotations.get(3)), tableView.getSelectionModel().getSelectedItems());
+
+            // The table sends these when the user selects rows. They're already selected.
+            controller.apply(List.of(new AnnotationsSelectedEvent(controller, List.of(annotations.get(7)))));
+            assertEquals(List.of(annotations.get(3)), tableView.getSelectionModel().getSelectedItems());
+
+            // Removing a selected annotation drops it from the selection
+            controller.apply(List.of(new AnnotationsRemovedEvent(annotations.get(3))));
+            assertEquals(9, tableView.getItems().size());
+            assertFalse(tableView.getSelectionModel().getSelectedItems().contains(annotations.get(3)));
+            return null;
+        });
+    }
+}
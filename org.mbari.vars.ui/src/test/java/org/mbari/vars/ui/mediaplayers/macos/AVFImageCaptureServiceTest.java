@@ -76,4 +76,20 @@ public class AVFImageCaptureServiceTest {
             System.err.println("No frame capture devices were found");
         }
     }
+
+    @Ignore
+    @Test
+    public void testImageCaptureServiceWithoutAFile() {
+        AVFImageCaptureService service = AVFImageCaptureService.getInstance();
+        Collection<String> devices = service.listDevices();
+        if (devices.size() > 0) {
+            service.setDevice(devices.iterator().next());
+            // What the framegrab pipeline does. The frame goes through a temp file
+            Framegrab png = service.capture(null);
+            Assert.assertTrue(png.getImage().isPresent());
+        }
+        else {
+            System.err.println("No frame capture devices were found");
+        }
+    }
 }
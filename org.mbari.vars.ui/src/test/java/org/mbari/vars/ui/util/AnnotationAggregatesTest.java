@@ -0,0 +1,177 @@
+package org.mbari.vars.ui.util;
+
+import org.junit.Test;
+import org.mbari.vars.core.util.FnUtils;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Association;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the aggregates kept up to date through a random sequence of add, change and
+ * remove events are the same as recomputing the distinct values from scratch. JavaFX
+ * collections don't need the toolkit so this runs headless. AnnotationAggregatesBenchmark
+ * compares the cost of the two.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-24T18:00:00
+ */
+public class AnnotationAggregatesTest {
+
+    private static Annotation newAnnotation(Random random) {
+        Annotation a = new Annotation();
+        a.setObservationUuid(UUID.randomUUID());
+        a.setConcept("concept-" + random.nextInt(50));
+        a.setGroup("group-" + random.nextInt(5));
+        a.setActivity("activity-" + random.nextInt(5));
+        List<Association> associations = new ArrayList<>();
+        for (int i = random.nextInt(3); i > 0; i--) {
+            associations.add(new Association("link-" + random.nextInt(10),
+                    "self",
+                    "value-" + random.nextInt(10)));
+        }
+        a.setAssociations(associations);
+        return a;
+    }
+
+    /** How BulkEditorPaneController.refresh used to find the concepts */
+    private static List<String> scanConcepts(List<Annotation> annotations) {
+        return scan(annotations, Annotation::getConcept);
+    }
+
+    /** How BulkEditorPaneController.refresh used to find the associations */
+    private static List<String> scanAssociations(List<Annotation> annotations) {
+        return annotations.stream()
+                .map(Annotation::getAssociations)
+                .flatMap(List::stream)
+                .filter(FnUtils.distinctBy(Association::toString))
+                .sorted(Comparator.comparing(Association::toString))
+                .map(Association::toString)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> scan(List<Annotation> annotations, Function<Annotation, String> fn) {
+        return annotations.stream()
+                .map(fn)
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted(String.CASE_INSENSITIVE_ORDER)
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> toStrings(List<Association> associations) {
+        return associations.stream()
+                .map(Association::toString)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Adds, changes (new copies like the ones AnnotationsChangedEvent carries, or the same
+     * instance modified in place) or removes a few annotations
+     */
+    private static void sendEvent(IndexedAnnotationList annotations, Random random) {
+        int n = annotations.isEmpty() ? 0 : random.nextInt(4);
+        if (n == 0) {
+            annotations.addAll(List.of(newAnnotation(random), newAnnotation(random)));
+        }
+        else if (n == 1) {
+            Annotation a = new Annotation(annotations.get(random.nextInt(annotations.size())));
+            a.setConcept("concept-" + random.nextInt(60));
+            a.setAssociations(List.of(new Association("link-x", "self", "value-" + random.nextInt(20))));
+            annotations.addAll(List.of(a));
+        }
+        else if (n == 2) {
+            Annotation a = annotations.get(random.nextInt(annotations.size()));
+            a.setGroup("group-" + random.nextInt(8));
+            annotations.addAll(List.of(a));
+        }
+        else {
+            List<Annotation> remove = new ArrayList<>();
+            for (int i = random.nextInt(3) + 1; i > 0; i--) {
+                remove.add(annotations.get(random.nextInt(annotations.size())));
+            }
+            annotations.removeAll(remove);
+        }
+    }
+
+    @Test
+    public void matchesAFullRescan() {
+        Random random = new Random(11);
+        List<Annotation> data = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            data.add(newAnnotation(random));
+        }
+        IndexedAnnotationList annotations = new IndexedAnnotationList(data);
+        AnnotationAggregates aggregates = new AnnotationAggregates();
+        aggregates.attach(annotations);
+
+        for (int i = 0; i < 1000; i++) {
+            sendEvent(annotations, random);
+            String msg = "After event " + i;
+            assertEquals(msg, annotations.size(), aggregates.size());
+            assertEquals(msg, scanConcepts(annotations), aggregates.getConcepts());
+            assertEquals(msg, scanAssociations(annotations), toStrings(aggregates.getAssociations()));
+            assertEquals(msg, scan(annotations, Annotation::getGroup), aggregates.getGroups());
+            assertEquals(msg, scan(annotations, Annotation::getActivity), aggregates.getActivities());
+        }
+        for (String concept : aggregates.getConcepts()) {
+            long n = annotations.stream()
+                    .filter(a -> concept.equals(a.getConcept()))
+                    .count();
+            assertEquals(n, aggregates.getConceptCount(concept));
+        }
+    }
+
+    @Test
+    public void subtractsWhatWasCounted() {
+        IndexedAnnotationList annotations = new IndexedAnnotationList();
+        AnnotationAggregates aggregates = new AnnotationAggregates();
+        aggregates.attach(annotations);
+
+        Annotation a = new Annotation();
+        a.setObservationUuid(UUID.randomUUID());
+        a.setConcept("Nanomia");
+        a.setAssociations(List.of(new Association("eating", "Pyrosoma", "nil")));
+        annotations.add(a);
+        long version = aggregates.getVersion();
+        assertEquals(1, aggregates.getConceptCount("Nanomia"));
+        assertEquals(1, aggregates.getAssociationCount(new Association("eating", "Pyrosoma", "nil")));
+
+        // Modified in place, then replaced by itself
+        a.setConcept("Aegina");
+        annotations.addAll(List.of(a));
+        assertEquals(0, aggregates.getConceptCount("Nanomia"));
+        assertEquals(List.of("Aegina"), aggregates.getConcepts());
+        assertNotEquals(version, aggregates.getVersion());
+
+        // A change that doesn't add or remove a distinct value keeps the version
+        version = aggregates.getVersion();
+        annotations.addAll(List.of(new Annotation(a)));
+        assertEquals(version, aggregates.getVersion());
+
+        // Unsaved annotations are counted too
+        Annotation unsaved = new Annotation();
+        unsaved.setConcept("Aegina");
+        annotations.add(unsaved);
+        assertEquals(2, aggregates.getConceptCount("Aegina"));
+
+        annotations.clear();
+        assertEquals(0, aggregates.size());
+        assertEquals(List.of(), aggregates.getConcepts());
+        assertEquals(List.of(), aggregates.getAssociations());
+
+        // Detached lists aren't followed
+        aggregates.detach();
+        annotations.add(a);
+        assertEquals(0, aggregates.size());
+    }
+}
@@ -0,0 +1,344 @@
+package org.mbari.vars.ui.util;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import org.junit.Test;
+import org.mbari.vars.services.model.Annotation;
+import org.mbari.vars.services.model.Association;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that an {@link IndexedAnnotationList} ends up with the same contents as a plain
+ * ObservableList after the same operations, and that the changes it fires, replayed onto
+ * a copy of the list, produce the same contents. JavaFX collections don't need the
+ * toolkit so this runs headless.
+ *
+ * @author Brian Schlining
+ * @since 2020-10-25T09:00:00
+ */
+public class IndexedAnnotationListTest {
+
+    private static final Comparator<Annotation> BY_ELAPSED_TIME =
+            Comparator.comparing(Annotation::getElapsedTime);
+
+    private final Random random = new Random(42);
+
+    private Annotation newAnnotation(int i) {
+        Annotation a = new Annotation();
+        a.setObservationUuid(UUID.randomUUID());
+        a.setImagedMomentUuid(UUID.randomUUID());
+        a.setConcept("concept-" + random.nextInt(5));
+        a.setElapsedTime(Duration.ofSeconds(i));
+        List<Association> associations = new ArrayList<>();
+        if (i % 4 == 0) {
+            associations.add(new Association("link-" + i % 3, "self", "nil"));
+        }
+        a.setAssociations(associations);
+        return a;
+    }
+
+    private List<Annotation> newAnnotations(int n) {
+        List<Annotation> xs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            xs.add(newAnnotation(i * 10));
+        }
+        return xs;
+    }
+
+    private static Annotation renamed(Annotation a) {
+        Annotation b = new Annotation(a);
+        b.setConcept("renamed");
+        return b;
+    }
+
+    /**
+     * Replays every change onto a copy of the list, the way Bindings.bindContent
+     * does, checking that the removed annotations are the ones at those positions.
+     */
+    private static class Recorder implements ListChangeListener<Annotation> {
+        final List<Annotation> replayed;
+        int changeCount = 0;
+
+        Recorder(List<Annotation> initial) {
+            replayed = new ArrayList<>(initial);
+        }
+
+        @Override
+        public void onChanged(Change<? extends Annotation> c) {
+            changeCount++;
+            while (c.next()) {
+                int from = c.getFrom();
+                if (c.wasPermutated()) {
+                    List<Annotation> old = new ArrayList<>(replayed.subList(from, c.getTo()));
+                    for (int i = from; i < c.getTo(); i++) {
+                        replayed.set(c.getPermutation(i), old.get(i - from));
+                    }
+                }
+                else {
+                    List<Annotation> removed = replayed.subList(from, from + c.getRemovedSize());
+                    assertIdentical(c.getRemoved(), removed);
+                    removed.clear();
+                    replayed.addAll(from, c.getAddedSubList());
+                }
+            }
+        }
+    }
+
+    private static void assertIdentical(List<? extends Annotation> expected, List<? extends Annotation> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame("Different annotation at " + i, expected.get(i), actual.get(i));
+        }
+    }
+
+    /**
+     * Both lists have the same annotations, in the same order, and the index agrees
+     * with the list's positions
+     */
+    private static void assertConsistent(List<Annotation> plain, IndexedAnnotationList indexed) {
+        assertIdentical(plain, indexed);
+        for (int i = 0; i < indexed.size(); i++) {
+            Annotation a = indexed.get(i);
+            assertTrue(indexed.contains(a));
+            assertEquals(plain.indexOf(a), indexed.indexOf(a));
+            assertSame(a, indexed.find(a.getObservationUuid()).orElse(null));
+        }
+        List<String> concepts = plain.stream()
+                .map(Annotation::getConcept)
+                .distinct()
+                .collect(Collectors.toList());
+        for (String concept : concepts) {
+            List<Annotation> expected = plain.stream()
+                    .filter(a -> concept.equals(a.getConcept()))
+                    .collect(Collectors.toList());
+            assertEquals(expected.size(), indexed.findByConcept(concept).size());
+            assertTrue(indexed.findByConcept(concept).containsAll(expected));
+        }
+    }
+
+    private IndexedAnnotationList indexed(List<Annotation> xs, Recorder recorder) {
+        IndexedAnnotationList list = new IndexedAnnotationList(xs);
+        list.addListener(recorder);
+        return list;
+    }
+
+    @Test
+    public void addAppendsAndReplacesInPlace() {
+        List<Annotation> xs = newAnnotations(20);
+        ObservableList<Annotation> plain = FXCollections.observableArrayList(xs);
+        Recorder recorder = new Recorder(xs);
+        IndexedAnnotationList indexed = indexed(xs, recorder);
+
+        Annotation a = newAnnotation(1000);
+        plain.add(a);
+        indexed.add(a);
+        assertConsistent(plain, indexed);
+
+        // Replaces the annotation with the same observationUuid instead of adding a copy
+        Annotation b = renamed(xs.get(3));
+        plain.set(3, b);
+        indexed.add(b);
+        assertConsistent(plain, indexed);
+
+        assertEquals(2, recorder.changeCount);
+        assertIdentical(indexed, recorder.replayed);
+    }
+
+    @Test
+    public void addAllIsOneChange() {
+        List<Annotation> xs = newAnnotations(20);
+        ObservableList<Annotation> plain = FXCollections.observableArrayList(xs);
+        Recorder recorder = new Recorder(xs);
+        IndexedAnnotationList indexed = indexed(xs, recorder);
+
+        // A mix of new and changed annotations, like an AnnotationsChangedEvent
+        List<Annotation> ys = new ArrayList<>(newAnnotations(5));
+        ys.add(renamed(xs.get(0)));
+        ys.add(renamed(xs.get(19)));
+        ys.add(renamed(xs.get(7)));
+        for (Annotation y : ys) {
+            int i = plain.indexOf(y);
+            if (i < 0) {
+                plain.add(y);
+            }
+            else {
+                plain.set(i, y);
+            }
+        }
+        assertTrue(indexed.addAll(ys));
+        assertFalse(indexed.addAll(Collections.emptyList()));
+
+        assertConsistent(plain, indexed);
+        assertEquals(1, recorder.changeCount);
+        assertIdentical(indexed, recorder.replayed);
+    }
+
+    @Test
+    public void removeKeepsTheIndexConsistent() {
+        List<Annotation> xs = newAnnotations(30);
+        ObservableList<Annotation> plain = FXCollections.observableArrayList(xs);
+        Recorder recorder = new Recorder(xs);
+        IndexedAnnotationList indexed = indexed(xs, recorder);
+
+        // Remove from the middle, the end and by instance
+        plain.remove(10);
+        indexed.remove(10);
+        assertConsistent(plain, indexed);
+        plain.remove(plain.size() - 1);
+        indexed.remove(indexed.size() - 1);
+        assertConsistent(plain, indexed);
+        Annotation a = xs.get(3);
+        plain.remove(a);
+        assertTrue(indexed.remove(a));
+        assertFalse(indexed.contains(a));
+        assertEquals(-1, indexed.indexOf(a));
+        assertConsistent(plain, indexed);
+
+        // Replace at an index, then remove the replacement
+        Annotation b = renamed(xs.get(5));
+        plain.set(4, b);
+        indexed.set(4, b);
+        assertConsistent(plain, indexed);
+        plain.remove(4);
+        indexed.remove(4);
+        assertConsistent(plain, indexed);
+
+        assertIdentical(indexed, recorder.replayed);
+    }
+
+    @Test
+    public void removeAllIsOneChange() {
+        List<Annotation> xs = newAnnotations(30);
+        ObservableList<Annotation> plain = FXCollections.observableArrayList(xs);
+        Recorder recorder = new Recorder(xs);
+        IndexedAnnotationList indexed = indexed(xs, recorder);
+
+        // Scattered annotations, copies of annotations and ones that aren't in the list
+        List<Annotation> remove = List.of(xs.get(0), renamed(xs.get(4)), xs.get(5),
+                xs.get(17), xs.get(29), newAnnotation(1000));
+        plain.removeAll(remove);
+        assertTrue(indexed.removeAll(remove));
+        assertFalse(indexed.removeAll(List.of(newAnnotation(2000))));
+
+        assertConsistent(plain, indexed);
+        assertEquals(1, recorder.changeCount);
+        assertIdentical(indexed, recorder.replayed);
+
+        plain.clear();
+        indexed.clear();
+        assertConsistent(plain, indexed);
+        assertTrue(recorder.replayed.isEmpty());
+    }
+
+    @Test
+    public void setAllDetectsPermutations() {
+        List<Annotation> xs = newAnnotations(30);
+        ObservableList<Annotation> plain = FXCollections.observableArrayList(xs);
+        Recorder recorder = new Recorder(xs);
+        IndexedAnnotationList indexed = indexed(xs, recorder);
+
+        // What a TableView sort does
+        List<Annotation> shuffled = new ArrayList<>(xs);
+        Collections.shuffle(shuffled, random);
+        plain.setAll(shuffled);
+        indexed.setAll(shuffled);
+        assertConsistent(plain, indexed);
+        assertEquals(1, recorder.changeCount);
+        assertIdentical(indexed, recorder.replayed);
+
+        // A permutation that swaps in copies re-indexes the copies
+        List<Annotation> copies = new ArrayList<>(shuffled);
+        Collections.reverse(copies);
+        copies.set(0, renamed(copies.get(0)));
+        plain.setAll(copies);
+        indexed.setAll(copies);
+        assertConsistent(plain, indexed);
+        assertEquals("renamed", indexed.find(copies.get(0).getObservationUuid()).get().getConcept());
+
+        // Not a permutation: a different size and then a duplicate
+        List<Annotation> fewer = new ArrayList<>(copies.subList(0, 20));
+        plain.setAll(fewer);
+        indexed.setAll(fewer);
+        assertConsistent(plain, indexed);
+        assertFalse(indexed.contains(copies.get(25)));
+
+        // Like addAll, a second copy of an annotation replaces the first
+        List<Annotation> duplicated = new ArrayList<>(fewer);
+        duplicated.set(1, duplicated.get(0));
+        indexed.setAll(duplicated);
+        assertEquals(19, indexed.size());
+        assertFalse(indexed.contains(fewer.get(1)));
+        duplicated.remove(1);
+        assertConsistent(duplicated, indexed);
+
+        assertIdentical(indexed, recorder.replayed);
+    }
+
+    @Test
+    public void mergeSortedKeepsTheListSorted() {
+        List<Annotation> xs = newAnnotations(30);
+        ObservableList<Annotation> plain = FXCollections.observableArrayList(xs);
+        Recorder recorder = new Recorder(xs);
+        IndexedAnnotationList indexed = indexed(xs, recorder);
+
+        // New annotations before, between, after and at the same time as existing ones,
+        // plus changed copies of existing ones
+        List<Annotation> ys = new ArrayList<>();
+        for (int t : new int[] {295, -5, 1000, 15, 150, 155}) {
+            ys.add(newAnnotation(t));
+        }
+        Annotation tie = newAnnotation(100);
+        ys.add(tie);
+        ys.add(renamed(xs.get(2)));
+        ys.add(renamed(xs.get(29)));
+
+        for (Annotation y : ys) {
+            int i = plain.indexOf(y);
+            if (i < 0) {
+                plain.add(y);
+            }
+            else {
+                plain.set(i, y);
+            }
+        }
+        // Stable, so new annotations end up after existing ones that compare equal
+        FXCollections.sort(plain, BY_ELAPSED_TIME);
+        assertTrue(indexed.mergeSorted(ys, BY_ELAPSED_TIME));
+
+        assertConsistent(plain, indexed);
+        assertEquals(indexed.indexOf(xs.get(10)) + 1, indexed.indexOf(tie));
+        assertEquals(1, recorder.changeCount);
+        assertIdentical(indexed, recorder.replayed);
+    }
+
+    @Test
+    public void replaceExistingIgnoresNewAnnotations() {
+        List<Annotation> xs = newAnnotations(10);
+        Recorder recorder = new Recorder(xs);
+        IndexedAnnotationList indexed = indexed(xs, recorder);
+
+        Annotation changed = renamed(xs.get(6));
+        Annotation added = newAnnotation(1000);
+        List<Annotation> replaced = indexed.replaceExisting(List.of(changed, added));
+        assertEquals(List.of(changed), replaced);
+        assertEquals(10, indexed.size());
+        assertSame(changed, indexed.get(6));
+        assertFalse(indexed.contains(added));
+
+        List<Annotation> expected = new ArrayList<>(xs);
+        expected.set(6, changed);
+        assertConsistent(expected, indexed);
+        assertIdentical(indexed, recorder.replayed);
+    }
+}